@@ -0,0 +1,57 @@
+package hu.squarelabs.auth21.converter;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Writes and reads of the token claims attribute in each storage format. {@code transformFrom} runs
+ * on every token write and {@code transformTo} on every read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtClaimsAttributeConverterBenchmark {
+
+  @Param({"MAP", "BINARY"})
+  private JwtClaimsAttributeConverter.Format format;
+
+  private JwtClaimsAttributeConverter converter;
+  private Map<String, Object> claims;
+  private AttributeValue stored;
+
+  @Setup
+  public void setUp() {
+    converter = new JwtClaimsAttributeConverter(format);
+    claims = new LinkedHashMap<>();
+    claims.put("jti", "0f8fad5b-d9cb-469f-a165-70867728950e");
+    claims.put("sub", "user-123");
+    claims.put("iat", 1_700_000_000L);
+    claims.put("exp", 1_700_003_600L);
+    claims.put(
+        "user",
+        Map.of(
+            "id", "user-123",
+            "email", "user@example.com",
+            "nickname", "user",
+            "name", "Test User",
+            "roles", List.of("USER")));
+    stored = converter.transformFrom(claims);
+  }
+
+  @Benchmark
+  public AttributeValue transformFrom() {
+    return converter.transformFrom(claims);
+  }
+
+  @Benchmark
+  public Map<String, Object> transformTo() {
+    return converter.transformTo(stored);
+  }
+}
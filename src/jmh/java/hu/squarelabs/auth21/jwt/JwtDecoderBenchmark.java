@@ -0,0 +1,75 @@
+package hu.squarelabs.auth21.jwt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hu.squarelabs.auth21.model.JwtToken;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares {@link JwtDecoder} against splitting the token, verifying with a new {@link Mac} and
+ * binding the payload with Jackson.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtDecoderBenchmark {
+  private static final byte[] SECRET =
+      "benchmark-secret-benchmark-secret".getBytes(StandardCharsets.UTF_8);
+
+  private JwtDecoder decoder;
+  private ObjectMapper objectMapper;
+  private String token;
+
+  @Setup
+  public void setUp() {
+    decoder = new JwtDecoder(SECRET, JwtAlgorithm.HS256);
+    objectMapper = new ObjectMapper();
+    token =
+        new JwtEncoder(SECRET, JwtAlgorithm.HS256)
+            .encode(
+                new JwtToken(
+                    "0f8fad5b-d9cb-469f-a165-70867728950e",
+                    "user-123",
+                    System.currentTimeMillis() / 1000,
+                    System.currentTimeMillis() / 1000 + 86_400,
+                    Map.of(
+                        "id", "user-123",
+                        "email", "user@example.com",
+                        "nickname", "user",
+                        "name", "Test User",
+                        "roles", List.of("USER"))));
+  }
+
+  @Benchmark
+  public JwtToken tokenizingDecoder() {
+    return decoder.decode(token);
+  }
+
+  @Benchmark
+  public JwtToken objectMapperBaseline() throws Exception {
+    final String[] parts = token.split("\\.");
+    final Mac mac = Mac.getInstance("HmacSHA256");
+    mac.init(new SecretKeySpec(SECRET, "HmacSHA256"));
+    final byte[] expected =
+        mac.doFinal((parts[0] + "." + parts[1]).getBytes(StandardCharsets.US_ASCII));
+    if (!MessageDigest.isEqual(expected, Base64.getUrlDecoder().decode(parts[2]))) {
+      throw new IllegalStateException("Invalid signature");
+    }
+    final JwtToken jwtToken =
+        objectMapper.readValue(Base64.getUrlDecoder().decode(parts[1]), JwtToken.class);
+    if (jwtToken.getExp() <= System.currentTimeMillis() / 1000) {
+      throw new IllegalStateException("Expired");
+    }
+    return jwtToken;
+  }
+}
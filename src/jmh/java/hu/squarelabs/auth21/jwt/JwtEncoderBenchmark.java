@@ -0,0 +1,85 @@
+package hu.squarelabs.auth21.jwt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hu.squarelabs.auth21.model.JwtToken;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares {@link JwtEncoder} against a conventional implementation that builds a claims map,
+ * serializes it with Jackson and creates a new {@link Mac} per token. Run with {@code ./gradlew
+ * jmh}; the GC profiler reports the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtEncoderBenchmark {
+  private static final byte[] SECRET =
+      "benchmark-secret-benchmark-secret".getBytes(StandardCharsets.UTF_8);
+
+  @Param({"HS256", "HS512"})
+  private JwtAlgorithm algorithm;
+
+  private JwtEncoder encoder;
+  private ObjectMapper objectMapper;
+  private JwtToken token;
+
+  @Setup
+  public void setUp() {
+    encoder = new JwtEncoder(SECRET, algorithm);
+    objectMapper = new ObjectMapper();
+    token =
+        new JwtToken(
+            "0f8fad5b-d9cb-469f-a165-70867728950e",
+            "user-123",
+            1_700_000_000L,
+            1_700_003_600L,
+            Map.of(
+                "id", "user-123",
+                "email", "user@example.com",
+                "nickname", "user",
+                "name", "Test User",
+                "roles", List.of("USER")));
+  }
+
+  @Benchmark
+  public String streamingEncoder() {
+    return encoder.encode(token);
+  }
+
+  @Benchmark
+  public String objectMapperBaseline() throws Exception {
+    final Map<String, Object> header = new LinkedHashMap<>();
+    header.put("alg", algorithm.name());
+    header.put("typ", "JWT");
+
+    final Map<String, Object> claims = new LinkedHashMap<>();
+    claims.put("jti", token.getJti());
+    claims.put("sub", token.getSub());
+    claims.put("iat", token.getIat());
+    claims.put("exp", token.getExp());
+    claims.put("user", token.getUser());
+
+    final var encoder = Base64.getUrlEncoder().withoutPadding();
+    final String signingInput =
+        encoder.encodeToString(objectMapper.writeValueAsBytes(header))
+            + "."
+            + encoder.encodeToString(objectMapper.writeValueAsBytes(claims));
+
+    final Mac mac = Mac.getInstance(algorithm.getMacAlgorithm());
+    mac.init(new SecretKeySpec(SECRET, algorithm.getMacAlgorithm()));
+    return signingInput
+        + "."
+        + encoder.encodeToString(mac.doFinal(signingInput.getBytes(StandardCharsets.US_ASCII)));
+  }
+}
@@ -0,0 +1,324 @@
+package hu.squarelabs.auth21.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hu.squarelabs.auth21.Application;
+import hu.squarelabs.auth21.config.InMemoryDynamoDbConfig;
+import hu.squarelabs.auth21.model.entity.UserEntity;
+import hu.squarelabs.auth21.model.entity.UserEntitySchema;
+import hu.squarelabs.auth21.password.PasswordHashPolicy;
+import hu.squarelabs.auth21.service.AuthService;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.server.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+
+/**
+ * Open-loop load generator for the login and refresh flows, run against the in-memory DynamoDB
+ * stand-in so that capacity can be planned without AWS:
+ *
+ * <pre>
+ * gradle loadTest --args='--load.rps=500 --load.duration=60s
+ *     --aws.dynamodb.in-memory.latency=lognormal:4ms,25ms'
+ * </pre>
+ *
+ * <p>Requests are started on a fixed schedule whatever the service's response time, and each
+ * latency is measured from the moment the request was due rather than when it was sent. A
+ * closed-loop client that waits for each response would slow down with the service and hide exactly
+ * the queueing this is meant to show.
+ *
+ * <p>{@code load.target=service} (the default) calls {@link AuthService} in-process; {@code
+ * load.target=http} posts to the {@code AuthController} routes on a random local port, which adds
+ * the web stack and its interceptors to the measurement. Until those handlers call {@link
+ * AuthService}, that mode measures the web stack alone.
+ *
+ * <p>Other options: {@code load.warmup} (excluded from the report), {@code load.users} (seeded
+ * accounts), and {@code load.refresh-ratio} (share of requests that rotate a previously issued
+ * token pair instead of logging in).
+ */
+public final class LoadHarness {
+  private static final String PASSWORD = "load-test-password";
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final AuthService authService;
+  private final HttpClient httpClient;
+  private final URI baseUri;
+  private final int users;
+  private final double refreshRatio;
+  private final Flow login = new Flow("login");
+  private final Flow refresh = new Flow("refresh");
+  private final ConcurrentLinkedQueue<Map.Entry<String, String>> sessions =
+      new ConcurrentLinkedQueue<>();
+
+  /** Latencies and failures of one flow. */
+  private static final class Flow {
+    private final String name;
+    private final Histogram latencies = new ConcurrentHistogram(3);
+    private final LongAdder errors = new LongAdder();
+    private final AtomicReference<Exception> firstError = new AtomicReference<>();
+
+    private Flow(String name) {
+      this.name = name;
+    }
+
+    private void reset() {
+      latencies.reset();
+      errors.reset();
+      firstError.set(null);
+    }
+  }
+
+  private LoadHarness(AuthService authService, URI baseUri, int users, double refreshRatio) {
+    this.authService = authService;
+    this.httpClient = baseUri != null ? HttpClient.newHttpClient() : null;
+    this.baseUri = baseUri;
+    this.users = users;
+    this.refreshRatio = refreshRatio;
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    // The harness times the application, not a devtools restart of it.
+    System.setProperty("spring.devtools.restart.enabled", "false");
+    final var application = new SpringApplication(Application.class);
+
+    try (ConfigurableApplicationContext context = application.run(withDefaults(args))) {
+      final var environment = context.getEnvironment();
+      final double rps = environment.getProperty("load.rps", Double.class, 200.0);
+      final var duration = duration(environment, "load.duration", Duration.ofSeconds(30));
+      final var warmup = duration(environment, "load.warmup", Duration.ofSeconds(10));
+      final int users = environment.getProperty("load.users", Integer.class, 1000);
+      final double refreshRatio = environment.getProperty("load.refresh-ratio", Double.class, 0.5);
+      final var target = environment.getProperty("load.target", "service");
+
+      final URI baseUri =
+          switch (target) {
+            case "service" -> null;
+            case "http" ->
+                URI.create(
+                    "http://localhost:"
+                        + ((WebServerApplicationContext) context).getWebServer().getPort()
+                        + "/api/v1/auth/");
+            default -> throw new IllegalArgumentException("Unknown load.target: " + target);
+          };
+
+      seedUsers(context, environment, users);
+      final var harness =
+          new LoadHarness(context.getBean(AuthService.class), baseUri, users, refreshRatio);
+
+      System.out.printf(
+          Locale.ROOT,
+          "Target %s at %.0f rps: %d users, refresh ratio %.2f, warmup %s, duration %s%n",
+          target,
+          rps,
+          users,
+          refreshRatio,
+          warmup,
+          duration);
+      harness.run(rps, warmup);
+      harness.login.reset();
+      harness.refresh.reset();
+      final long sent = harness.run(rps, duration);
+      harness.report(sent, duration);
+    }
+  }
+
+  /**
+   * Adds the harness settings as command-line arguments unless given, since the profile files would
+   * override them as default properties.
+   */
+  private static String[] withDefaults(String[] args) {
+    final List<String> arguments = new ArrayList<>(List.of(args));
+    Map.of(
+            "spring.profiles.active",
+            "dev",
+            InMemoryDynamoDbConfig.ENABLED_PROPERTY,
+            "true",
+            "rate-limit.enabled",
+            "false",
+            "server.port",
+            "0",
+            "debug",
+            "false")
+        .forEach(
+            (name, value) -> {
+              if (arguments.stream()
+                  .noneMatch(argument -> argument.startsWith("--" + name + "="))) {
+                arguments.add("--" + name + "=" + value);
+              }
+            });
+    return arguments.toArray(String[]::new);
+  }
+
+  private static void seedUsers(
+      ConfigurableApplicationContext context, Environment environment, int users) {
+    final var table =
+        context
+            .getBean(DynamoDbEnhancedClient.class)
+            .table(
+                environment.getProperty("aws.dynamodb.table.users", "users"),
+                UserEntitySchema.create());
+    final var passwordHash = context.getBean(PasswordHashPolicy.class).hash(PASSWORD);
+    final var now = Instant.now();
+    for (int i = 0; i < users; i++) {
+      final var user = new UserEntity();
+      user.setId("load-user-" + i);
+      user.setEmail(email(i));
+      user.setPasswordHash(passwordHash);
+      user.setNickname("load" + i);
+      user.setName("Load User " + i);
+      user.setRoles(List.of("USER"));
+      user.setCreatedAt(now);
+      user.setUpdatedAt(now);
+      table.putItem(user);
+    }
+  }
+
+  /**
+   * Starts requests at {@code rps} for {@code duration}, each on its own pooled thread so that a
+   * slow response never delays the next start, then waits for the stragglers. Returns the number of
+   * requests started.
+   */
+  private long run(double rps, Duration duration) throws InterruptedException {
+    final long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rps);
+    final long start = System.nanoTime();
+    final long end = start + duration.toNanos();
+    final var executor = Executors.newCachedThreadPool();
+    long sent = 0;
+    try {
+      for (long due = start; due < end; due = start + ++sent * interval) {
+        final long wait = due - System.nanoTime();
+        if (wait > 0) {
+          LockSupport.parkNanos(wait);
+        }
+        final long intended = due;
+        executor.execute(() -> runOne(intended));
+      }
+    } finally {
+      executor.shutdown();
+    }
+    executor.awaitTermination(1, TimeUnit.MINUTES);
+    return sent;
+  }
+
+  private void runOne(long intended) {
+    final var random = ThreadLocalRandom.current();
+    final var session = random.nextDouble() < refreshRatio ? sessions.poll() : null;
+    final var flow = session != null ? refresh : login;
+    try {
+      final var issued =
+          session != null ? refresh(session) : login(email(random.nextInt(users)), PASSWORD);
+      flow.latencies.recordValue(System.nanoTime() - intended);
+      sessions.offer(issued);
+    } catch (Exception e) {
+      flow.latencies.recordValue(System.nanoTime() - intended);
+      flow.errors.increment();
+      flow.firstError.compareAndSet(null, e);
+    }
+  }
+
+  private Map.Entry<String, String> login(String email, String password) throws IOException {
+    if (baseUri == null) {
+      return authService.login(email, password);
+    }
+    return post("login", Map.of("email", email, "password", password));
+  }
+
+  private Map.Entry<String, String> refresh(Map.Entry<String, String> session) throws IOException {
+    if (baseUri == null) {
+      return authService.refresh(
+          authService.verifyAccessToken(session.getKey()), session.getValue());
+    }
+    return post(
+        "refresh-token",
+        Map.of("accessToken", session.getKey(), "refreshToken", session.getValue()));
+  }
+
+  private Map.Entry<String, String> post(String path, Map<String, String> body) throws IOException {
+    final var request =
+        HttpRequest.newBuilder(baseUri.resolve(path))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(MAPPER.writeValueAsBytes(body)))
+            .build();
+    final HttpResponse<byte[]> response;
+    try {
+      response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+    if (response.statusCode() != 200) {
+      throw new IOException(path + " returned " + response.statusCode());
+    }
+    final JsonNode tokens = MAPPER.readTree(response.body());
+    return Map.entry(tokens.path("accessToken").asText(), tokens.path("refreshToken").asText());
+  }
+
+  private void report(long sent, Duration duration) {
+    System.out.printf(
+        Locale.ROOT, "Achieved %.1f rps (%d requests)%n", sent / (duration.toNanos() / 1e9), sent);
+    System.out.printf(
+        Locale.ROOT,
+        "%-8s %9s %7s %9s %9s %9s %9s %9s%n",
+        "flow",
+        "count",
+        "errors",
+        "p50 ms",
+        "p90 ms",
+        "p99 ms",
+        "p99.9 ms",
+        "max ms");
+    for (Flow flow : List.of(login, refresh)) {
+      final var latencies = flow.latencies;
+      System.out.printf(
+          Locale.ROOT,
+          "%-8s %9d %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+          flow.name,
+          latencies.getTotalCount(),
+          flow.errors.sum(),
+          millis(latencies.getValueAtPercentile(50)),
+          millis(latencies.getValueAtPercentile(90)),
+          millis(latencies.getValueAtPercentile(99)),
+          millis(latencies.getValueAtPercentile(99.9)),
+          millis(latencies.getMaxValue()));
+    }
+    for (Flow flow : List.of(login, refresh)) {
+      final var error = flow.firstError.get();
+      if (error != null) {
+        System.out.printf(Locale.ROOT, "First %s error: %s%n", flow.name, error);
+      }
+    }
+  }
+
+  private static String email(int user) {
+    return "load-user-" + user + "@example.com";
+  }
+
+  private static Duration duration(Environment environment, String name, Duration defaultValue) {
+    return environment.getProperty(name, Duration.class, defaultValue);
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1e6;
+  }
+}
@@ -0,0 +1,46 @@
+package hu.squarelabs.auth21.model.dto.response;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import hu.squarelabs.auth21.config.JacksonConfig;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Serialization of the login and refresh response with the application's {@link ObjectMapper}, both
+ * through the mapper as a message converter uses it and through a cached {@link ObjectWriter}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenResponseBenchmark {
+  private ObjectMapper objectMapper;
+  private ObjectWriter writer;
+  private TokenResponse response;
+
+  @Setup
+  public void setUp() {
+    objectMapper = new JacksonConfig().objectMapper();
+    writer = objectMapper.writerFor(TokenResponse.class);
+    response =
+        new TokenResponse(
+            "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9."
+                + "eyJqdGkiOiIwZjhmYWQ1Yi1kOWNiLTQ2OWYtYTE2NS03MDg2NzcyODk1MGUiLCJzdWIiOiJ1c2VyLTEyMyJ9."
+                + "SflKxwRJSMeKKF2QT4fwpMeJf36POk6yJV_adQssw5c",
+            "Dz-tW2vZTC-o2U3hBWf1t4ZWqjy8N6r1wPq9hQZJg2sHfEo0JkX8mYrWbVtL5cDq",
+            3600L);
+  }
+
+  @Benchmark
+  public byte[] objectMapper() throws Exception {
+    return objectMapper.writeValueAsBytes(response);
+  }
+
+  @Benchmark
+  public byte[] cachedWriter() throws Exception {
+    return writer.writeValueAsBytes(response);
+  }
+}
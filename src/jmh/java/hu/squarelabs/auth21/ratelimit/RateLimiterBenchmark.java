@@ -0,0 +1,55 @@
+package hu.squarelabs.auth21.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.StandardEnvironment;
+
+/**
+ * Measures {@link RateLimiter#check} with several threads, for a small set of hot keys that keeps
+ * hitting the same buckets and for random keys that evict on every call. The limit is high enough
+ * that no check is rejected, so the numbers show bucket updates rather than exception cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class RateLimiterBenchmark {
+  private static final String[] HOT_KEYS = new String[64];
+
+  private RateLimiter rateLimiter;
+
+  @Setup
+  public void setUp() {
+    for (int i = 0; i < HOT_KEYS.length; i++) {
+      HOT_KEYS[i] = "10.0." + (i / 256) + "." + (i % 256);
+    }
+    rateLimiter =
+        new RateLimiter(
+            new StandardEnvironment(),
+            new SimpleMeterRegistry(),
+            true,
+            65_536,
+            new RateLimit(Integer.MAX_VALUE, 1e12),
+            null,
+            System::nanoTime);
+  }
+
+  @Benchmark
+  public void hotKeys() {
+    rateLimiter.check(
+        "login",
+        RateLimiter.KEY_IP,
+        HOT_KEYS[ThreadLocalRandom.current().nextInt(HOT_KEYS.length)]);
+  }
+
+  @Benchmark
+  public void randomKeys() {
+    rateLimiter.check(
+        "login", RateLimiter.KEY_IP, Long.toHexString(ThreadLocalRandom.current().nextLong()));
+  }
+}
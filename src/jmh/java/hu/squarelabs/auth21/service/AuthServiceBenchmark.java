@@ -0,0 +1,76 @@
+package hu.squarelabs.auth21.service;
+
+import hu.squarelabs.auth21.jwt.JwtAlgorithm;
+import hu.squarelabs.auth21.jwt.JwtEncoder;
+import hu.squarelabs.auth21.jwt.RefreshTokenCodec;
+import hu.squarelabs.auth21.model.JwtToken;
+import hu.squarelabs.auth21.model.entity.UserEntity;
+import hu.squarelabs.auth21.util.SecureIdGenerator;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The CPU-only part of a login: building the access token, issuing its refresh token and signing
+ * it. Collaborators that would do I/O are left null since these paths never reach them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthServiceBenchmark {
+  private static final byte[] SECRET =
+      "benchmark-secret-benchmark-secret".getBytes(StandardCharsets.UTF_8);
+
+  private AuthService authService;
+  private UserEntity user;
+  private JwtToken token;
+
+  @Setup
+  public void setUp() {
+    authService =
+        new AuthService(
+            null,
+            null,
+            null,
+            new JwtEncoder(SECRET, JwtAlgorithm.HS256),
+            null,
+            null,
+            new RefreshTokenCodec(SECRET),
+            new SecureIdGenerator(false, 1 << 20),
+            null,
+            null);
+    user = new UserEntity();
+    user.setId("user-123");
+    user.setEmail("user@example.com");
+    user.setNickname("user");
+    user.setName("Test User");
+    user.setRoles(List.of("USER"));
+    token = authService.generateToken(user.getId(), 3600, user);
+  }
+
+  @Benchmark
+  public JwtToken generateToken() {
+    return authService.generateToken(user.getId(), 3600, user);
+  }
+
+  @Benchmark
+  public String generateRefreshToken() {
+    return authService.generateRefreshToken(token.getJti());
+  }
+
+  @Benchmark
+  public String encodeJwt() {
+    return authService.encodeJwt(token);
+  }
+
+  /** Everything a successful login does besides the user lookup, the hash and the write. */
+  @Benchmark
+  public String issueTokens() {
+    final var jwtToken = authService.generateToken(user.getId(), null, user);
+    return authService.encodeJwt(jwtToken) + authService.generateRefreshToken(jwtToken.getJti());
+  }
+}
@@ -0,0 +1,50 @@
+package hu.squarelabs.auth21.service;
+
+import hu.squarelabs.auth21.model.JwtToken;
+import hu.squarelabs.auth21.model.entity.TokenEntity;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Mapping between tokens and {@link TokenEntity}: {@link TokenService#toEntity} runs on every
+ * create and rotation, {@link TokenService#toItem} on every lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenServiceBenchmark {
+  private JwtToken token;
+  private TokenEntity entity;
+
+  @Setup
+  public void setUp() {
+    token =
+        new JwtToken(
+            "0f8fad5b-d9cb-469f-a165-70867728950e",
+            "user-123",
+            1_700_000_000L,
+            1_700_003_600L,
+            Map.of(
+                "id", "user-123",
+                "email", "user@example.com",
+                "nickname", "user",
+                "name", "Test User",
+                "roles", List.of("USER")));
+    entity = TokenService.toEntity(token, "refresh-token");
+  }
+
+  @Benchmark
+  public TokenEntity toEntity() {
+    return TokenService.toEntity(token, "refresh-token");
+  }
+
+  @Benchmark
+  public Map<String, Object> toItem() {
+    return TokenService.toItem(entity);
+  }
+}
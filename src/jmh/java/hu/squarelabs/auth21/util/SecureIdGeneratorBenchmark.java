@@ -0,0 +1,66 @@
+package hu.squarelabs.auth21.util;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares {@link SecureIdGenerator} against the code it replaced: {@link UUID#randomUUID()} for
+ * jti and correlation IDs, and a new {@link SecureRandom} per refresh token hex-encoded with {@link
+ * String#format}. Runs with several threads so contention on the JVM-wide generator shows up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class SecureIdGeneratorBenchmark {
+  private SecureIdGenerator randomIds;
+  private SecureIdGenerator timeOrderedIds;
+
+  @Setup
+  public void setUp() {
+    randomIds = new SecureIdGenerator(false, 1 << 20);
+    timeOrderedIds = new SecureIdGenerator(true, 1 << 20);
+  }
+
+  @Benchmark
+  public String baselineUuid() {
+    return UUID.randomUUID().toString();
+  }
+
+  @Benchmark
+  public String randomId() {
+    return randomIds.nextId();
+  }
+
+  @Benchmark
+  public String timeOrderedId() {
+    return timeOrderedIds.nextId();
+  }
+
+  @Benchmark
+  public String baselineRefreshTokenHex() {
+    final var bytes = new byte[8];
+    new SecureRandom().nextBytes(bytes);
+
+    final var sb = new StringBuilder();
+    for (byte b : bytes) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+
+  @Benchmark
+  public String randomHex() {
+    return randomIds.randomHex(8);
+  }
+
+  @Benchmark
+  public String randomBase64Url() {
+    return randomIds.randomBase64Url(16);
+  }
+}
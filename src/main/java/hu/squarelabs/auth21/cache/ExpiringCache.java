@@ -0,0 +1,98 @@
+package hu.squarelabs.auth21.cache;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded, concurrent key-value cache with per-entry time-to-live.
+ *
+ * <p>Expired entries are dropped lazily on read and swept when the cache grows past its maximum
+ * size. If a sweep does not free enough room, arbitrary entries are evicted until the cache is back
+ * within bounds. Eviction trims the cache to 90% of its capacity so that the cost of a sweep is
+ * amortized over the following inserts.
+ */
+public class ExpiringCache<K, V> {
+  private final ConcurrentHashMap<K, Entry<V>> entries;
+  private final int maxSize;
+  private final long defaultTtlNanos;
+  private final LongSupplier ticker;
+
+  public ExpiringCache(int maxSize, Duration defaultTtl) {
+    this(maxSize, defaultTtl, System::nanoTime);
+  }
+
+  ExpiringCache(int maxSize, Duration defaultTtl, LongSupplier ticker) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive");
+    }
+    this.entries = new ConcurrentHashMap<>(Math.min(maxSize, 1 << 16));
+    this.maxSize = maxSize;
+    this.defaultTtlNanos = defaultTtl.toNanos();
+    this.ticker = ticker;
+  }
+
+  public Optional<V> get(K key) {
+    final var entry = entries.get(key);
+    if (entry == null) {
+      return Optional.empty();
+    }
+    if (entry.isExpired(ticker.getAsLong())) {
+      entries.remove(key, entry);
+      return Optional.empty();
+    }
+    return Optional.of(entry.value());
+  }
+
+  public void put(K key, V value) {
+    put(key, value, defaultTtlNanos);
+  }
+
+  public void put(K key, V value, Duration ttl) {
+    put(key, value, ttl.toNanos());
+  }
+
+  private void put(K key, V value, long ttlNanos) {
+    if (ttlNanos <= 0) {
+      entries.remove(key);
+      return;
+    }
+    entries.put(key, new Entry<>(value, ticker.getAsLong() + ttlNanos));
+    if (entries.size() > maxSize) {
+      evict();
+    }
+  }
+
+  public void invalidate(K key) {
+    entries.remove(key);
+  }
+
+  public void invalidateAll() {
+    entries.clear();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  private void evict() {
+    final long now = ticker.getAsLong();
+    entries.entrySet().removeIf(e -> e.getValue().isExpired(now));
+
+    final int target = maxSize - maxSize / 10;
+    final Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+    while (entries.size() > target && iterator.hasNext()) {
+      iterator.next();
+      iterator.remove();
+    }
+  }
+
+  private record Entry<V>(V value, long expiresAtNanos) {
+    boolean isExpired(long now) {
+      return now - expiresAtNanos >= 0;
+    }
+  }
+}
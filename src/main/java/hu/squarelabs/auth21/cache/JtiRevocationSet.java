@@ -0,0 +1,404 @@
+package hu.squarelabs.auth21.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-process denylist of revoked token ids.
+ *
+ * <p>Each jti is stored as two longs together with its {@code exp} in an off-heap, linearly probed
+ * hash table, so millions of entries add no objects for the garbage collector to trace. The table
+ * is split into segments guarded by a {@link StampedLock}: lookups use optimistic reads and never
+ * block, while inserts take the segment's write lock. Every insert also examines a couple of slots
+ * behind a per-segment cursor and removes entries whose {@code exp} has passed, so expired ids are
+ * reclaimed incrementally instead of in stop-the-world sweeps.
+ *
+ * <p>A segment never grows past its share of {@code revocation.max-entries}. When it is full of
+ * live entries, it evicts the ones that expire first, a sixteenth of its capacity at a time, rather
+ * than failing the revocation: the token has already been deleted from the store by then. An
+ * evicted token verifies again on this node until it expires, so evictions are logged and counted
+ * in {@link #evictions()}, and a non-zero count means the limit is too low.
+ */
+@Component
+public class JtiRevocationSet {
+  private static final Logger logger = LogManager.getLogger(JtiRevocationSet.class);
+
+  private static final int SLOT_BYTES = 24;
+  private static final int SWEEP_STEPS = 2;
+  private static final int MIN_SEGMENT_CAPACITY = 64;
+  private static final int MAX_SEGMENT_CAPACITY = 1 << 26;
+
+  private final Segment[] segments;
+  private final int segmentShift;
+  private final int maxSegmentCapacity;
+  private final LongSupplier epochSeconds;
+  private final LongAdder evictions = new LongAdder();
+
+  @Autowired
+  public JtiRevocationSet(
+      @Value("${revocation.segments:64}") int segments,
+      @Value("${revocation.initial-capacity:65536}") int initialCapacity,
+      @Value("${revocation.max-entries:16777216}") int maxEntries) {
+    this(segments, initialCapacity, maxEntries, () -> System.currentTimeMillis() / 1000);
+  }
+
+  JtiRevocationSet(int segments, int initialCapacity, int maxEntries, LongSupplier epochSeconds) {
+    if (Integer.bitCount(segments) != 1) {
+      throw new IllegalArgumentException("segments must be a power of two");
+    }
+    this.segments = new Segment[segments];
+    this.segmentShift = 64 - Integer.numberOfTrailingZeros(segments);
+    this.maxSegmentCapacity = slotsFor(Math.max(1, maxEntries / segments));
+    this.epochSeconds = epochSeconds;
+
+    final int segmentCapacity =
+        Math.min(maxSegmentCapacity, slotsFor(Math.max(1, initialCapacity / segments)));
+    for (int i = 0; i < segments; i++) {
+      this.segments[i] = new Segment(segmentCapacity);
+    }
+  }
+
+  /** Marks {@code jti} as revoked until {@code exp} (epoch seconds). */
+  public void revoke(String jti, long exp) {
+    final long now = epochSeconds.getAsLong();
+    if (exp <= now) {
+      return;
+    }
+    final long msb = mostSignificantBits(jti);
+    final long lsb = leastSignificantBits(jti);
+    final long hash = hash(msb, lsb);
+    segmentFor(hash).insert(msb, lsb, hash, exp, now);
+  }
+
+  public boolean isRevoked(String jti) {
+    final long msb = mostSignificantBits(jti);
+    final long lsb = leastSignificantBits(jti);
+    final long hash = hash(msb, lsb);
+    return segmentFor(hash).contains(msb, lsb, hash, epochSeconds.getAsLong());
+  }
+
+  public int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  /** Live entries dropped so far because their segment was full. */
+  public long evictions() {
+    return evictions.sum();
+  }
+
+  private Segment segmentFor(long hash) {
+    return segments.length == 1 ? segments[0] : segments[(int) (hash >>> segmentShift)];
+  }
+
+  private static int slotsFor(int entries) {
+    final long slots = Math.max(MIN_SEGMENT_CAPACITY, (long) entries * 4 / 3 + 1);
+    return (int) Math.min(Long.highestOneBit(slots - 1) << 1, MAX_SEGMENT_CAPACITY);
+  }
+
+  private static long hash(long msb, long lsb) {
+    long h = msb * 0x9e3779b97f4a7c15L ^ lsb;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * Token ids are UUIDs, which are stored as their two 64-bit halves. Anything else is reduced to
+   * two independent 64-bit hashes; a collision can only make a token look revoked, never valid.
+   */
+  static long mostSignificantBits(String jti) {
+    return isUuid(jti) ? parseHex(jti, 0, 18) : stringHash(jti, 0x243f6a8885a308d3L);
+  }
+
+  static long leastSignificantBits(String jti) {
+    return isUuid(jti) ? parseHex(jti, 19, 36) : stringHash(jti, 0x13198a2e03707344L);
+  }
+
+  private static boolean isUuid(String s) {
+    if (s.length() != 36
+        || s.charAt(8) != '-'
+        || s.charAt(13) != '-'
+        || s.charAt(18) != '-'
+        || s.charAt(23) != '-') {
+      return false;
+    }
+    for (int i = 0; i < 36; i++) {
+      if (i != 8 && i != 13 && i != 18 && i != 23 && Character.digit(s.charAt(i), 16) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long parseHex(String s, int start, int end) {
+    long value = 0;
+    for (int i = start; i < end; i++) {
+      final char c = s.charAt(i);
+      if (c != '-') {
+        value = value << 4 | Character.digit(c, 16);
+      }
+    }
+    return value;
+  }
+
+  private static long stringHash(String s, long seed) {
+    long h = seed;
+    for (int i = 0; i < s.length(); i++) {
+      h = (h ^ s.charAt(i)) * 0x100000001b3L;
+    }
+    return hash(h, seed);
+  }
+
+  private final class Segment {
+    private final StampedLock lock = new StampedLock();
+    private volatile Table table;
+    private int size;
+    private int sweepCursor;
+
+    private Segment(int capacity) {
+      this.table = new Table(capacity);
+    }
+
+    private int size() {
+      final long stamp = lock.readLock();
+      try {
+        return size;
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    private boolean contains(long msb, long lsb, long hash, long now) {
+      long stamp = lock.tryOptimisticRead();
+      if (stamp != 0) {
+        final boolean found = table.contains(msb, lsb, hash, now);
+        if (lock.validate(stamp)) {
+          return found;
+        }
+      }
+      stamp = lock.readLock();
+      try {
+        return table.contains(msb, lsb, hash, now);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    private void insert(long msb, long lsb, long hash, long exp, long now) {
+      final long stamp = lock.writeLock();
+      try {
+        sweep(now);
+
+        var current = table;
+        final int existing = current.indexOf(msb, lsb, hash);
+        if (existing >= 0) {
+          current.setExp(existing, Math.max(exp, current.exp(existing)));
+          return;
+        }
+
+        if (size + 1 > current.capacity() / 4 * 3) {
+          current = rehash(now);
+        }
+        current.put(msb, lsb, hash, exp);
+        size++;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    private void sweep(long now) {
+      final var current = table;
+      for (int i = 0; i < SWEEP_STEPS && size > 0; i++) {
+        final int slot = sweepCursor;
+        final long exp = current.exp(slot);
+        if (exp != 0 && exp <= now) {
+          current.remove(slot);
+          size--;
+        } else {
+          sweepCursor = (slot + 1) & current.mask();
+        }
+      }
+    }
+
+    /**
+     * Drops every expired entry and doubles the table if it is still too full. A table that cannot
+     * grow any more instead loses the live entries that expire first.
+     */
+    private Table rehash(long now) {
+      final var current = table;
+      int live = 0;
+      for (int slot = 0; slot < current.capacity(); slot++) {
+        final long exp = current.exp(slot);
+        if (exp > now) {
+          live++;
+        }
+      }
+
+      int capacity = current.capacity();
+      long cutoff = now;
+      int evictAtCutoff = 0;
+      if (live + 1 > capacity / 4 * 3) {
+        if (capacity < maxSegmentCapacity) {
+          capacity <<= 1;
+        } else {
+          final int evict = live - (capacity / 4 * 3 - Math.max(1, capacity / 16));
+          final long[] exps = liveExps(current, now, live);
+          Arrays.sort(exps);
+          cutoff = exps[evict - 1];
+          int below = evict - 1;
+          while (below > 0 && exps[below - 1] == cutoff) {
+            below--;
+          }
+          evictAtCutoff = evict - below;
+          live -= evict;
+          evictions.add(evict);
+          logger.warn(
+              "Revocation set segment is full; evicted {} entries expiring by {}", evict, cutoff);
+        }
+      }
+
+      final var rehashed = new Table(capacity);
+      for (int slot = 0; slot < current.capacity(); slot++) {
+        final long exp = current.exp(slot);
+        if (exp < cutoff || exp == 0) {
+          continue;
+        }
+        if (exp == cutoff && (cutoff == now || evictAtCutoff-- > 0)) {
+          continue;
+        }
+        final long msb = current.msb(slot);
+        final long lsb = current.lsb(slot);
+        rehashed.put(msb, lsb, hash(msb, lsb), exp);
+      }
+
+      table = rehashed;
+      size = live;
+      sweepCursor = 0;
+      return rehashed;
+    }
+
+    private long[] liveExps(Table current, long now, int live) {
+      final long[] exps = new long[live];
+      int i = 0;
+      for (int slot = 0; slot < current.capacity(); slot++) {
+        final long exp = current.exp(slot);
+        if (exp > now) {
+          exps[i++] = exp;
+        }
+      }
+      return exps;
+    }
+  }
+
+  /** Open-addressing table of {@code (msb, lsb, exp)} slots; {@code exp == 0} marks a free slot. */
+  private static final class Table {
+    private final ByteBuffer slots;
+    private final int mask;
+
+    private Table(int capacity) {
+      this.slots = ByteBuffer.allocateDirect(capacity * SLOT_BYTES).order(ByteOrder.nativeOrder());
+      this.mask = capacity - 1;
+    }
+
+    private int capacity() {
+      return mask + 1;
+    }
+
+    private int mask() {
+      return mask;
+    }
+
+    private long msb(int slot) {
+      return slots.getLong(slot * SLOT_BYTES);
+    }
+
+    private long lsb(int slot) {
+      return slots.getLong(slot * SLOT_BYTES + 8);
+    }
+
+    private long exp(int slot) {
+      return slots.getLong(slot * SLOT_BYTES + 16);
+    }
+
+    private void setExp(int slot, long exp) {
+      slots.putLong(slot * SLOT_BYTES + 16, exp);
+    }
+
+    private boolean contains(long msb, long lsb, long hash, long now) {
+      int slot = (int) hash & mask;
+      for (int probes = 0; probes <= mask; probes++) {
+        final long exp = exp(slot);
+        if (exp == 0) {
+          return false;
+        }
+        if (msb(slot) == msb && lsb(slot) == lsb) {
+          return exp > now;
+        }
+        slot = (slot + 1) & mask;
+      }
+      return false;
+    }
+
+    private int indexOf(long msb, long lsb, long hash) {
+      int slot = (int) hash & mask;
+      for (int probes = 0; probes <= mask; probes++) {
+        if (exp(slot) == 0) {
+          return -1;
+        }
+        if (msb(slot) == msb && lsb(slot) == lsb) {
+          return slot;
+        }
+        slot = (slot + 1) & mask;
+      }
+      return -1;
+    }
+
+    private void put(long msb, long lsb, long hash, long exp) {
+      int slot = (int) hash & mask;
+      while (exp(slot) != 0) {
+        slot = (slot + 1) & mask;
+      }
+      write(slot, msb, lsb, exp);
+    }
+
+    private void write(int slot, long msb, long lsb, long exp) {
+      final int offset = slot * SLOT_BYTES;
+      slots.putLong(offset, msb);
+      slots.putLong(offset + 8, lsb);
+      slots.putLong(offset + 16, exp);
+    }
+
+    /** Frees {@code slot} and shifts later members of its probe chain back to close the gap. */
+    private void remove(int slot) {
+      int hole = slot;
+      int next = (hole + 1) & mask;
+      while (exp(next) != 0) {
+        final int home = (int) hash(msb(next), lsb(next)) & mask;
+        final boolean movable =
+            hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+        if (movable) {
+          write(hole, msb(next), lsb(next), exp(next));
+          hole = next;
+        }
+        next = (next + 1) & mask;
+      }
+      write(hole, 0, 0, 0);
+    }
+  }
+}
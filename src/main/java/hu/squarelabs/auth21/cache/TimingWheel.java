@@ -0,0 +1,118 @@
+package hu.squarelabs.auth21.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel that reports keys once their deadline has passed.
+ *
+ * <p>Four levels of 64 slots each cover 64 ticks, 64² ticks and so on; with one-second ticks the
+ * top level spans about 194 days, and later deadlines park there and are re-filed each rotation.
+ * Scheduling is O(1): a key goes into the slot of the lowest level whose span still reaches its
+ * deadline. As time advances, a slot of a higher level is cascaded into the levels below when the
+ * level beneath it completes a rotation, so each key moves at most once per level before it fires.
+ *
+ * <p>Keys cannot be cancelled. Owners re-check a key when it is reported and ignore it if it was
+ * removed or rescheduled in the meantime, which keeps scheduling free of any per-key bookkeeping.
+ *
+ * <p>{@link #schedule} may be called from any thread; slots are lock-free queues and callers only
+ * share a read lock. {@link #advance} must be called from a single thread and holds the write lock
+ * while it moves the wheel forward.
+ */
+public class TimingWheel<K> {
+  private static final int SLOT_BITS = 6;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int SLOT_MASK = SLOTS - 1;
+  private static final int LEVELS = 4;
+
+  private record Timer<K>(K key, long deadline) {}
+
+  private final long tickMillis;
+  private final Queue<Timer<K>>[][] slots;
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /** Last tick whose keys have been reported. */
+  private volatile long currentTick;
+
+  @SuppressWarnings("unchecked")
+  public TimingWheel(Duration tick, long startMillis) {
+    this.tickMillis = tick.toMillis();
+    if (tickMillis <= 0) {
+      throw new IllegalArgumentException("Tick must be at least a millisecond, got " + tick);
+    }
+    this.currentTick = startMillis / tickMillis;
+    this.slots = new Queue[LEVELS][SLOTS];
+    for (Queue<Timer<K>>[] level : slots) {
+      for (int slot = 0; slot < SLOTS; slot++) {
+        level[slot] = new ConcurrentLinkedQueue<>();
+      }
+    }
+  }
+
+  /**
+   * Reports {@code key} from the first {@link #advance} that reaches {@code deadlineMillis}, or
+   * from the next one if the deadline has already passed.
+   */
+  public void schedule(K key, long deadlineMillis) {
+    // Round up, so that a key is never reported before its deadline.
+    final long deadline = Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis);
+    lock.readLock().lock();
+    try {
+      place(new Timer<>(key, Math.max(deadline, currentTick + 1)));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Moves the wheel to {@code nowMillis} and passes every key that became due to {@code due}. */
+  public void advance(long nowMillis, Consumer<? super K> due) {
+    final long target = Math.floorDiv(nowMillis, tickMillis);
+    final List<K> expired = new ArrayList<>();
+    lock.writeLock().lock();
+    try {
+      while (currentTick < target) {
+        final long tick = currentTick + 1;
+        currentTick = tick;
+        for (int level = 1; level < LEVELS && slotOf(tick, level - 1) == 0; level++) {
+          cascade(level, slotOf(tick, level));
+        }
+        for (Timer<K> timer : take(0, slotOf(tick, 0))) {
+          expired.add(timer.key());
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+    expired.forEach(due);
+  }
+
+  private void cascade(int level, int slot) {
+    for (Timer<K> timer : take(level, slot)) {
+      place(timer);
+    }
+  }
+
+  private Queue<Timer<K>> take(int level, int slot) {
+    final var taken = slots[level][slot];
+    slots[level][slot] = new ConcurrentLinkedQueue<>();
+    return taken;
+  }
+
+  private void place(Timer<K> timer) {
+    final long ticks = timer.deadline() - currentTick;
+    int level = 0;
+    while (level < LEVELS - 1 && ticks >= 1L << (SLOT_BITS * (level + 1))) {
+      level++;
+    }
+    slots[level][slotOf(timer.deadline(), level)].add(timer);
+  }
+
+  private static int slotOf(long tick, int level) {
+    return (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+  }
+}
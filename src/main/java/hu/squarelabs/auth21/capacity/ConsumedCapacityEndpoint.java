@@ -0,0 +1,27 @@
+package hu.squarelabs.auth21.capacity;
+
+import java.util.Map;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint {@code /actuator/dynamodbcapacity} listing the DynamoDB capacity each HTTP
+ * endpoint consumed since startup, broken down by table, index and operation, together with the
+ * average per request served. Calls made outside a web request are listed under {@value
+ * ConsumedCapacityTracker#UNATTRIBUTED}.
+ */
+@Component
+@Endpoint(id = "dynamodbcapacity")
+public class ConsumedCapacityEndpoint {
+  private final ConsumedCapacityTracker tracker;
+
+  public ConsumedCapacityEndpoint(ConsumedCapacityTracker tracker) {
+    this.tracker = tracker;
+  }
+
+  @ReadOperation
+  public Map<String, ConsumedCapacityTracker.EndpointUsage> capacity() {
+    return tracker.report();
+  }
+}
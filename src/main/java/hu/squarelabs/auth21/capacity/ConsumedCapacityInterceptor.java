@@ -0,0 +1,45 @@
+package hu.squarelabs.auth21.capacity;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Tells the {@link ConsumedCapacityTracker} which route the current thread is serving. The route is
+ * the matched mapping pattern rather than the raw URI, so path variables cannot inflate the number
+ * of endpoints. An asynchronous request is counted once, on its initial dispatch.
+ */
+@Component
+public class ConsumedCapacityInterceptor implements AsyncHandlerInterceptor {
+  private final ConsumedCapacityTracker tracker;
+
+  public ConsumedCapacityInterceptor(ConsumedCapacityTracker tracker) {
+    this.tracker = tracker;
+  }
+
+  @Override
+  public boolean preHandle(
+      HttpServletRequest request, HttpServletResponse response, Object handler) {
+    if (request.getDispatcherType() != DispatcherType.ASYNC
+        && request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE)
+            instanceof String pattern) {
+      tracker.enter(pattern);
+    }
+    return true;
+  }
+
+  @Override
+  public void afterConcurrentHandlingStarted(
+      HttpServletRequest request, HttpServletResponse response, Object handler) {
+    tracker.exit();
+  }
+
+  @Override
+  public void afterCompletion(
+      HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+    tracker.exit();
+  }
+}
@@ -0,0 +1,300 @@
+package hu.squarelabs.auth21.capacity;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.Capacity;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactGetItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+/**
+ * Accounts DynamoDB read and write capacity units per table, index, operation and HTTP endpoint.
+ *
+ * <p>Registered as an {@link ExecutionInterceptor} on the DynamoDB clients, it asks every data
+ * plane request that does not choose for itself to return {@link ReturnConsumedCapacity#INDEXES}
+ * capacity, and adds what each response reports to the base table and to every secondary index the
+ * call touched. A write to the users table therefore shows up under the table and again under
+ * {@code EmailIndex}, which is the part of the bill that is easy to overlook.
+ *
+ * <p>The endpoint is the route pattern the web layer registered on the calling thread through
+ * {@link #enter(String)}; the same method counts requests so that the report can divide capacity by
+ * requests served. Calls made on other threads, such as write-behind flushes or continuations of
+ * asynchronous requests, are accounted under {@value #UNATTRIBUTED}. Failed calls are not counted:
+ * DynamoDB does not return consumed capacity with an error, even though a failed conditional write
+ * is still billed.
+ *
+ * <p>Totals are exported as {@code aws.dynamodb.capacity.read} and {@code
+ * aws.dynamodb.capacity.write} counters and summarised per endpoint by {@link #report()}.
+ */
+@Component
+public class ConsumedCapacityTracker implements ExecutionInterceptor {
+  public static final String UNATTRIBUTED = "none";
+
+  private static final ExecutionAttribute<String> ENDPOINT =
+      new ExecutionAttribute<>("ConsumedCapacityTracker.Endpoint");
+
+  private final MeterRegistry meterRegistry;
+  private final ThreadLocal<String> currentEndpoint = new ThreadLocal<>();
+  private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+  private final Map<UsageKey, Usage> usage = new ConcurrentHashMap<>();
+
+  public ConsumedCapacityTracker(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  /** Attributes DynamoDB calls made on this thread to {@code endpoint} until {@link #exit()}. */
+  public void enter(String endpoint) {
+    currentEndpoint.set(endpoint);
+    requests.computeIfAbsent(endpoint, e -> new LongAdder()).increment();
+  }
+
+  public void exit() {
+    currentEndpoint.remove();
+  }
+
+  @Override
+  public void beforeExecution(
+      Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+    final var endpoint = currentEndpoint.get();
+    executionAttributes.putAttribute(ENDPOINT, endpoint != null ? endpoint : UNATTRIBUTED);
+  }
+
+  @Override
+  public SdkRequest modifyRequest(
+      Context.ModifyRequest context, ExecutionAttributes executionAttributes) {
+    return withIndexesCapacity(context.request());
+  }
+
+  @Override
+  public void afterExecution(
+      Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+    final var consumed = context.response().getValueForField("ConsumedCapacity", Object.class);
+    if (consumed.isEmpty()) {
+      return;
+    }
+
+    final var endpoint = executionAttributes.getAttribute(ENDPOINT);
+    final var operation = executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+    final boolean write = isWrite(context.request());
+    if (consumed.get() instanceof ConsumedCapacity capacity) {
+      record(endpoint, operation, write, capacity);
+    } else if (consumed.get() instanceof List<?> capacities) {
+      for (Object capacity : capacities) {
+        record(endpoint, operation, write, (ConsumedCapacity) capacity);
+      }
+    }
+  }
+
+  /**
+   * Capacity consumed per endpoint since startup, with the endpoints' request counts. Endpoints are
+   * sorted by name and their rows by table, index and operation.
+   */
+  public Map<String, EndpointUsage> report() {
+    final Map<String, List<TableUsage>> rows = new TreeMap<>();
+    usage.forEach(
+        (key, value) ->
+            rows.computeIfAbsent(key.endpoint(), e -> new ArrayList<>())
+                .add(
+                    new TableUsage(
+                        key.table(),
+                        key.index(),
+                        key.operation(),
+                        value.read.sum(),
+                        value.write.sum())));
+    requests.keySet().forEach(endpoint -> rows.computeIfAbsent(endpoint, e -> new ArrayList<>()));
+
+    final Map<String, EndpointUsage> report = new TreeMap<>();
+    rows.forEach(
+        (endpoint, tables) -> {
+          tables.sort(
+              Comparator.comparing(TableUsage::table)
+                  .thenComparing(TableUsage::index)
+                  .thenComparing(TableUsage::operation));
+          final var served = requests.get(endpoint);
+          report.put(endpoint, EndpointUsage.of(served != null ? served.sum() : 0, tables));
+        });
+    return report;
+  }
+
+  static SdkRequest withIndexesCapacity(SdkRequest request) {
+    if (request.getValueForField("ReturnConsumedCapacity", String.class).isPresent()) {
+      return request;
+    }
+
+    final var indexes = ReturnConsumedCapacity.INDEXES;
+    if (request instanceof GetItemRequest r) {
+      return r.toBuilder().returnConsumedCapacity(indexes).build();
+    } else if (request instanceof PutItemRequest r) {
+      return r.toBuilder().returnConsumedCapacity(indexes).build();
+    } else if (request instanceof UpdateItemRequest r) {
+      return r.toBuilder().returnConsumedCapacity(indexes).build();
+    } else if (request instanceof DeleteItemRequest r) {
+      return r.toBuilder().returnConsumedCapacity(indexes).build();
+    } else if (request instanceof QueryRequest r) {
+      return r.toBuilder().returnConsumedCapacity(indexes).build();
+    } else if (request instanceof ScanRequest r) {
+      return r.toBuilder().returnConsumedCapacity(indexes).build();
+    } else if (request instanceof BatchGetItemRequest r) {
+      return r.toBuilder().returnConsumedCapacity(indexes).build();
+    } else if (request instanceof BatchWriteItemRequest r) {
+      return r.toBuilder().returnConsumedCapacity(indexes).build();
+    } else if (request instanceof TransactGetItemsRequest r) {
+      return r.toBuilder().returnConsumedCapacity(indexes).build();
+    } else if (request instanceof TransactWriteItemsRequest r) {
+      return r.toBuilder().returnConsumedCapacity(indexes).build();
+    }
+    return request;
+  }
+
+  private void record(
+      String endpoint, String operation, boolean write, ConsumedCapacity consumedCapacity) {
+    final var table = consumedCapacity.tableName();
+    if (consumedCapacity.table() != null) {
+      record(
+          new UsageKey(endpoint, table, UNATTRIBUTED, operation), write, consumedCapacity.table());
+    } else {
+      record(
+          new UsageKey(endpoint, table, UNATTRIBUTED, operation),
+          write,
+          Capacity.builder()
+              .capacityUnits(consumedCapacity.capacityUnits())
+              .readCapacityUnits(consumedCapacity.readCapacityUnits())
+              .writeCapacityUnits(consumedCapacity.writeCapacityUnits())
+              .build());
+    }
+    consumedCapacity
+        .globalSecondaryIndexes()
+        .forEach(
+            (index, capacity) ->
+                record(new UsageKey(endpoint, table, index, operation), write, capacity));
+    consumedCapacity
+        .localSecondaryIndexes()
+        .forEach(
+            (index, capacity) ->
+                record(new UsageKey(endpoint, table, index, operation), write, capacity));
+  }
+
+  /**
+   * Reads the split into read and write units where DynamoDB reports one, and otherwise books the
+   * total against the kind of operation that consumed it.
+   */
+  private void record(UsageKey key, boolean write, Capacity capacity) {
+    double read = valueOf(capacity.readCapacityUnits());
+    double written = valueOf(capacity.writeCapacityUnits());
+    if (capacity.readCapacityUnits() == null && capacity.writeCapacityUnits() == null) {
+      if (write) {
+        written = valueOf(capacity.capacityUnits());
+      } else {
+        read = valueOf(capacity.capacityUnits());
+      }
+    }
+    if (read == 0 && written == 0) {
+      return;
+    }
+
+    final var entry = usage.computeIfAbsent(key, this::register);
+    if (read > 0) {
+      entry.read.add(read);
+      entry.readCounter.increment(read);
+    }
+    if (written > 0) {
+      entry.write.add(written);
+      entry.writeCounter.increment(written);
+    }
+  }
+
+  private Usage register(UsageKey key) {
+    return new Usage(
+        counter("aws.dynamodb.capacity.read", key), counter("aws.dynamodb.capacity.write", key));
+  }
+
+  private Counter counter(String name, UsageKey key) {
+    return Counter.builder(name)
+        .baseUnit("capacity_units")
+        .tag("table", key.table())
+        .tag("index", key.index())
+        .tag("operation", key.operation())
+        .tag("endpoint", key.endpoint())
+        .register(meterRegistry);
+  }
+
+  private static boolean isWrite(SdkRequest request) {
+    return request instanceof PutItemRequest
+        || request instanceof UpdateItemRequest
+        || request instanceof DeleteItemRequest
+        || request instanceof BatchWriteItemRequest
+        || request instanceof TransactWriteItemsRequest;
+  }
+
+  private static double valueOf(Double units) {
+    return units != null ? units : 0;
+  }
+
+  /** Capacity one endpoint consumed on one table or index through one operation. */
+  public record TableUsage(
+      String table,
+      String index,
+      String operation,
+      double readCapacityUnits,
+      double writeCapacityUnits) {}
+
+  /** Capacity one endpoint consumed in total and on average per request served. */
+  public record EndpointUsage(
+      long requests,
+      double readCapacityUnits,
+      double writeCapacityUnits,
+      double readCapacityUnitsPerRequest,
+      double writeCapacityUnitsPerRequest,
+      List<TableUsage> tables) {
+
+    static EndpointUsage of(long requests, List<TableUsage> tables) {
+      final double read = tables.stream().mapToDouble(TableUsage::readCapacityUnits).sum();
+      final double write = tables.stream().mapToDouble(TableUsage::writeCapacityUnits).sum();
+      return new EndpointUsage(
+          requests,
+          read,
+          write,
+          requests > 0 ? read / requests : 0,
+          requests > 0 ? write / requests : 0,
+          List.copyOf(tables));
+    }
+  }
+
+  private record UsageKey(String endpoint, String table, String index, String operation) {}
+
+  private static final class Usage {
+    final DoubleAdder read = new DoubleAdder();
+    final DoubleAdder write = new DoubleAdder();
+    final Counter readCounter;
+    final Counter writeCounter;
+
+    Usage(Counter readCounter, Counter writeCounter) {
+      this.readCounter = readCounter;
+      this.writeCounter = writeCounter;
+    }
+  }
+}
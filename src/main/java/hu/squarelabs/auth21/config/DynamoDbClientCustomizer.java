@@ -0,0 +1,16 @@
+package hu.squarelabs.auth21.config;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClientBuilder;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClientBuilder;
+
+/**
+ * Adjusts the DynamoDB clients built by {@link DynamoDbConfig}. Customizers run after the
+ * configured defaults have been applied, so they may replace the transport or credentials while
+ * keeping the metrics and concurrency limiter installed by the configuration.
+ */
+public interface DynamoDbClientCustomizer {
+
+  default void customize(DynamoDbClientBuilder builder) {}
+
+  default void customize(DynamoDbAsyncClientBuilder builder) {}
+}
@@ -0,0 +1,100 @@
+package hu.squarelabs.auth21.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+
+/**
+ * Caps the number of DynamoDB calls in flight on the synchronous client.
+ *
+ * <p>With virtual threads there is no thread pool to bound concurrency, so thousands of requests
+ * can reach the SDK at once. Callers beyond the limit wait on a fair {@link Semaphore}, which parks
+ * virtual threads without pinning their carrier, instead of queueing inside the HTTP connection
+ * pool. A caller that cannot get a permit within the acquire timeout fails fast with an {@link
+ * SdkClientException}.
+ *
+ * <p>The wait happens before the SDK starts timing the call, so it is recorded here as {@code
+ * aws.dynamodb.limiter.acquire}, tagged by table, index and operation like the {@link
+ * DynamoDbMetrics} meters, with an outcome of {@code acquired}, {@code rejected} or {@code
+ * interrupted}.
+ */
+public class DynamoDbConcurrencyLimiter implements ExecutionInterceptor {
+  private static final ExecutionAttribute<Boolean> PERMIT_HELD =
+      new ExecutionAttribute<>("DynamoDbConcurrencyLimiter.PermitHeld");
+
+  private final Semaphore permits;
+  private final long acquireTimeoutNanos;
+  private final MeterRegistry meterRegistry;
+
+  public DynamoDbConcurrencyLimiter(
+      int maxConcurrentCalls, Duration acquireTimeout, MeterRegistry meterRegistry) {
+    this.permits = new Semaphore(maxConcurrentCalls, true);
+    this.acquireTimeoutNanos = acquireTimeout.toNanos();
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public void beforeExecution(
+      Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+    final long start = System.nanoTime();
+    final boolean acquired;
+    try {
+      acquired = permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      recordWait(context, executionAttributes, start, "interrupted");
+      throw SdkClientException.create("Interrupted while waiting for a DynamoDB call permit", e);
+    }
+    recordWait(context, executionAttributes, start, acquired ? "acquired" : "rejected");
+    if (!acquired) {
+      throw SdkClientException.create("Too many concurrent DynamoDB calls");
+    }
+    executionAttributes.putAttribute(PERMIT_HELD, Boolean.TRUE);
+  }
+
+  @Override
+  public void afterExecution(
+      Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+    releasePermit(executionAttributes);
+  }
+
+  @Override
+  public void onExecutionFailure(
+      Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+    releasePermit(executionAttributes);
+  }
+
+  public int availablePermits() {
+    return permits.availablePermits();
+  }
+
+  private void recordWait(
+      Context.BeforeExecution context,
+      ExecutionAttributes executionAttributes,
+      long start,
+      String outcome) {
+    final var operation = executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+    Timer.builder("aws.dynamodb.limiter.acquire")
+        .tag("table", DynamoDbMetrics.tableOf(context.request()))
+        .tag("index", DynamoDbMetrics.indexOf(context.request()))
+        .tag("operation", operation != null ? operation : "unknown")
+        .tag("outcome", outcome)
+        .register(meterRegistry)
+        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  private void releasePermit(ExecutionAttributes executionAttributes) {
+    if (Boolean.TRUE.equals(executionAttributes.getAttribute(PERMIT_HELD))) {
+      executionAttributes.putAttribute(PERMIT_HELD, Boolean.FALSE);
+      permits.release();
+    }
+  }
+}
@@ -1,29 +1,128 @@
 package hu.squarelabs.auth21.config;
 
+import hu.squarelabs.auth21.capacity.ConsumedCapacityTracker;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.auth.credentials.ProfileCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 
 @Configuration
 public class DynamoDbConfig {
+  public static final String ASYNC_ENABLED_PROPERTY = "aws.dynamodb.async.enabled";
 
   @Value("${aws.region}")
   private String awsRegion;
 
+  @Value("${aws.dynamodb.max-connections:50}")
+  private int maxConnections;
+
+  @Value("${aws.dynamodb.max-concurrent-calls:50}")
+  private int maxConcurrentCalls;
+
+  @Value("${spring.threads.virtual.enabled:false}")
+  private boolean virtualThreadsEnabled;
+
+  @Value("${aws.dynamodb.acquire-timeout-ms:1000}")
+  private long acquireTimeoutMs;
+
+  @Value("${aws.dynamodb.metrics.enabled:true}")
+  private boolean metricsEnabled;
+
+  @Value("${aws.dynamodb.consumed-capacity.enabled:true}")
+  private boolean consumedCapacityEnabled;
+
+  /**
+   * The synchronous client is sized so that the concurrency limiter hands out no more permits than
+   * there are pooled connections. Blocked callers then wait on the limiter rather than inside the
+   * connection pool. The limiter is only installed when requests run on virtual threads; with
+   * platform threads the server's thread pool already bounds concurrency.
+   *
+   * <p>The limiter waits for a permit before the SDK starts timing the call, so {@code
+   * aws.dynamodb.requests} excludes the wait; the limiter records it as {@code
+   * aws.dynamodb.limiter.acquire}, rejections included.
+   *
+   * <p>Any {@link DynamoDbClientCustomizer} beans are applied last, in order.
+   */
   @Bean
-  public DynamoDbClient client() {
-    return DynamoDbClient.builder()
-        .region(Region.of(awsRegion))
-        .credentialsProvider(ProfileCredentialsProvider.create())
-        .build();
+  public DynamoDbClient client(
+      MeterRegistry meterRegistry,
+      ConsumedCapacityTracker consumedCapacityTracker,
+      ObjectProvider<DynamoDbClientCustomizer> customizers) {
+    final var builder =
+        DynamoDbClient.builder()
+            .region(Region.of(awsRegion))
+            .credentialsProvider(ProfileCredentialsProvider.create())
+            .httpClientBuilder(
+                ApacheHttpClient.builder()
+                    .maxConnections(maxConnections)
+                    .connectionAcquisitionTimeout(Duration.ofMillis(acquireTimeoutMs)));
+
+    final var overrides = ClientOverrideConfiguration.builder();
+    addMetrics(overrides, meterRegistry, consumedCapacityTracker);
+    if (virtualThreadsEnabled && maxConcurrentCalls > 0) {
+      overrides.addExecutionInterceptor(
+          new DynamoDbConcurrencyLimiter(
+              maxConcurrentCalls, Duration.ofMillis(acquireTimeoutMs), meterRegistry));
+    }
+
+    builder.overrideConfiguration(overrides.build());
+    customizers.orderedStream().forEach(customizer -> customizer.customize(builder));
+    return builder.build();
   }
 
   @Bean
   public DynamoDbEnhancedClient enhancedClient(DynamoDbClient client) {
     return DynamoDbEnhancedClient.builder().dynamoDbClient(client).build();
   }
+
+  @Bean
+  @ConditionalOnProperty(name = ASYNC_ENABLED_PROPERTY, havingValue = "true")
+  public DynamoDbAsyncClient asyncClient(
+      MeterRegistry meterRegistry,
+      ConsumedCapacityTracker consumedCapacityTracker,
+      ObjectProvider<DynamoDbClientCustomizer> customizers,
+      @Value("${aws.dynamodb.async.max-concurrency:500}") int maxConcurrency) {
+    final var overrides = ClientOverrideConfiguration.builder();
+    addMetrics(overrides, meterRegistry, consumedCapacityTracker);
+
+    final var builder =
+        DynamoDbAsyncClient.builder()
+            .region(Region.of(awsRegion))
+            .credentialsProvider(ProfileCredentialsProvider.create())
+            .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(maxConcurrency))
+            .overrideConfiguration(overrides.build());
+    customizers.orderedStream().forEach(customizer -> customizer.customize(builder));
+    return builder.build();
+  }
+
+  @Bean
+  @ConditionalOnProperty(name = ASYNC_ENABLED_PROPERTY, havingValue = "true")
+  public DynamoDbEnhancedAsyncClient enhancedAsyncClient(DynamoDbAsyncClient asyncClient) {
+    return DynamoDbEnhancedAsyncClient.builder().dynamoDbClient(asyncClient).build();
+  }
+
+  private void addMetrics(
+      ClientOverrideConfiguration.Builder overrides,
+      MeterRegistry registry,
+      ConsumedCapacityTracker consumedCapacityTracker) {
+    if (metricsEnabled) {
+      final var metrics = new DynamoDbMetrics(registry);
+      overrides.addExecutionInterceptor(metrics).addMetricPublisher(metrics);
+    }
+    if (consumedCapacityEnabled) {
+      overrides.addExecutionInterceptor(consumedCapacityTracker);
+    }
+  }
 }
@@ -0,0 +1,222 @@
+package hu.squarelabs.auth21.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.core.metrics.CoreMetric;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCategory;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricLevel;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.metrics.SdkMetric;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.TransactGetItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+
+/**
+ * Turns the SDK's per-call metrics into Micrometer meters tagged by table, index, operation and
+ * outcome.
+ *
+ * <p>The SDK's {@link MetricCollection} knows the operation and every attempt, but not which table
+ * a call was for. As an {@link ExecutionInterceptor} this class reads the table and index from the
+ * request and the outcome from the response or exception, and reports them as custom metrics into
+ * the call's own collector. As the client's {@link MetricPublisher} it then finds them next to the
+ * SDK's metrics when the collection is published, and records:
+ *
+ * <ul>
+ *   <li>{@code aws.dynamodb.requests}: the whole call including retries and backoff, tagged by
+ *       table, index, operation and outcome
+ *   <li>{@code aws.dynamodb.attempts}: each HTTP attempt, additionally tagged by error type
+ *   <li>{@code aws.dynamodb.retries} and {@code aws.dynamodb.throttles}: retried and throttled
+ *       attempts
+ *   <li>{@code aws.dynamodb.connection.acquire}: time spent waiting for a pooled connection
+ * </ul>
+ *
+ * All of them carry the table, index, operation and outcome tags of the call they belong to. The
+ * wait for a {@link DynamoDbConcurrencyLimiter} permit happens before the SDK starts timing the
+ * call, so the limiter records it itself.
+ *
+ * <p>Calls spanning several tables, such as batch and transactional writes, are tagged with the
+ * tables joined by commas.
+ */
+public class DynamoDbMetrics implements ExecutionInterceptor, MetricPublisher {
+  static final String NONE = "none";
+
+  static final SdkMetric<String> TABLE_NAME =
+      SdkMetric.create("DynamoDbTableName", String.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+  static final SdkMetric<String> INDEX_NAME =
+      SdkMetric.create("DynamoDbIndexName", String.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+  static final SdkMetric<String> OUTCOME =
+      SdkMetric.create("DynamoDbOutcome", String.class, MetricLevel.INFO, MetricCategory.CUSTOM);
+
+  private final MeterRegistry meterRegistry;
+
+  public DynamoDbMetrics(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public void beforeExecution(
+      Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+    final var collector =
+        executionAttributes.getAttribute(SdkExecutionAttribute.API_CALL_METRIC_COLLECTOR);
+    if (collector == null) {
+      return;
+    }
+    collector.reportMetric(TABLE_NAME, tableOf(context.request()));
+    collector.reportMetric(INDEX_NAME, indexOf(context.request()));
+  }
+
+  @Override
+  public void afterExecution(
+      Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+    reportOutcome(executionAttributes, "success");
+  }
+
+  @Override
+  public void onExecutionFailure(
+      Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+    reportOutcome(executionAttributes, outcomeOf(context.exception()));
+  }
+
+  @Override
+  public void publish(MetricCollection call) {
+    final var operation = first(call, CoreMetric.OPERATION_NAME, "unknown");
+    final boolean successful = first(call, CoreMetric.API_CALL_SUCCESSFUL, false);
+    final var tags =
+        Tags.of(
+            "table",
+            first(call, TABLE_NAME, NONE),
+            "index",
+            first(call, INDEX_NAME, NONE),
+            "operation",
+            operation,
+            "outcome",
+            first(call, OUTCOME, successful ? "success" : "error"));
+
+    Timer.builder("aws.dynamodb.requests")
+        .tags(tags)
+        .publishPercentileHistogram()
+        .register(meterRegistry)
+        .record(first(call, CoreMetric.API_CALL_DURATION, Duration.ZERO));
+
+    final int retries = first(call, CoreMetric.RETRY_COUNT, 0);
+    if (retries > 0) {
+      Counter.builder("aws.dynamodb.retries").tags(tags).register(meterRegistry).increment(retries);
+    }
+
+    for (MetricCollection attempt : call.children()) {
+      final var errorType = first(attempt, CoreMetric.ERROR_TYPE, NONE);
+      final var duration = first(attempt, CoreMetric.SERVICE_CALL_DURATION, null);
+      if (duration != null) {
+        Timer.builder("aws.dynamodb.attempts")
+            .tags(tags)
+            .tag("error", errorType)
+            .register(meterRegistry)
+            .record(duration);
+      }
+      if ("Throttling".equals(errorType)) {
+        Counter.builder("aws.dynamodb.throttles").tags(tags).register(meterRegistry).increment();
+      }
+      for (MetricCollection http : attempt.children()) {
+        final var acquire = first(http, HttpMetric.CONCURRENCY_ACQUIRE_DURATION, null);
+        if (acquire != null) {
+          Timer.builder("aws.dynamodb.connection.acquire")
+              .tags(tags)
+              .register(meterRegistry)
+              .record(acquire);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close() {}
+
+  static String tableOf(SdkRequest request) {
+    final var table = request.getValueForField("TableName", String.class);
+    if (table.isPresent()) {
+      return table.get();
+    }
+
+    final Collection<String> tables;
+    if (request instanceof BatchWriteItemRequest batch) {
+      tables = new TreeSet<>(batch.requestItems().keySet());
+    } else if (request instanceof BatchGetItemRequest batch) {
+      tables = new TreeSet<>(batch.requestItems().keySet());
+    } else if (request instanceof TransactWriteItemsRequest transaction) {
+      tables = new TreeSet<>();
+      for (TransactWriteItem item : transaction.transactItems()) {
+        tables.addAll(tablesOf(item));
+      }
+    } else if (request instanceof TransactGetItemsRequest transaction) {
+      tables = new TreeSet<>();
+      transaction.transactItems().forEach(item -> tables.add(item.get().tableName()));
+    } else {
+      return NONE;
+    }
+    return tables.isEmpty() ? NONE : String.join(",", tables);
+  }
+
+  static String indexOf(SdkRequest request) {
+    return request.getValueForField("IndexName", String.class).orElse(NONE);
+  }
+
+  static String outcomeOf(Throwable exception) {
+    if (exception instanceof ConditionalCheckFailedException) {
+      return "condition_failed";
+    }
+    if (exception instanceof TransactionCanceledException) {
+      return "transaction_canceled";
+    }
+    if (exception instanceof AwsServiceException service) {
+      return service.isThrottlingException() ? "throttled" : "service_error";
+    }
+    return "client_error";
+  }
+
+  private static List<String> tablesOf(TransactWriteItem item) {
+    if (item.put() != null) {
+      return List.of(item.put().tableName());
+    }
+    if (item.update() != null) {
+      return List.of(item.update().tableName());
+    }
+    if (item.delete() != null) {
+      return List.of(item.delete().tableName());
+    }
+    if (item.conditionCheck() != null) {
+      return List.of(item.conditionCheck().tableName());
+    }
+    return List.of();
+  }
+
+  private static void reportOutcome(ExecutionAttributes executionAttributes, String outcome) {
+    final var collector =
+        executionAttributes.getAttribute(SdkExecutionAttribute.API_CALL_METRIC_COLLECTOR);
+    if (collector != null) {
+      collector.reportMetric(OUTCOME, outcome);
+    }
+  }
+
+  private static <T> T first(MetricCollection collection, SdkMetric<T> metric, T fallback) {
+    final var values = collection.metricValues(metric);
+    return values.isEmpty() ? fallback : values.get(0);
+  }
+}
@@ -0,0 +1,26 @@
+package hu.squarelabs.auth21.config;
+
+import hu.squarelabs.auth21.capacity.ConsumedCapacityInterceptor;
+import hu.squarelabs.auth21.ratelimit.RateLimitInterceptor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+  private final ConsumedCapacityInterceptor consumedCapacityInterceptor;
+  private final RateLimitInterceptor rateLimitInterceptor;
+
+  public WebConfig(
+      ConsumedCapacityInterceptor consumedCapacityInterceptor,
+      RateLimitInterceptor rateLimitInterceptor) {
+    this.consumedCapacityInterceptor = consumedCapacityInterceptor;
+    this.rateLimitInterceptor = rateLimitInterceptor;
+  }
+
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    registry.addInterceptor(consumedCapacityInterceptor);
+    registry.addInterceptor(rateLimitInterceptor);
+  }
+}
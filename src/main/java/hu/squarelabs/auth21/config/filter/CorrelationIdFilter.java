@@ -1,11 +1,12 @@
 package hu.squarelabs.auth21.config.filter;
 
+import hu.squarelabs.auth21.util.SecureIdGenerator;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.UUID;
+import java.util.Map;
 import org.apache.logging.log4j.ThreadContext;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
@@ -17,28 +18,54 @@ public class CorrelationIdFilter extends OncePerRequestFilter {
 
   public static final String CORRELATION_ID_HEADER = "X-Correlation-ID";
   public static final String CORRELATION_ID_MDC_KEY = "correlationId";
+  static final String CORRELATION_ID_ATTRIBUTE = CorrelationIdFilter.class.getName() + ".ID";
+
+  private final SecureIdGenerator idGenerator;
+
+  public CorrelationIdFilter(SecureIdGenerator idGenerator) {
+    this.idGenerator = idGenerator;
+  }
+
+  /**
+   * Asynchronous handlers finish on an async dispatch, on a different thread from the one that
+   * started the request, so the filter runs again there to log under the same correlation id.
+   */
+  @Override
+  protected boolean shouldNotFilterAsyncDispatch() {
+    return false;
+  }
 
   @Override
   protected void doFilterInternal(
       HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
       throws ServletException, IOException {
 
+    // Pooled threads serve many requests and dispatches; restore whatever the thread had and drop
+    // every key set during this one, so nothing leaks into the next.
+    final Map<String, String> previous = ThreadContext.getImmutableContext();
     try {
       final String correlationId = getOrGenerateCorrelationId(request);
+      request.setAttribute(CORRELATION_ID_ATTRIBUTE, correlationId);
       ThreadContext.put(CORRELATION_ID_MDC_KEY, correlationId);
       response.setHeader(CORRELATION_ID_HEADER, correlationId);
       filterChain.doFilter(request, response);
 
     } finally {
-      ThreadContext.remove(CORRELATION_ID_MDC_KEY);
       ThreadContext.clearAll();
+      if (!previous.isEmpty()) {
+        ThreadContext.putAll(previous);
+      }
     }
   }
 
   private String getOrGenerateCorrelationId(HttpServletRequest request) {
+    // An async dispatch reuses the id chosen when the request started.
+    if (request.getAttribute(CORRELATION_ID_ATTRIBUTE) instanceof String assigned) {
+      return assigned;
+    }
     String correlationId = request.getHeader(CORRELATION_ID_HEADER);
     return (correlationId != null && !correlationId.isBlank())
         ? correlationId
-        : UUID.randomUUID().toString();
+        : idGenerator.nextId();
   }
 }
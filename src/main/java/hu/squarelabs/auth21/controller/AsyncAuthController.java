@@ -0,0 +1,68 @@
+package hu.squarelabs.auth21.controller;
+
+import hu.squarelabs.auth21.config.DynamoDbConfig;
+import hu.squarelabs.auth21.model.dto.response.TokenResponse;
+import hu.squarelabs.auth21.ratelimit.RateLimited;
+import hu.squarelabs.auth21.ratelimit.RateLimiter;
+import hu.squarelabs.auth21.service.AsyncAuthService;
+import java.util.concurrent.CompletableFuture;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Non-blocking variant of {@link AuthController}, active when {@code aws.dynamodb.async.enabled} is
+ * set. Handlers return {@link CompletableFuture}s so the servlet thread is released while DynamoDB
+ * calls are in flight.
+ */
+@RestController
+@ConditionalOnProperty(name = DynamoDbConfig.ASYNC_ENABLED_PROPERTY, havingValue = "true")
+@RequestMapping(
+    consumes = {MediaType.ALL_VALUE},
+    produces = {MediaType.APPLICATION_JSON_VALUE},
+    value = "/api/v1/auth")
+public class AsyncAuthController {
+  private static final Logger logger = LogManager.getLogger(AsyncAuthController.class);
+
+  private final AsyncAuthService authService;
+
+  public AsyncAuthController(AsyncAuthService authService) {
+    this.authService = authService;
+  }
+
+  @PostMapping("/login")
+  @RateLimited(RateLimiter.ENDPOINT_LOGIN)
+  @ResponseStatus(value = HttpStatus.OK)
+  public CompletableFuture<TokenResponse> login() {
+    logger.info("Login request received");
+
+    return CompletableFuture.completedFuture(
+        new TokenResponse("dummy-access-token", "dummy-refresh-token", 3600L));
+  }
+
+  @PostMapping("/refresh-token")
+  @RateLimited(RateLimiter.ENDPOINT_REFRESH_TOKEN)
+  @ResponseStatus(value = HttpStatus.OK)
+  public CompletableFuture<TokenResponse> refreshToken() {
+    logger.info("Refresh token request received");
+
+    return CompletableFuture.completedFuture(
+        new TokenResponse("dummy-access-token", "dummy-refresh-token", 3600L));
+  }
+
+  @PostMapping("/register")
+  @RateLimited(RateLimiter.ENDPOINT_REGISTER)
+  @ResponseStatus(value = HttpStatus.OK)
+  public CompletableFuture<TokenResponse> register() {
+    logger.info("Register request received");
+
+    return CompletableFuture.completedFuture(
+        new TokenResponse("dummy-access-token", "dummy-refresh-token", 3600L));
+  }
+}
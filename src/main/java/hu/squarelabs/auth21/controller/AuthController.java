@@ -1,9 +1,13 @@
 package hu.squarelabs.auth21.controller;
 
+import hu.squarelabs.auth21.config.DynamoDbConfig;
 import hu.squarelabs.auth21.model.dto.response.TokenResponse;
+import hu.squarelabs.auth21.ratelimit.RateLimited;
+import hu.squarelabs.auth21.ratelimit.RateLimiter;
 import hu.squarelabs.auth21.service.AuthService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -12,6 +16,10 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
+@ConditionalOnProperty(
+    name = DynamoDbConfig.ASYNC_ENABLED_PROPERTY,
+    havingValue = "false",
+    matchIfMissing = true)
 @RequestMapping(
     consumes = {MediaType.ALL_VALUE},
     produces = {MediaType.APPLICATION_JSON_VALUE},
@@ -26,6 +34,7 @@ public class AuthController {
   }
 
   @PostMapping("/login")
+  @RateLimited(RateLimiter.ENDPOINT_LOGIN)
   @ResponseStatus(value = HttpStatus.OK)
   public TokenResponse login() {
     logger.info("Login request received");
@@ -34,6 +43,7 @@ public class AuthController {
   }
 
   @PostMapping("/refresh-token")
+  @RateLimited(RateLimiter.ENDPOINT_REFRESH_TOKEN)
   @ResponseStatus(value = HttpStatus.OK)
   public TokenResponse refreshToken() {
     logger.info("Refresh token request received");
@@ -42,6 +52,7 @@ public class AuthController {
   }
 
   @PostMapping("/register")
+  @RateLimited(RateLimiter.ENDPOINT_REGISTER)
   @ResponseStatus(value = HttpStatus.OK)
   public TokenResponse register() {
     logger.info("Register request received");
@@ -0,0 +1,46 @@
+package hu.squarelabs.auth21.controller;
+
+import hu.squarelabs.auth21.jwt.JwtKeyRing;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Publishes the public signing keys as a JWK Set, so resource servers can verify tokens locally
+ * instead of calling back.
+ *
+ * <p>The body is the byte array the {@link JwtKeyRing} serialized when its keys last changed, and
+ * the ETag is its digest, so a request costs neither serialization nor hashing, and a client that
+ * sends {@code If-None-Match} gets a 304 once it holds the current set. {@code max-age} is capped
+ * below {@code jwt.keys.publish-ahead-ms}, which guarantees that caches pick up a new key before
+ * tokens signed with it are issued.
+ */
+@RestController
+public class JwksController {
+  static final String PATH = "/.well-known/jwks.json";
+  static final MediaType JWK_SET = MediaType.parseMediaType("application/jwk-set+json");
+
+  private final JwtKeyRing keyRing;
+  private final CacheControl cacheControl;
+
+  public JwksController(
+      JwtKeyRing keyRing, @Value("${jwt.jwks.max-age-seconds:300}") long maxAgeSeconds) {
+    this.keyRing = keyRing;
+    final long maxAge = Math.min(maxAgeSeconds, keyRing.getPublishAheadMillis() / 2000);
+    this.cacheControl = CacheControl.maxAge(Duration.ofSeconds(maxAge)).cachePublic();
+  }
+
+  @GetMapping(PATH)
+  public ResponseEntity<byte[]> jwks() {
+    final var jwks = keyRing.jwks();
+    return ResponseEntity.ok()
+        .contentType(JWK_SET)
+        .cacheControl(cacheControl)
+        .eTag(jwks.etag())
+        .body(jwks.json());
+  }
+}
@@ -0,0 +1,79 @@
+package hu.squarelabs.auth21.controller;
+
+import hu.squarelabs.auth21.model.dto.response.IntrospectionResponse;
+import hu.squarelabs.auth21.ratelimit.RateLimited;
+import hu.squarelabs.auth21.ratelimit.RateLimiter;
+import hu.squarelabs.auth21.service.TokenIntrospectionService;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * RFC 7662 token introspection for gateways, next to the other {@code /api/v1/auth} routes. It
+ * takes the form-encoded {@code token} parameter and ignores {@code token_type_hint}, since only
+ * access tokens can be introspected.
+ *
+ * <p>Callers authenticate with HTTP Basic using {@code introspection.client-id} and {@code
+ * introspection.client-secret}, compared in constant time; without a configured secret every
+ * request is refused. Requests are rate limited per IP under {@code rate-limit.introspect.ip.*},
+ * which is sized for gateways that call on every request they forward.
+ */
+@RestController
+@RequestMapping(
+    consumes = {MediaType.APPLICATION_FORM_URLENCODED_VALUE},
+    produces = {MediaType.APPLICATION_JSON_VALUE},
+    value = "/api/v1/auth")
+public class TokenIntrospectionController {
+  static final String CHALLENGE = "Basic realm=\"introspection\"";
+
+  private final TokenIntrospectionService introspectionService;
+  private final byte[] expectedAuthorization;
+
+  public TokenIntrospectionController(
+      TokenIntrospectionService introspectionService,
+      @Value("${introspection.client-id:gateway}") String clientId,
+      @Value("${introspection.client-secret:}") String clientSecret) {
+    this.introspectionService = introspectionService;
+    this.expectedAuthorization =
+        clientSecret.isEmpty()
+            ? null
+            : ("Basic "
+                    + Base64.getEncoder()
+                        .encodeToString(
+                            (clientId + ':' + clientSecret).getBytes(StandardCharsets.UTF_8)))
+                .getBytes(StandardCharsets.UTF_8);
+  }
+
+  @PostMapping("/introspect")
+  @RateLimited(RateLimiter.ENDPOINT_INTROSPECT)
+  public ResponseEntity<IntrospectionResponse> introspect(
+      @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+      @RequestParam("token") String token) {
+    if (!isAuthorized(authorization)) {
+      return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+          .header(HttpHeaders.WWW_AUTHENTICATE, CHALLENGE)
+          .build();
+    }
+    return ResponseEntity.ok()
+        .cacheControl(CacheControl.noStore())
+        .body(introspectionService.introspect(token));
+  }
+
+  private boolean isAuthorized(String authorization) {
+    return expectedAuthorization != null
+        && authorization != null
+        && MessageDigest.isEqual(
+            expectedAuthorization, authorization.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,307 @@
+package hu.squarelabs.auth21.converter;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned binary encoding of token claims.
+ *
+ * <p>Version 1 layout: a version byte, a presence bitmap, then the present claims in a fixed order.
+ * jti and sub are length-prefixed UTF-8, iat and exp are unsigned varints, and user plus any
+ * unrecognized claims are tagged values. Field names of the registered claims are implied by their
+ * position, which is where most of the saving over JSON comes from. A claim that is present with a
+ * null value stays present, as it does in the map format.
+ */
+final class BinaryClaimsCodec {
+  static final byte VERSION_1 = 1;
+
+  private static final int HAS_JTI = 1;
+  private static final int HAS_SUB = 1 << 1;
+  private static final int HAS_IAT = 1 << 2;
+  private static final int HAS_EXP = 1 << 3;
+  private static final int HAS_USER = 1 << 4;
+  private static final int HAS_EXTRA = 1 << 5;
+
+  private static final byte TAG_NULL = 0;
+  private static final byte TAG_STRING = 1;
+  private static final byte TAG_LONG = 2;
+  private static final byte TAG_DOUBLE = 3;
+  private static final byte TAG_FALSE = 4;
+  private static final byte TAG_TRUE = 5;
+  private static final byte TAG_LIST = 6;
+  private static final byte TAG_MAP = 7;
+  private static final byte TAG_DECIMAL = 8;
+
+  private BinaryClaimsCodec() {}
+
+  static byte[] encode(Map<String, Object> claims) {
+    final var out = new Writer(64);
+    out.writeByte(VERSION_1);
+
+    final Map<String, Object> extra = new HashMap<>(claims);
+    final Object jti = extra.remove("jti");
+    final Object sub = extra.remove("sub");
+    final Object iat = extra.remove("iat");
+    final Object exp = extra.remove("exp");
+    final Object user = extra.remove("user");
+
+    int flags = 0;
+    flags |= jti instanceof String ? HAS_JTI : 0;
+    flags |= sub instanceof String ? HAS_SUB : 0;
+    flags |= isEpoch(iat) ? HAS_IAT : 0;
+    flags |= isEpoch(exp) ? HAS_EXP : 0;
+    flags |= claims.containsKey("user") ? HAS_USER : 0;
+    // Claims that do not fit their slot, including explicit nulls, keep their value in the extra
+    // map.
+    putIfRejected(claims, extra, "jti", jti, flags & HAS_JTI);
+    putIfRejected(claims, extra, "sub", sub, flags & HAS_SUB);
+    putIfRejected(claims, extra, "iat", iat, flags & HAS_IAT);
+    putIfRejected(claims, extra, "exp", exp, flags & HAS_EXP);
+    flags |= extra.isEmpty() ? 0 : HAS_EXTRA;
+    out.writeByte(flags);
+
+    if ((flags & HAS_JTI) != 0) {
+      out.writeString((String) jti);
+    }
+    if ((flags & HAS_SUB) != 0) {
+      out.writeString((String) sub);
+    }
+    if ((flags & HAS_IAT) != 0) {
+      out.writeVarLong(((Number) iat).longValue());
+    }
+    if ((flags & HAS_EXP) != 0) {
+      out.writeVarLong(((Number) exp).longValue());
+    }
+    if ((flags & HAS_USER) != 0) {
+      out.writeValue(user);
+    }
+    if ((flags & HAS_EXTRA) != 0) {
+      out.writeValue(extra);
+    }
+    return out.toByteArray();
+  }
+
+  static Map<String, Object> decode(byte[] bytes) {
+    final var in = new Reader(bytes);
+    final int version = in.readByte();
+    if (version != VERSION_1) {
+      throw new IllegalArgumentException("Unsupported claims encoding version: " + version);
+    }
+
+    final int flags = in.readByte();
+    final Map<String, Object> claims = new HashMap<>();
+    if ((flags & HAS_JTI) != 0) {
+      claims.put("jti", in.readString());
+    }
+    if ((flags & HAS_SUB) != 0) {
+      claims.put("sub", in.readString());
+    }
+    if ((flags & HAS_IAT) != 0) {
+      claims.put("iat", in.readVarLong());
+    }
+    if ((flags & HAS_EXP) != 0) {
+      claims.put("exp", in.readVarLong());
+    }
+    if ((flags & HAS_USER) != 0) {
+      claims.put("user", in.readValue());
+    }
+    if ((flags & HAS_EXTRA) != 0) {
+      @SuppressWarnings("unchecked")
+      final var extra = (Map<String, Object>) in.readValue();
+      claims.putAll(extra);
+    }
+    if (in.position != bytes.length) {
+      throw new IllegalArgumentException("Trailing bytes after claims");
+    }
+    return claims;
+  }
+
+  private static boolean isEpoch(Object value) {
+    return (value instanceof Long || value instanceof Integer) && ((Number) value).longValue() >= 0;
+  }
+
+  private static void putIfRejected(
+      Map<String, Object> claims, Map<String, Object> extra, String name, Object value, int slot) {
+    if (slot == 0 && claims.containsKey(name)) {
+      extra.put(name, value);
+    }
+  }
+
+  private static final class Writer {
+    private byte[] buffer;
+    private int length;
+
+    Writer(int initialCapacity) {
+      this.buffer = new byte[initialCapacity];
+    }
+
+    void writeByte(int b) {
+      ensureCapacity(1);
+      buffer[length++] = (byte) b;
+    }
+
+    void writeVarLong(long value) {
+      ensureCapacity(10);
+      while ((value & ~0x7fL) != 0) {
+        buffer[length++] = (byte) ((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      buffer[length++] = (byte) value;
+    }
+
+    void writeString(String value) {
+      final var utf8 = value.getBytes(StandardCharsets.UTF_8);
+      writeVarLong(utf8.length);
+      ensureCapacity(utf8.length);
+      System.arraycopy(utf8, 0, buffer, length, utf8.length);
+      length += utf8.length;
+    }
+
+    void writeValue(Object value) {
+      if (value == null) {
+        writeByte(TAG_NULL);
+      } else if (value instanceof String s) {
+        writeByte(TAG_STRING);
+        writeString(s);
+      } else if (value instanceof Long
+          || value instanceof Integer
+          || value instanceof Short
+          || value instanceof Byte) {
+        writeByte(TAG_LONG);
+        final long v = ((Number) value).longValue();
+        writeVarLong((v << 1) ^ (v >> 63));
+      } else if (value instanceof Double || value instanceof Float) {
+        writeByte(TAG_DOUBLE);
+        final long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+        ensureCapacity(Long.BYTES);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+          buffer[length++] = (byte) (bits >>> shift);
+        }
+      } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+        writeByte(TAG_DECIMAL);
+        writeString(value.toString());
+      } else if (value instanceof Boolean b) {
+        writeByte(b ? TAG_TRUE : TAG_FALSE);
+      } else if (value instanceof Map<?, ?> map) {
+        writeByte(TAG_MAP);
+        writeVarLong(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+          writeString(String.valueOf(entry.getKey()));
+          writeValue(entry.getValue());
+        }
+      } else if (value instanceof Collection<?> collection) {
+        writeByte(TAG_LIST);
+        writeVarLong(collection.size());
+        for (Object element : collection) {
+          writeValue(element);
+        }
+      } else {
+        writeByte(TAG_STRING);
+        writeString(value.toString());
+      }
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, length);
+    }
+
+    private void ensureCapacity(int extra) {
+      if (length + extra > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+      }
+    }
+  }
+
+  private static final class Reader {
+    private final byte[] bytes;
+    private int position;
+
+    Reader(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    int readByte() {
+      if (position >= bytes.length) {
+        throw new IllegalArgumentException("Truncated claims");
+      }
+      return bytes[position++] & 0xff;
+    }
+
+    long readVarLong() {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        final int b = readByte();
+        value |= (long) (b & 0x7f) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("Malformed varint in claims");
+    }
+
+    String readString() {
+      final int length = readLength();
+      final var value = new String(bytes, position, length, StandardCharsets.UTF_8);
+      position += length;
+      return value;
+    }
+
+    Object readValue() {
+      final int tag = readByte();
+      return switch (tag) {
+        case TAG_NULL -> null;
+        case TAG_STRING -> readString();
+        case TAG_LONG -> {
+          final long zigzag = readVarLong();
+          yield (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+        case TAG_DOUBLE -> {
+          long bits = 0;
+          for (int i = 0; i < Long.BYTES; i++) {
+            bits = (bits << 8) | readByte();
+          }
+          yield Double.longBitsToDouble(bits);
+        }
+        case TAG_DECIMAL -> new BigDecimal(readString());
+        case TAG_FALSE -> Boolean.FALSE;
+        case TAG_TRUE -> Boolean.TRUE;
+        case TAG_MAP -> readMap();
+        case TAG_LIST -> readList();
+        default -> throw new IllegalArgumentException("Unknown claims value tag: " + tag);
+      };
+    }
+
+    private Map<String, Object> readMap() {
+      final int entries = readLength();
+      final Map<String, Object> map = new HashMap<>(Math.max(4, entries * 2));
+      for (int i = 0; i < entries; i++) {
+        map.put(readString(), readValue());
+      }
+      return map;
+    }
+
+    private List<Object> readList() {
+      final int size = readLength();
+      final List<Object> list = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        list.add(readValue());
+      }
+      return list;
+    }
+
+    private int readLength() {
+      final long length = readVarLong();
+      if (length < 0 || length > bytes.length - position) {
+        throw new IllegalArgumentException("Truncated claims");
+      }
+      return (int) length;
+    }
+  }
+}
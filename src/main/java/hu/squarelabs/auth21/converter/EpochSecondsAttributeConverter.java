@@ -0,0 +1,48 @@
+package hu.squarelabs.auth21.converter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import software.amazon.awssdk.enhanced.dynamodb.AttributeConverter;
+import software.amazon.awssdk.enhanced.dynamodb.AttributeValueType;
+import software.amazon.awssdk.enhanced.dynamodb.EnhancedType;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Stores an {@link Instant} as a number of epoch seconds, the only form DynamoDB's time to live
+ * recognises. Reads also accept the ISO-8601 strings written by earlier versions, so items can be
+ * migrated lazily or in the background.
+ */
+public class EpochSecondsAttributeConverter implements AttributeConverter<Instant> {
+
+  @Override
+  public AttributeValue transformFrom(Instant input) {
+    if (input == null) {
+      return AttributeValue.fromNul(true);
+    }
+    return AttributeValue.fromN(Long.toString(input.getEpochSecond()));
+  }
+
+  @Override
+  public Instant transformTo(AttributeValue input) {
+    if (input == null || Boolean.TRUE.equals(input.nul())) {
+      return null;
+    }
+    if (input.n() != null) {
+      return Instant.ofEpochSecond(new BigDecimal(input.n()).longValue());
+    }
+    if (input.s() != null) {
+      return Instant.parse(input.s());
+    }
+    return null;
+  }
+
+  @Override
+  public EnhancedType<Instant> type() {
+    return EnhancedType.of(Instant.class);
+  }
+
+  @Override
+  public AttributeValueType attributeValueType() {
+    return AttributeValueType.N;
+  }
+}
@@ -0,0 +1,177 @@
+package hu.squarelabs.auth21.converter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.enhanced.dynamodb.AttributeConverter;
+import software.amazon.awssdk.enhanced.dynamodb.AttributeValueType;
+import software.amazon.awssdk.enhanced.dynamodb.EnhancedType;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Converts the {@code jwt_token} claims of a token item.
+ *
+ * <p>New items are written either as a native DynamoDB map ({@link Format#MAP}), which keeps the
+ * claims queryable and numbers typed, or as the compact binary encoding of {@link
+ * BinaryClaimsCodec} ({@link Format#BINARY}). Reads accept both formats as well as the JSON strings
+ * written by earlier versions, so the format can be switched without migrating existing items.
+ * Integral numbers always come back as {@link Long}.
+ */
+public class JwtClaimsAttributeConverter implements AttributeConverter<Map<String, Object>> {
+  private static final TypeReference<Map<String, Object>> CLAIMS_TYPE = new TypeReference<>() {};
+  private static final ObjectMapper LEGACY_MAPPER =
+      new ObjectMapper().enable(DeserializationFeature.USE_LONG_FOR_INTS);
+
+  public enum Format {
+    MAP,
+    BINARY
+  }
+
+  private final Format format;
+
+  public JwtClaimsAttributeConverter() {
+    this(Format.MAP);
+  }
+
+  public JwtClaimsAttributeConverter(Format format) {
+    this.format = format;
+  }
+
+  @Override
+  public AttributeValue transformFrom(Map<String, Object> input) {
+    if (input == null) {
+      return AttributeValue.fromNul(true);
+    }
+    if (format == Format.BINARY) {
+      return AttributeValue.fromB(SdkBytes.fromByteArrayUnsafe(BinaryClaimsCodec.encode(input)));
+    }
+    return AttributeValue.fromM(toAttributeMap(input));
+  }
+
+  @Override
+  public Map<String, Object> transformTo(AttributeValue input) {
+    if (input == null || Boolean.TRUE.equals(input.nul())) {
+      return null;
+    }
+    try {
+      if (input.hasM()) {
+        return fromAttributeMap(input.m());
+      }
+      if (input.b() != null) {
+        return BinaryClaimsCodec.decode(input.b().asByteArrayUnsafe());
+      }
+      if (input.s() != null) {
+        return LEGACY_MAPPER.readValue(input.s(), CLAIMS_TYPE);
+      }
+    } catch (Exception e) {
+      throw new RuntimeException("Failed to read token claims", e);
+    }
+    return new HashMap<>();
+  }
+
+  @Override
+  public EnhancedType<Map<String, Object>> type() {
+    return EnhancedType.mapOf(String.class, Object.class);
+  }
+
+  @Override
+  public AttributeValueType attributeValueType() {
+    return format == Format.BINARY ? AttributeValueType.B : AttributeValueType.M;
+  }
+
+  private static Map<String, AttributeValue> toAttributeMap(Map<?, ?> map) {
+    final Map<String, AttributeValue> attributes = new HashMap<>(Math.max(4, map.size() * 2));
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      attributes.put(String.valueOf(entry.getKey()), toAttributeValue(entry.getValue()));
+    }
+    return attributes;
+  }
+
+  private static AttributeValue toAttributeValue(Object value) {
+    if (value == null) {
+      return AttributeValue.fromNul(true);
+    }
+    if (value instanceof String s) {
+      return AttributeValue.fromS(s);
+    }
+    if (value instanceof Number n) {
+      return AttributeValue.fromN(
+          n instanceof BigDecimal d ? d.toPlainString() : String.valueOf(n));
+    }
+    if (value instanceof Boolean b) {
+      return AttributeValue.fromBool(b);
+    }
+    if (value instanceof Map<?, ?> map) {
+      return AttributeValue.fromM(toAttributeMap(map));
+    }
+    if (value instanceof Collection<?> collection) {
+      final List<AttributeValue> list = new ArrayList<>(collection.size());
+      for (Object element : collection) {
+        list.add(toAttributeValue(element));
+      }
+      return AttributeValue.fromL(list);
+    }
+    return AttributeValue.fromS(value.toString());
+  }
+
+  private static Map<String, Object> fromAttributeMap(Map<String, AttributeValue> attributes) {
+    final Map<String, Object> map = new HashMap<>(Math.max(4, attributes.size() * 2));
+    attributes.forEach((name, value) -> map.put(name, fromAttributeValue(value)));
+    return map;
+  }
+
+  private static Object fromAttributeValue(AttributeValue value) {
+    if (value.s() != null) {
+      return value.s();
+    }
+    if (value.n() != null) {
+      return parseNumber(value.n());
+    }
+    if (value.bool() != null) {
+      return value.bool();
+    }
+    if (value.hasM()) {
+      return fromAttributeMap(value.m());
+    }
+    if (value.hasL()) {
+      final List<Object> list = new ArrayList<>(value.l().size());
+      value.l().forEach(element -> list.add(fromAttributeValue(element)));
+      return list;
+    }
+    return null;
+  }
+
+  private static Object parseNumber(String number) {
+    if (isSmallInteger(number)) {
+      return Long.parseLong(number);
+    }
+    final var decimal = new BigDecimal(number);
+    if (decimal.stripTrailingZeros().scale() <= 0) {
+      final BigInteger integer = decimal.toBigIntegerExact();
+      return integer.bitLength() < Long.SIZE ? (Object) integer.longValue() : integer;
+    }
+    return decimal.doubleValue();
+  }
+
+  private static boolean isSmallInteger(String number) {
+    final int start = number.startsWith("-") ? 1 : 0;
+    if (number.length() == start || number.length() - start > 18) {
+      return false;
+    }
+    for (int i = start; i < number.length(); i++) {
+      final char c = number.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+}
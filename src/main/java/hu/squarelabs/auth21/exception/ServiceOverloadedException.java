@@ -0,0 +1,27 @@
+package hu.squarelabs.auth21.exception;
+
+import java.time.Duration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/** 503 response that tells the client when to retry, for load shedding ahead of saturated work. */
+public class ServiceOverloadedException extends ResponseStatusException {
+  private final Duration retryAfter;
+
+  public ServiceOverloadedException(String reason, Duration retryAfter) {
+    super(HttpStatus.SERVICE_UNAVAILABLE, reason);
+    this.retryAfter = retryAfter;
+  }
+
+  public Duration getRetryAfter() {
+    return retryAfter;
+  }
+
+  @Override
+  public HttpHeaders getHeaders() {
+    final var headers = new HttpHeaders();
+    headers.set(HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, retryAfter.toSeconds())));
+    return headers;
+  }
+}
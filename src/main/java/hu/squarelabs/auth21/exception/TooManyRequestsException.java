@@ -0,0 +1,28 @@
+package hu.squarelabs.auth21.exception;
+
+import java.time.Duration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/** 429 response that tells a throttled client when its next request will be accepted. */
+public class TooManyRequestsException extends ResponseStatusException {
+  private final Duration retryAfter;
+
+  public TooManyRequestsException(String reason, Duration retryAfter) {
+    super(HttpStatus.TOO_MANY_REQUESTS, reason);
+    this.retryAfter = retryAfter;
+  }
+
+  public Duration getRetryAfter() {
+    return retryAfter;
+  }
+
+  @Override
+  public HttpHeaders getHeaders() {
+    final var headers = new HttpHeaders();
+    headers.set(
+        HttpHeaders.RETRY_AFTER, Long.toString(Math.max(1, (retryAfter.toMillis() + 999) / 1000)));
+    return headers;
+  }
+}
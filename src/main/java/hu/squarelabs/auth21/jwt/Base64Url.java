@@ -0,0 +1,136 @@
+package hu.squarelabs.auth21.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Unpadded Base64url encoding that reads from and writes into caller-supplied byte arrays, so JWT
+ * segments can be produced without intermediate strings or arrays.
+ */
+final class Base64Url {
+  private static final byte[] ALPHABET =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+          .getBytes(StandardCharsets.US_ASCII);
+
+  private static final int[] DECODE_TABLE = new int[128];
+
+  static {
+    Arrays.fill(DECODE_TABLE, -1);
+    for (int i = 0; i < ALPHABET.length; i++) {
+      DECODE_TABLE[ALPHABET[i]] = i;
+    }
+  }
+
+  private Base64Url() {}
+
+  static int encodedLength(int length) {
+    return (length / 3) * 4
+        + switch (length % 3) {
+          case 1 -> 2;
+          case 2 -> 3;
+          default -> 0;
+        };
+  }
+
+  /** Encodes {@code src[srcOff, srcOff + len)} into {@code dst} and returns the new offset. */
+  static int encode(byte[] src, int srcOff, int len, byte[] dst, int dstOff) {
+    int sp = srcOff;
+    int dp = dstOff;
+    final int end = srcOff + len - len % 3;
+
+    while (sp < end) {
+      final int bits = (src[sp++] & 0xff) << 16 | (src[sp++] & 0xff) << 8 | (src[sp++] & 0xff);
+      dst[dp++] = ALPHABET[(bits >>> 18) & 0x3f];
+      dst[dp++] = ALPHABET[(bits >>> 12) & 0x3f];
+      dst[dp++] = ALPHABET[(bits >>> 6) & 0x3f];
+      dst[dp++] = ALPHABET[bits & 0x3f];
+    }
+
+    switch (len % 3) {
+      case 1 -> {
+        final int bits = (src[sp] & 0xff) << 16;
+        dst[dp++] = ALPHABET[(bits >>> 18) & 0x3f];
+        dst[dp++] = ALPHABET[(bits >>> 12) & 0x3f];
+      }
+      case 2 -> {
+        final int bits = (src[sp] & 0xff) << 16 | (src[sp + 1] & 0xff) << 8;
+        dst[dp++] = ALPHABET[(bits >>> 18) & 0x3f];
+        dst[dp++] = ALPHABET[(bits >>> 12) & 0x3f];
+        dst[dp++] = ALPHABET[(bits >>> 6) & 0x3f];
+      }
+      default -> {}
+    }
+
+    return dp;
+  }
+
+  /** Returns the decoded size of {@code length} Base64url characters, or -1 if it is invalid. */
+  static int decodedLength(int length) {
+    return switch (length % 4) {
+      case 0 -> length / 4 * 3;
+      case 2 -> length / 4 * 3 + 1;
+      case 3 -> length / 4 * 3 + 2;
+      default -> -1;
+    };
+  }
+
+  /**
+   * Decodes the unpadded Base64url characters {@code src[start, end)} into {@code dst} and returns
+   * the new offset, or -1 if the input contains characters outside the alphabet, has an invalid
+   * length or has non-zero trailing bits, so every byte sequence has exactly one accepted encoding.
+   * The caller must size {@code dst} using {@link #decodedLength(int)}.
+   */
+  static int decode(CharSequence src, int start, int end, byte[] dst, int dstOff) {
+    final int len = end - start;
+    if (decodedLength(len) < 0) {
+      return -1;
+    }
+
+    int sp = start;
+    int dp = dstOff;
+    final int fullEnd = start + len - len % 4;
+
+    while (sp < fullEnd) {
+      final int bits =
+          sextet(src.charAt(sp++)) << 18
+              | sextet(src.charAt(sp++)) << 12
+              | sextet(src.charAt(sp++)) << 6
+              | sextet(src.charAt(sp++));
+      if (bits < 0) {
+        return -1;
+      }
+      dst[dp++] = (byte) (bits >> 16);
+      dst[dp++] = (byte) (bits >> 8);
+      dst[dp++] = (byte) bits;
+    }
+
+    switch (len % 4) {
+      case 2 -> {
+        final int bits = sextet(src.charAt(sp)) << 18 | sextet(src.charAt(sp + 1)) << 12;
+        if (bits < 0 || (bits & 0xffff) != 0) {
+          return -1;
+        }
+        dst[dp++] = (byte) (bits >> 16);
+      }
+      case 3 -> {
+        final int bits =
+            sextet(src.charAt(sp)) << 18
+                | sextet(src.charAt(sp + 1)) << 12
+                | sextet(src.charAt(sp + 2)) << 6;
+        if (bits < 0 || (bits & 0xff) != 0) {
+          return -1;
+        }
+        dst[dp++] = (byte) (bits >> 16);
+        dst[dp++] = (byte) (bits >> 8);
+      }
+      default -> {}
+    }
+
+    return dp;
+  }
+
+  /** Maps a character to its 6-bit value; invalid characters yield a negative int. */
+  private static int sextet(char c) {
+    return c < 128 ? DECODE_TABLE[c] : -1;
+  }
+}
@@ -0,0 +1,12 @@
+package hu.squarelabs.auth21.jwt;
+
+/**
+ * Thrown when a token fails structural, signature or expiry checks. Invalid tokens are expected on
+ * hot paths, so the exception does not capture a stack trace.
+ */
+public class InvalidJwtException extends RuntimeException {
+
+  public InvalidJwtException(String message) {
+    super(message, null, false, false);
+  }
+}
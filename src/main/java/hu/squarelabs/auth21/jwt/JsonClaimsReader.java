@@ -0,0 +1,449 @@
+package hu.squarelabs.auth21.jwt;
+
+import hu.squarelabs.auth21.model.JwtToken;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single-pass tokenizer for JWT claim sets.
+ *
+ * <p>{@link #scan(byte[], int)} validates the whole payload but only records where the {@code jti},
+ * {@code sub} and {@code user} values start and end and parses {@code iat} and {@code exp} in
+ * place. Strings and the user object are materialized by {@link #toJwtToken()}, after the caller
+ * had the chance to reject the token on its numeric claims.
+ */
+final class JsonClaimsReader {
+  private static final int MAX_DEPTH = 16;
+
+  private static final int JTI = 1;
+  private static final int SUB = 1 << 1;
+  private static final int IAT = 1 << 2;
+  private static final int EXP = 1 << 3;
+  private static final int USER = 1 << 4;
+
+  private byte[] buf;
+  private int end;
+  private int pos;
+
+  private int seen;
+  private int jtiStart;
+  private int jtiEnd;
+  private int subStart;
+  private int subEnd;
+  private int userStart;
+  private long iat;
+  private long exp;
+
+  void scan(byte[] buffer, int length) {
+    this.buf = buffer;
+    this.end = length;
+    this.pos = 0;
+    this.seen = 0;
+
+    skipWhitespace();
+    expect('{');
+    skipWhitespace();
+    if (peek() == '}') {
+      pos++;
+      expectEnd();
+      return;
+    }
+
+    while (true) {
+      skipWhitespace();
+      final int keyStart = pos + 1;
+      skipString();
+      final int claim = claimOf(keyStart, pos - 1);
+      skipWhitespace();
+      expect(':');
+      skipWhitespace();
+
+      if ((seen & claim) != 0) {
+        throw malformed();
+      }
+      seen |= claim;
+
+      switch (claim) {
+        case JTI -> {
+          jtiStart = pos + 1;
+          skipString();
+          jtiEnd = pos - 1;
+        }
+        case SUB -> {
+          subStart = pos + 1;
+          skipString();
+          subEnd = pos - 1;
+        }
+        case IAT -> iat = readLong();
+        case EXP -> exp = readLong();
+        case USER -> {
+          if (peek() != '{' && peek() != 'n') {
+            throw malformed();
+          }
+          userStart = pos;
+          skipValue(0);
+        }
+        default -> skipValue(0);
+      }
+
+      skipWhitespace();
+      final byte next = next();
+      if (next == '}') {
+        expectEnd();
+        return;
+      }
+      if (next != ',') {
+        throw malformed();
+      }
+    }
+  }
+
+  boolean hasExp() {
+    return (seen & EXP) != 0;
+  }
+
+  long exp() {
+    return exp;
+  }
+
+  JwtToken toJwtToken() {
+    final var jwtToken = new JwtToken();
+    if ((seen & JTI) != 0) {
+      jwtToken.setJti(readString(jtiStart, jtiEnd));
+    }
+    if ((seen & SUB) != 0) {
+      jwtToken.setSub(readString(subStart, subEnd));
+    }
+    if ((seen & IAT) != 0) {
+      jwtToken.setIat(iat);
+    }
+    if ((seen & EXP) != 0) {
+      jwtToken.setExp(exp);
+    }
+    if ((seen & USER) != 0) {
+      pos = userStart;
+      jwtToken.setUser(readObjectOrNull());
+    }
+    return jwtToken;
+  }
+
+  private int claimOf(int start, int stop) {
+    final int len = stop - start;
+    if (len == 3) {
+      final byte a = buf[start];
+      final byte b = buf[start + 1];
+      final byte c = buf[start + 2];
+      if (a == 'j' && b == 't' && c == 'i') return JTI;
+      if (a == 's' && b == 'u' && c == 'b') return SUB;
+      if (a == 'i' && b == 'a' && c == 't') return IAT;
+      if (a == 'e' && b == 'x' && c == 'p') return EXP;
+    } else if (len == 4
+        && buf[start] == 'u'
+        && buf[start + 1] == 's'
+        && buf[start + 2] == 'e'
+        && buf[start + 3] == 'r') {
+      return USER;
+    }
+    return 0;
+  }
+
+  private long readLong() {
+    boolean negative = false;
+    if (peek() == '-') {
+      negative = true;
+      pos++;
+    }
+    final int start = pos;
+    long value = 0;
+    while (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+      value = value * 10 + (buf[pos++] - '0');
+    }
+    final int digits = pos - start;
+    if (digits == 0 || digits > 18 || (digits > 1 && buf[start] == '0')) {
+      throw malformed();
+    }
+    if (pos < end && (buf[pos] == '.' || buf[pos] == 'e' || buf[pos] == 'E')) {
+      throw malformed();
+    }
+    return negative ? -value : value;
+  }
+
+  private void skipValue(int depth) {
+    if (depth > MAX_DEPTH) {
+      throw malformed();
+    }
+    switch (peek()) {
+      case '"' -> skipString();
+      case '{' -> {
+        pos++;
+        skipWhitespace();
+        if (peek() == '}') {
+          pos++;
+          return;
+        }
+        while (true) {
+          skipWhitespace();
+          skipString();
+          skipWhitespace();
+          expect(':');
+          skipWhitespace();
+          skipValue(depth + 1);
+          skipWhitespace();
+          final byte next = next();
+          if (next == '}') return;
+          if (next != ',') throw malformed();
+        }
+      }
+      case '[' -> {
+        pos++;
+        skipWhitespace();
+        if (peek() == ']') {
+          pos++;
+          return;
+        }
+        while (true) {
+          skipWhitespace();
+          skipValue(depth + 1);
+          skipWhitespace();
+          final byte next = next();
+          if (next == ']') return;
+          if (next != ',') throw malformed();
+        }
+      }
+      case 't' -> expectLiteral("true");
+      case 'f' -> expectLiteral("false");
+      case 'n' -> expectLiteral("null");
+      default -> skipNumber();
+    }
+  }
+
+  private void skipString() {
+    expect('"');
+    while (pos < end) {
+      final byte b = buf[pos++];
+      if (b == '"') {
+        return;
+      }
+      if (b == '\\') {
+        pos++;
+      } else if (b >= 0 && b < 0x20) {
+        throw malformed();
+      }
+    }
+    throw malformed();
+  }
+
+  private void skipNumber() {
+    final int start = pos;
+    while (pos < end) {
+      final byte b = buf[pos];
+      if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E') {
+        pos++;
+      } else {
+        break;
+      }
+    }
+    if (pos == start) {
+      throw malformed();
+    }
+  }
+
+  private Map<String, Object> readObjectOrNull() {
+    if (peek() == 'n') {
+      expectLiteral("null");
+      return null;
+    }
+    return readObject(0);
+  }
+
+  private Map<String, Object> readObject(int depth) {
+    expect('{');
+    final Map<String, Object> map = new LinkedHashMap<>();
+    skipWhitespace();
+    if (peek() == '}') {
+      pos++;
+      return map;
+    }
+    while (true) {
+      skipWhitespace();
+      final int keyStart = pos + 1;
+      skipString();
+      final String key = readString(keyStart, pos - 1);
+      skipWhitespace();
+      expect(':');
+      skipWhitespace();
+      map.put(key, readValue(depth + 1));
+      skipWhitespace();
+      final byte next = next();
+      if (next == '}') return map;
+      if (next != ',') throw malformed();
+    }
+  }
+
+  private Object readValue(int depth) {
+    if (depth > MAX_DEPTH) {
+      throw malformed();
+    }
+    switch (peek()) {
+      case '"' -> {
+        final int start = pos + 1;
+        skipString();
+        return readString(start, pos - 1);
+      }
+      case '{' -> {
+        return readObject(depth);
+      }
+      case '[' -> {
+        pos++;
+        final List<Object> list = new ArrayList<>();
+        skipWhitespace();
+        if (peek() == ']') {
+          pos++;
+          return list;
+        }
+        while (true) {
+          skipWhitespace();
+          list.add(readValue(depth + 1));
+          skipWhitespace();
+          final byte next = next();
+          if (next == ']') return list;
+          if (next != ',') throw malformed();
+        }
+      }
+      case 't' -> {
+        expectLiteral("true");
+        return Boolean.TRUE;
+      }
+      case 'f' -> {
+        expectLiteral("false");
+        return Boolean.FALSE;
+      }
+      case 'n' -> {
+        expectLiteral("null");
+        return null;
+      }
+      default -> {
+        final int start = pos;
+        skipNumber();
+        final String number = new String(buf, start, pos - start, StandardCharsets.US_ASCII);
+        try {
+          return number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0
+              ? (Object) Long.parseLong(number)
+              : (Object) Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+          throw malformed();
+        }
+      }
+    }
+  }
+
+  private String readString(int start, int stop) {
+    int escape = start;
+    while (escape < stop && buf[escape] != '\\') {
+      escape++;
+    }
+    if (escape == stop) {
+      return new String(buf, start, stop - start, StandardCharsets.UTF_8);
+    }
+
+    final var sb = new StringBuilder(stop - start);
+    int runStart = start;
+    int i = escape;
+    while (i < stop) {
+      if (buf[i] != '\\') {
+        i++;
+        continue;
+      }
+      sb.append(new String(buf, runStart, i - runStart, StandardCharsets.UTF_8));
+      if (i + 1 >= stop) {
+        throw malformed();
+      }
+      final byte escaped = buf[i + 1];
+      i += 2;
+      switch (escaped) {
+        case '"' -> sb.append('"');
+        case '\\' -> sb.append('\\');
+        case '/' -> sb.append('/');
+        case 'b' -> sb.append('\b');
+        case 'f' -> sb.append('\f');
+        case 'n' -> sb.append('\n');
+        case 'r' -> sb.append('\r');
+        case 't' -> sb.append('\t');
+        case 'u' -> {
+          if (i + 4 > stop) {
+            throw malformed();
+          }
+          int cp = 0;
+          for (int k = 0; k < 4; k++) {
+            final int digit = Character.digit(buf[i + k], 16);
+            if (digit < 0) {
+              throw malformed();
+            }
+            cp = cp << 4 | digit;
+          }
+          sb.append((char) cp);
+          i += 4;
+        }
+        default -> throw malformed();
+      }
+      runStart = i;
+    }
+    sb.append(new String(buf, runStart, stop - runStart, StandardCharsets.UTF_8));
+    return sb.toString();
+  }
+
+  private void skipWhitespace() {
+    while (pos < end) {
+      final byte b = buf[pos];
+      if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+        return;
+      }
+      pos++;
+    }
+  }
+
+  private byte peek() {
+    if (pos >= end) {
+      throw malformed();
+    }
+    return buf[pos];
+  }
+
+  private byte next() {
+    final byte b = peek();
+    pos++;
+    return b;
+  }
+
+  private void expect(char c) {
+    if (next() != c) {
+      throw malformed();
+    }
+  }
+
+  private void expectLiteral(String literal) {
+    if (pos + literal.length() > end) {
+      throw malformed();
+    }
+    for (int i = 0; i < literal.length(); i++) {
+      if (buf[pos + i] != literal.charAt(i)) {
+        throw malformed();
+      }
+    }
+    pos += literal.length();
+  }
+
+  private void expectEnd() {
+    skipWhitespace();
+    if (pos != end) {
+      throw malformed();
+    }
+  }
+
+  private static InvalidJwtException malformed() {
+    return new InvalidJwtException("Malformed token claims");
+  }
+}
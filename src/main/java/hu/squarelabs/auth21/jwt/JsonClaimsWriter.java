@@ -0,0 +1,208 @@
+package hu.squarelabs.auth21.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Minimal streaming JSON writer that emits UTF-8 straight into a reusable byte buffer. It supports
+ * the value types that can appear in JWT claims: strings, numbers, booleans, null, maps and
+ * collections.
+ */
+final class JsonClaimsWriter {
+  private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+  private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+  private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+
+  private byte[] buffer;
+  private int length;
+  private boolean first;
+
+  JsonClaimsWriter(int initialCapacity) {
+    this.buffer = new byte[initialCapacity];
+  }
+
+  byte[] buffer() {
+    return buffer;
+  }
+
+  int length() {
+    return length;
+  }
+
+  void reset() {
+    length = 0;
+  }
+
+  void beginObject() {
+    writeByte('{');
+    first = true;
+  }
+
+  void endObject() {
+    writeByte('}');
+    first = false;
+  }
+
+  void name(String name) {
+    if (!first) {
+      writeByte(',');
+    }
+    first = false;
+    writeString(name);
+    writeByte(':');
+  }
+
+  void field(String name, String value) {
+    if (value != null) {
+      name(name);
+      writeString(value);
+    }
+  }
+
+  void field(String name, Long value) {
+    if (value != null) {
+      name(name);
+      writeLong(value);
+    }
+  }
+
+  void field(String name, Object value) {
+    if (value != null) {
+      name(name);
+      writeValue(value);
+    }
+  }
+
+  void writeValue(Object value) {
+    if (value == null) {
+      writeBytes(NULL);
+    } else if (value instanceof String s) {
+      writeString(s);
+    } else if (value instanceof Long || value instanceof Integer || value instanceof Short) {
+      writeLong(((Number) value).longValue());
+    } else if (value instanceof Boolean b) {
+      writeBytes(b ? TRUE : FALSE);
+    } else if (value instanceof Number n) {
+      writeAscii(n.toString());
+    } else if (value instanceof Map<?, ?> map) {
+      writeMap(map);
+    } else if (value instanceof Collection<?> collection) {
+      writeCollection(collection);
+    } else {
+      writeString(value.toString());
+    }
+  }
+
+  private void writeMap(Map<?, ?> map) {
+    beginObject();
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      name(String.valueOf(entry.getKey()));
+      writeValue(entry.getValue());
+    }
+    endObject();
+  }
+
+  private void writeCollection(Collection<?> collection) {
+    writeByte('[');
+    boolean firstElement = true;
+    for (Object element : collection) {
+      if (!firstElement) {
+        writeByte(',');
+      }
+      firstElement = false;
+      writeValue(element);
+    }
+    writeByte(']');
+    first = false;
+  }
+
+  void writeLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      writeAscii(Long.toString(value));
+      return;
+    }
+    ensureCapacity(20);
+    if (value < 0) {
+      buffer[length++] = '-';
+      value = -value;
+    }
+    int digits = 1;
+    for (long v = value; v >= 10; v /= 10) {
+      digits++;
+    }
+    int pos = length + digits;
+    length = pos;
+    do {
+      buffer[--pos] = (byte) ('0' + value % 10);
+      value /= 10;
+    } while (value != 0);
+  }
+
+  void writeString(String value) {
+    final int len = value.length();
+    ensureCapacity(len * 6 + 2);
+    buffer[length++] = '"';
+    for (int i = 0; i < len; i++) {
+      final char c = value.charAt(i);
+      if (c < 0x80) {
+        if (c == '"' || c == '\\') {
+          buffer[length++] = '\\';
+          buffer[length++] = (byte) c;
+        } else if (c < 0x20) {
+          buffer[length++] = '\\';
+          buffer[length++] = 'u';
+          buffer[length++] = '0';
+          buffer[length++] = '0';
+          buffer[length++] = HEX[c >> 4];
+          buffer[length++] = HEX[c & 0xf];
+        } else {
+          buffer[length++] = (byte) c;
+        }
+      } else if (c < 0x800) {
+        buffer[length++] = (byte) (0xc0 | (c >> 6));
+        buffer[length++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < len
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        final int cp = Character.toCodePoint(c, value.charAt(++i));
+        buffer[length++] = (byte) (0xf0 | (cp >> 18));
+        buffer[length++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+        buffer[length++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+        buffer[length++] = (byte) (0x80 | (cp & 0x3f));
+      } else {
+        buffer[length++] = (byte) (0xe0 | (c >> 12));
+        buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        buffer[length++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    buffer[length++] = '"';
+  }
+
+  private void writeAscii(String value) {
+    final int len = value.length();
+    ensureCapacity(len);
+    for (int i = 0; i < len; i++) {
+      buffer[length++] = (byte) value.charAt(i);
+    }
+  }
+
+  private void writeBytes(byte[] bytes) {
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, buffer, length, bytes.length);
+    length += bytes.length;
+  }
+
+  private void writeByte(char c) {
+    ensureCapacity(1);
+    buffer[length++] = (byte) c;
+  }
+
+  private void ensureCapacity(int extra) {
+    if (length + extra > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+    }
+  }
+}
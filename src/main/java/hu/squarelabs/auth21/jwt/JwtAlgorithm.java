@@ -0,0 +1,41 @@
+package hu.squarelabs.auth21.jwt;
+
+/**
+ * JWS algorithms the service can sign with. HMAC algorithms use {@code jwt.secret}; asymmetric ones
+ * sign with the private keys of a {@link JwtKeyRing} and publish the public halves as a JWKS.
+ */
+public enum JwtAlgorithm {
+  HS256("HmacSHA256", null, 32),
+  HS512("HmacSHA512", null, 64),
+  /** ECDSA on P-256. The P1363 format yields the fixed-size R || S encoding JWS expects. */
+  ES256(null, "SHA256withECDSAinP1363Format", 64),
+  EdDSA(null, "Ed25519", 64);
+
+  private final String macAlgorithm;
+  private final String signatureAlgorithm;
+  private final int signatureLength;
+
+  JwtAlgorithm(String macAlgorithm, String signatureAlgorithm, int signatureLength) {
+    this.macAlgorithm = macAlgorithm;
+    this.signatureAlgorithm = signatureAlgorithm;
+    this.signatureLength = signatureLength;
+  }
+
+  /** JCA name of the MAC, or null for an asymmetric algorithm. */
+  public String getMacAlgorithm() {
+    return macAlgorithm;
+  }
+
+  /** JCA name of the signature algorithm, or null for an HMAC algorithm. */
+  public String getSignatureAlgorithm() {
+    return signatureAlgorithm;
+  }
+
+  public int getSignatureLength() {
+    return signatureLength;
+  }
+
+  public boolean isAsymmetric() {
+    return signatureAlgorithm != null;
+  }
+}
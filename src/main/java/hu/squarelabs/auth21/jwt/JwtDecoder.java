@@ -0,0 +1,213 @@
+package hu.squarelabs.auth21.jwt;
+
+import hu.squarelabs.auth21.model.JwtToken;
+import hu.squarelabs.auth21.util.StripedPool;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.function.LongSupplier;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Verifies compact JWS tokens produced by {@link JwtEncoder} and turns them into {@link JwtToken}.
+ *
+ * <p>Checks run from cheapest to most expensive: the token shape and header are matched against the
+ * expected header segment, or for asymmetric algorithms against the headers of the keys the {@link
+ * JwtKeyRing} publishes, the signature is recomputed with a pooled {@link Mac} and compared in
+ * constant time or checked with the key's pooled {@link java.security.Signature}, and the payload
+ * is decoded into a pooled buffer and tokenized without building a JSON tree. Claim strings and the
+ * user map are only materialized once the token is known to be authentic and unexpired.
+ */
+@Component
+public class JwtDecoder {
+  private static final int MAX_TOKEN_LENGTH = 8192;
+
+  private final JwtAlgorithm algorithm;
+  private final JwtKeyRing keyRing;
+  private final String headerSegment;
+  private final int signatureSegmentLength;
+  private final LongSupplier epochSeconds;
+  private final StripedPool<DecoderState> states;
+
+  @Autowired
+  public JwtDecoder(
+      @Value("${jwt.secret}") String secret,
+      @Value("${jwt.algorithm:HS256}") String algorithm,
+      JwtKeyRing keyRing) {
+    this(
+        JwtAlgorithm.valueOf(algorithm),
+        secret.getBytes(StandardCharsets.UTF_8),
+        keyRing,
+        () -> System.currentTimeMillis() / 1000);
+  }
+
+  public JwtDecoder(byte[] secret, JwtAlgorithm algorithm) {
+    this(secret, algorithm, () -> System.currentTimeMillis() / 1000);
+  }
+
+  JwtDecoder(byte[] secret, JwtAlgorithm algorithm, LongSupplier epochSeconds) {
+    this(algorithm, secret, null, epochSeconds);
+  }
+
+  public JwtDecoder(JwtKeyRing keyRing) {
+    this(keyRing, () -> System.currentTimeMillis() / 1000);
+  }
+
+  JwtDecoder(JwtKeyRing keyRing, LongSupplier epochSeconds) {
+    this(keyRing.getAlgorithm(), null, keyRing, epochSeconds);
+  }
+
+  private JwtDecoder(
+      JwtAlgorithm algorithm, byte[] secret, JwtKeyRing keyRing, LongSupplier epochSeconds) {
+    this.algorithm = algorithm;
+    this.signatureSegmentLength = Base64Url.encodedLength(algorithm.getSignatureLength());
+    this.epochSeconds = epochSeconds;
+    if (algorithm.isAsymmetric()) {
+      if (keyRing == null || keyRing.getAlgorithm() != algorithm) {
+        throw new IllegalArgumentException(algorithm + " verifies with a key ring of its own kind");
+      }
+      this.keyRing = keyRing;
+      this.headerSegment = null;
+      this.states = new StripedPool<>(() -> new DecoderState(null));
+      return;
+    }
+
+    this.keyRing = null;
+    this.headerSegment = new String(JwtEncoder.encodeHeader(algorithm), StandardCharsets.US_ASCII);
+    final var key = new SecretKeySpec(secret, algorithm.getMacAlgorithm());
+    JwtEncoder.newMac(key); // fail fast on a key the provider rejects
+    this.states = new StripedPool<>(() -> new DecoderState(JwtEncoder.newMac(key)));
+  }
+
+  public JwtToken decode(String token) {
+    if (token == null || token.length() > MAX_TOKEN_LENGTH) {
+      throw new InvalidJwtException("Malformed token");
+    }
+
+    final SigningKey key;
+    final int headerEnd;
+    if (keyRing != null) {
+      key = keyRing.keyFor(token);
+      if (key == null) {
+        throw new InvalidJwtException("Unknown signing key");
+      }
+      headerEnd = key.headerSegment().length;
+    } else {
+      key = null;
+      headerEnd = headerSegment.length();
+      if (!token.startsWith(headerSegment)
+          || token.length() <= headerEnd
+          || token.charAt(headerEnd) != '.') {
+        throw new InvalidJwtException("Unsupported token header");
+      }
+    }
+
+    final int signatureStart = token.length() - signatureSegmentLength;
+    final int payloadEnd = signatureStart - 1;
+    if (payloadEnd <= headerEnd + 1
+        || token.charAt(payloadEnd) != '.'
+        || token.indexOf('.', headerEnd + 1) != payloadEnd) {
+      throw new InvalidJwtException("Malformed token");
+    }
+
+    final var decoderState = states.acquire();
+    try {
+      return decode(token, key, decoderState, headerEnd, payloadEnd, signatureStart);
+    } finally {
+      states.release(decoderState);
+    }
+  }
+
+  private JwtToken decode(
+      String token,
+      SigningKey key,
+      DecoderState decoderState,
+      int headerEnd,
+      int payloadEnd,
+      int signatureStart) {
+    verifySignature(key, decoderState, token, payloadEnd, signatureStart);
+
+    final int payloadLength = Base64Url.decodedLength(payloadEnd - headerEnd - 1);
+    if (payloadLength < 0) {
+      throw new InvalidJwtException("Malformed token");
+    }
+    final byte[] payload = decoderState.payload(payloadLength);
+    if (Base64Url.decode(token, headerEnd + 1, payloadEnd, payload, 0) < 0) {
+      throw new InvalidJwtException("Malformed token");
+    }
+
+    final var reader = decoderState.reader;
+    reader.scan(payload, payloadLength);
+    if (!reader.hasExp()) {
+      throw new InvalidJwtException("Token has no expiration");
+    }
+    if (reader.exp() <= epochSeconds.getAsLong()) {
+      throw new InvalidJwtException("Token has expired");
+    }
+
+    return reader.toJwtToken();
+  }
+
+  private void verifySignature(
+      SigningKey key, DecoderState decoderState, String token, int payloadEnd, int signatureStart) {
+    final byte[] actual = decoderState.actualSignature;
+    if (Base64Url.decode(token, signatureStart, token.length(), actual, 0) < 0) {
+      throw new InvalidJwtException("Invalid token signature");
+    }
+
+    final byte[] signingInput = decoderState.signingInput(payloadEnd);
+    for (int i = 0; i < payloadEnd; i++) {
+      signingInput[i] = (byte) token.charAt(i);
+    }
+
+    if (key != null) {
+      if (!key.verify(signingInput, payloadEnd, actual)) {
+        throw new InvalidJwtException("Invalid token signature");
+      }
+      return;
+    }
+
+    final Mac mac = decoderState.mac;
+    mac.update(signingInput, 0, payloadEnd);
+    try {
+      mac.doFinal(decoderState.expectedSignature, 0);
+    } catch (ShortBufferException e) {
+      throw new IllegalStateException("Signature buffer too small", e);
+    }
+
+    if (!MessageDigest.isEqual(decoderState.expectedSignature, actual)) {
+      throw new InvalidJwtException("Invalid token signature");
+    }
+  }
+
+  private final class DecoderState {
+    private final Mac mac;
+    private final JsonClaimsReader reader = new JsonClaimsReader();
+    private final byte[] expectedSignature = new byte[algorithm.getSignatureLength()];
+    private final byte[] actualSignature = new byte[algorithm.getSignatureLength()];
+    private byte[] signingInput = new byte[512];
+    private byte[] payload = new byte[512];
+
+    private DecoderState(Mac mac) {
+      this.mac = mac;
+    }
+
+    private byte[] signingInput(int capacity) {
+      if (signingInput.length < capacity) {
+        signingInput = new byte[Math.max(capacity, signingInput.length * 2)];
+      }
+      return signingInput;
+    }
+
+    private byte[] payload(int capacity) {
+      if (payload.length < capacity) {
+        payload = new byte[Math.max(capacity, payload.length * 2)];
+      }
+      return payload;
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package hu.squarelabs.auth21.jwt;
+
+import hu.squarelabs.auth21.model.JwtToken;
+import hu.squarelabs.auth21.util.StripedPool;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compact JWS encoder for tokens signed with an HMAC secret or, for ES256 and EdDSA, with the
+ * current key of a {@link JwtKeyRing}.
+ *
+ * <p>The header segment is constant per algorithm, or per key for asymmetric algorithms where it
+ * carries the {@code kid}, and is encoded once. Claims are streamed from {@link JwtToken} into a
+ * pooled buffer, Base64url-encoded in place and signed with a pooled {@link Mac} or {@link
+ * java.security.Signature}, so issuing a token allocates little more than the resulting string.
+ */
+@Component
+public class JwtEncoder {
+  private static final int INITIAL_BUFFER_SIZE = 512;
+
+  private final JwtAlgorithm algorithm;
+  private final JwtKeyRing keyRing;
+  private final byte[] headerSegment;
+  private final StripedPool<EncoderState> states;
+
+  @Autowired
+  public JwtEncoder(
+      @Value("${jwt.secret}") String secret,
+      @Value("${jwt.algorithm:HS256}") String algorithm,
+      JwtKeyRing keyRing) {
+    this(JwtAlgorithm.valueOf(algorithm), secret.getBytes(StandardCharsets.UTF_8), keyRing);
+  }
+
+  public JwtEncoder(byte[] secret, JwtAlgorithm algorithm) {
+    this(algorithm, secret, null);
+  }
+
+  public JwtEncoder(JwtKeyRing keyRing) {
+    this(keyRing.getAlgorithm(), null, keyRing);
+  }
+
+  private JwtEncoder(JwtAlgorithm algorithm, byte[] secret, JwtKeyRing keyRing) {
+    this.algorithm = algorithm;
+    if (algorithm.isAsymmetric()) {
+      if (keyRing == null || keyRing.getAlgorithm() != algorithm) {
+        throw new IllegalArgumentException(algorithm + " signs with a key ring of its own kind");
+      }
+      this.keyRing = keyRing;
+      this.headerSegment = null;
+      this.states = new StripedPool<>(() -> new EncoderState(null));
+      return;
+    }
+
+    this.keyRing = null;
+    this.headerSegment = encodeHeader(algorithm);
+    final var key = new SecretKeySpec(secret, algorithm.getMacAlgorithm());
+    newMac(key); // fail fast on a key the provider rejects
+    this.states = new StripedPool<>(() -> new EncoderState(newMac(key)));
+  }
+
+  public JwtAlgorithm getAlgorithm() {
+    return algorithm;
+  }
+
+  public String encode(JwtToken jwtToken) {
+    final var encoderState = states.acquire();
+    try {
+      return encode(jwtToken, encoderState);
+    } finally {
+      states.release(encoderState);
+    }
+  }
+
+  private String encode(JwtToken jwtToken, EncoderState encoderState) {
+    final var claims = encoderState.claims;
+
+    claims.reset();
+    writeClaims(claims, jwtToken);
+
+    final var signingKey = keyRing == null ? null : keyRing.signingKey();
+    final byte[] header = signingKey == null ? headerSegment : signingKey.headerSegment();
+
+    final int signatureLength = algorithm.getSignatureLength();
+    final int maxLength =
+        header.length
+            + 2
+            + Base64Url.encodedLength(claims.length())
+            + Base64Url.encodedLength(signatureLength);
+    final byte[] out = encoderState.output(maxLength);
+
+    System.arraycopy(header, 0, out, 0, header.length);
+    int pos = header.length;
+    out[pos++] = '.';
+    pos = Base64Url.encode(claims.buffer(), 0, claims.length(), out, pos);
+
+    if (signingKey != null) {
+      signingKey.sign(out, pos, encoderState.signature);
+    } else {
+      final var mac = encoderState.mac;
+      mac.update(out, 0, pos);
+      try {
+        mac.doFinal(encoderState.signature, 0);
+      } catch (ShortBufferException e) {
+        throw new IllegalStateException("Signature buffer too small", e);
+      }
+    }
+
+    out[pos++] = '.';
+    pos = Base64Url.encode(encoderState.signature, 0, signatureLength, out, pos);
+
+    return new String(out, 0, pos, StandardCharsets.ISO_8859_1);
+  }
+
+  static void writeClaims(JsonClaimsWriter writer, JwtToken jwtToken) {
+    writer.beginObject();
+    writer.field("jti", jwtToken.getJti());
+    writer.field("sub", jwtToken.getSub());
+    writer.field("iat", jwtToken.getIat());
+    writer.field("exp", jwtToken.getExp());
+    writer.field("user", (Object) jwtToken.getUser());
+    writer.endObject();
+  }
+
+  static byte[] encodeHeader(JwtAlgorithm algorithm) {
+    final byte[] json =
+        ("{\"alg\":\"" + algorithm.name() + "\",\"typ\":\"JWT\"}")
+            .getBytes(StandardCharsets.US_ASCII);
+    final byte[] segment = new byte[Base64Url.encodedLength(json.length)];
+    Base64Url.encode(json, 0, json.length, segment, 0);
+    return segment;
+  }
+
+  static Mac newMac(SecretKeySpec key) {
+    try {
+      final var mac = Mac.getInstance(key.getAlgorithm());
+      mac.init(key);
+      return mac;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Unable to initialize " + key.getAlgorithm(), e);
+    }
+  }
+
+  private final class EncoderState {
+    private final Mac mac;
+    private final JsonClaimsWriter claims = new JsonClaimsWriter(INITIAL_BUFFER_SIZE);
+    private final byte[] signature = new byte[algorithm.getSignatureLength()];
+    private byte[] output = new byte[INITIAL_BUFFER_SIZE];
+
+    private EncoderState(Mac mac) {
+      this.mac = mac;
+    }
+
+    private byte[] output(int capacity) {
+      if (output.length < capacity) {
+        output = Arrays.copyOf(output, Math.max(capacity, output.length * 2));
+      }
+      return output;
+    }
+  }
+}
@@ -0,0 +1,280 @@
+package hu.squarelabs.auth21.jwt;
+
+import hu.squarelabs.auth21.util.DaemonThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory ring of asymmetric signing keys for {@code jwt.algorithm} ES256 or EdDSA, rotated on a
+ * schedule with overlap on both sides of each key's signing period.
+ *
+ * <p>A key signs new tokens for {@code rotation-interval-ms}. Its successor is generated and
+ * published in the JWKS {@code publish-ahead-ms} before it takes over, so resource servers that
+ * cache the JWKS already know it when the first token signed with it arrives. A retired key stays
+ * published and keeps verifying for {@code retain-ms}, which must cover {@code jwt.token.lifetime}.
+ *
+ * <p>The current keys, the signing key and the serialized JWKS with its ETag are one immutable
+ * snapshot behind a volatile field, so signing, verification and JWKS requests never lock.
+ *
+ * <p>Keys live only in this process and are never persisted. Another replica could neither verify
+ * the tokens signed here nor publish their keys, and a restart invalidates every token issued
+ * before it. The ring therefore refuses to start unless {@code jwt.keys.single-node} declares that
+ * exactly one instance issues and introspects tokens. With {@code jwt.algorithm} HS256 or HS512 the
+ * ring stays empty and the JWKS lists no keys.
+ */
+@Component
+public class JwtKeyRing {
+  private static final Logger logger = LogManager.getLogger(JwtKeyRing.class);
+
+  /** The serialized JWK Set and its strong entity tag. */
+  public record Jwks(byte[] json, String etag) {}
+
+  private record KeySet(SigningKey signing, List<SigningKey> keys, Jwks jwks) {}
+
+  private final JwtAlgorithm algorithm;
+  private final long rotationMillis;
+  private final long publishAheadMillis;
+  private final long retainMillis;
+  private final long checkMillis;
+  private final LongSupplier epochMillis;
+  private volatile KeySet keySet;
+  private ScheduledExecutorService rotator;
+
+  @Autowired
+  public JwtKeyRing(
+      @Value("${jwt.algorithm:HS256}") String algorithm,
+      @Value("${jwt.keys.rotation-interval-ms:86400000}") long rotationMillis,
+      @Value("${jwt.keys.publish-ahead-ms:3600000}") long publishAheadMillis,
+      @Value("${jwt.keys.retain-ms:7200000}") long retainMillis,
+      @Value("${jwt.keys.check-interval-ms:60000}") long checkMillis,
+      @Value("${jwt.keys.single-node:false}") boolean singleNode,
+      @Value("${jwt.token.lifetime:3600}") long tokenLifetimeSeconds) {
+    this(
+        requireSingleNode(JwtAlgorithm.valueOf(algorithm), singleNode),
+        rotationMillis,
+        publishAheadMillis,
+        retainMillis,
+        checkMillis,
+        tokenLifetimeSeconds * 1000,
+        System::currentTimeMillis);
+  }
+
+  JwtKeyRing(
+      JwtAlgorithm algorithm,
+      long rotationMillis,
+      long publishAheadMillis,
+      long retainMillis,
+      long checkMillis,
+      long tokenLifetimeMillis,
+      LongSupplier epochMillis) {
+    if (publishAheadMillis >= rotationMillis) {
+      throw new IllegalArgumentException(
+          "jwt.keys.publish-ahead-ms must be shorter than jwt.keys.rotation-interval-ms");
+    }
+    if (algorithm.isAsymmetric() && retainMillis < tokenLifetimeMillis) {
+      throw new IllegalArgumentException(
+          "jwt.keys.retain-ms must be at least jwt.token.lifetime, or tokens outlive their key");
+    }
+    this.algorithm = algorithm;
+    this.rotationMillis = rotationMillis;
+    this.publishAheadMillis = publishAheadMillis;
+    this.retainMillis = retainMillis;
+    this.checkMillis = checkMillis;
+    this.epochMillis = epochMillis;
+
+    if (algorithm.isAsymmetric()) {
+      final long now = epochMillis.getAsLong();
+      final var first = generate(now, now + rotationMillis);
+      this.keySet = snapshot(first, List.of(first));
+    } else {
+      this.keySet = snapshot(null, List.of());
+    }
+  }
+
+  private static JwtAlgorithm requireSingleNode(JwtAlgorithm algorithm, boolean singleNode) {
+    if (algorithm.isAsymmetric() && !singleNode) {
+      throw new IllegalArgumentException(
+          "jwt.algorithm "
+              + algorithm
+              + " keeps its signing keys in memory, so tokens only verify on the instance that"
+              + " issued them; set jwt.keys.single-node=true if exactly one instance runs");
+    }
+    return algorithm;
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!isEnabled() || checkMillis <= 0) {
+      return;
+    }
+    rotator = DaemonThreads.scheduler("jwt-key-rotation");
+    rotator.scheduleAtFixedRate(
+        this::rotateQuietly, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (rotator != null) {
+      rotator.shutdownNow();
+    }
+  }
+
+  public boolean isEnabled() {
+    return algorithm.isAsymmetric();
+  }
+
+  public JwtAlgorithm getAlgorithm() {
+    return algorithm;
+  }
+
+  public long getPublishAheadMillis() {
+    return publishAheadMillis;
+  }
+
+  /** The key new tokens are signed with. */
+  public SigningKey signingKey() {
+    final var signing = keySet.signing;
+    if (signing == null) {
+      throw new IllegalStateException(algorithm + " does not sign with a key ring");
+    }
+    return signing;
+  }
+
+  /** Every key currently published, oldest first. */
+  public List<SigningKey> keys() {
+    return keySet.keys;
+  }
+
+  /**
+   * The published key whose JWS header {@code token} starts with, or null. Matching the encoded
+   * header directly avoids decoding it; the ring only ever holds a handful of keys.
+   */
+  SigningKey keyFor(String token) {
+    for (SigningKey key : keySet.keys) {
+      final byte[] header = key.headerSegment();
+      if (token.length() > header.length
+          && token.charAt(header.length) == '.'
+          && startsWith(token, header)) {
+        return key;
+      }
+    }
+    return null;
+  }
+
+  public Jwks jwks() {
+    return keySet.jwks;
+  }
+
+  private void rotateQuietly() {
+    try {
+      rotate();
+    } catch (RuntimeException e) {
+      logger.error("JWT key rotation failed", e);
+    }
+  }
+
+  /**
+   * Brings the ring up to date: drops keys retired for longer than {@code retain-ms}, generates the
+   * next key once the current one is within {@code publish-ahead-ms} of retiring and switches
+   * signing to the newest key that has become active.
+   */
+  public synchronized void rotate() {
+    if (!isEnabled()) {
+      return;
+    }
+    final long now = epochMillis.getAsLong();
+    final var current = keySet;
+
+    final List<SigningKey> keys = new ArrayList<>();
+    for (SigningKey key : current.keys) {
+      if (key == current.signing || key.getRetiresAt() > now - retainMillis) {
+        keys.add(key);
+      }
+    }
+    final var newest = keys.get(keys.size() - 1);
+    if (newest.getRetiresAt() - publishAheadMillis <= now) {
+      final long activatesAt = Math.max(now, newest.getRetiresAt());
+      final var next = generate(activatesAt, activatesAt + rotationMillis);
+      keys.add(next);
+      logger.info(
+          "Published {} signing key {}, active from {}", algorithm, next.getKid(), activatesAt);
+    }
+
+    var signing = current.signing;
+    for (SigningKey key : keys) {
+      if (key.getActivatesAt() <= now) {
+        signing = key;
+      }
+    }
+    if (signing != current.signing) {
+      logger.info("Signing tokens with {} key {}", algorithm, signing.getKid());
+    }
+
+    if (signing != current.signing || !keys.equals(current.keys)) {
+      keySet = snapshot(signing, keys);
+    }
+  }
+
+  private SigningKey generate(long activatesAt, long retiresAt) {
+    try {
+      final KeyPairGenerator generator;
+      if (algorithm == JwtAlgorithm.ES256) {
+        generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+      } else {
+        generator = KeyPairGenerator.getInstance("Ed25519");
+      }
+      final KeyPair keyPair = generator.generateKeyPair();
+      return new SigningKey(algorithm, keyPair, activatesAt, retiresAt);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Unable to generate a " + algorithm + " key", e);
+    }
+  }
+
+  private static KeySet snapshot(SigningKey signing, List<SigningKey> keys) {
+    final var json = new StringBuilder("{\"keys\":[");
+    for (int i = 0; i < keys.size(); i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append(keys.get(i).jwk());
+    }
+    final byte[] bytes = json.append("]}").toString().getBytes(StandardCharsets.US_ASCII);
+    return new KeySet(signing, List.copyOf(keys), new Jwks(bytes, etag(bytes)));
+  }
+
+  private static String etag(byte[] json) {
+    try {
+      final byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+      return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + "\"";
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  private static boolean startsWith(String token, byte[] prefix) {
+    for (int i = 0; i < prefix.length; i++) {
+      if (token.charAt(i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,127 @@
+package hu.squarelabs.auth21.jwt;
+
+import hu.squarelabs.auth21.util.StripedPool;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.UUID;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Self-locating refresh tokens: the Base64url encoding of the access token's jti, a random nonce
+ * and a truncated HMAC-SHA256 over both, 64 characters in total.
+ *
+ * <p>Because the token carries its own jti, refresh resolves it with a strongly consistent GetItem
+ * on the base table instead of querying RefreshTokenIndex. The MAC lets forged or corrupted tokens
+ * be rejected before any DynamoDB call. The MAC key is derived from the configured secret so it is
+ * never used directly for both access and refresh tokens.
+ */
+@Component
+public class RefreshTokenCodec {
+  public static final int NONCE_LENGTH = 16;
+
+  /** Length of the opaque hex refresh tokens issued before this format. */
+  public static final int LEGACY_LENGTH = 16;
+
+  private static final int JTI_LENGTH = 16;
+  private static final int MAC_LENGTH = 16;
+  private static final int TOKEN_BYTES = JTI_LENGTH + NONCE_LENGTH + MAC_LENGTH;
+  private static final int TOKEN_LENGTH = Base64Url.encodedLength(TOKEN_BYTES);
+  private static final byte[] KEY_LABEL = "auth21 refresh token".getBytes(StandardCharsets.UTF_8);
+
+  private final StripedPool<Mac> macs;
+
+  @Autowired
+  public RefreshTokenCodec(@Value("${jwt.secret}") String secret) {
+    this(secret.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public RefreshTokenCodec(byte[] secret) {
+    final var derived =
+        JwtEncoder.newMac(new SecretKeySpec(secret, JwtAlgorithm.HS256.getMacAlgorithm()))
+            .doFinal(KEY_LABEL);
+    final var key = new SecretKeySpec(derived, JwtAlgorithm.HS256.getMacAlgorithm());
+    this.macs = new StripedPool<>(() -> JwtEncoder.newMac(key));
+  }
+
+  /**
+   * Builds a refresh token for the access token {@code jti}, which must be a UUID.
+   *
+   * @param nonce {@value #NONCE_LENGTH} random bytes
+   */
+  public String encode(String jti, byte[] nonce) {
+    if (nonce.length != NONCE_LENGTH) {
+      throw new IllegalArgumentException("Nonce must be " + NONCE_LENGTH + " bytes");
+    }
+    final var uuid = UUID.fromString(jti);
+
+    final var raw = new byte[TOKEN_BYTES];
+    ByteBuffer.wrap(raw)
+        .putLong(uuid.getMostSignificantBits())
+        .putLong(uuid.getLeastSignificantBits())
+        .put(nonce);
+    final var mac = mac(raw);
+    System.arraycopy(mac, 0, raw, JTI_LENGTH + NONCE_LENGTH, MAC_LENGTH);
+
+    final var encoded = new byte[TOKEN_LENGTH];
+    Base64Url.encode(raw, 0, raw.length, encoded, 0);
+    return new String(encoded, StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Returns the jti embedded in {@code refreshToken}, or empty when the token is not in this format
+   * or its MAC does not verify. Legacy opaque tokens therefore yield empty.
+   */
+  public Optional<String> jtiOf(String refreshToken) {
+    if (refreshToken == null || refreshToken.length() != TOKEN_LENGTH) {
+      return Optional.empty();
+    }
+
+    final var raw = new byte[TOKEN_BYTES];
+    if (Base64Url.decode(refreshToken, 0, TOKEN_LENGTH, raw, 0) != TOKEN_BYTES) {
+      return Optional.empty();
+    }
+
+    final var expected = Arrays.copyOf(mac(raw), MAC_LENGTH);
+    final var actual = Arrays.copyOfRange(raw, JTI_LENGTH + NONCE_LENGTH, TOKEN_BYTES);
+    if (!MessageDigest.isEqual(expected, actual)) {
+      return Optional.empty();
+    }
+
+    final var buffer = ByteBuffer.wrap(raw);
+    return Optional.of(new UUID(buffer.getLong(), buffer.getLong()).toString());
+  }
+
+  /**
+   * Whether {@code refreshToken} has the shape of a legacy opaque token: {@value #LEGACY_LENGTH}
+   * lowercase hex characters. Such tokens carry no jti and can only be checked against the store.
+   */
+  public static boolean isLegacy(String refreshToken) {
+    if (refreshToken == null || refreshToken.length() != LEGACY_LENGTH) {
+      return false;
+    }
+    for (int i = 0; i < LEGACY_LENGTH; i++) {
+      final char c = refreshToken.charAt(i);
+      if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private byte[] mac(byte[] raw) {
+    final var mac = macs.acquire();
+    try {
+      mac.update(raw, 0, JTI_LENGTH + NONCE_LENGTH);
+      return mac.doFinal();
+    } finally {
+      macs.release(mac);
+    }
+  }
+}
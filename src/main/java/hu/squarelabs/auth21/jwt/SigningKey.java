@@ -0,0 +1,176 @@
+package hu.squarelabs.auth21.jwt;
+
+import hu.squarelabs.auth21.util.StripedPool;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.interfaces.ECPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * One asymmetric key pair of a {@link JwtKeyRing}, together with everything derived from it that
+ * tokens need: the key id, which is the RFC 7638 thumbprint of the public key, the encoded JWS
+ * header carrying it, the public JWK and pooled {@link Signature} instances for each direction.
+ */
+public final class SigningKey {
+  private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+
+  private final JwtAlgorithm algorithm;
+  private final String kid;
+  private final byte[] headerSegment;
+  private final String jwk;
+  private final long activatesAt;
+  private final long retiresAt;
+  private final StripedPool<Signature> signers;
+  private final StripedPool<Signature> verifiers;
+
+  /**
+   * @param activatesAt epoch millis from which the key signs new tokens
+   * @param retiresAt epoch millis from which it no longer does; it keeps verifying for a while
+   */
+  SigningKey(JwtAlgorithm algorithm, KeyPair keyPair, long activatesAt, long retiresAt) {
+    this.algorithm = algorithm;
+    this.activatesAt = activatesAt;
+    this.retiresAt = retiresAt;
+
+    final String members = publicMembers(algorithm, keyPair);
+    this.kid = thumbprint(members);
+    this.jwk =
+        members.substring(0, members.length() - 1)
+            + ",\"kid\":\""
+            + kid
+            + "\",\"use\":\"sig\",\"alg\":\""
+            + algorithm.name()
+            + "\"}";
+    this.headerSegment =
+        base64Url(
+                ("{\"alg\":\"" + algorithm.name() + "\",\"kid\":\"" + kid + "\",\"typ\":\"JWT\"}")
+                    .getBytes(StandardCharsets.US_ASCII))
+            .getBytes(StandardCharsets.US_ASCII);
+
+    newSigner(keyPair); // fail fast on a key the provider rejects
+    this.signers = new StripedPool<>(() -> newSigner(keyPair));
+    this.verifiers = new StripedPool<>(() -> newVerifier(keyPair));
+  }
+
+  public String getKid() {
+    return kid;
+  }
+
+  public JwtAlgorithm getAlgorithm() {
+    return algorithm;
+  }
+
+  public long getActivatesAt() {
+    return activatesAt;
+  }
+
+  public long getRetiresAt() {
+    return retiresAt;
+  }
+
+  /** The public key as a JWK object. */
+  String jwk() {
+    return jwk;
+  }
+
+  /** The Base64url-encoded JWS header; shared, must not be modified. */
+  byte[] headerSegment() {
+    return headerSegment;
+  }
+
+  /** Signs {@code data[0, length)} into {@code signature}, which must fit the algorithm. */
+  void sign(byte[] data, int length, byte[] signature) {
+    final var signer = signers.acquire();
+    try {
+      signer.update(data, 0, length);
+      if (signer.sign(signature, 0, signature.length) != algorithm.getSignatureLength()) {
+        throw new IllegalStateException("Unexpected " + algorithm + " signature length");
+      }
+    } catch (SignatureException e) {
+      throw new IllegalStateException("Unable to sign with " + kid, e);
+    } finally {
+      signers.release(signer);
+    }
+  }
+
+  boolean verify(byte[] data, int length, byte[] signature) {
+    final var verifier = verifiers.acquire();
+    try {
+      verifier.update(data, 0, length);
+      return verifier.verify(signature);
+    } catch (SignatureException e) {
+      return false;
+    } finally {
+      verifiers.release(verifier);
+    }
+  }
+
+  private Signature newSigner(KeyPair keyPair) {
+    try {
+      final var signature = Signature.getInstance(algorithm.getSignatureAlgorithm());
+      signature.initSign(keyPair.getPrivate());
+      return signature;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Unable to initialize " + algorithm, e);
+    }
+  }
+
+  private Signature newVerifier(KeyPair keyPair) {
+    try {
+      final var signature = Signature.getInstance(algorithm.getSignatureAlgorithm());
+      signature.initVerify(keyPair.getPublic());
+      return signature;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Unable to initialize " + algorithm, e);
+    }
+  }
+
+  /** The required JWK members in the lexicographic order RFC 7638 hashes them in. */
+  private static String publicMembers(JwtAlgorithm algorithm, KeyPair keyPair) {
+    return switch (algorithm) {
+      case ES256 -> {
+        final var point = ((ECPublicKey) keyPair.getPublic()).getW();
+        yield "{\"crv\":\"P-256\",\"kty\":\"EC\",\"x\":\""
+            + base64Url(unsigned(point.getAffineX(), 32))
+            + "\",\"y\":\""
+            + base64Url(unsigned(point.getAffineY(), 32))
+            + "\"}";
+      }
+      case EdDSA -> {
+        // The X.509 encoding of an Ed25519 key ends with the 32-byte public key itself.
+        final byte[] encoded = keyPair.getPublic().getEncoded();
+        yield "{\"crv\":\"Ed25519\",\"kty\":\"OKP\",\"x\":\""
+            + base64Url(Arrays.copyOfRange(encoded, encoded.length - 32, encoded.length))
+            + "\"}";
+      }
+      default -> throw new IllegalArgumentException(algorithm + " is not an asymmetric algorithm");
+    };
+  }
+
+  private static String thumbprint(String members) {
+    try {
+      return base64Url(
+          MessageDigest.getInstance("SHA-256").digest(members.getBytes(StandardCharsets.US_ASCII)));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  private static byte[] unsigned(BigInteger value, int length) {
+    final byte[] bytes = value.toByteArray();
+    final byte[] out = new byte[length];
+    final int copied = Math.min(bytes.length, length);
+    System.arraycopy(bytes, bytes.length - copied, out, length - copied, copied);
+    return out;
+  }
+
+  private static String base64Url(byte[] bytes) {
+    return BASE64URL.encodeToString(bytes);
+  }
+}
@@ -0,0 +1,114 @@
+package hu.squarelabs.auth21.model.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Objects;
+
+/**
+ * RFC 7662 introspection result. An inactive token is answered with {@code active} alone, as the
+ * RFC recommends, so nothing about a revoked or forged token leaks.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class IntrospectionResponse {
+  private static final IntrospectionResponse INACTIVE = new IntrospectionResponse(false);
+
+  @JsonProperty("active")
+  private boolean active;
+
+  @JsonProperty("token_type")
+  private String tokenType;
+
+  @JsonProperty("sub")
+  private String sub;
+
+  @JsonProperty("jti")
+  private String jti;
+
+  @JsonProperty("iat")
+  private Long iat;
+
+  @JsonProperty("exp")
+  private Long exp;
+
+  public IntrospectionResponse() {}
+
+  private IntrospectionResponse(boolean active) {
+    this.active = active;
+  }
+
+  public IntrospectionResponse(String sub, String jti, Long iat, Long exp) {
+    this.active = true;
+    this.tokenType = "Bearer";
+    this.sub = sub;
+    this.jti = jti;
+    this.iat = iat;
+    this.exp = exp;
+  }
+
+  public static IntrospectionResponse inactive() {
+    return INACTIVE;
+  }
+
+  public boolean isActive() {
+    return active;
+  }
+
+  public String getTokenType() {
+    return tokenType;
+  }
+
+  public String getSub() {
+    return sub;
+  }
+
+  public String getJti() {
+    return jti;
+  }
+
+  public Long getIat() {
+    return iat;
+  }
+
+  public Long getExp() {
+    return exp;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    IntrospectionResponse that = (IntrospectionResponse) o;
+    return active == that.active
+        && Objects.equals(tokenType, that.tokenType)
+        && Objects.equals(sub, that.sub)
+        && Objects.equals(jti, that.jti)
+        && Objects.equals(iat, that.iat)
+        && Objects.equals(exp, that.exp);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(active, tokenType, sub, jti, iat, exp);
+  }
+
+  @Override
+  public String toString() {
+    return "IntrospectionResponse{"
+        + "active="
+        + active
+        + ", tokenType='"
+        + tokenType
+        + '\''
+        + ", sub='"
+        + sub
+        + '\''
+        + ", jti='"
+        + jti
+        + '\''
+        + ", iat="
+        + iat
+        + ", exp="
+        + exp
+        + '}';
+  }
+}
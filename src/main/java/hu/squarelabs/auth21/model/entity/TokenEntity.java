@@ -1,6 +1,7 @@
 package hu.squarelabs.auth21.model.entity;
 
-import hu.squarelabs.auth21.converter.MapAttributeConverter;
+import hu.squarelabs.auth21.converter.EpochSecondsAttributeConverter;
+import hu.squarelabs.auth21.converter.JwtClaimsAttributeConverter;
 import java.time.Instant;
 import java.util.Map;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.*;
@@ -25,7 +26,7 @@ public class TokenEntity {
     this.jti = jti;
   }
 
-  @DynamoDbConvertedBy(MapAttributeConverter.class)
+  @DynamoDbConvertedBy(JwtClaimsAttributeConverter.class)
   @DynamoDbAttribute("jwt_token")
   public Map<String, Object> getJwtToken() {
     return jwtToken;
@@ -45,6 +46,7 @@ public class TokenEntity {
     this.refreshToken = refreshToken;
   }
 
+  @DynamoDbConvertedBy(EpochSecondsAttributeConverter.class)
   @DynamoDbAttribute("expires_at")
   public Instant getExpiresAt() {
     return expiresAt;
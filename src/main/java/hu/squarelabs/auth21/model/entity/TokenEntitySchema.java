@@ -0,0 +1,75 @@
+package hu.squarelabs.auth21.model.entity;
+
+import hu.squarelabs.auth21.converter.EpochSecondsAttributeConverter;
+import hu.squarelabs.auth21.converter.JwtClaimsAttributeConverter;
+import java.time.Instant;
+import software.amazon.awssdk.enhanced.dynamodb.EnhancedType;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTags;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticTableSchema;
+
+/**
+ * Table schema for {@link TokenEntity} built from direct accessor references. Unlike {@link
+ * TableSchema#fromBean}, it needs no bean introspection at startup and lets the repositories choose
+ * the storage format of the {@code jwt_token} claims at runtime. It must mirror the mapping
+ * annotations on {@link TokenEntity}; {@code EntitySchemaConsistencyTest} checks that it does.
+ */
+public final class TokenEntitySchema {
+  /** Epoch seconds, the table's time-to-live attribute. */
+  public static final String EXPIRES_AT = "expires_at";
+
+  private TokenEntitySchema() {}
+
+  public static TableSchema<TokenEntity> create(JwtClaimsAttributeConverter.Format claimsFormat) {
+    return StaticTableSchema.builder(TokenEntity.class)
+        .newItemSupplier(TokenEntity::new)
+        .addAttribute(
+            String.class,
+            a ->
+                a.name("jti")
+                    .getter(TokenEntity::getJti)
+                    .setter(TokenEntity::setJti)
+                    .tags(StaticAttributeTags.primaryPartitionKey()))
+        .addAttribute(
+            EnhancedType.mapOf(String.class, Object.class),
+            a ->
+                a.name("jwt_token")
+                    .getter(TokenEntity::getJwtToken)
+                    .setter(TokenEntity::setJwtToken)
+                    .attributeConverter(new JwtClaimsAttributeConverter(claimsFormat)))
+        .addAttribute(
+            String.class,
+            a ->
+                a.name("refresh_token")
+                    .getter(TokenEntity::getRefreshToken)
+                    .setter(TokenEntity::setRefreshToken)
+                    .tags(StaticAttributeTags.secondaryPartitionKey("RefreshTokenIndex")))
+        .addAttribute(
+            Instant.class,
+            a ->
+                a.name(EXPIRES_AT)
+                    .getter(TokenEntity::getExpiresAt)
+                    .setter(TokenEntity::setExpiresAt)
+                    .attributeConverter(new EpochSecondsAttributeConverter()))
+        .addAttribute(
+            Instant.class,
+            a ->
+                a.name("created_at")
+                    .getter(TokenEntity::getCreatedAt)
+                    .setter(TokenEntity::setCreatedAt))
+        .addAttribute(
+            Instant.class,
+            a ->
+                a.name("updated_at")
+                    .getter(TokenEntity::getUpdatedAt)
+                    .setter(TokenEntity::setUpdatedAt))
+        .addAttribute(
+            String.class,
+            a ->
+                a.name("user_id")
+                    .getter(TokenEntity::getUserId)
+                    .setter(TokenEntity::setUserId)
+                    .tags(StaticAttributeTags.secondaryPartitionKey("UserIdIndex")))
+        .build();
+  }
+}
@@ -0,0 +1,75 @@
+package hu.squarelabs.auth21.model.entity;
+
+import java.time.Instant;
+import software.amazon.awssdk.enhanced.dynamodb.EnhancedType;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTags;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticTableSchema;
+
+/**
+ * Table schema for {@link UserEntity} built from direct accessor references, so no bean
+ * introspection or generated accessors are needed at startup. It must mirror the mapping
+ * annotations on {@link UserEntity}; {@code EntitySchemaConsistencyTest} checks that it does.
+ */
+public final class UserEntitySchema {
+  private static final TableSchema<UserEntity> SCHEMA =
+      StaticTableSchema.builder(UserEntity.class)
+          .newItemSupplier(UserEntity::new)
+          .addAttribute(
+              String.class,
+              a ->
+                  a.name("id")
+                      .getter(UserEntity::getId)
+                      .setter(UserEntity::setId)
+                      .tags(StaticAttributeTags.primaryPartitionKey()))
+          .addAttribute(
+              String.class,
+              a ->
+                  a.name("email")
+                      .getter(UserEntity::getEmail)
+                      .setter(UserEntity::setEmail)
+                      .tags(StaticAttributeTags.secondaryPartitionKey("EmailIndex")))
+          .addAttribute(
+              String.class,
+              a ->
+                  a.name("password_hash")
+                      .getter(UserEntity::getPasswordHash)
+                      .setter(UserEntity::setPasswordHash))
+          .addAttribute(
+              String.class,
+              a ->
+                  a.name("nickname")
+                      .getter(UserEntity::getNickname)
+                      .setter(UserEntity::setNickname))
+          .addAttribute(
+              String.class,
+              a -> a.name("name").getter(UserEntity::getName).setter(UserEntity::setName))
+          .addAttribute(
+              Instant.class,
+              a ->
+                  a.name("created_at")
+                      .getter(UserEntity::getCreatedAt)
+                      .setter(UserEntity::setCreatedAt))
+          .addAttribute(
+              Instant.class,
+              a ->
+                  a.name("updated_at")
+                      .getter(UserEntity::getUpdatedAt)
+                      .setter(UserEntity::setUpdatedAt))
+          .addAttribute(
+              Instant.class,
+              a ->
+                  a.name("deleted_at")
+                      .getter(UserEntity::getDeletedAt)
+                      .setter(UserEntity::setDeletedAt))
+          .addAttribute(
+              EnhancedType.listOf(String.class),
+              a -> a.name("roles").getter(UserEntity::getRoles).setter(UserEntity::setRoles))
+          .build();
+
+  private UserEntitySchema() {}
+
+  public static TableSchema<UserEntity> create() {
+    return SCHEMA;
+  }
+}
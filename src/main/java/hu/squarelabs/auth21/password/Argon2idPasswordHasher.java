@@ -0,0 +1,172 @@
+package hu.squarelabs.auth21.password;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.List;
+import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
+import org.bouncycastle.crypto.params.Argon2Parameters;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Argon2id hashes in PHC format: {@code $argon2id$v=19$m=<KiB>,t=<passes>,p=<lanes>$<salt>$<hash>}
+ * with unpadded standard Base64, as written by the reference implementation and most libraries.
+ *
+ * <p>New hashes use the configured memory and lanes, and the cost is the number of passes: memory
+ * is sized to the instance rather than measured, so calibration only ever scales time.
+ */
+@Component
+public class Argon2idPasswordHasher implements PasswordHasher {
+  static final String PREFIX = "$argon2id$";
+
+  private static final Base64.Decoder BASE64 = Base64.getDecoder();
+  private static final Base64.Encoder BASE64_ENCODER = Base64.getEncoder().withoutPadding();
+  private static final int MAX_MEMORY_KIB = 1 << 20;
+  private static final int MAX_ITERATIONS = 64;
+  private static final int MAX_PARALLELISM = 16;
+  private static final int HASH_LENGTH = 32;
+
+  private final int memoryKib;
+  private final int parallelism;
+
+  public Argon2idPasswordHasher() {
+    this(19_456, 1);
+  }
+
+  @Autowired
+  public Argon2idPasswordHasher(
+      @Value("${password.argon2.memory-kib:19456}") int memoryKib,
+      @Value("${password.argon2.parallelism:1}") int parallelism) {
+    if (Params.parse("m=" + memoryKib + ",t=1,p=" + parallelism) == null) {
+      throw new IllegalArgumentException(
+          "Invalid Argon2 memory " + memoryKib + " KiB for " + parallelism + " lanes");
+    }
+    this.memoryKib = memoryKib;
+    this.parallelism = parallelism;
+  }
+
+  @Override
+  public String algorithm() {
+    return "argon2id";
+  }
+
+  @Override
+  public List<String> prefixes() {
+    return List.of(PREFIX);
+  }
+
+  @Override
+  public boolean verify(String password, String hash) {
+    final var parts = hash.substring(PREFIX.length()).split("\\$");
+    if (parts.length != 4 || !"v=19".equals(parts[0])) {
+      return false;
+    }
+
+    try {
+      final var params = Params.parse(parts[1]);
+      if (params == null) {
+        return false;
+      }
+      final var salt = BASE64.decode(parts[2]);
+      final var expected = BASE64.decode(parts[3]);
+      return MessageDigest.isEqual(derive(password, salt, params, expected.length), expected);
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public String hash(String password, byte[] salt, int cost) {
+    final var params = new Params(memoryKib, cost, parallelism);
+    return PREFIX
+        + "v=19$m="
+        + memoryKib
+        + ",t="
+        + cost
+        + ",p="
+        + parallelism
+        + "$"
+        + BASE64_ENCODER.encodeToString(salt)
+        + "$"
+        + BASE64_ENCODER.encodeToString(derive(password, salt, params, HASH_LENGTH));
+  }
+
+  @Override
+  public int costOf(String hash) {
+    final var parts = hash.substring(PREFIX.length()).split("\\$");
+    if (parts.length != 4 || !"v=19".equals(parts[0])) {
+      return -1;
+    }
+    try {
+      final var params = Params.parse(parts[1]);
+      if (params == null
+          || params.memoryKib() != memoryKib
+          || params.parallelism() != parallelism) {
+        return -1;
+      }
+      return params.iterations();
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  @Override
+  public int minCost() {
+    return 1;
+  }
+
+  @Override
+  public int maxCost() {
+    return MAX_ITERATIONS;
+  }
+
+  /** Each pass fills the same memory again, so time is linear in the pass count. */
+  @Override
+  public int scaleCost(int cost, double factor) {
+    return (int) (cost * factor);
+  }
+
+  static byte[] derive(String password, byte[] salt, Params params, int length) {
+    final var generator = new Argon2BytesGenerator();
+    generator.init(
+        new Argon2Parameters.Builder(Argon2Parameters.ARGON2_id)
+            .withVersion(Argon2Parameters.ARGON2_VERSION_13)
+            .withMemoryAsKB(params.memoryKib())
+            .withIterations(params.iterations())
+            .withParallelism(params.parallelism())
+            .withSalt(salt)
+            .build());
+    final var out = new byte[length];
+    generator.generateBytes(password.getBytes(StandardCharsets.UTF_8), out);
+    return out;
+  }
+
+  record Params(int memoryKib, int iterations, int parallelism) {
+
+    /** Parses {@code m=..,t=..,p=..}, returning null for missing or out-of-range values. */
+    static Params parse(String text) {
+      int memory = -1;
+      int iterations = -1;
+      int parallelism = -1;
+      for (String param : text.split(",")) {
+        if (param.startsWith("m=")) {
+          memory = Integer.parseInt(param.substring(2));
+        } else if (param.startsWith("t=")) {
+          iterations = Integer.parseInt(param.substring(2));
+        } else if (param.startsWith("p=")) {
+          parallelism = Integer.parseInt(param.substring(2));
+        }
+      }
+      final boolean valid =
+          parallelism >= 1
+              && parallelism <= MAX_PARALLELISM
+              && iterations >= 1
+              && iterations <= MAX_ITERATIONS
+              && memory >= 8 * parallelism
+              && memory <= MAX_MEMORY_KIB;
+      return valid ? new Params(memory, iterations, parallelism) : null;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package hu.squarelabs.auth21.password;
+
+import java.util.List;
+import org.bouncycastle.crypto.generators.OpenBSDBCrypt;
+import org.springframework.stereotype.Component;
+
+/** OpenBSD bcrypt hashes ({@code $2a$}, {@code $2b$} and {@code $2y$}). */
+@Component
+public class BCryptPasswordHasher implements PasswordHasher {
+  private static final int MIN_ROUNDS = 10;
+  private static final int MAX_ROUNDS = 20;
+
+  @Override
+  public String algorithm() {
+    return "bcrypt";
+  }
+
+  @Override
+  public List<String> prefixes() {
+    return List.of("$2a$", "$2b$", "$2y$");
+  }
+
+  @Override
+  public boolean verify(String password, String hash) {
+    try {
+      return OpenBSDBCrypt.checkPassword(hash, password.toCharArray());
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /** Hashes as {@code $2b$}; {@code salt} must be 16 bytes. */
+  @Override
+  public String hash(String password, byte[] salt, int cost) {
+    return OpenBSDBCrypt.generate("2b", password.toCharArray(), salt, cost);
+  }
+
+  @Override
+  public int costOf(String hash) {
+    if (hash.length() < 7 || hash.charAt(6) != '$') {
+      return -1;
+    }
+    try {
+      return Integer.parseInt(hash.substring(4, 6));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  @Override
+  public int minCost() {
+    return MIN_ROUNDS;
+  }
+
+  @Override
+  public int maxCost() {
+    return MAX_ROUNDS;
+  }
+
+  /** The cost is the log2 of the round count, so each step doubles the time. */
+  @Override
+  public int scaleCost(int cost, double factor) {
+    return cost + (int) Math.floor(Math.log(factor) / Math.log(2));
+  }
+}
@@ -0,0 +1,174 @@
+package hu.squarelabs.auth21.password;
+
+import hu.squarelabs.auth21.exception.ServiceOverloadedException;
+import hu.squarelabs.auth21.util.DaemonThreads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs password verification on a dedicated pool sized to the CPU count, so a login flood is
+ * limited to those threads instead of starving request threads that serve refresh and
+ * introspection.
+ *
+ * <p>The pool's queue is bounded. When it is full the request is rejected straight away with a 503
+ * and a Retry-After header rather than waiting behind work that will take longer than the client is
+ * willing to wait. Queue wait and hash time are recorded as the {@code auth.password.queue.wait}
+ * and {@code auth.password.hash} timers, rejections as {@code auth.password.rejected}.
+ *
+ * <p>New hashes for outdated stored ones are made on the same pool, so rehashing on login competes
+ * with verification for the same CPU budget instead of adding to it.
+ */
+@Component
+public class PasswordHashExecutor {
+  static final String ERROR_MESSAGE_OVERLOADED = "Too many concurrent logins";
+
+  private static final Logger logger = LogManager.getLogger(PasswordHashExecutor.class);
+
+  private final Map<String, PasswordHasher> hashersByPrefix =
+      new TreeMap<>(
+          Comparator.<String>comparingInt(String::length)
+              .reversed()
+              .thenComparing(Comparator.naturalOrder()));
+  private final PasswordHashPolicy policy;
+  private final ThreadPoolExecutor pool;
+  private final Duration retryAfter;
+  private final MeterRegistry meterRegistry;
+  private final Timer queueWait;
+  private final Counter rejected;
+
+  public PasswordHashExecutor(
+      List<PasswordHasher> hashers,
+      PasswordHashPolicy policy,
+      MeterRegistry meterRegistry,
+      @Value("${password.hash.threads:0}") int threads,
+      @Value("${password.hash.queue-capacity:64}") int queueCapacity,
+      @Value("${password.hash.retry-after-seconds:1}") long retryAfterSeconds) {
+    for (PasswordHasher hasher : hashers) {
+      hasher.prefixes().forEach(prefix -> hashersByPrefix.put(prefix, hasher));
+    }
+    this.policy = policy;
+
+    final int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    this.pool =
+        new ThreadPoolExecutor(
+            poolSize,
+            poolSize,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            DaemonThreads.numbered("password-hash"),
+            new ThreadPoolExecutor.AbortPolicy());
+    this.retryAfter = Duration.ofSeconds(retryAfterSeconds);
+    this.meterRegistry = meterRegistry;
+    this.queueWait = Timer.builder("auth.password.queue.wait").register(meterRegistry);
+    this.rejected = Counter.builder("auth.password.rejected").register(meterRegistry);
+    meterRegistry.gauge("auth.password.queue.size", pool.getQueue(), Collection::size);
+  }
+
+  /**
+   * Verifies {@code password} against a stored hash of any supported format, blocking the caller
+   * until a hashing thread has finished.
+   *
+   * @throws ServiceOverloadedException when the hashing queue is full
+   */
+  public boolean verify(String password, String hash) {
+    try {
+      return verifyAsync(password, hash).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  /** Non-blocking {@link #verify}; saturation fails the returned future. */
+  public CompletableFuture<Boolean> verifyAsync(String password, String hash) {
+    if (password == null || hash == null) {
+      return CompletableFuture.completedFuture(false);
+    }
+    final var hasher = hasherFor(hash);
+    if (hasher == null) {
+      logger.warn("No password hasher for stored hash format");
+      return CompletableFuture.completedFuture(false);
+    }
+
+    final long enqueuedAt = System.nanoTime();
+    final var hashTime = Timer.builder("auth.password.hash").tag("algorithm", hasher.algorithm());
+    try {
+      return CompletableFuture.supplyAsync(
+          () -> {
+            final long startedAt = System.nanoTime();
+            queueWait.record(startedAt - enqueuedAt, TimeUnit.NANOSECONDS);
+            final boolean matches = hasher.verify(password, hash);
+            hashTime
+                .tag("outcome", matches ? "match" : "mismatch")
+                .register(meterRegistry)
+                .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            return matches;
+          },
+          pool);
+    } catch (RejectedExecutionException e) {
+      rejected.increment();
+      return CompletableFuture.failedFuture(
+          new ServiceOverloadedException(ERROR_MESSAGE_OVERLOADED, retryAfter));
+    }
+  }
+
+  /** Whether a verified {@code hash} should be replaced by {@link #hashAsync}. */
+  public boolean needsRehash(String hash) {
+    return hash != null && hasherFor(hash) != null && policy.needsRehash(hash);
+  }
+
+  /**
+   * Hashes {@code password} on the pool with the current algorithm and cost. Saturation fails the
+   * returned future.
+   */
+  public CompletableFuture<String> hashAsync(String password) {
+    final var hashTime =
+        Timer.builder("auth.password.hash")
+            .tag("algorithm", policy.algorithm())
+            .tag("outcome", "hash")
+            .register(meterRegistry);
+    try {
+      return CompletableFuture.supplyAsync(
+          () -> hashTime.record(() -> policy.hash(password)), pool);
+    } catch (RejectedExecutionException e) {
+      rejected.increment();
+      return CompletableFuture.failedFuture(
+          new ServiceOverloadedException(ERROR_MESSAGE_OVERLOADED, retryAfter));
+    }
+  }
+
+  PasswordHasher hasherFor(String hash) {
+    for (Map.Entry<String, PasswordHasher> entry : hashersByPrefix.entrySet()) {
+      if (hash.startsWith(entry.getKey())) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    pool.shutdown();
+  }
+}
@@ -0,0 +1,147 @@
+package hu.squarelabs.auth21.password;
+
+import hu.squarelabs.auth21.util.SecureIdGenerator;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides how new password hashes are made: with the {@code password.hash.algorithm} hasher at a
+ * cost calibrated on this host at startup, so that one hash takes about {@code
+ * password.hash.target-ms}. Login CPU cost then follows from the instance size instead of from a
+ * round count picked on someone's laptop.
+ *
+ * <p>Calibration times a hash at the algorithm's minimum cost, extrapolates to the target and
+ * re-measures until the estimate settles, then rounds down so a hash stays within the budget. The
+ * minimum cost is a security floor and is kept even when it alone exceeds the target. Setting
+ * {@code password.hash.cost} skips calibration and pins the cost, which keeps a fleet of mixed
+ * instance types from rehashing each other's users back and forth.
+ *
+ * <p>Stored hashes from another algorithm or with a lower cost are reported by {@link
+ * #needsRehash}, so they can be replaced the next time their owner logs in.
+ */
+@Component
+public class PasswordHashPolicy {
+  static final int SALT_LENGTH = 16;
+
+  private static final Logger logger = LogManager.getLogger(PasswordHashPolicy.class);
+  private static final String CALIBRATION_PASSWORD = "correct horse battery staple";
+  private static final int SAMPLES = 3;
+  private static final int MAX_ROUNDS = 6;
+
+  private final PasswordHasher hasher;
+  private final SecureIdGenerator idGenerator;
+  private final Duration target;
+  private final int pinnedCost;
+  private volatile int cost;
+
+  public PasswordHashPolicy(
+      List<PasswordHasher> hashers,
+      SecureIdGenerator idGenerator,
+      MeterRegistry meterRegistry,
+      @Value("${password.hash.algorithm:argon2id}") String algorithm,
+      @Value("${password.hash.target-ms:50}") long targetMillis,
+      @Value("${password.hash.cost:0}") int cost) {
+    this.hasher =
+        hashers.stream()
+            .filter(candidate -> candidate.algorithm().equals(algorithm))
+            .findFirst()
+            .orElseThrow(
+                () ->
+                    new IllegalArgumentException("Unknown password hash algorithm: " + algorithm));
+    this.idGenerator = idGenerator;
+    this.target = Duration.ofMillis(targetMillis);
+    this.pinnedCost = cost > 0 ? clamp(cost) : 0;
+    this.cost = pinnedCost > 0 ? pinnedCost : hasher.minCost();
+    Gauge.builder("auth.password.cost", this, PasswordHashPolicy::cost)
+        .tag("algorithm", algorithm)
+        .register(meterRegistry);
+  }
+
+  /** Measures this host and sets the cost, unless it was pinned by configuration. */
+  @PostConstruct
+  public void calibrate() {
+    if (pinnedCost > 0) {
+      logger.info("Using configured {} cost {}", hasher.algorithm(), pinnedCost);
+      return;
+    }
+
+    final long targetNanos = target.toNanos();
+    int candidate = hasher.minCost();
+    hasher.hash(CALIBRATION_PASSWORD, salt(), candidate);
+    long elapsed = time(candidate);
+    for (int round = 0; round < MAX_ROUNDS; round++) {
+      final double factor = (double) targetNanos / elapsed;
+      if (factor >= 1 && factor < 1.1) {
+        break;
+      }
+      final int next = clamp(hasher.scaleCost(candidate, factor));
+      if (next == candidate) {
+        break;
+      }
+      candidate = next;
+      elapsed = time(candidate);
+    }
+    if (elapsed > targetNanos) {
+      candidate = clamp(hasher.scaleCost(candidate, (double) targetNanos / elapsed));
+    }
+
+    this.cost = candidate;
+    logger.info(
+        "Calibrated {} cost {} ({} ms per hash, target {} ms)",
+        hasher.algorithm(),
+        candidate,
+        elapsed / 1_000_000,
+        target.toMillis());
+  }
+
+  /** Hashes {@code password} with the preferred algorithm, a fresh salt and the current cost. */
+  public String hash(String password) {
+    return hasher.hash(password, salt(), cost);
+  }
+
+  /** Whether {@code hash} was made by another algorithm or with less than the current cost. */
+  public boolean needsRehash(String hash) {
+    if (hasher.prefixes().stream().noneMatch(hash::startsWith)) {
+      return true;
+    }
+    return hasher.costOf(hash) < cost;
+  }
+
+  public String algorithm() {
+    return hasher.algorithm();
+  }
+
+  public int cost() {
+    return cost;
+  }
+
+  /** Median wall time of {@link #SAMPLES} hashes at {@code candidate}, in nanoseconds. */
+  private long time(int candidate) {
+    final var samples = new long[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      final long start = System.nanoTime();
+      hasher.hash(CALIBRATION_PASSWORD, salt(), candidate);
+      samples[i] = Math.max(1, System.nanoTime() - start);
+    }
+    Arrays.sort(samples);
+    return samples[SAMPLES / 2];
+  }
+
+  private byte[] salt() {
+    final var salt = new byte[SALT_LENGTH];
+    idGenerator.nextBytes(salt);
+    return salt;
+  }
+
+  private int clamp(int candidate) {
+    return Math.max(hasher.minCost(), Math.min(hasher.maxCost(), candidate));
+  }
+}
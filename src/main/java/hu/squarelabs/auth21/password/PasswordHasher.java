@@ -0,0 +1,47 @@
+package hu.squarelabs.auth21.password;
+
+import java.util.List;
+
+/**
+ * One password hashing scheme. Stored hashes are self-describing strings, and {@link
+ * PasswordHashExecutor} routes each one to the hasher owning its prefix, so a user table can hold a
+ * mix of algorithms while hashes are migrated.
+ */
+public interface PasswordHasher {
+
+  /** Short algorithm name, used as a metric tag. */
+  String algorithm();
+
+  /** Prefixes of the stored hashes this hasher can verify, such as {@code "$2b$"}. */
+  List<String> prefixes();
+
+  /**
+   * Checks {@code password} against {@code hash} in time independent of where they differ. Returns
+   * false rather than throwing when the hash is malformed.
+   */
+  boolean verify(String password, String hash);
+
+  /**
+   * Hashes {@code password} with {@code salt} at {@code cost}. What the cost means is up to the
+   * algorithm, but hashing time must grow with it so {@link PasswordHashPolicy} can calibrate it.
+   */
+  String hash(String password, byte[] salt, int cost);
+
+  /**
+   * The cost {@code hash} was produced with, or -1 when it cannot be read or was produced with
+   * parameters other than this hasher's configuration, so that it is always considered outdated.
+   */
+  int costOf(String hash);
+
+  /** Lowest cost this hasher will produce hashes with. */
+  int minCost();
+
+  /** Highest cost this hasher will produce hashes with. */
+  int maxCost();
+
+  /**
+   * The cost expected to take {@code factor} times as long as {@code cost}, rounded down, used to
+   * extrapolate from one timed hash to the latency target.
+   */
+  int scaleCost(int cost, double factor);
+}
@@ -0,0 +1,102 @@
+package hu.squarelabs.auth21.password;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.List;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import org.springframework.stereotype.Component;
+
+/** PBKDF2-HMAC-SHA256 hashes in PHC format: {@code $pbkdf2-sha256$i=<iterations>$<salt>$<hash>}. */
+@Component
+public class Pbkdf2PasswordHasher implements PasswordHasher {
+  static final String PREFIX = "$pbkdf2-sha256$";
+
+  private static final Base64.Decoder BASE64 = Base64.getDecoder();
+  private static final Base64.Encoder BASE64_ENCODER = Base64.getEncoder().withoutPadding();
+  private static final int MIN_ITERATIONS = 10_000;
+  private static final int MAX_ITERATIONS = 10_000_000;
+  private static final int HASH_LENGTH = 32;
+
+  @Override
+  public String algorithm() {
+    return "pbkdf2-sha256";
+  }
+
+  @Override
+  public List<String> prefixes() {
+    return List.of(PREFIX);
+  }
+
+  @Override
+  public boolean verify(String password, String hash) {
+    final var parts = hash.substring(PREFIX.length()).split("\\$");
+    if (parts.length != 3 || !parts[0].startsWith("i=")) {
+      return false;
+    }
+
+    try {
+      final int iterations = Integer.parseInt(parts[0].substring(2));
+      if (iterations < 1 || iterations > MAX_ITERATIONS) {
+        return false;
+      }
+      final var salt = BASE64.decode(parts[1]);
+      final var expected = BASE64.decode(parts[2]);
+      return MessageDigest.isEqual(derive(password, salt, iterations, expected.length), expected);
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public String hash(String password, byte[] salt, int cost) {
+    return PREFIX
+        + "i="
+        + cost
+        + "$"
+        + BASE64_ENCODER.encodeToString(salt)
+        + "$"
+        + BASE64_ENCODER.encodeToString(derive(password, salt, cost, HASH_LENGTH));
+  }
+
+  @Override
+  public int costOf(String hash) {
+    final var parts = hash.substring(PREFIX.length()).split("\\$");
+    if (parts.length != 3 || !parts[0].startsWith("i=")) {
+      return -1;
+    }
+    try {
+      return Integer.parseInt(parts[0].substring(2));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  @Override
+  public int minCost() {
+    return MIN_ITERATIONS;
+  }
+
+  @Override
+  public int maxCost() {
+    return MAX_ITERATIONS;
+  }
+
+  /** Iterations are hashed one after another, so time is linear in the count. */
+  @Override
+  public int scaleCost(int cost, double factor) {
+    return (int) (cost * factor);
+  }
+
+  static byte[] derive(String password, byte[] salt, int iterations, int length) {
+    final var spec = new PBEKeySpec(password.toCharArray(), salt, iterations, length * 8);
+    try {
+      return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("PBKDF2WithHmacSHA256 is not available", e);
+    } finally {
+      spec.clearPassword();
+    }
+  }
+}
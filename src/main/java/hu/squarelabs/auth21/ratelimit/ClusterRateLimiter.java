@@ -0,0 +1,300 @@
+package hu.squarelabs.auth21.ratelimit;
+
+import hu.squarelabs.auth21.exception.TooManyRequestsException;
+import hu.squarelabs.auth21.util.DaemonThreads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Approximate fixed-window limits shared by every replica, for the endpoints listed in {@code
+ * rate-limit.cluster.endpoints}.
+ *
+ * <p>Requests only touch local state: each key has a {@link LongAdder} of requests not yet
+ * published and the cluster total last read back. A request is rejected once the two together reach
+ * the window's limit. Every {@code rate-limit.cluster.flush-interval-ms} the pending counts are
+ * added to the shared {@link CounterStore} counter for the key and window, one write per active key
+ * rather than per request, and the returned total replaces the local view. Replicas can therefore
+ * overshoot by what the others admit within one flush interval.
+ *
+ * <p>Most login keys are one email or address that sends a request or two per window, so a flush
+ * leaves a key's count local while it is at most {@code rate-limit.cluster.defer-below} of the
+ * limit. That lets each replica admit up to that share unseen by the others, and a key first
+ * reaches the store once it matters. The remaining keys are written in parallel on {@code
+ * rate-limit.cluster.flush-parallelism} threads, at most {@code
+ * rate-limit.cluster.max-writes-per-flush} per flush and the keys closest to their limit first; the
+ * rest stay pending for the next flush. Counts still pending when their window ends are dropped
+ * with it.
+ *
+ * <p>Limits are {@code rate-limit.cluster.<endpoint>.<kind>.per-window} requests per {@code
+ * rate-limit.cluster.window-seconds}, falling back to {@code
+ * rate-limit.cluster.default.per-window}. At most {@code rate-limit.cluster.max-keys} keys are
+ * tracked per node; keys beyond that are left to the local {@link RateLimiter} until old windows
+ * are flushed out. A failed flush keeps its deltas for the next attempt, and the limiter keeps
+ * counting locally in the meantime.
+ */
+@Component
+@ConditionalOnProperty(name = ClusterRateLimiter.ENABLED_PROPERTY, havingValue = "true")
+public class ClusterRateLimiter {
+  public static final String ENABLED_PROPERTY = "rate-limit.cluster.enabled";
+
+  private static final Logger logger = LogManager.getLogger(ClusterRateLimiter.class);
+
+  private final CounterStore store;
+  private final Environment environment;
+  private final Set<String> endpoints;
+  private final long windowMillis;
+  private final long flushIntervalMillis;
+  private final int maxKeys;
+  private final long defaultPerWindow;
+  private final double deferBelow;
+  private final int maxWritesPerFlush;
+  private final ExecutorService publisher;
+  private final LongSupplier epochMillis;
+  private final Map<String, WindowCounter> counters = new ConcurrentHashMap<>();
+  private final Map<String, Long> limits = new ConcurrentHashMap<>();
+  private final MeterRegistry meterRegistry;
+  private final Timer flushTime;
+  private final Counter flushFailures;
+  private final Counter deferredKeys;
+  private final Counter overBudgetKeys;
+  private ScheduledExecutorService flusher;
+
+  @Autowired
+  public ClusterRateLimiter(
+      CounterStore store,
+      Environment environment,
+      MeterRegistry meterRegistry,
+      @Value("${rate-limit.cluster.endpoints:login,refresh-token}") Set<String> endpoints,
+      @Value("${rate-limit.cluster.window-seconds:60}") long windowSeconds,
+      @Value("${rate-limit.cluster.flush-interval-ms:250}") long flushIntervalMillis,
+      @Value("${rate-limit.cluster.max-keys:65536}") int maxKeys,
+      @Value("${rate-limit.cluster.default.per-window:100}") long defaultPerWindow,
+      @Value("${rate-limit.cluster.defer-below:0.2}") double deferBelow,
+      @Value("${rate-limit.cluster.flush-parallelism:8}") int flushParallelism,
+      @Value("${rate-limit.cluster.max-writes-per-flush:1024}") int maxWritesPerFlush) {
+    this(
+        store,
+        environment,
+        meterRegistry,
+        endpoints,
+        windowSeconds,
+        flushIntervalMillis,
+        maxKeys,
+        defaultPerWindow,
+        deferBelow,
+        flushParallelism,
+        maxWritesPerFlush,
+        System::currentTimeMillis);
+  }
+
+  ClusterRateLimiter(
+      CounterStore store,
+      Environment environment,
+      MeterRegistry meterRegistry,
+      Set<String> endpoints,
+      long windowSeconds,
+      long flushIntervalMillis,
+      int maxKeys,
+      long defaultPerWindow,
+      double deferBelow,
+      int flushParallelism,
+      int maxWritesPerFlush,
+      LongSupplier epochMillis) {
+    this.store = store;
+    this.environment = environment;
+    this.endpoints = Set.copyOf(endpoints);
+    this.windowMillis = TimeUnit.SECONDS.toMillis(windowSeconds);
+    this.flushIntervalMillis = flushIntervalMillis;
+    this.maxKeys = maxKeys;
+    this.defaultPerWindow = defaultPerWindow;
+    this.deferBelow = deferBelow;
+    this.maxWritesPerFlush = maxWritesPerFlush;
+    this.publisher =
+        Executors.newFixedThreadPool(
+            flushParallelism, DaemonThreads.numbered("rate-limit-publisher"));
+    this.epochMillis = epochMillis;
+    this.meterRegistry = meterRegistry;
+    this.flushTime = Timer.builder("auth.ratelimit.cluster.flush").register(meterRegistry);
+    this.flushFailures =
+        Counter.builder("auth.ratelimit.cluster.flush.failures").register(meterRegistry);
+    this.deferredKeys =
+        Counter.builder("auth.ratelimit.cluster.flush.skipped")
+            .tag("reason", "below-threshold")
+            .register(meterRegistry);
+    this.overBudgetKeys =
+        Counter.builder("auth.ratelimit.cluster.flush.skipped")
+            .tag("reason", "over-budget")
+            .register(meterRegistry);
+    meterRegistry.gauge("auth.ratelimit.cluster.keys", counters, Map::size);
+  }
+
+  @PostConstruct
+  public void start() {
+    flusher = DaemonThreads.scheduler("rate-limit-flusher");
+    flusher.scheduleWithFixedDelay(
+        this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    if (flusher != null) {
+      flusher.shutdown();
+      flusher.awaitTermination(flushIntervalMillis * 4, TimeUnit.MILLISECONDS);
+    }
+    flush();
+    publisher.shutdown();
+  }
+
+  /**
+   * Counts one request for {@code key} on {@code endpoint} against the cluster-wide window.
+   * Endpoints not configured for cluster limiting and null keys pass.
+   *
+   * @throws TooManyRequestsException when the window's limit has been reached
+   */
+  public void check(String endpoint, String kind, String key) {
+    if (key == null || !endpoints.contains(endpoint)) {
+      return;
+    }
+
+    final long now = epochMillis.getAsLong();
+    final long window = now / windowMillis;
+    final String id = endpoint + '/' + kind + '/' + key;
+    var counter = counters.get(id);
+    if (counter == null || counter.window < window) {
+      if (counter == null && counters.size() >= maxKeys) {
+        return;
+      }
+      counter =
+          counters.merge(
+              id, new WindowCounter(id, window, limitFor(endpoint, kind)), WindowCounter::newer);
+    }
+
+    if (counter.global + counter.pending.sum() >= counter.limit) {
+      Counter.builder("auth.ratelimit.cluster.rejected")
+          .tag("endpoint", endpoint)
+          .tag("key", kind)
+          .register(meterRegistry)
+          .increment();
+      throw new TooManyRequestsException(
+          RateLimiter.ERROR_MESSAGE_TOO_MANY_REQUESTS,
+          Duration.ofMillis((window + 1) * windowMillis - now));
+    }
+    counter.pending.increment();
+  }
+
+  /**
+   * Publishes the pending counts that matter and refreshes their cluster totals, then forgets keys
+   * whose window has passed. Returns once every write of this flush has completed.
+   */
+  void flush() {
+    final long window = epochMillis.getAsLong() / windowMillis;
+    flushTime.record(
+        () -> {
+          final List<Due> due = new ArrayList<>();
+          for (WindowCounter counter : counters.values()) {
+            if (counter.window < window) {
+              counters.remove(counter.id, counter);
+              continue;
+            }
+            final long pending = counter.pending.sum();
+            if (pending == 0) {
+              continue;
+            }
+            final long used = counter.global + pending;
+            if (used <= counter.limit * deferBelow) {
+              deferredKeys.increment();
+            } else {
+              due.add(new Due(counter, (double) used / counter.limit));
+            }
+          }
+
+          if (due.size() > maxWritesPerFlush) {
+            due.sort(Comparator.comparingDouble(Due::fill).reversed());
+            overBudgetKeys.increment(due.size() - maxWritesPerFlush);
+            due.subList(maxWritesPerFlush, due.size()).clear();
+          }
+
+          final var writes = new CompletableFuture<?>[due.size()];
+          for (int i = 0; i < writes.length; i++) {
+            final var counter = due.get(i).counter();
+            writes[i] = CompletableFuture.runAsync(() -> publish(counter), publisher);
+          }
+          CompletableFuture.allOf(writes).join();
+        });
+  }
+
+  private void publish(WindowCounter counter) {
+    final long delta = counter.pending.sumThenReset();
+    if (delta == 0) {
+      return;
+    }
+
+    final var expiresAt = Instant.ofEpochMilli((counter.window + 2) * windowMillis);
+    try {
+      final long total = store.add(counter.id + '#' + counter.window, delta, expiresAt);
+      counter.global = Math.max(counter.global, total);
+    } catch (RuntimeException e) {
+      counter.pending.add(delta);
+      flushFailures.increment();
+      logger.warn("Failed to publish rate limit counter {}: {}", counter.id, e.getMessage());
+    }
+  }
+
+  long limitFor(String endpoint, String kind) {
+    return limits.computeIfAbsent(
+        endpoint + '.' + kind,
+        name ->
+            environment.getProperty(
+                "rate-limit.cluster." + name + ".per-window", Long.class, defaultPerWindow));
+  }
+
+  /** A key to publish and the share of its limit used when the flush looked at it. */
+  private record Due(WindowCounter counter, double fill) {}
+
+  private static final class WindowCounter {
+    final String id;
+    final long window;
+    final long limit;
+    final LongAdder pending = new LongAdder();
+    volatile long global;
+
+    WindowCounter(String id, long window, long limit) {
+      this.id = id;
+      this.window = window;
+      this.limit = limit;
+    }
+
+    /**
+     * Merge function that moves a key to a later window. Counts pending for the old window are
+     * dropped with it; the window they belonged to is over.
+     */
+    static WindowCounter newer(WindowCounter existing, WindowCounter candidate) {
+      return candidate.window > existing.window ? candidate : existing;
+    }
+  }
+}
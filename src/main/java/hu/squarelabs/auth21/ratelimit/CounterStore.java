@@ -0,0 +1,13 @@
+package hu.squarelabs.auth21.ratelimit;
+
+import java.time.Instant;
+
+/** Shared counters that {@link ClusterRateLimiter} adds its local deltas to. */
+public interface CounterStore {
+
+  /**
+   * Atomically adds {@code delta} to {@code counter}, creating it at zero if needed, and returns
+   * the new total across all writers. The counter may be dropped after {@code expiresAt}.
+   */
+  long add(String counter, long delta, Instant expiresAt);
+}
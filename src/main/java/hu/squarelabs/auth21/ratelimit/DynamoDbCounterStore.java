@@ -0,0 +1,60 @@
+package hu.squarelabs.auth21.ratelimit;
+
+import java.time.Instant;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+/**
+ * Counters kept as items of the {@code aws.dynamodb.table.rate-limits} table, keyed by {@code
+ * counter} and expired through the {@code expires_at} TTL attribute. Each {@link #add} is a single
+ * UpdateItem with {@code ADD}, which DynamoDB applies atomically however many replicas write.
+ *
+ * <p>The enhanced client can only add a fixed, schema-declared delta to an atomic counter, so this
+ * goes through the {@link DynamoDbClient} the enhanced client is built on, sharing its connection
+ * pool and concurrency limiter.
+ */
+@Component
+@ConditionalOnProperty(name = ClusterRateLimiter.ENABLED_PROPERTY, havingValue = "true")
+public class DynamoDbCounterStore implements CounterStore {
+  static final String COUNTER_ATTRIBUTE = "counter";
+  static final String COUNT_ATTRIBUTE = "count";
+  static final String EXPIRES_AT_ATTRIBUTE = "expires_at";
+
+  private final DynamoDbClient client;
+  private final String tableName;
+
+  public DynamoDbCounterStore(
+      DynamoDbClient client,
+      @Value("${aws.dynamodb.table.rate-limits:rate-limits}") String tableName) {
+    this.client = client;
+    this.tableName = tableName;
+  }
+
+  @Override
+  public long add(String counter, long delta, Instant expiresAt) {
+    final var request =
+        UpdateItemRequest.builder()
+            .tableName(tableName)
+            .key(Map.of(COUNTER_ATTRIBUTE, AttributeValue.fromS(counter)))
+            .updateExpression("ADD #count :delta SET #expires_at = :expires_at")
+            .expressionAttributeNames(
+                Map.of("#count", COUNT_ATTRIBUTE, "#expires_at", EXPIRES_AT_ATTRIBUTE))
+            .expressionAttributeValues(
+                Map.of(
+                    ":delta", AttributeValue.fromN(Long.toString(delta)),
+                    ":expires_at", AttributeValue.fromN(Long.toString(expiresAt.getEpochSecond()))))
+            .returnValues(ReturnValue.UPDATED_NEW)
+            .build();
+    try {
+      return Long.parseLong(client.updateItem(request).attributes().get(COUNT_ATTRIBUTE).n());
+    } catch (Exception e) {
+      throw new RuntimeException("Error adding to rate limit counter: " + counter, e);
+    }
+  }
+}
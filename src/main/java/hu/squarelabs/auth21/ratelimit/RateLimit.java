@@ -0,0 +1,19 @@
+package hu.squarelabs.auth21.ratelimit;
+
+/**
+ * Token bucket parameters: up to {@code burst} requests at once, refilled at {@code perMinute}
+ * requests per minute.
+ */
+public record RateLimit(int burst, double perMinute) {
+
+  public RateLimit {
+    if (burst < 1 || perMinute <= 0) {
+      throw new IllegalArgumentException(
+          "Rate limit needs a positive burst and refill rate, got " + burst + "/" + perMinute);
+    }
+  }
+
+  double tokensPerNano() {
+    return perMinute / 60e9;
+  }
+}
@@ -0,0 +1,32 @@
+package hu.squarelabs.auth21.ratelimit;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Applies {@link RateLimited} per client IP before the handler runs. Behind a load balancer the
+ * remote address is only the client's when {@code server.forward-headers-strategy} is set.
+ */
+@Component
+public class RateLimitInterceptor implements HandlerInterceptor {
+  private final RateLimiter rateLimiter;
+
+  public RateLimitInterceptor(RateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+  }
+
+  @Override
+  public boolean preHandle(
+      HttpServletRequest request, HttpServletResponse response, Object handler) {
+    if (handler instanceof HandlerMethod method) {
+      final var rateLimited = method.getMethodAnnotation(RateLimited.class);
+      if (rateLimited != null) {
+        rateLimiter.check(rateLimited.value(), RateLimiter.KEY_IP, request.getRemoteAddr());
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,21 @@
+package hu.squarelabs.auth21.ratelimit;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Throttles a handler method per client IP before it runs. The limit is read from {@code
+ * rate-limit.<endpoint>.ip.burst} and {@code rate-limit.<endpoint>.ip.per-minute}, falling back to
+ * {@code rate-limit.default.*}.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimited {
+
+  /** Endpoint name that selects the configured limit, such as {@code "login"}. */
+  String value();
+}
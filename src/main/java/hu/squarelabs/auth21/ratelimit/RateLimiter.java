@@ -0,0 +1,126 @@
+package hu.squarelabs.auth21.ratelimit;
+
+import hu.squarelabs.auth21.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-process token bucket limiter for abusive callers, checked before a request costs a DynamoDB
+ * read or a password hash.
+ *
+ * <p>Buckets are keyed by endpoint, key kind and key, for example {@code login/email/a@b.c}, and
+ * live in a fixed-size {@link TokenBucketTable} of {@code rate-limit.max-keys} entries, so memory
+ * stays bounded under random-key floods. Limits are looked up per endpoint and key kind as {@code
+ * rate-limit.<endpoint>.<kind>.burst} and {@code .per-minute}, falling back to {@code
+ * rate-limit.default.*}. Rejections raise a 429 with Retry-After and count as {@code
+ * auth.ratelimit.rejected}.
+ *
+ * <p>When {@link ClusterRateLimiter} is enabled, requests that pass the local bucket are also
+ * counted against the cluster-wide window, so the local check still sheds floods before they reach
+ * the shared counters.
+ */
+@Component
+public class RateLimiter {
+  public static final String ENDPOINT_INTROSPECT = "introspect";
+  public static final String ENDPOINT_LOGIN = "login";
+  public static final String ENDPOINT_REFRESH_TOKEN = "refresh-token";
+  public static final String ENDPOINT_REGISTER = "register";
+  public static final String KEY_EMAIL = "email";
+  public static final String KEY_IP = "ip";
+  static final String ERROR_MESSAGE_TOO_MANY_REQUESTS = "Too many requests";
+
+  private final TokenBucketTable buckets;
+  private final Environment environment;
+  private final MeterRegistry meterRegistry;
+  private final boolean enabled;
+  private final RateLimit defaultLimit;
+  private final ClusterRateLimiter cluster;
+  private final Map<String, RateLimit> limits = new ConcurrentHashMap<>();
+
+  @Autowired
+  public RateLimiter(
+      Environment environment,
+      MeterRegistry meterRegistry,
+      Optional<ClusterRateLimiter> cluster,
+      @Value("${rate-limit.enabled:true}") boolean enabled,
+      @Value("${rate-limit.max-keys:65536}") int maxKeys,
+      @Value("${rate-limit.default.burst:10}") int defaultBurst,
+      @Value("${rate-limit.default.per-minute:10}") double defaultPerMinute) {
+    this(
+        environment,
+        meterRegistry,
+        enabled,
+        maxKeys,
+        new RateLimit(defaultBurst, defaultPerMinute),
+        cluster.orElse(null),
+        System::nanoTime);
+  }
+
+  RateLimiter(
+      Environment environment,
+      MeterRegistry meterRegistry,
+      boolean enabled,
+      int maxKeys,
+      RateLimit defaultLimit,
+      ClusterRateLimiter cluster,
+      LongSupplier nanoTime) {
+    this.buckets = new TokenBucketTable(maxKeys, nanoTime);
+    this.environment = environment;
+    this.meterRegistry = meterRegistry;
+    this.enabled = enabled;
+    this.defaultLimit = defaultLimit;
+    this.cluster = cluster;
+  }
+
+  /**
+   * Takes a token for {@code key} on {@code endpoint}. Null keys are not limited.
+   *
+   * @throws TooManyRequestsException when the bucket is empty
+   */
+  public void check(String endpoint, String kind, String key) {
+    if (!enabled || key == null) {
+      return;
+    }
+
+    final long waitNanos =
+        buckets.tryAcquire(endpoint + '/' + kind + '/' + key, limitFor(endpoint, kind));
+    if (waitNanos > 0) {
+      Counter.builder("auth.ratelimit.rejected")
+          .tag("endpoint", endpoint)
+          .tag("key", kind)
+          .register(meterRegistry)
+          .increment();
+      throw new TooManyRequestsException(
+          ERROR_MESSAGE_TOO_MANY_REQUESTS, Duration.ofNanos(waitNanos));
+    }
+    if (cluster != null) {
+      cluster.check(endpoint, kind, key);
+    }
+  }
+
+  /** Emails are compared case-insensitively, so case variations share one bucket. */
+  public void checkEmail(String endpoint, String email) {
+    check(endpoint, KEY_EMAIL, email == null ? null : email.trim().toLowerCase(Locale.ROOT));
+  }
+
+  RateLimit limitFor(String endpoint, String kind) {
+    return limits.computeIfAbsent(
+        endpoint + '.' + kind,
+        name ->
+            new RateLimit(
+                environment.getProperty(
+                    "rate-limit." + name + ".burst", Integer.class, defaultLimit.burst()),
+                environment.getProperty(
+                    "rate-limit." + name + ".per-minute", Double.class, defaultLimit.perMinute())));
+  }
+}
@@ -0,0 +1,119 @@
+package hu.squarelabs.auth21.ratelimit;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Fixed-size, lock-free table of token buckets keyed by string.
+ *
+ * <p>The table is split into sets of {@link #WAYS} slots and a key can only live in the set its
+ * hash selects, so a lookup reads at most eight slots and threads checking different keys rarely
+ * touch the same cache line. Each slot holds an immutable {@link Bucket} that is replaced by
+ * compare-and-set; a lost race simply re-reads the set.
+ *
+ * <p>Memory is bounded by the slot count no matter how many distinct keys are seen. A key that is
+ * not in its set takes the slot whose bucket is fullest after refill: a full bucket carries no
+ * information, since a fresh one would start full anyway, whereas a drained bucket is exactly the
+ * state a throttled caller would like to lose. A flood of random keys therefore mostly evicts its
+ * own nearly full buckets. Hashes are seeded per instance so that set collisions cannot be
+ * precomputed.
+ */
+final class TokenBucketTable {
+  static final int WAYS = 8;
+
+  private final AtomicReferenceArray<Bucket> slots;
+  private final int setMask;
+  private final long seed;
+  private final LongSupplier nanoTime;
+
+  TokenBucketTable(int maxKeys, LongSupplier nanoTime) {
+    final int sets = Integer.highestOneBit(Math.max(1, (maxKeys + WAYS - 1) / WAYS - 1)) << 1;
+    this.slots = new AtomicReferenceArray<>(sets * WAYS);
+    this.setMask = sets - 1;
+    this.seed = ThreadLocalRandom.current().nextLong() | 1;
+    this.nanoTime = nanoTime;
+  }
+
+  /**
+   * Takes one token from {@code key}'s bucket. Returns 0 when a token was taken, otherwise the
+   * nanoseconds until one will be available.
+   */
+  long tryAcquire(String key, RateLimit limit) {
+    final int base = (hash(key) & setMask) * WAYS;
+    retry:
+    while (true) {
+      final long now = nanoTime.getAsLong();
+      int victim = base;
+      Bucket victimBucket = null;
+      double victimFill = -1;
+
+      for (int i = 0; i < WAYS; i++) {
+        final int slot = base + i;
+        final var bucket = slots.get(slot);
+        if (bucket == null) {
+          if (victimFill < Double.MAX_VALUE) {
+            victim = slot;
+            victimBucket = null;
+            victimFill = Double.MAX_VALUE;
+          }
+          continue;
+        }
+
+        final double tokens = bucket.tokensAt(now);
+        if (bucket.key().equals(key)) {
+          if (tokens < 1) {
+            return (long) Math.ceil((1 - tokens) / limit.tokensPerNano());
+          }
+          if (slots.compareAndSet(slot, bucket, new Bucket(key, limit, tokens - 1, now))) {
+            return 0;
+          }
+          continue retry;
+        }
+
+        final double fill = tokens / bucket.limit().burst();
+        if (fill > victimFill) {
+          victim = slot;
+          victimBucket = bucket;
+          victimFill = fill;
+        }
+      }
+
+      if (slots.compareAndSet(
+          victim, victimBucket, new Bucket(key, limit, limit.burst() - 1, now))) {
+        return 0;
+      }
+    }
+  }
+
+  int capacity() {
+    return slots.length();
+  }
+
+  int size() {
+    int size = 0;
+    for (int i = 0; i < slots.length(); i++) {
+      if (slots.get(i) != null) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  private int hash(String key) {
+    long h = seed;
+    for (int i = 0; i < key.length(); i++) {
+      h = (h ^ key.charAt(i)) * 0x9e3779b97f4a7c15L;
+    }
+    h ^= h >>> 32;
+    return (int) (h ^ (h >>> 16));
+  }
+
+  private record Bucket(String key, RateLimit limit, double tokens, long updatedAt) {
+
+    double tokensAt(long now) {
+      final long elapsed = Math.max(0, now - updatedAt);
+      return Math.min(limit.burst(), tokens + elapsed * limit.tokensPerNano());
+    }
+  }
+}
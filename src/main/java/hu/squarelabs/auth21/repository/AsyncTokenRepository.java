@@ -0,0 +1,126 @@
+package hu.squarelabs.auth21.repository;
+
+import hu.squarelabs.auth21.config.DynamoDbConfig;
+import hu.squarelabs.auth21.converter.JwtClaimsAttributeConverter;
+import hu.squarelabs.auth21.model.entity.TokenEntity;
+import hu.squarelabs.auth21.model.entity.TokenEntitySchema;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.enhanced.dynamodb.*;
+import software.amazon.awssdk.enhanced.dynamodb.model.*;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+
+/** Non-blocking counterpart of {@link TokenRepository} on the enhanced async client. */
+@Repository
+@ConditionalOnProperty(name = DynamoDbConfig.ASYNC_ENABLED_PROPERTY, havingValue = "true")
+public class AsyncTokenRepository {
+  private final DynamoDbAsyncTable<TokenEntity> tokenTable;
+  private final DynamoDbAsyncIndex<TokenEntity> refreshTokenIndex;
+
+  public AsyncTokenRepository(
+      DynamoDbEnhancedAsyncClient enhancedAsyncClient,
+      @Value("${aws.dynamodb.table.tokens:auth-tokens}") String tableName,
+      @Value("${aws.dynamodb.token-claims.format:MAP}")
+          JwtClaimsAttributeConverter.Format claimsFormat) {
+    this.tokenTable = enhancedAsyncClient.table(tableName, TokenEntitySchema.create(claimsFormat));
+    this.refreshTokenIndex = tokenTable.index("RefreshTokenIndex");
+  }
+
+  public CompletableFuture<Void> save(TokenEntity tokenEntity) {
+    if (tokenEntity.getCreatedAt() == null) {
+      tokenEntity.setCreatedAt(Instant.now());
+    }
+    if (tokenEntity.getUpdatedAt() == null) {
+      tokenEntity.setUpdatedAt(Instant.now());
+    }
+    return tokenTable.putItem(tokenEntity);
+  }
+
+  public CompletableFuture<Optional<TokenEntity>> findById(String jti) {
+    return findById(jti, false);
+  }
+
+  public CompletableFuture<Optional<TokenEntity>> findById(String jti, boolean consistentRead) {
+    return tokenTable
+        .getItem(
+            GetItemEnhancedRequest.builder()
+                .key(Key.builder().partitionValue(jti).build())
+                .consistentRead(consistentRead)
+                .build())
+        .handle(
+            (token, e) -> {
+              if (e != null) {
+                throw new CompletionException("Error finding token by jti: " + jti, unwrap(e));
+              }
+              return Optional.ofNullable(token);
+            });
+  }
+
+  public CompletableFuture<Void> deleteById(String jti) {
+    return tokenTable
+        .deleteItem(Key.builder().partitionValue(jti).build())
+        .handle(
+            (deleted, e) -> {
+              if (e != null) {
+                throw new CompletionException("Error deleting token: " + jti, unwrap(e));
+              }
+              return null;
+            });
+  }
+
+  /** Asynchronous {@link TokenRepository#rotate}. */
+  public CompletableFuture<Boolean> rotate(
+      String oldJti, String oldRefreshToken, TokenEntity replacement) {
+    final var now = Instant.now();
+    replacement.setCreatedAt(now);
+    replacement.setUpdatedAt(now);
+
+    return tokenTable
+        .deleteItem(TokenRepository.rotateDeleteRequest(oldJti, oldRefreshToken))
+        .thenCompose(deleted -> tokenTable.putItem(TokenRepository.rotatePutRequest(replacement)))
+        .handle(
+            (done, e) -> {
+              if (e == null) {
+                return true;
+              }
+              final var cause = unwrap(e);
+              if (cause instanceof ConditionalCheckFailedException) {
+                return false;
+              }
+              throw new CompletionException("Error rotating token: " + oldJti, cause);
+            });
+  }
+
+  public CompletableFuture<Optional<TokenEntity>> findByRefreshToken(String refreshToken) {
+    final var queryRequest =
+        QueryEnhancedRequest.builder()
+            .queryConditional(
+                QueryConditional.keyEqualTo(Key.builder().partitionValue(refreshToken).build()))
+            .limit(1)
+            .build();
+
+    final var result = new AtomicReference<TokenEntity>();
+    return refreshTokenIndex
+        .query(queryRequest)
+        .flatMapIterable(Page::items)
+        .limit(1)
+        .subscribe(result::set)
+        .handle(
+            (done, e) -> {
+              if (e != null) {
+                throw new CompletionException("Error finding token by refresh token", unwrap(e));
+              }
+              return Optional.ofNullable(result.get());
+            });
+  }
+
+  static Throwable unwrap(Throwable e) {
+    return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+  }
+}
@@ -0,0 +1,95 @@
+package hu.squarelabs.auth21.repository;
+
+import hu.squarelabs.auth21.cache.ExpiringCache;
+import hu.squarelabs.auth21.config.DynamoDbConfig;
+import hu.squarelabs.auth21.model.entity.UserEntity;
+import hu.squarelabs.auth21.model.entity.UserEntitySchema;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.enhanced.dynamodb.*;
+import software.amazon.awssdk.enhanced.dynamodb.model.*;
+
+/** Non-blocking counterpart of {@link UserRepository} on the enhanced async client. */
+@Repository
+@ConditionalOnProperty(name = DynamoDbConfig.ASYNC_ENABLED_PROPERTY, havingValue = "true")
+public class AsyncUserRepository {
+  private final DynamoDbAsyncTable<UserEntity> userTable;
+  private final DynamoDbAsyncIndex<UserEntity> emailIndex;
+  private final ExpiringCache<String, String> emailToIdCache;
+
+  public AsyncUserRepository(
+      DynamoDbEnhancedAsyncClient enhancedAsyncClient,
+      @Value("${aws.dynamodb.table.users:users}") String tableName,
+      @Value("${cache.user-email.max-size:10000}") int emailCacheMaxSize,
+      @Value("${cache.user-email.ttl-seconds:300}") long emailCacheTtlSeconds) {
+    this.userTable = enhancedAsyncClient.table(tableName, UserEntitySchema.create());
+    this.emailIndex = userTable.index("EmailIndex");
+    this.emailToIdCache =
+        new ExpiringCache<>(emailCacheMaxSize, Duration.ofSeconds(emailCacheTtlSeconds));
+  }
+
+  public CompletableFuture<Optional<UserEntity>> findById(String userId) {
+    return userTable
+        .getItem(Key.builder().partitionValue(userId).build())
+        .handle(
+            (user, e) -> {
+              if (e != null) {
+                throw new CompletionException(
+                    "Error fetching user by id: " + userId, AsyncTokenRepository.unwrap(e));
+              }
+              if (user != null && user.getDeletedAt() != null) {
+                return Optional.empty();
+              }
+              return Optional.ofNullable(user);
+            });
+  }
+
+  public CompletableFuture<Optional<UserEntity>> findByEmail(String email) {
+    final var cachedId = emailToIdCache.get(email);
+    if (cachedId.isEmpty()) {
+      return queryByEmail(email);
+    }
+
+    return findById(cachedId.get())
+        .thenCompose(
+            user -> {
+              if (user.isPresent() && email.equals(user.get().getEmail())) {
+                return CompletableFuture.completedFuture(user);
+              }
+              emailToIdCache.invalidate(email);
+              return queryByEmail(email);
+            });
+  }
+
+  private CompletableFuture<Optional<UserEntity>> queryByEmail(String email) {
+    final var queryRequest =
+        QueryEnhancedRequest.builder()
+            .queryConditional(
+                QueryConditional.keyEqualTo(Key.builder().partitionValue(email).build()))
+            .build();
+
+    final var result = new AtomicReference<UserEntity>();
+    return emailIndex
+        .query(queryRequest)
+        .flatMapIterable(Page::items)
+        .filter(user -> user.getDeletedAt() == null)
+        .limit(1)
+        .subscribe(result::set)
+        .handle(
+            (done, e) -> {
+              if (e != null) {
+                throw new CompletionException(
+                    "Error fetching user by email: " + email, AsyncTokenRepository.unwrap(e));
+              }
+              final var user = Optional.ofNullable(result.get());
+              user.ifPresent(u -> emailToIdCache.put(email, u.getId()));
+              return user;
+            });
+  }
+}
@@ -0,0 +1,195 @@
+package hu.squarelabs.auth21.repository;
+
+import hu.squarelabs.auth21.model.entity.TokenEntitySchema;
+import hu.squarelabs.auth21.util.DaemonThreads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+
+/**
+ * Deletes expired tokens ahead of DynamoDB's time to live, which only guarantees removal within a
+ * couple of days. Until then expired items keep occupying RefreshTokenIndex and UserIdIndex and are
+ * paid for by every scan and index query that reads them.
+ *
+ * <p>Every {@code interval-ms} the sweeper makes one pass over the table: a paged Scan that returns
+ * only the keys of items whose {@code expires_at} has passed, followed by a DeleteItem per key that
+ * is conditional on the item still being expired, so a token re-saved meanwhile survives. Pages and
+ * deletes are paced separately, which bounds the read and write capacity a pass can take. Each pass
+ * is logged, and {@code auth.tokens.sweeper.*} meters report what was scanned and reclaimed.
+ */
+@Component
+@ConditionalOnProperty(name = ExpiredTokenSweeper.ENABLED_PROPERTY, havingValue = "true")
+public class ExpiredTokenSweeper {
+  public static final String ENABLED_PROPERTY = "token-store.sweeper.enabled";
+
+  private static final Logger logger = LogManager.getLogger(ExpiredTokenSweeper.class);
+
+  private static final String JTI = "jti";
+  private static final Map<String, String> NAMES =
+      Map.of("#jti", JTI, "#expires_at", TokenEntitySchema.EXPIRES_AT);
+  private static final String EXPIRED = "#expires_at < :now";
+
+  public record Pass(long scanned, long deleted) {}
+
+  private final DynamoDbClient client;
+  private final String tableName;
+  private final long intervalMillis;
+  private final int pageSize;
+  private final double pagesPerSecond;
+  private final double deletesPerSecond;
+  private final LongSupplier epochSeconds;
+  private final Counter scannedItems;
+  private final Counter deletedItems;
+  private final Timer passTime;
+  private ScheduledExecutorService scheduler;
+
+  @Autowired
+  public ExpiredTokenSweeper(
+      DynamoDbClient client,
+      MeterRegistry meterRegistry,
+      @Value("${aws.dynamodb.table.tokens:auth-tokens}") String tableName,
+      @Value("${token-store.sweeper.interval-ms:3600000}") long intervalMillis,
+      @Value("${token-store.sweeper.page-size:100}") int pageSize,
+      @Value("${token-store.sweeper.pages-per-second:5}") double pagesPerSecond,
+      @Value("${token-store.sweeper.deletes-per-second:50}") double deletesPerSecond) {
+    this(
+        client,
+        meterRegistry,
+        tableName,
+        intervalMillis,
+        pageSize,
+        pagesPerSecond,
+        deletesPerSecond,
+        () -> System.currentTimeMillis() / 1000);
+  }
+
+  ExpiredTokenSweeper(
+      DynamoDbClient client,
+      MeterRegistry meterRegistry,
+      String tableName,
+      long intervalMillis,
+      int pageSize,
+      double pagesPerSecond,
+      double deletesPerSecond,
+      LongSupplier epochSeconds) {
+    this.client = client;
+    this.tableName = tableName;
+    this.intervalMillis = intervalMillis;
+    this.pageSize = pageSize;
+    this.pagesPerSecond = pagesPerSecond;
+    this.deletesPerSecond = deletesPerSecond;
+    this.epochSeconds = epochSeconds;
+    this.scannedItems =
+        Counter.builder("auth.tokens.sweeper.scanned")
+            .description("Expired token items found by the sweeper")
+            .register(meterRegistry);
+    this.deletedItems =
+        Counter.builder("auth.tokens.sweeper.deleted")
+            .description("Expired token items deleted by the sweeper")
+            .register(meterRegistry);
+    this.passTime = Timer.builder("auth.tokens.sweeper.pass").register(meterRegistry);
+  }
+
+  @PostConstruct
+  public void start() {
+    scheduler = DaemonThreads.scheduler("token-sweeper");
+    scheduler.scheduleWithFixedDelay(
+        this::sweepQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  private void sweepQuietly() {
+    try {
+      sweep();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      logger.warn("Expired token sweep failed", e);
+    }
+  }
+
+  /** Makes one paced pass over the table and returns what it found and deleted. */
+  public Pass sweep() throws InterruptedException {
+    final long started = System.nanoTime();
+    final var now = AttributeValue.fromN(Long.toString(epochSeconds.getAsLong()));
+    final var pages = new Pacer(pagesPerSecond);
+    final var deletes = new Pacer(deletesPerSecond);
+    long scanned = 0;
+    long deleted = 0;
+
+    Map<String, AttributeValue> startKey = null;
+    do {
+      pages.acquire();
+      final var page =
+          client.scan(
+              ScanRequest.builder()
+                  .tableName(tableName)
+                  .filterExpression(EXPIRED)
+                  .projectionExpression("#jti")
+                  .expressionAttributeNames(NAMES)
+                  .expressionAttributeValues(Map.of(":now", now))
+                  .limit(pageSize)
+                  .exclusiveStartKey(startKey)
+                  .build());
+      for (Map<String, AttributeValue> key : page.items()) {
+        scanned++;
+        deletes.acquire();
+        if (deleteIfExpired(key, now)) {
+          deleted++;
+        }
+      }
+      startKey = page.hasLastEvaluatedKey() ? page.lastEvaluatedKey() : null;
+    } while (startKey != null);
+
+    final long elapsed = System.nanoTime() - started;
+    scannedItems.increment(scanned);
+    deletedItems.increment(deleted);
+    passTime.record(elapsed, TimeUnit.NANOSECONDS);
+    logger.info(
+        "Swept {} expired tokens from {}, {} found, in {} ms",
+        deleted,
+        tableName,
+        scanned,
+        TimeUnit.NANOSECONDS.toMillis(elapsed));
+    return new Pass(scanned, deleted);
+  }
+
+  private boolean deleteIfExpired(Map<String, AttributeValue> key, AttributeValue now) {
+    try {
+      client.deleteItem(
+          DeleteItemRequest.builder()
+              .tableName(tableName)
+              .key(key)
+              .conditionExpression(EXPIRED)
+              .expressionAttributeNames(Map.of("#expires_at", TokenEntitySchema.EXPIRES_AT))
+              .expressionAttributeValues(Map.of(":now", now))
+              .build());
+      return true;
+    } catch (ConditionalCheckFailedException e) {
+      return false;
+    }
+  }
+}
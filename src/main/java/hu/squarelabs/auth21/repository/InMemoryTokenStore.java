@@ -0,0 +1,264 @@
+package hu.squarelabs.auth21.repository;
+
+import hu.squarelabs.auth21.cache.TimingWheel;
+import hu.squarelabs.auth21.model.entity.TokenEntity;
+import hu.squarelabs.auth21.util.DaemonThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Token store held in the heap of a single node, for deployments where sessions may be lost on
+ * restart in exchange for lookups that never leave the process.
+ *
+ * <p>Tokens are kept in a concurrent map by jti, mirrored by a refresh-token index and a per-user
+ * index of jtis, the in-process counterparts of RefreshTokenIndex and UserIdIndex. Stored entities
+ * are private copies and are never mutated, so a rotation can swap one in with a compare-and-set on
+ * the jti map.
+ *
+ * <p>Expiry follows {@code expiresAt}: reads treat an expired token as absent straight away, and a
+ * {@link TimingWheel} advanced every {@code tick-ms} removes it from all three maps, costing O(1)
+ * per token rather than periodic scans.
+ */
+@Repository
+@ConditionalOnProperty(name = TokenStore.BACKEND_PROPERTY, havingValue = "memory")
+public class InMemoryTokenStore implements TokenStore {
+  private final Map<String, TokenEntity> tokens = new ConcurrentHashMap<>();
+  private final Map<String, String> jtisByRefreshToken = new ConcurrentHashMap<>();
+  private final Map<String, Set<String>> jtisByUserId = new ConcurrentHashMap<>();
+  private final TimingWheel<String> expiry;
+  private final long tickMillis;
+  private final LongSupplier epochMillis;
+  private ScheduledExecutorService sweeper;
+
+  @Autowired
+  public InMemoryTokenStore(@Value("${token-store.memory.tick-ms:1000}") long tickMillis) {
+    this(tickMillis, System::currentTimeMillis);
+  }
+
+  InMemoryTokenStore(long tickMillis, LongSupplier epochMillis) {
+    this.tickMillis = tickMillis;
+    this.epochMillis = epochMillis;
+    this.expiry = new TimingWheel<>(Duration.ofMillis(tickMillis), epochMillis.getAsLong());
+  }
+
+  @PostConstruct
+  public void start() {
+    sweeper = DaemonThreads.scheduler("token-store-expiry");
+    sweeper.scheduleAtFixedRate(this::expire, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (sweeper != null) {
+      sweeper.shutdownNow();
+    }
+  }
+
+  @Override
+  public void save(TokenEntity tokenEntity) {
+    final var now = Instant.ofEpochMilli(epochMillis.getAsLong());
+    if (tokenEntity.getCreatedAt() == null) {
+      tokenEntity.setCreatedAt(now);
+    }
+    if (tokenEntity.getUpdatedAt() == null) {
+      tokenEntity.setUpdatedAt(now);
+    }
+    final var stored = storedCopyOf(tokenEntity);
+    final var previous = tokens.put(stored.getJti(), stored);
+    index(stored);
+    if (previous != null) {
+      unindex(previous, stored);
+    }
+  }
+
+  @Override
+  public UnprocessedWrites batchWrite(Collection<TokenEntity> puts, Collection<String> deleteJtis) {
+    puts.forEach(this::save);
+    deleteJtis.forEach(this::deleteById);
+    return new UnprocessedWrites(List.of(), List.of());
+  }
+
+  /**
+   * Claims the replacement's jti first and only then removes the old token if it is still the
+   * stored one, so the session is never absent and a lost race leaves nothing behind.
+   */
+  @Override
+  public boolean rotate(String oldJti, String oldRefreshToken, TokenEntity replacement) {
+    final var current = live(tokens.get(oldJti));
+    if (current == null || !refreshTokenMatches(current, oldRefreshToken)) {
+      return false;
+    }
+
+    final var now = Instant.ofEpochMilli(epochMillis.getAsLong());
+    replacement.setCreatedAt(now);
+    replacement.setUpdatedAt(now);
+    final var stored = storedCopyOf(replacement);
+    if (tokens.putIfAbsent(stored.getJti(), stored) != null) {
+      return false;
+    }
+    if (!tokens.remove(oldJti, current)) {
+      tokens.remove(stored.getJti(), stored);
+      return false;
+    }
+    index(stored);
+    unindex(current, null);
+    return true;
+  }
+
+  @Override
+  public Optional<TokenEntity> findById(String jti, boolean consistentRead) {
+    return Optional.ofNullable(live(tokens.get(jti))).map(InMemoryTokenStore::copyOf);
+  }
+
+  @Override
+  public void deleteById(String jti) {
+    final var removed = tokens.remove(jti);
+    if (removed != null) {
+      unindex(removed, null);
+    }
+  }
+
+  @Override
+  public Optional<TokenEntity> findByRefreshToken(String refreshToken) {
+    final var jti = jtisByRefreshToken.get(refreshToken);
+    return jti == null
+        ? Optional.empty()
+        : findById(jti).filter(token -> refreshToken.equals(token.getRefreshToken()));
+  }
+
+  @Override
+  public int deleteByUserId(String userId, Consumer<? super UserToken> found) {
+    int deleted = 0;
+    for (String jti : findJtisByUserId(userId)) {
+      final var token = tokens.get(jti);
+      if (token == null) {
+        continue;
+      }
+      found.accept(new UserToken(jti, token.getExpiresAt()));
+      if (tokens.remove(jti, token)) {
+        unindex(token, null);
+        deleted++;
+      }
+    }
+    return deleted;
+  }
+
+  /** The jtis of the user's live tokens. */
+  public Set<String> findJtisByUserId(String userId) {
+    final var jtis = jtisByUserId.get(userId);
+    return jtis == null ? Set.of() : Set.copyOf(jtis);
+  }
+
+  public int size() {
+    return tokens.size();
+  }
+
+  /** Removes the tokens whose expiry has passed; run by the sweeper every tick. */
+  void expire() {
+    final long now = epochMillis.getAsLong();
+    expiry.advance(
+        now,
+        jti -> {
+          final var token = tokens.get(jti);
+          if (token != null && isExpired(token, now) && tokens.remove(jti, token)) {
+            unindex(token, null);
+          }
+        });
+  }
+
+  private void index(TokenEntity token) {
+    if (token.getRefreshToken() != null) {
+      jtisByRefreshToken.put(token.getRefreshToken(), token.getJti());
+    }
+    if (token.getUserId() != null) {
+      jtisByUserId.compute(
+          token.getUserId(),
+          (userId, jtis) -> {
+            final var updated = jtis != null ? jtis : ConcurrentHashMap.<String>newKeySet();
+            updated.add(token.getJti());
+            return updated;
+          });
+    }
+    if (token.getExpiresAt() != null) {
+      expiry.schedule(token.getJti(), token.getExpiresAt().toEpochMilli());
+    }
+  }
+
+  /**
+   * Drops {@code removed} from the secondary indexes, leaving the entries {@code replacement}, a
+   * newer version of the same jti, still needs.
+   */
+  private void unindex(TokenEntity removed, TokenEntity replacement) {
+    final var refreshToken = removed.getRefreshToken();
+    if (refreshToken != null
+        && (replacement == null || !refreshToken.equals(replacement.getRefreshToken()))) {
+      jtisByRefreshToken.remove(refreshToken, removed.getJti());
+    }
+    final var userId = removed.getUserId();
+    if (userId != null && (replacement == null || !userId.equals(replacement.getUserId()))) {
+      jtisByUserId.computeIfPresent(
+          userId,
+          (key, jtis) -> {
+            jtis.remove(removed.getJti());
+            return jtis.isEmpty() ? null : jtis;
+          });
+    }
+  }
+
+  private TokenEntity live(TokenEntity token) {
+    return token == null || isExpired(token, epochMillis.getAsLong()) ? null : token;
+  }
+
+  private static boolean isExpired(TokenEntity token, long nowMillis) {
+    return token.getExpiresAt() != null && token.getExpiresAt().toEpochMilli() <= nowMillis;
+  }
+
+  private static boolean refreshTokenMatches(TokenEntity token, String refreshToken) {
+    return token.getRefreshToken() != null
+        && refreshToken != null
+        && MessageDigest.isEqual(
+            token.getRefreshToken().getBytes(StandardCharsets.US_ASCII),
+            refreshToken.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /** A copy whose claims map cannot be changed, so that copies handed out can share it. */
+  private static TokenEntity storedCopyOf(TokenEntity token) {
+    final var copy = copyOf(token);
+    if (token.getJwtToken() != null) {
+      copy.setJwtToken(Collections.unmodifiableMap(new HashMap<>(token.getJwtToken())));
+    }
+    return copy;
+  }
+
+  private static TokenEntity copyOf(TokenEntity token) {
+    final var copy = new TokenEntity();
+    copy.setJti(token.getJti());
+    copy.setJwtToken(token.getJwtToken());
+    copy.setRefreshToken(token.getRefreshToken());
+    copy.setExpiresAt(token.getExpiresAt());
+    copy.setCreatedAt(token.getCreatedAt());
+    copy.setUpdatedAt(token.getUpdatedAt());
+    copy.setUserId(token.getUserId());
+    return copy;
+  }
+}
@@ -0,0 +1,29 @@
+package hu.squarelabs.auth21.repository;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces out the calls of a background job so that it takes at most a fixed share of the table's
+ * capacity. Not thread-safe; each job thread has its own.
+ */
+final class Pacer {
+  private final long intervalNanos;
+  private long next = System.nanoTime();
+
+  /** A rate of zero or less means no limit. */
+  Pacer(double perSecond) {
+    this.intervalNanos = perSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / perSecond) : 0;
+  }
+
+  /** Waits until the next call is allowed. */
+  void acquire() throws InterruptedException {
+    if (intervalNanos == 0) {
+      return;
+    }
+    final long now = System.nanoTime();
+    if (next > now) {
+      TimeUnit.NANOSECONDS.sleep(next - now);
+    }
+    next = Math.max(next, now) + intervalNanos;
+  }
+}
@@ -0,0 +1,179 @@
+package hu.squarelabs.auth21.repository;
+
+import hu.squarelabs.auth21.model.entity.TokenEntitySchema;
+import hu.squarelabs.auth21.util.DaemonThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTimeToLiveRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.TimeToLiveStatus;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateTimeToLiveRequest;
+
+/**
+ * Rewrites the ISO-8601 {@code expires_at} strings of tokens saved by earlier versions as epoch
+ * seconds, then turns on time to live for the attribute. DynamoDB silently ignores items whose TTL
+ * attribute is not a number, so without this pass legacy tokens would never expire on their own.
+ *
+ * <p>Runs once, on a background thread after startup. The Scan returns only items whose expiry is
+ * still a string, and each rewrite is conditional on the stored value being unchanged, so a token
+ * saved or deleted meanwhile is left alone and nothing deleted is brought back. Rewrites are paced
+ * to {@code writes-per-second}. A pass that finds nothing to do is cheap to repeat, so the
+ * migration can stay enabled until every node runs a version that writes numbers.
+ */
+@Component
+@ConditionalOnProperty(name = TokenExpiryMigration.ENABLED_PROPERTY, havingValue = "true")
+public class TokenExpiryMigration {
+  public static final String ENABLED_PROPERTY = "token-store.ttl-migration.enabled";
+
+  private static final Logger logger = LogManager.getLogger(TokenExpiryMigration.class);
+
+  private static final Map<String, String> NAMES =
+      Map.of("#jti", "jti", "#expires_at", TokenEntitySchema.EXPIRES_AT);
+  private static final AttributeValue STRING_TYPE = AttributeValue.fromS("S");
+
+  public record Result(long migrated, long skipped, boolean timeToLiveEnabled) {}
+
+  private final DynamoDbClient client;
+  private final String tableName;
+  private final int pageSize;
+  private final double writesPerSecond;
+  private final boolean enableTimeToLive;
+  private ScheduledExecutorService executor;
+
+  public TokenExpiryMigration(
+      DynamoDbClient client,
+      @Value("${aws.dynamodb.table.tokens:auth-tokens}") String tableName,
+      @Value("${token-store.ttl-migration.page-size:100}") int pageSize,
+      @Value("${token-store.ttl-migration.writes-per-second:25}") double writesPerSecond,
+      @Value("${token-store.ttl-migration.enable-ttl:true}") boolean enableTimeToLive) {
+    this.client = client;
+    this.tableName = tableName;
+    this.pageSize = pageSize;
+    this.writesPerSecond = writesPerSecond;
+    this.enableTimeToLive = enableTimeToLive;
+  }
+
+  @PostConstruct
+  public void start() {
+    executor = DaemonThreads.scheduler("token-ttl-migration");
+    executor.execute(
+        () -> {
+          try {
+            migrate();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } catch (Exception e) {
+            logger.warn("Token expiry migration failed; it resumes on the next start", e);
+          }
+        });
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Migrates every legacy item and, if configured, enables time to live on {@code expires_at}. */
+  public Result migrate() throws InterruptedException {
+    final var writes = new Pacer(writesPerSecond);
+    long migrated = 0;
+    long skipped = 0;
+
+    Map<String, AttributeValue> startKey = null;
+    do {
+      final var page =
+          client.scan(
+              ScanRequest.builder()
+                  .tableName(tableName)
+                  .filterExpression("attribute_type(#expires_at, :string)")
+                  .projectionExpression("#jti, #expires_at")
+                  .expressionAttributeNames(NAMES)
+                  .expressionAttributeValues(Map.of(":string", STRING_TYPE))
+                  .limit(pageSize)
+                  .exclusiveStartKey(startKey)
+                  .build());
+      for (Map<String, AttributeValue> item : page.items()) {
+        writes.acquire();
+        if (rewrite(item)) {
+          migrated++;
+        } else {
+          skipped++;
+        }
+      }
+      startKey = page.hasLastEvaluatedKey() ? page.lastEvaluatedKey() : null;
+    } while (startKey != null);
+
+    final boolean timeToLiveEnabled = enableTimeToLive && enableTimeToLive();
+    logger.info(
+        "Migrated {} token expiries in {} to epoch seconds, skipped {}; time to live {}",
+        migrated,
+        tableName,
+        skipped,
+        timeToLiveEnabled ? "enabled" : "unchanged");
+    return new Result(migrated, skipped, timeToLiveEnabled);
+  }
+
+  private boolean rewrite(Map<String, AttributeValue> item) {
+    final var legacy = item.get(TokenEntitySchema.EXPIRES_AT);
+    final long epochSeconds;
+    try {
+      epochSeconds = Instant.parse(legacy.s()).getEpochSecond();
+    } catch (DateTimeParseException e) {
+      logger.warn("Token {} has an unreadable expiry '{}'", item.get("jti").s(), legacy.s());
+      return false;
+    }
+    try {
+      client.updateItem(
+          UpdateItemRequest.builder()
+              .tableName(tableName)
+              .key(Map.of("jti", item.get("jti")))
+              .updateExpression("SET #expires_at = :seconds")
+              .conditionExpression("#expires_at = :legacy")
+              .expressionAttributeNames(Map.of("#expires_at", TokenEntitySchema.EXPIRES_AT))
+              .expressionAttributeValues(
+                  Map.of(
+                      ":seconds",
+                      AttributeValue.fromN(Long.toString(epochSeconds)),
+                      ":legacy",
+                      legacy))
+              .build());
+      return true;
+    } catch (ConditionalCheckFailedException e) {
+      return false;
+    }
+  }
+
+  /** Returns whether this call turned time to live on; it is left alone if already configured. */
+  private boolean enableTimeToLive() {
+    final var description =
+        client
+            .describeTimeToLive(DescribeTimeToLiveRequest.builder().tableName(tableName).build())
+            .timeToLiveDescription();
+    if (description.timeToLiveStatus() != TimeToLiveStatus.DISABLED) {
+      return false;
+    }
+    client.updateTimeToLive(
+        UpdateTimeToLiveRequest.builder()
+            .tableName(tableName)
+            .timeToLiveSpecification(
+                specification ->
+                    specification.attributeName(TokenEntitySchema.EXPIRES_AT).enabled(true))
+            .build());
+    return true;
+  }
+}
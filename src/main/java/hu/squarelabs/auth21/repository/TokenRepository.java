@@ -1,24 +1,66 @@
 package hu.squarelabs.auth21.repository;
 
+import hu.squarelabs.auth21.converter.JwtClaimsAttributeConverter;
 import hu.squarelabs.auth21.model.entity.TokenEntity;
+import hu.squarelabs.auth21.model.entity.TokenEntitySchema;
+import hu.squarelabs.auth21.util.DaemonThreads;
+import jakarta.annotation.PreDestroy;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.*;
 import software.amazon.awssdk.enhanced.dynamodb.model.*;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
 
 @Repository
-public class TokenRepository {
+@ConditionalOnProperty(
+    name = TokenStore.BACKEND_PROPERTY,
+    havingValue = "dynamodb",
+    matchIfMissing = true)
+public class TokenRepository implements TokenStore {
+  private static final int MAX_BATCH_SIZE = 25;
+
+  private final DynamoDbEnhancedClient enhancedClient;
   private final DynamoDbTable<TokenEntity> tokenTable;
+  private final ExecutorService revokeExecutor;
+  private final int revokeMaxAttempts;
+  private final long revokeBaseBackoffMillis;
 
   public TokenRepository(
       DynamoDbEnhancedClient enhancedClient,
-      @Value("${aws.dynamodb.table.tokens:auth-tokens}") String tableName) {
-    this.tokenTable = enhancedClient.table(tableName, TableSchema.fromBean(TokenEntity.class));
+      @Value("${aws.dynamodb.table.tokens:auth-tokens}") String tableName,
+      @Value("${aws.dynamodb.token-claims.format:MAP}")
+          JwtClaimsAttributeConverter.Format claimsFormat,
+      @Value("${token-store.revoke.parallelism:8}") int revokeParallelism,
+      @Value("${token-store.revoke.max-attempts:8}") int revokeMaxAttempts,
+      @Value("${token-store.revoke.base-backoff-ms:25}") long revokeBaseBackoffMillis) {
+    this.enhancedClient = enhancedClient;
+    this.tokenTable = enhancedClient.table(tableName, TokenEntitySchema.create(claimsFormat));
+    this.revokeMaxAttempts = revokeMaxAttempts;
+    this.revokeBaseBackoffMillis = revokeBaseBackoffMillis;
+    this.revokeExecutor =
+        Executors.newFixedThreadPool(revokeParallelism, DaemonThreads.numbered("token-revoke"));
+  }
+
+  @PreDestroy
+  public void stop() {
+    revokeExecutor.shutdownNow();
   }
 
+  @Override
   public void save(TokenEntity tokenEntity) {
     if (tokenEntity.getCreatedAt() == null) {
       tokenEntity.setCreatedAt(Instant.now());
@@ -29,15 +71,108 @@ public class TokenRepository {
     tokenTable.putItem(tokenEntity);
   }
 
-  public Optional<TokenEntity> findById(String jti) {
+  /**
+   * Writes up to 25 puts and deletes in a single BatchWriteItem call and returns the items DynamoDB
+   * left unprocessed, for example because of throttling. A jti must not appear in both collections.
+   */
+  @Override
+  public UnprocessedWrites batchWrite(Collection<TokenEntity> puts, Collection<String> deleteJtis) {
+    if (puts.isEmpty() && deleteJtis.isEmpty()) {
+      return new UnprocessedWrites(List.of(), List.of());
+    }
+
+    final var batch = WriteBatch.builder(TokenEntity.class).mappedTableResource(tokenTable);
+    final var now = Instant.now();
+    for (TokenEntity tokenEntity : puts) {
+      if (tokenEntity.getCreatedAt() == null) {
+        tokenEntity.setCreatedAt(now);
+      }
+      if (tokenEntity.getUpdatedAt() == null) {
+        tokenEntity.setUpdatedAt(now);
+      }
+      batch.addPutItem(tokenEntity);
+    }
+    for (String jti : deleteJtis) {
+      batch.addDeleteItem(Key.builder().partitionValue(jti).build());
+    }
+
+    final var result =
+        enhancedClient.batchWriteItem(
+            BatchWriteItemEnhancedRequest.builder().writeBatches(batch.build()).build());
+
+    return new UnprocessedWrites(
+        result.unprocessedPutItemsForTable(tokenTable),
+        result.unprocessedDeleteItemsForTable(tokenTable).stream()
+            .map(key -> key.partitionKeyValue().s())
+            .toList());
+  }
+
+  /**
+   * Replaces the token stored under {@code oldJti} with {@code replacement} in two conditional
+   * writes and no reads. The DeleteItem only succeeds while the stored refresh token still equals
+   * {@code oldRefreshToken}, so of two concurrent rotations with the same refresh token exactly one
+   * gets past it; only that one goes on to put the replacement.
+   *
+   * <p>A transaction would make the pair atomic, but transactional writes are billed at twice the
+   * standard rate: 12 WCU per refresh across the table and its two indexes, against 6 WCU for the
+   * plain DeleteItem and PutItem. The two writes fail closed instead. If the put fails after the
+   * delete, the session is gone and the client has to log in again, but no refresh token is ever
+   * accepted twice.
+   *
+   * @return false when the guard failed because the token was already rotated, revoked or never
+   *     existed, or because the replacement's jti is taken
+   */
+  @Override
+  public boolean rotate(String oldJti, String oldRefreshToken, TokenEntity replacement) {
+    final var now = Instant.now();
+    replacement.setCreatedAt(now);
+    replacement.setUpdatedAt(now);
+
+    try {
+      tokenTable.deleteItem(rotateDeleteRequest(oldJti, oldRefreshToken));
+      tokenTable.putItem(rotatePutRequest(replacement));
+      return true;
+    } catch (ConditionalCheckFailedException e) {
+      return false;
+    } catch (Exception e) {
+      throw new RuntimeException("Error rotating token: " + oldJti, e);
+    }
+  }
+
+  static DeleteItemEnhancedRequest rotateDeleteRequest(String oldJti, String oldRefreshToken) {
+    return DeleteItemEnhancedRequest.builder()
+        .key(Key.builder().partitionValue(oldJti).build())
+        .conditionExpression(
+            Expression.builder()
+                .expression("refresh_token = :refresh_token")
+                .putExpressionValue(":refresh_token", AttributeValue.fromS(oldRefreshToken))
+                .build())
+        .build();
+  }
+
+  static PutItemEnhancedRequest<TokenEntity> rotatePutRequest(TokenEntity replacement) {
+    return PutItemEnhancedRequest.builder(TokenEntity.class)
+        .item(replacement)
+        .conditionExpression(Expression.builder().expression("attribute_not_exists(jti)").build())
+        .build();
+  }
+
+  @Override
+  public Optional<TokenEntity> findById(String jti, boolean consistentRead) {
     try {
-      TokenEntity token = tokenTable.getItem(Key.builder().partitionValue(jti).build());
+      TokenEntity token =
+          tokenTable.getItem(
+              GetItemEnhancedRequest.builder()
+                  .key(Key.builder().partitionValue(jti).build())
+                  .consistentRead(consistentRead)
+                  .build());
       return Optional.ofNullable(token);
     } catch (Exception e) {
       throw new RuntimeException("Error finding token by jti: " + jti, e);
     }
   }
 
+  @Override
   public void deleteById(String jti) {
     try {
       tokenTable.deleteItem(Key.builder().partitionValue(jti).build());
@@ -46,6 +181,7 @@ public class TokenRepository {
     }
   }
 
+  @Override
   public Optional<TokenEntity> findByRefreshToken(String refreshToken) {
     try {
       DynamoDbIndex<TokenEntity> refreshTokenIndex = tokenTable.index("RefreshTokenIndex");
@@ -71,4 +207,76 @@ public class TokenRepository {
       throw new RuntimeException("Error finding token by refresh token", e);
     }
   }
+
+  /**
+   * Pages through UserIdIndex fetching only {@code jti} and {@code expires_at}, and deletes the
+   * tokens 25 at a time in BatchWriteItem calls spread over {@code revoke.parallelism} threads.
+   * Batches for one page are sent while the next page is read. Items DynamoDB leaves unprocessed,
+   * typically under throttling, are retried with exponential backoff and jitter.
+   *
+   * <p>The index is eventually consistent, so a token issued moments before the call may be missed,
+   * as may one still waiting in the write-behind queue.
+   */
+  @Override
+  public int deleteByUserId(String userId, Consumer<? super UserToken> found) {
+    final List<CompletableFuture<Integer>> batches = new ArrayList<>();
+    try {
+      final var pages =
+          tokenTable
+              .index("UserIdIndex")
+              .query(
+                  QueryEnhancedRequest.builder()
+                      .queryConditional(
+                          QueryConditional.keyEqualTo(Key.builder().partitionValue(userId).build()))
+                      .attributesToProject("jti", TokenEntitySchema.EXPIRES_AT)
+                      .build());
+      List<String> batch = new ArrayList<>(MAX_BATCH_SIZE);
+      for (Page<TokenEntity> page : pages) {
+        for (TokenEntity token : page.items()) {
+          found.accept(new UserToken(token.getJti(), token.getExpiresAt()));
+          batch.add(token.getJti());
+          if (batch.size() == MAX_BATCH_SIZE) {
+            batches.add(submitDeletes(batch));
+            batch = new ArrayList<>(MAX_BATCH_SIZE);
+          }
+        }
+      }
+      if (!batch.isEmpty()) {
+        batches.add(submitDeletes(batch));
+      }
+
+      CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)).join();
+      return batches.stream().mapToInt(CompletableFuture::join).sum();
+    } catch (CompletionException e) {
+      throw new RuntimeException("Error deleting tokens of user: " + userId, e.getCause());
+    } catch (Exception e) {
+      batches.forEach(future -> future.cancel(true));
+      throw new RuntimeException("Error deleting tokens of user: " + userId, e);
+    }
+  }
+
+  private CompletableFuture<Integer> submitDeletes(List<String> jtis) {
+    return CompletableFuture.supplyAsync(() -> deleteAll(jtis), revokeExecutor);
+  }
+
+  private int deleteAll(List<String> jtis) {
+    List<String> remaining = jtis;
+    for (int attempt = 1; ; attempt++) {
+      remaining = batchWrite(List.of(), remaining).deletes();
+      if (remaining.isEmpty()) {
+        return jtis.size();
+      }
+      if (attempt >= revokeMaxAttempts) {
+        throw new IllegalStateException(
+            remaining.size() + " token deletes left unprocessed after " + attempt + " attempts");
+      }
+      final long cap = revokeBaseBackoffMillis << Math.min(attempt - 1, 10);
+      try {
+        Thread.sleep(ThreadLocalRandom.current().nextLong(cap / 2, cap + 1));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while deleting tokens", e);
+      }
+    }
+  }
 }
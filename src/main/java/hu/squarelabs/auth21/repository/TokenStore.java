@@ -0,0 +1,58 @@
+package hu.squarelabs.auth21.repository;
+
+import hu.squarelabs.auth21.model.entity.TokenEntity;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Storage for issued tokens, keyed by jti. The backend is chosen with {@code token-store.backend}:
+ * {@code dynamodb} ({@link TokenRepository}, the default) or {@code memory} ({@link
+ * InMemoryTokenStore}) for single-node deployments that can afford to lose sessions on restart.
+ */
+public interface TokenStore {
+  String BACKEND_PROPERTY = "token-store.backend";
+
+  record UnprocessedWrites(List<TokenEntity> puts, List<String> deletes) {}
+
+  /** A token found by {@link #deleteByUserId}; {@code expiresAt} is null if it was never set. */
+  record UserToken(String jti, Instant expiresAt) {}
+
+  void save(TokenEntity tokenEntity);
+
+  /**
+   * Writes the puts and deletes together and returns the items the backend left unprocessed. At
+   * most 25 items are accepted per call and a jti must not appear in both collections.
+   */
+  UnprocessedWrites batchWrite(Collection<TokenEntity> puts, Collection<String> deleteJtis);
+
+  /**
+   * Replaces the token stored under {@code oldJti} with {@code replacement}, but only if the stored
+   * refresh token still equals {@code oldRefreshToken} and the replacement's jti is unused. Of two
+   * concurrent rotations with the same refresh token at most one succeeds.
+   *
+   * @return false when the guard failed because the token was already rotated, revoked or never
+   *     existed
+   */
+  boolean rotate(String oldJti, String oldRefreshToken, TokenEntity replacement);
+
+  default Optional<TokenEntity> findById(String jti) {
+    return findById(jti, false);
+  }
+
+  Optional<TokenEntity> findById(String jti, boolean consistentRead);
+
+  void deleteById(String jti);
+
+  Optional<TokenEntity> findByRefreshToken(String refreshToken);
+
+  /**
+   * Deletes every token issued to {@code userId}. Each token is passed to {@code found} before it
+   * is deleted, so a caller can revoke it locally even if the delete later fails.
+   *
+   * @return the number of tokens deleted
+   */
+  int deleteByUserId(String userId, Consumer<? super UserToken> found);
+}
@@ -0,0 +1,343 @@
+package hu.squarelabs.auth21.repository;
+
+import hu.squarelabs.auth21.model.entity.TokenEntity;
+import hu.squarelabs.auth21.util.DaemonThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Write-behind pipeline that coalesces token puts and deletes into 25-item BatchWriteItem calls.
+ *
+ * <p>Writes are sharded by jti, so all operations on one token are applied in order by the same
+ * flusher thread. A flusher sends a batch once it holds 25 distinct tokens or once the oldest write
+ * has waited {@code max-delay-ms}; repeated writes to the same jti within a batch collapse into the
+ * last one. Items DynamoDB leaves unprocessed are retried with exponential backoff and jitter.
+ *
+ * <p>Every write returns a future that completes when its batch has been persisted. With {@link
+ * Ack#ENQUEUE} callers return as soon as the write is queued and a crash can lose queued writes;
+ * with {@link Ack#FLUSH} they wait for the future. When a shard's queue stays full for {@code
+ * offer-timeout-ms}, or once shutdown has begun, writes bypass the queue and go straight to the
+ * table. On shutdown the queues are drained before the DynamoDB client is closed.
+ *
+ * <p>The latest unpersisted write of every jti is tracked. A new write for the jti is dispatched,
+ * to the queue or to the table, only after the write it replaced was, and a write that bypasses the
+ * queue first waits for the earlier write to land, so a direct write never overtakes an earlier
+ * write or is overtaken by a later one. Only writes to the same jti wait for each other. Operations
+ * that go to the table directly, such as rotation and revoking a user's sessions, use the same
+ * tracking to wait for the writes they depend on with {@link #awaitPending} and {@link
+ * #awaitPendingPuts}.
+ */
+@Component
+@ConditionalOnProperty(name = TokenWriteBehindQueue.ENABLED_PROPERTY, havingValue = "true")
+public class TokenWriteBehindQueue {
+  public static final String ENABLED_PROPERTY = "aws.dynamodb.write-behind.enabled";
+
+  static final int MAX_BATCH_SIZE = 25;
+
+  private static final long MAX_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private static final Logger logger = LogManager.getLogger(TokenWriteBehindQueue.class);
+
+  public enum Ack {
+    ENQUEUE,
+    FLUSH
+  }
+
+  private final TokenStore tokenStore;
+  private final Ack ack;
+  private final long maxDelayNanos;
+  private final long offerTimeoutMillis;
+  private final int maxAttempts;
+  private final long baseBackoffMillis;
+  private final long shutdownTimeoutMillis;
+  private final Shard[] shards;
+  private final Map<String, PendingWrite> pending = new ConcurrentHashMap<>();
+
+  private volatile boolean running;
+
+  public TokenWriteBehindQueue(
+      TokenStore tokenStore,
+      @Value("${aws.dynamodb.write-behind.ack:ENQUEUE}") Ack ack,
+      @Value("${aws.dynamodb.write-behind.shards:2}") int shards,
+      @Value("${aws.dynamodb.write-behind.capacity:10000}") int capacity,
+      @Value("${aws.dynamodb.write-behind.max-delay-ms:20}") long maxDelayMillis,
+      @Value("${aws.dynamodb.write-behind.offer-timeout-ms:50}") long offerTimeoutMillis,
+      @Value("${aws.dynamodb.write-behind.max-attempts:5}") int maxAttempts,
+      @Value("${aws.dynamodb.write-behind.base-backoff-ms:25}") long baseBackoffMillis,
+      @Value("${aws.dynamodb.write-behind.shutdown-timeout-ms:10000}") long shutdownTimeoutMillis) {
+    this.tokenStore = tokenStore;
+    this.ack = ack;
+    this.maxDelayNanos = Duration.ofMillis(maxDelayMillis).toNanos();
+    this.offerTimeoutMillis = offerTimeoutMillis;
+    this.maxAttempts = maxAttempts;
+    this.baseBackoffMillis = baseBackoffMillis;
+    this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+    this.shards = new Shard[shards];
+    for (int i = 0; i < shards; i++) {
+      this.shards[i] = new Shard(i, Math.max(1, capacity / shards));
+    }
+  }
+
+  @PostConstruct
+  public void start() {
+    running = true;
+    for (Shard shard : shards) {
+      shard.thread.start();
+    }
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMillis);
+    for (Shard shard : shards) {
+      shard.thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+    }
+    for (Shard shard : shards) {
+      final List<PendingWrite> leftovers = new ArrayList<>();
+      shard.queue.drainTo(leftovers);
+      leftovers.forEach(this::writeDirectly);
+    }
+  }
+
+  public Ack getAck() {
+    return ack;
+  }
+
+  public CompletableFuture<Void> put(TokenEntity tokenEntity) {
+    return enqueue(new PendingWrite(tokenEntity.getJti(), tokenEntity));
+  }
+
+  public CompletableFuture<Void> delete(String jti) {
+    return enqueue(new PendingWrite(jti, null));
+  }
+
+  /**
+   * Waits until the latest write of {@code jti} queued so far has been persisted or has failed.
+   * Returns at once when nothing is pending for it.
+   */
+  public void awaitPending(String jti) {
+    final var write = pending.get(jti);
+    if (write != null) {
+      awaitQuietly(write);
+    }
+  }
+
+  /**
+   * Waits for every pending put of a token that belongs to {@code userId} and returns those tokens.
+   * Pending writes are few, so they are simply scanned.
+   */
+  public List<TokenEntity> awaitPendingPuts(String userId) {
+    final List<PendingWrite> writes = new ArrayList<>();
+    for (PendingWrite write : pending.values()) {
+      if (!write.isDelete() && userId.equals(write.entity.getUserId())) {
+        writes.add(write);
+      }
+    }
+    final List<TokenEntity> entities = new ArrayList<>(writes.size());
+    for (PendingWrite write : writes) {
+      awaitQuietly(write);
+      entities.add(write.entity);
+    }
+    return entities;
+  }
+
+  private CompletableFuture<Void> enqueue(PendingWrite write) {
+    final var previous = pending.put(write.jti, write);
+    write.future.whenComplete((v, e) -> pending.remove(write.jti, write));
+    try {
+      if (previous != null) {
+        // Only a concurrent write to the same jti is waited for, and only until it is dispatched.
+        previous.dispatched.join();
+      }
+      if (running) {
+        final var shard = shards[Math.floorMod(write.jti.hashCode(), shards.length)];
+        try {
+          if (shard.queue.offer(write, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            return write.future;
+          }
+          logger.warn("Write-behind queue full, writing token {} directly", write.jti);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      if (previous != null) {
+        awaitQuietly(previous);
+      }
+      writeDirectly(write);
+      return write.future;
+    } finally {
+      write.dispatched.complete(null);
+    }
+  }
+
+  private static void awaitQuietly(PendingWrite write) {
+    try {
+      write.future.join();
+    } catch (RuntimeException e) {
+      // The write failed and was logged where it was flushed; its outcome is all that matters.
+    }
+  }
+
+  private void writeDirectly(PendingWrite write) {
+    try {
+      if (write.isDelete()) {
+        tokenStore.deleteById(write.jti);
+      } else {
+        tokenStore.save(write.entity);
+      }
+      write.future.complete(null);
+    } catch (RuntimeException e) {
+      write.future.completeExceptionally(e);
+    }
+  }
+
+  void flush(Map<String, List<PendingWrite>> writesByJti) {
+    Map<String, List<PendingWrite>> remaining = writesByJti;
+    for (int attempt = 1; ; attempt++) {
+      final List<TokenEntity> puts = new ArrayList<>();
+      final List<String> deletes = new ArrayList<>();
+      for (List<PendingWrite> writes : remaining.values()) {
+        final var latest = writes.get(writes.size() - 1);
+        if (latest.isDelete()) {
+          deletes.add(latest.jti);
+        } else {
+          puts.add(latest.entity);
+        }
+      }
+
+      final Set<String> unprocessed = new HashSet<>();
+      RuntimeException failure = null;
+      try {
+        final var result = tokenStore.batchWrite(puts, deletes);
+        result.puts().forEach(entity -> unprocessed.add(entity.getJti()));
+        unprocessed.addAll(result.deletes());
+      } catch (RuntimeException e) {
+        failure = e;
+        unprocessed.addAll(remaining.keySet());
+      }
+
+      final Map<String, List<PendingWrite>> retry = new LinkedHashMap<>();
+      remaining.forEach(
+          (jti, writes) -> {
+            if (unprocessed.contains(jti)) {
+              retry.put(jti, writes);
+            } else {
+              writes.forEach(write -> write.future.complete(null));
+            }
+          });
+
+      if (retry.isEmpty()) {
+        return;
+      }
+      if (attempt >= maxAttempts) {
+        final var cause =
+            failure != null
+                ? failure
+                : new IllegalStateException(
+                    "Token writes left unprocessed after " + attempt + " attempts");
+        logger.error("Dropping {} token writes", retry.size(), cause);
+        retry
+            .values()
+            .forEach(writes -> writes.forEach(w -> w.future.completeExceptionally(cause)));
+        return;
+      }
+
+      remaining = retry;
+      backoff(attempt);
+    }
+  }
+
+  private void backoff(int attempt) {
+    final long cap = baseBackoffMillis << Math.min(attempt - 1, 10);
+    try {
+      Thread.sleep(ThreadLocalRandom.current().nextLong(cap / 2, cap + 1));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  static final class PendingWrite {
+    private final String jti;
+    private final TokenEntity entity;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private final CompletableFuture<Void> dispatched = new CompletableFuture<>();
+
+    private PendingWrite(String jti, TokenEntity entity) {
+      this.jti = jti;
+      this.entity = entity;
+    }
+
+    private boolean isDelete() {
+      return entity == null;
+    }
+  }
+
+  private final class Shard implements Runnable {
+    private final BlockingQueue<PendingWrite> queue;
+    private final Thread thread;
+
+    private Shard(int index, int capacity) {
+      this.queue = new ArrayBlockingQueue<>(capacity);
+      this.thread = DaemonThreads.named("token-write-behind-" + index).newThread(this);
+    }
+
+    @Override
+    public void run() {
+      final Map<String, List<PendingWrite>> batch = new LinkedHashMap<>();
+      while (running || !queue.isEmpty()) {
+        try {
+          final var first = queue.poll(MAX_POLL_NANOS, TimeUnit.NANOSECONDS);
+          if (first == null) {
+            continue;
+          }
+          add(batch, first);
+
+          final long deadline = System.nanoTime() + maxDelayNanos;
+          while (batch.size() < MAX_BATCH_SIZE) {
+            // Stop lingering once shutdown begins, but keep checking so a long max delay does
+            // not hold the last batch back.
+            final long wait = running ? Math.min(deadline - System.nanoTime(), MAX_POLL_NANOS) : 0;
+            final var next = queue.poll(Math.max(0, wait), TimeUnit.NANOSECONDS);
+            if (next != null) {
+              add(batch, next);
+            } else if (!running || System.nanoTime() - deadline >= 0) {
+              break;
+            }
+          }
+
+          flush(batch);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        } catch (RuntimeException e) {
+          logger.error("Unexpected error in write-behind flusher", e);
+        } finally {
+          batch.clear();
+        }
+      }
+    }
+
+    private void add(Map<String, List<PendingWrite>> batch, PendingWrite write) {
+      batch.computeIfAbsent(write.jti, jti -> new ArrayList<>(1)).add(write);
+    }
+  }
+}
@@ -1,26 +1,35 @@
 package hu.squarelabs.auth21.repository;
 
+import hu.squarelabs.auth21.cache.ExpiringCache;
 import hu.squarelabs.auth21.model.entity.UserEntity;
+import hu.squarelabs.auth21.model.entity.UserEntitySchema;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.*;
 import software.amazon.awssdk.enhanced.dynamodb.model.*;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
 
 @Repository
 public class UserRepository {
+  private static final String EMAIL_INDEX = "EmailIndex";
 
-  private final DynamoDbEnhancedClient enhancedClient;
   private final DynamoDbTable<UserEntity> userTable;
-  private final String tableName;
+  private final DynamoDbIndex<UserEntity> emailIndex;
+  private final ExpiringCache<String, String> emailToIdCache;
 
   public UserRepository(
       DynamoDbEnhancedClient enhancedClient,
-      @Value("${aws.dynamodb.table.users:users}") String tableName) {
-    this.enhancedClient = enhancedClient;
-    this.tableName = tableName;
-    this.userTable = enhancedClient.table(tableName, TableSchema.fromBean(UserEntity.class));
+      @Value("${aws.dynamodb.table.users:users}") String tableName,
+      @Value("${cache.user-email.max-size:10000}") int emailCacheMaxSize,
+      @Value("${cache.user-email.ttl-seconds:300}") long emailCacheTtlSeconds) {
+    this.userTable = enhancedClient.table(tableName, UserEntitySchema.create());
+    this.emailIndex = userTable.index(EMAIL_INDEX);
+    this.emailToIdCache =
+        new ExpiringCache<>(emailCacheMaxSize, Duration.ofSeconds(emailCacheTtlSeconds));
   }
 
   public Optional<UserEntity> findById(String userId) {
@@ -36,25 +45,79 @@ public class UserRepository {
     }
   }
 
+  /**
+   * Looks up a user by email through the EmailIndex GSI. Resolved email to id mappings are cached,
+   * so repeated lookups for the same email cost a single eventually consistent GetItem on the base
+   * table instead of an index query. The index is eventually consistent anyway, and a cached id
+   * whose user no longer has this email falls back to the query.
+   */
   public Optional<UserEntity> findByEmail(String email) {
     try {
-      final var emailAttr = AttributeValue.builder().s(email).build();
-
-      final var filterExpression =
-          Expression.builder()
-              .expression("email = :email AND attribute_not_exists(deleted_at)")
-              .putExpressionValue(":email", emailAttr)
-              .build();
+      final var cachedId = emailToIdCache.get(email);
+      if (cachedId.isPresent()) {
+        final var user = findById(cachedId.get());
+        if (user.isPresent() && email.equals(user.get().getEmail())) {
+          return user;
+        }
+        emailToIdCache.invalidate(email);
+      }
 
-      final var scanRequest =
-          ScanEnhancedRequest.builder().filterExpression(filterExpression).limit(1).build();
+      final var user = queryByEmail(email);
+      user.ifPresent(u -> emailToIdCache.put(email, u.getId()));
 
-      Iterator<UserEntity> results = userTable.scan(scanRequest).items().iterator();
+      return user;
+    } catch (Exception e) {
+      throw new RuntimeException("Error fetching user by email: " + email, e);
+    }
+  }
 
-      return results.hasNext() ? Optional.of(results.next()) : Optional.empty();
+  /**
+   * Replaces a user's password hash, but only while the stored hash is still {@code
+   * expectedPasswordHash}, so a rehash racing a password change cannot undo it. Returns false when
+   * the hash had already changed.
+   */
+  public boolean updatePasswordHash(
+      String userId, String expectedPasswordHash, String newPasswordHash) {
+    final var update = new UserEntity();
+    update.setId(userId);
+    update.setPasswordHash(newPasswordHash);
+    update.setUpdatedAt(Instant.now());
 
+    final var request =
+        UpdateItemEnhancedRequest.builder(UserEntity.class)
+            .item(update)
+            .ignoreNullsMode(IgnoreNullsMode.SCALAR_ONLY)
+            .conditionExpression(
+                Expression.builder()
+                    .expression("password_hash = :expected")
+                    .putExpressionValue(":expected", AttributeValue.fromS(expectedPasswordHash))
+                    .build())
+            .build();
+    try {
+      userTable.updateItem(request);
+      return true;
+    } catch (ConditionalCheckFailedException e) {
+      return false;
     } catch (Exception e) {
-      throw new RuntimeException("Error fetching user by email: " + email, e);
+      throw new RuntimeException("Error updating password hash for user: " + userId, e);
     }
   }
+
+  private Optional<UserEntity> queryByEmail(String email) {
+    final var queryRequest =
+        QueryEnhancedRequest.builder()
+            .queryConditional(
+                QueryConditional.keyEqualTo(Key.builder().partitionValue(email).build()))
+            .build();
+
+    for (Page<UserEntity> page : emailIndex.query(queryRequest)) {
+      for (UserEntity user : page.items()) {
+        if (user.getDeletedAt() == null) {
+          return Optional.of(user);
+        }
+      }
+    }
+
+    return Optional.empty();
+  }
 }
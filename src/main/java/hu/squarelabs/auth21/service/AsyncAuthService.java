@@ -0,0 +1,105 @@
+package hu.squarelabs.auth21.service;
+
+import hu.squarelabs.auth21.cache.JtiRevocationSet;
+import hu.squarelabs.auth21.config.DynamoDbConfig;
+import hu.squarelabs.auth21.model.JwtToken;
+import hu.squarelabs.auth21.repository.AsyncUserRepository;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Non-blocking counterpart of {@link AuthService}. Token generation, signing and verification are
+ * shared with {@link AuthService}; every DynamoDB round trip returns a {@link CompletableFuture},
+ * and calls that do not depend on each other are issued concurrently.
+ */
+@Service
+@ConditionalOnProperty(name = DynamoDbConfig.ASYNC_ENABLED_PROPERTY, havingValue = "true")
+public class AsyncAuthService {
+  private final AsyncUserRepository userRepository;
+  private final AsyncTokenService tokenService;
+  private final AuthService authService;
+  private final JtiRevocationSet revocationSet;
+
+  public AsyncAuthService(
+      AsyncUserRepository userRepository,
+      AsyncTokenService tokenService,
+      AuthService authService,
+      JtiRevocationSet revocationSet) {
+    this.userRepository = userRepository;
+    this.tokenService = tokenService;
+    this.authService = authService;
+    this.revocationSet = revocationSet;
+  }
+
+  public CompletableFuture<Map.Entry<String, String>> login(String email, String password) {
+    try {
+      authService.checkLoginRate(email);
+    } catch (ResponseStatusException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+
+    return userRepository
+        .findByEmail(email)
+        .thenCompose(
+            userOpt -> {
+              if (userOpt.isEmpty()) {
+                throw new ResponseStatusException(
+                    HttpStatus.NOT_FOUND, AuthService.ERROR_MESSAGE_USER_NOT_FOUND);
+              }
+
+              final var user = userOpt.get();
+              return authService
+                  .verifyPasswordAsync(password, user.getPasswordHash())
+                  .thenCompose(
+                      passwordValid -> {
+                        if (!passwordValid) {
+                          throw new ResponseStatusException(
+                              HttpStatus.UNAUTHORIZED, AuthService.ERROR_MESSAGE_UNAUTHORIZED);
+                        }
+                        authService.rehashIfOutdated(user, password);
+
+                        final var jwtToken = authService.generateToken(user.getId(), null, user);
+                        final var refreshToken =
+                            authService.generateRefreshToken(jwtToken.getJti());
+                        final var write = tokenService.create(jwtToken, refreshToken);
+                        final var encoded = authService.encodeJwt(jwtToken);
+
+                        return write.thenApply(v -> Map.entry(encoded, refreshToken));
+                      });
+            });
+  }
+
+  public CompletableFuture<Void> logout(JwtToken jwtToken) {
+    revocationSet.revoke(jwtToken.getJti(), authService.revokedUntil(jwtToken));
+    return tokenService.deleteById(jwtToken.getJti());
+  }
+
+  public CompletableFuture<Map.Entry<String, String>> refresh(
+      JwtToken jwtToken, String refreshToken) {
+    if (!authService.refreshTokenBelongsTo(jwtToken, refreshToken)) {
+      return CompletableFuture.failedFuture(
+          new ResponseStatusException(
+              HttpStatus.NOT_FOUND, AuthService.ERROR_MESSAGE_TOKEN_NOT_FOUND));
+    }
+
+    final var newJwtToken = authService.generateToken(jwtToken.getSub(), null, null);
+    final var newRefreshToken = authService.generateRefreshToken(newJwtToken.getJti());
+
+    final var rotate = tokenService.rotate(jwtToken, refreshToken, newJwtToken, newRefreshToken);
+    final var encoded = authService.encodeJwt(newJwtToken);
+
+    return rotate.thenApply(
+        rotated -> {
+          if (!rotated) {
+            throw new ResponseStatusException(
+                HttpStatus.NOT_FOUND, AuthService.ERROR_MESSAGE_TOKEN_NOT_FOUND);
+          }
+          revocationSet.revoke(jwtToken.getJti(), authService.revokedUntil(jwtToken));
+          return Map.entry(encoded, newRefreshToken);
+        });
+  }
+}
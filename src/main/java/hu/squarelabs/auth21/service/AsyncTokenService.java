@@ -0,0 +1,68 @@
+package hu.squarelabs.auth21.service;
+
+import hu.squarelabs.auth21.config.DynamoDbConfig;
+import hu.squarelabs.auth21.jwt.RefreshTokenCodec;
+import hu.squarelabs.auth21.model.JwtToken;
+import hu.squarelabs.auth21.repository.AsyncTokenRepository;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/** Non-blocking counterpart of {@link TokenService}. */
+@Service
+@ConditionalOnProperty(name = DynamoDbConfig.ASYNC_ENABLED_PROPERTY, havingValue = "true")
+public class AsyncTokenService {
+  private final AsyncTokenRepository tokenRepository;
+  private final RefreshTokenCodec refreshTokenCodec;
+  private final boolean refreshTokenIndexEnabled;
+
+  public AsyncTokenService(
+      AsyncTokenRepository tokenRepository,
+      RefreshTokenCodec refreshTokenCodec,
+      @Value("${aws.dynamodb.refresh-token-index.enabled:true}") boolean refreshTokenIndexEnabled) {
+    this.tokenRepository = tokenRepository;
+    this.refreshTokenCodec = refreshTokenCodec;
+    this.refreshTokenIndexEnabled = refreshTokenIndexEnabled;
+  }
+
+  public CompletableFuture<Void> create(JwtToken jwtToken, String refreshToken) {
+    return tokenRepository.save(TokenService.toEntity(jwtToken, refreshToken));
+  }
+
+  public CompletableFuture<Void> deleteById(String jti) {
+    return tokenRepository.deleteById(jti);
+  }
+
+  public CompletableFuture<Boolean> rotate(
+      JwtToken oldToken, String oldRefreshToken, JwtToken newToken, String newRefreshToken) {
+    return tokenRepository.rotate(
+        oldToken.getJti(), oldRefreshToken, TokenService.toEntity(newToken, newRefreshToken));
+  }
+
+  public CompletableFuture<Optional<Map<String, Object>>> getById(String jti) {
+    return tokenRepository.findById(jti).thenApply(entity -> entity.map(TokenService::toItem));
+  }
+
+  /** Asynchronous {@link TokenService#getByRefreshToken}. */
+  public CompletableFuture<Optional<Map<String, Object>>> getByRefreshToken(String refreshToken) {
+    final var jti = refreshTokenCodec.jtiOf(refreshToken);
+    if (jti.isPresent()) {
+      return tokenRepository
+          .findById(jti.get(), true)
+          .thenApply(
+              entity ->
+                  entity
+                      .filter(e -> TokenService.refreshTokenMatches(e, refreshToken))
+                      .map(TokenService::toItem));
+    }
+    if (!refreshTokenIndexEnabled) {
+      return CompletableFuture.completedFuture(Optional.empty());
+    }
+    return tokenRepository
+        .findByRefreshToken(refreshToken)
+        .thenApply(entity -> entity.map(TokenService::toItem));
+  }
+}
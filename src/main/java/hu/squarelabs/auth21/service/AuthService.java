@@ -1,12 +1,20 @@
 package hu.squarelabs.auth21.service;
 
+import hu.squarelabs.auth21.cache.JtiRevocationSet;
+import hu.squarelabs.auth21.jwt.InvalidJwtException;
+import hu.squarelabs.auth21.jwt.JwtDecoder;
+import hu.squarelabs.auth21.jwt.JwtEncoder;
+import hu.squarelabs.auth21.jwt.RefreshTokenCodec;
 import hu.squarelabs.auth21.model.JwtToken;
 import hu.squarelabs.auth21.model.entity.UserEntity;
-import hu.squarelabs.auth21.repository.TokenRepository;
+import hu.squarelabs.auth21.password.PasswordHashExecutor;
+import hu.squarelabs.auth21.ratelimit.RateLimiter;
+import hu.squarelabs.auth21.repository.TokenStore;
 import hu.squarelabs.auth21.repository.UserRepository;
+import hu.squarelabs.auth21.util.SecureIdGenerator;
 import java.time.Instant;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Value;
@@ -17,8 +25,15 @@ import org.springframework.web.server.ResponseStatusException;
 @Service
 public class AuthService {
   private final UserRepository userRepository;
-  private final TokenRepository tokenRepository;
+  private final TokenStore tokenStore;
   private final TokenService tokenService;
+  private final JwtEncoder jwtEncoder;
+  private final JwtDecoder jwtDecoder;
+  private final JtiRevocationSet revocationSet;
+  private final RefreshTokenCodec refreshTokenCodec;
+  private final SecureIdGenerator idGenerator;
+  private final PasswordHashExecutor passwordHashExecutor;
+  private final RateLimiter rateLimiter;
 
   private static final Logger logger = LogManager.getLogger(AuthService.class);
 
@@ -28,19 +43,35 @@ public class AuthService {
   @Value("${jwt.token.lifetime:3600}")
   private int jwtTokenLifetime;
 
-  private static final String ERROR_MESSAGE_INTERNAL_SERVER_ERROR = "Internal Server Error";
-  private static final String ERROR_MESSAGE_TOKEN_NOT_FOUND = "The requested token was not found";
-  private static final String ERROR_MESSAGE_UNAUTHORIZED = "Unauthorized";
-  private static final String ERROR_MESSAGE_USER_NOT_FOUND = "The requested user was not found";
+  static final String ERROR_MESSAGE_INTERNAL_SERVER_ERROR = "Internal Server Error";
+  static final String ERROR_MESSAGE_TOKEN_NOT_FOUND = "The requested token was not found";
+  static final String ERROR_MESSAGE_UNAUTHORIZED = "Unauthorized";
+  static final String ERROR_MESSAGE_USER_NOT_FOUND = "The requested user was not found";
 
   public AuthService(
-      UserRepository userRepository, TokenRepository tokenRepository, TokenService tokenService) {
+      UserRepository userRepository,
+      TokenStore tokenStore,
+      TokenService tokenService,
+      JwtEncoder jwtEncoder,
+      JwtDecoder jwtDecoder,
+      JtiRevocationSet revocationSet,
+      RefreshTokenCodec refreshTokenCodec,
+      SecureIdGenerator idGenerator,
+      PasswordHashExecutor passwordHashExecutor,
+      RateLimiter rateLimiter) {
     this.userRepository = userRepository;
-    this.tokenRepository = tokenRepository;
+    this.tokenStore = tokenStore;
     this.tokenService = tokenService;
+    this.jwtEncoder = jwtEncoder;
+    this.jwtDecoder = jwtDecoder;
+    this.revocationSet = revocationSet;
+    this.refreshTokenCodec = refreshTokenCodec;
+    this.idGenerator = idGenerator;
+    this.passwordHashExecutor = passwordHashExecutor;
+    this.rateLimiter = rateLimiter;
   }
 
-  private JwtToken generateToken(String sub, Integer exp, UserEntity user) {
+  JwtToken generateToken(String sub, Integer exp, UserEntity user) {
     final var iat = Instant.now();
     Instant expTime;
 
@@ -51,7 +82,7 @@ public class AuthService {
     }
 
     JwtToken jwtToken = new JwtToken();
-    jwtToken.setJti(UUID.randomUUID().toString());
+    jwtToken.setJti(idGenerator.nextId());
     jwtToken.setSub(sub);
     jwtToken.setIat(iat.getEpochSecond());
     jwtToken.setExp(expTime.getEpochSecond());
@@ -70,31 +101,26 @@ public class AuthService {
     return jwtToken;
   }
 
-  private String generateRefreshToken(int length) {
-    final var bytes = new byte[length / 2];
-    new java.security.SecureRandom().nextBytes(bytes);
-
-    final var sb = new StringBuilder();
-    for (byte b : bytes) {
-      sb.append(String.format("%02x", b));
-    }
-    return sb.toString();
-  }
-
-  private Map.Entry<JwtToken, String> generateTokensForUser(JwtToken jwtToken) {
-    final var newJwtToken = generateToken(jwtToken.getSub(), jwtTokenLifetime, null);
-    final var refreshToken = generateRefreshToken(16);
-
-    tokenService.create(newJwtToken, refreshToken);
-
-    return Map.entry(newJwtToken, refreshToken);
+  /** Issues a self-locating refresh token bound to the access token {@code jti}. */
+  String generateRefreshToken(String jti) {
+    final var nonce = new byte[RefreshTokenCodec.NONCE_LENGTH];
+    idGenerator.nextBytes(nonce);
+    return refreshTokenCodec.encode(jti, nonce);
   }
 
   private void revokeToken(JwtToken jwtToken) {
     tokenService.deleteById(jwtToken.getJti());
+    revocationSet.revoke(jwtToken.getJti(), revokedUntil(jwtToken));
+  }
+
+  long revokedUntil(JwtToken jwtToken) {
+    return jwtToken.getExp() != null
+        ? jwtToken.getExp()
+        : Instant.now().plusSeconds(jwtTokenLifetime).getEpochSecond();
   }
 
   public Map.Entry<String, String> login(String email, String password) {
+    checkLoginRate(email);
     final var userOpt = userRepository.findByEmail(email);
     if (userOpt.isEmpty()) {
       throw new ResponseStatusException(HttpStatus.NOT_FOUND, ERROR_MESSAGE_USER_NOT_FOUND);
@@ -107,43 +133,123 @@ public class AuthService {
     if (!passwordValid) {
       throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, ERROR_MESSAGE_UNAUTHORIZED);
     }
+    rehashIfOutdated(user, password);
 
     final var jwtToken = generateToken(user.getId(), null, user);
-    final var refreshToken = generateRefreshToken(16);
+    final var refreshToken = generateRefreshToken(jwtToken.getJti());
     tokenService.create(jwtToken, refreshToken);
 
     return Map.entry(encodeJwt(jwtToken), refreshToken);
   }
 
+  public JwtToken verifyAccessToken(String accessToken) {
+    final JwtToken jwtToken;
+    try {
+      jwtToken = jwtDecoder.decode(accessToken);
+    } catch (InvalidJwtException e) {
+      logger.debug("Rejected access token: {}", e.getMessage());
+      throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, ERROR_MESSAGE_UNAUTHORIZED);
+    }
+
+    if (jwtToken.getJti() != null && revocationSet.isRevoked(jwtToken.getJti())) {
+      throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, ERROR_MESSAGE_UNAUTHORIZED);
+    }
+
+    return jwtToken;
+  }
+
   public void logout(JwtToken jwtToken) {
-    tokenService.deleteById(jwtToken.getJti());
+    revokeToken(jwtToken);
+  }
+
+  /**
+   * Ends every session of {@code userId}, for example after its credentials were compromised. Each
+   * token is added to the revocation set as soon as it is found, so its access token stops
+   * verifying on this node even before its record is deleted.
+   *
+   * @return the number of sessions deleted
+   */
+  public int revokeAllSessions(String userId) {
+    final var deleted =
+        tokenService.deleteByUserId(
+            userId,
+            token ->
+                revocationSet.revoke(
+                    token.jti(),
+                    token.expiresAt() != null
+                        ? token.expiresAt().getEpochSecond()
+                        : Instant.now().plusSeconds(jwtTokenLifetime).getEpochSecond()));
+    logger.info("Revoked {} sessions of user {}", deleted, userId);
+    return deleted;
   }
 
   public Map.Entry<String, String> refresh(JwtToken jwtToken, String refreshToken) {
-    final var itemOpt = tokenService.getByRefreshToken(refreshToken);
-    if (itemOpt.isEmpty()) {
+    if (!refreshTokenBelongsTo(jwtToken, refreshToken)) {
       throw new ResponseStatusException(HttpStatus.NOT_FOUND, ERROR_MESSAGE_TOKEN_NOT_FOUND);
     }
 
-    Map<String, Object> item = itemOpt.get();
-    final var storedToken = (JwtToken) item.get("jwt_token");
+    final var newJwtToken = generateToken(jwtToken.getSub(), jwtTokenLifetime, null);
+    final var newRefreshToken = generateRefreshToken(newJwtToken.getJti());
 
-    if (!jwtToken.equals(storedToken)) {
-      throw new ResponseStatusException(
-          HttpStatus.INTERNAL_SERVER_ERROR, ERROR_MESSAGE_INTERNAL_SERVER_ERROR);
+    if (!tokenService.rotate(jwtToken, refreshToken, newJwtToken, newRefreshToken)) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, ERROR_MESSAGE_TOKEN_NOT_FOUND);
     }
+    revocationSet.revoke(jwtToken.getJti(), revokedUntil(jwtToken));
 
-    revokeToken(jwtToken);
-    final var newTokens = generateTokensForUser(jwtToken);
+    return Map.entry(encodeJwt(newJwtToken), newRefreshToken);
+  }
 
-    return Map.entry(encodeJwt(newTokens.getKey()), newTokens.getValue());
+  /**
+   * Rejects a refresh token that is forged or bound to another jti before it costs a write. Only
+   * tokens with the legacy opaque shape, which carry no jti, are left to the conditional write to
+   * check; anything else that fails the MAC is rejected here.
+   */
+  boolean refreshTokenBelongsTo(JwtToken jwtToken, String refreshToken) {
+    if (jwtToken.getJti() == null || refreshToken == null) {
+      return false;
+    }
+    return refreshTokenCodec
+        .jtiOf(refreshToken)
+        .map(jwtToken.getJti()::equals)
+        .orElseGet(() -> RefreshTokenCodec.isLegacy(refreshToken));
   }
 
-  private boolean verifyPassword(String password, String passwordHash) {
-    return false;
+  /** Throttles guessing against one account before it costs a user lookup and a hash. */
+  void checkLoginRate(String email) {
+    rateLimiter.checkEmail(RateLimiter.ENDPOINT_LOGIN, email);
+  }
+
+  boolean verifyPassword(String password, String passwordHash) {
+    return passwordHashExecutor.verify(password, passwordHash);
+  }
+
+  CompletableFuture<Boolean> verifyPasswordAsync(String password, String passwordHash) {
+    return passwordHashExecutor.verifyAsync(password, passwordHash);
+  }
+
+  /**
+   * Replaces a just-verified hash made with an older algorithm or a lower cost than the current
+   * policy. The new hash is made on the hashing pool and saved from there, after the login has been
+   * answered; if the pool is busy or the save fails, the next login tries again.
+   */
+  void rehashIfOutdated(UserEntity user, String password) {
+    final var oldHash = user.getPasswordHash();
+    if (!passwordHashExecutor.needsRehash(oldHash)) {
+      return;
+    }
+
+    passwordHashExecutor
+        .hashAsync(password)
+        .thenAccept(newHash -> userRepository.updatePasswordHash(user.getId(), oldHash, newHash))
+        .whenComplete(
+            (v, e) -> {
+              if (e != null) {
+                logger.warn("Password rehash skipped for user {}: {}", user.getId(), e.toString());
+              }
+            });
   }
 
-  private String encodeJwt(JwtToken jwtToken) {
-    return "";
+  String encodeJwt(JwtToken jwtToken) {
+    return jwtEncoder.encode(jwtToken);
   }
 }
@@ -0,0 +1,120 @@
+package hu.squarelabs.auth21.service;
+
+import hu.squarelabs.auth21.cache.ExpiringCache;
+import hu.squarelabs.auth21.cache.JtiRevocationSet;
+import hu.squarelabs.auth21.jwt.InvalidJwtException;
+import hu.squarelabs.auth21.jwt.JwtDecoder;
+import hu.squarelabs.auth21.model.JwtToken;
+import hu.squarelabs.auth21.model.dto.response.IntrospectionResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.function.LongSupplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Answers RFC 7662 introspection requests, cache first, for gateways that ask on every request.
+ *
+ * <p>The signature and {@code exp} are verified locally, and a jti in the {@link JtiRevocationSet}
+ * is inactive straight away. Only then is the jti looked up in a bounded cache of earlier answers,
+ * and on a miss read from the token store with a strongly consistent read, after any write of it
+ * still in the write-behind queue has landed. Found tokens are cached for {@code
+ * positive-ttl-seconds}, unknown ones for {@code negative-ttl-seconds}, and neither entry outlives
+ * the token's {@code exp}.
+ *
+ * <p>A token revoked on another node stays active here until its positive entry expires, and one
+ * issued on another node whose write is still queued there reads as unknown until its negative
+ * entry expires, so both TTLs bound how stale an answer can be.
+ */
+@Service
+public class TokenIntrospectionService {
+  private static final Logger logger = LogManager.getLogger(TokenIntrospectionService.class);
+
+  private final JwtDecoder jwtDecoder;
+  private final JtiRevocationSet revocationSet;
+  private final TokenService tokenService;
+  private final ExpiringCache<String, Boolean> cache;
+  private final long positiveTtlSeconds;
+  private final long negativeTtlSeconds;
+  private final LongSupplier epochSeconds;
+  private final Counter hits;
+  private final Counter misses;
+
+  @Autowired
+  public TokenIntrospectionService(
+      JwtDecoder jwtDecoder,
+      JtiRevocationSet revocationSet,
+      TokenService tokenService,
+      MeterRegistry meterRegistry,
+      @Value("${introspection.cache.max-size:100000}") int cacheMaxSize,
+      @Value("${introspection.cache.positive-ttl-seconds:60}") long positiveTtlSeconds,
+      @Value("${introspection.cache.negative-ttl-seconds:10}") long negativeTtlSeconds) {
+    this(
+        jwtDecoder,
+        revocationSet,
+        tokenService,
+        meterRegistry,
+        new ExpiringCache<>(cacheMaxSize, Duration.ofSeconds(positiveTtlSeconds)),
+        positiveTtlSeconds,
+        negativeTtlSeconds,
+        () -> System.currentTimeMillis() / 1000);
+  }
+
+  TokenIntrospectionService(
+      JwtDecoder jwtDecoder,
+      JtiRevocationSet revocationSet,
+      TokenService tokenService,
+      MeterRegistry meterRegistry,
+      ExpiringCache<String, Boolean> cache,
+      long positiveTtlSeconds,
+      long negativeTtlSeconds,
+      LongSupplier epochSeconds) {
+    this.jwtDecoder = jwtDecoder;
+    this.revocationSet = revocationSet;
+    this.tokenService = tokenService;
+    this.cache = cache;
+    this.positiveTtlSeconds = positiveTtlSeconds;
+    this.negativeTtlSeconds = negativeTtlSeconds;
+    this.epochSeconds = epochSeconds;
+    this.hits =
+        Counter.builder("auth.introspection.cache").tag("result", "hit").register(meterRegistry);
+    this.misses =
+        Counter.builder("auth.introspection.cache").tag("result", "miss").register(meterRegistry);
+  }
+
+  public IntrospectionResponse introspect(String token) {
+    final JwtToken jwtToken;
+    try {
+      jwtToken = jwtDecoder.decode(token);
+    } catch (InvalidJwtException e) {
+      logger.debug("Introspected an invalid token: {}", e.getMessage());
+      return IntrospectionResponse.inactive();
+    }
+
+    final var jti = jwtToken.getJti();
+    if (jti == null || revocationSet.isRevoked(jti)) {
+      return IntrospectionResponse.inactive();
+    }
+
+    final var cached = cache.get(jti);
+    final boolean stored;
+    if (cached.isPresent()) {
+      hits.increment();
+      stored = cached.get();
+    } else {
+      misses.increment();
+      stored = tokenService.exists(jti);
+      final long untilExp = jwtToken.getExp() - epochSeconds.getAsLong();
+      final long ttl = Math.min(stored ? positiveTtlSeconds : negativeTtlSeconds, untilExp);
+      cache.put(jti, stored, Duration.ofSeconds(ttl));
+    }
+
+    return stored
+        ? new IntrospectionResponse(jwtToken.getSub(), jti, jwtToken.getIat(), jwtToken.getExp())
+        : IntrospectionResponse.inactive();
+  }
+}
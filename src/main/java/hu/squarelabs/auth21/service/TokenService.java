@@ -1,27 +1,170 @@
 package hu.squarelabs.auth21.service;
 
+import hu.squarelabs.auth21.jwt.RefreshTokenCodec;
 import hu.squarelabs.auth21.model.JwtToken;
 import hu.squarelabs.auth21.model.entity.TokenEntity;
-import hu.squarelabs.auth21.repository.TokenRepository;
+import hu.squarelabs.auth21.repository.TokenStore;
+import hu.squarelabs.auth21.repository.TokenWriteBehindQueue;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.time.Instant;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service
 public class TokenService {
-  private final TokenRepository tokenRepository;
+  private final TokenStore tokenStore;
+  private final RefreshTokenCodec refreshTokenCodec;
+  private final TokenWriteBehindQueue writeBehindQueue;
+  private final boolean refreshTokenIndexEnabled;
 
   private static final Logger logger = LogManager.getLogger(TokenService.class);
 
-  public TokenService(TokenRepository tokenRepository) {
-    this.tokenRepository = tokenRepository;
+  public TokenService(TokenStore tokenStore, RefreshTokenCodec refreshTokenCodec) {
+    this(tokenStore, refreshTokenCodec, Optional.empty(), true);
+  }
+
+  @Autowired
+  public TokenService(
+      TokenStore tokenStore,
+      RefreshTokenCodec refreshTokenCodec,
+      Optional<TokenWriteBehindQueue> writeBehindQueue,
+      @Value("${aws.dynamodb.refresh-token-index.enabled:true}") boolean refreshTokenIndexEnabled) {
+    this.tokenStore = tokenStore;
+    this.refreshTokenCodec = refreshTokenCodec;
+    this.writeBehindQueue = writeBehindQueue.orElse(null);
+    this.refreshTokenIndexEnabled = refreshTokenIndexEnabled;
   }
 
   public void create(JwtToken jwtToken, String refreshToken) {
+    final var tokenEntity = toEntity(jwtToken, refreshToken);
+    if (writeBehindQueue == null) {
+      tokenStore.save(tokenEntity);
+    } else {
+      awaitIfRequired(writeBehindQueue.put(tokenEntity));
+    }
+  }
+
+  public void deleteById(String jti) {
+    if (writeBehindQueue == null) {
+      tokenStore.deleteById(jti);
+    } else {
+      awaitIfRequired(writeBehindQueue.delete(jti));
+    }
+  }
+
+  /**
+   * Deletes every token of {@code userId}, passing each one to {@code found} before its delete is
+   * sent. Tokens of the user still in the write-behind queue are waited for first. They are then
+   * also deleted by jti, since UserIdIndex may not list them yet.
+   *
+   * @return the number of tokens deleted
+   */
+  public int deleteByUserId(String userId, Consumer<? super TokenStore.UserToken> found) {
+    if (writeBehindQueue == null) {
+      return tokenStore.deleteByUserId(userId, found);
+    }
+
+    final var queued = writeBehindQueue.awaitPendingPuts(userId);
+    final Set<String> seen = new HashSet<>();
+    int deleted =
+        tokenStore.deleteByUserId(
+            userId,
+            token -> {
+              seen.add(token.jti());
+              found.accept(token);
+            });
+    for (TokenEntity entity : queued) {
+      if (seen.add(entity.getJti())) {
+        found.accept(new TokenStore.UserToken(entity.getJti(), entity.getExpiresAt()));
+        awaitIfRequired(writeBehindQueue.delete(entity.getJti()));
+        deleted++;
+      }
+    }
+    return deleted;
+  }
+
+  /**
+   * Swaps {@code oldToken} for {@code newToken} with a delete guarded by the old refresh token and
+   * a put, without reading first. Rotation goes to the table directly, so it first waits for queued
+   * writes of the old token to land.
+   */
+  public boolean rotate(
+      JwtToken oldToken, String oldRefreshToken, JwtToken newToken, String newRefreshToken) {
+    if (writeBehindQueue != null) {
+      writeBehindQueue.awaitPending(oldToken.getJti());
+    }
+    return tokenStore.rotate(
+        oldToken.getJti(), oldRefreshToken, toEntity(newToken, newRefreshToken));
+  }
+
+  /**
+   * Whether the token {@code jti} is stored, read with strong consistency once any queued write of
+   * it has landed.
+   */
+  public boolean exists(String jti) {
+    if (writeBehindQueue != null) {
+      writeBehindQueue.awaitPending(jti);
+    }
+    return tokenStore.findById(jti, true).isPresent();
+  }
+
+  private void awaitIfRequired(CompletableFuture<Void> write) {
+    if (writeBehindQueue.getAck() != TokenWriteBehindQueue.Ack.FLUSH) {
+      return;
+    }
+    try {
+      write.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  public Optional<Map<String, Object>> getById(String jti) {
+    return tokenStore.findById(jti).map(TokenService::toItem);
+  }
+
+  /**
+   * Resolves a refresh token with a strongly consistent GetItem on the jti it embeds. Opaque tokens
+   * issued before the self-locating format fall back to RefreshTokenIndex while the index is
+   * enabled.
+   */
+  public Optional<Map<String, Object>> getByRefreshToken(String refreshToken) {
+    final var jti = refreshTokenCodec.jtiOf(refreshToken);
+    if (jti.isPresent()) {
+      return tokenStore
+          .findById(jti.get(), true)
+          .filter(entity -> refreshTokenMatches(entity, refreshToken))
+          .map(TokenService::toItem);
+    }
+    if (!refreshTokenIndexEnabled) {
+      return Optional.empty();
+    }
+    return tokenStore.findByRefreshToken(refreshToken).map(TokenService::toItem);
+  }
+
+  static boolean refreshTokenMatches(TokenEntity entity, String refreshToken) {
+    return entity.getRefreshToken() != null
+        && MessageDigest.isEqual(
+            entity.getRefreshToken().getBytes(StandardCharsets.US_ASCII),
+            refreshToken.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  static TokenEntity toEntity(JwtToken jwtToken, String refreshToken) {
     TokenEntity tokenEntity = new TokenEntity();
     tokenEntity.setJti(jwtToken.getJti());
 
@@ -44,34 +187,13 @@ public class TokenService {
       tokenEntity.setUserId(jwtToken.getSub());
     }
 
-    tokenRepository.save(tokenEntity);
-  }
-
-  public void deleteById(String jti) {
-    tokenRepository.deleteById(jti);
+    return tokenEntity;
   }
 
-  public Optional<Map<String, Object>> getById(String jti) {
-    return tokenRepository
-        .findById(jti)
-        .map(
-            entity -> {
-              Map<String, Object> result = new HashMap<>();
-              result.put("jwt_token", entity.getJwtToken());
-              result.put("refresh_token", entity.getRefreshToken());
-              return result;
-            });
-  }
-
-  public Optional<Map<String, Object>> getByRefreshToken(String refreshToken) {
-    return tokenRepository
-        .findByRefreshToken(refreshToken)
-        .map(
-            entity -> {
-              Map<String, Object> result = new HashMap<>();
-              result.put("jwt_token", entity.getJwtToken());
-              result.put("refresh_token", entity.getRefreshToken());
-              return result;
-            });
+  static Map<String, Object> toItem(TokenEntity entity) {
+    Map<String, Object> result = new HashMap<>();
+    result.put("jwt_token", entity.getJwtToken());
+    result.put("refresh_token", entity.getRefreshToken());
+    return result;
   }
 }
@@ -0,0 +1,38 @@
+package hu.squarelabs.auth21.util;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Named daemon threads for the background work of components: sweepers, flushers, key rotation and
+ * worker pools. Daemon threads never keep the JVM alive on their own, so shutdown only depends on
+ * the owning bean's {@code @PreDestroy} stopping its executor.
+ */
+public final class DaemonThreads {
+
+  private DaemonThreads() {}
+
+  /** A factory whose threads are all called {@code name}, for single-threaded executors. */
+  public static ThreadFactory named(String name) {
+    return task -> daemon(task, name);
+  }
+
+  /** A factory whose threads are called {@code prefix-1}, {@code prefix-2} and so on. */
+  public static ThreadFactory numbered(String prefix) {
+    final var count = new AtomicInteger();
+    return task -> daemon(task, prefix + '-' + count.incrementAndGet());
+  }
+
+  /** A single-threaded scheduler running on a daemon thread called {@code name}. */
+  public static ScheduledExecutorService scheduler(String name) {
+    return Executors.newSingleThreadScheduledExecutor(named(name));
+  }
+
+  private static Thread daemon(Runnable task, String name) {
+    final var thread = new Thread(task, name);
+    thread.setDaemon(true);
+    return thread;
+  }
+}
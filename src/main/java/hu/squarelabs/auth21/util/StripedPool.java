@@ -0,0 +1,58 @@
+package hu.squarelabs.auth21.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free pool of reusable, non-thread-safe objects such as {@link javax.crypto.Mac} instances
+ * and scratch buffers.
+ *
+ * <p>Unlike a {@link ThreadLocal}, the number of pooled objects is bounded by the number of stripes
+ * rather than the number of threads, which keeps reuse effective when requests run on short-lived
+ * virtual threads. Threads start probing at a stripe derived from their identity, so under steady
+ * load each carrier mostly finds its own object. When every probed stripe is empty a new object is
+ * created, and objects released into a full pool are dropped.
+ */
+public final class StripedPool<T> {
+  private static final int PROBES = 4;
+
+  private final AtomicReferenceArray<T> stripes;
+  private final int mask;
+  private final Supplier<? extends T> factory;
+
+  public StripedPool(Supplier<? extends T> factory) {
+    this(Runtime.getRuntime().availableProcessors() * 2, factory);
+  }
+
+  public StripedPool(int minStripes, Supplier<? extends T> factory) {
+    final int stripes = Integer.highestOneBit(Math.max(1, minStripes - 1)) << 1;
+    this.stripes = new AtomicReferenceArray<>(stripes);
+    this.mask = stripes - 1;
+    this.factory = factory;
+  }
+
+  public T acquire() {
+    final int start = home();
+    for (int i = 0; i < PROBES; i++) {
+      final T pooled = stripes.getAndSet((start + i) & mask, null);
+      if (pooled != null) {
+        return pooled;
+      }
+    }
+    return factory.get();
+  }
+
+  public void release(T object) {
+    final int start = home();
+    for (int i = 0; i < PROBES; i++) {
+      if (stripes.compareAndSet((start + i) & mask, null, object)) {
+        return;
+      }
+    }
+  }
+
+  private int home() {
+    final int h = System.identityHashCode(Thread.currentThread()) * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+}
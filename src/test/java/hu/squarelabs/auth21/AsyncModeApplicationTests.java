@@ -0,0 +1,22 @@
+package hu.squarelabs.auth21;
+
+import static org.assertj.core.api.Assertions.*;
+
+import hu.squarelabs.auth21.controller.AsyncAuthController;
+import hu.squarelabs.auth21.controller.AuthController;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+
+@SpringBootTest(properties = "aws.dynamodb.async.enabled=true")
+class AsyncModeApplicationTests {
+
+  @Autowired private ApplicationContext context;
+
+  @Test
+  void contextLoadsWithAsyncControllerOnly() {
+    assertThat(context.getBeanNamesForType(AsyncAuthController.class)).hasSize(1);
+    assertThat(context.getBeanNamesForType(AuthController.class)).isEmpty();
+  }
+}
@@ -0,0 +1,77 @@
+package hu.squarelabs.auth21.cache;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("ExpiringCache")
+class ExpiringCacheTest {
+
+  private AtomicLong now;
+
+  private ExpiringCache<String, String> cache;
+
+  @BeforeEach
+  void setUp() {
+    now = new AtomicLong();
+    cache = new ExpiringCache<>(10, Duration.ofSeconds(60), now::get);
+  }
+
+  @Test
+  @DisplayName("should return cached value before it expires")
+  void shouldReturnCachedValueBeforeExpiry() {
+    cache.put("a@example.com", "user-1");
+    now.addAndGet(Duration.ofSeconds(59).toNanos());
+
+    assertThat(cache.get("a@example.com")).contains("user-1");
+  }
+
+  @Test
+  @DisplayName("should drop value once its ttl has elapsed")
+  void shouldDropValueAfterTtl() {
+    cache.put("a@example.com", "user-1");
+    now.addAndGet(Duration.ofSeconds(60).toNanos());
+
+    assertThat(cache.get("a@example.com")).isEmpty();
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test
+  @DisplayName("should honour per-entry ttl")
+  void shouldHonourPerEntryTtl() {
+    cache.put("short", "v", Duration.ofSeconds(1));
+    cache.put("long", "v");
+    now.addAndGet(Duration.ofSeconds(2).toNanos());
+
+    assertThat(cache.get("short")).isEmpty();
+    assertThat(cache.get("long")).contains("v");
+  }
+
+  @Test
+  @DisplayName("should never grow beyond its maximum size")
+  void shouldStayWithinMaximumSize() {
+    for (int i = 0; i < 1_000; i++) {
+      cache.put("key-" + i, "value-" + i);
+    }
+
+    assertThat(cache.size()).isLessThanOrEqualTo(10);
+  }
+
+  @Test
+  @DisplayName("should prefer evicting expired entries")
+  void shouldPreferEvictingExpiredEntries() {
+    for (int i = 0; i < 9; i++) {
+      cache.put("stale-" + i, "v", Duration.ofSeconds(1));
+    }
+    cache.put("fresh", "v");
+    now.addAndGet(Duration.ofSeconds(2).toNanos());
+    cache.put("newest", "v");
+
+    assertThat(cache.get("fresh")).contains("v");
+    assertThat(cache.get("newest")).contains("v");
+  }
+}
@@ -0,0 +1,118 @@
+package hu.squarelabs.auth21.cache;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("JtiRevocationSet")
+class JtiRevocationSetTest {
+
+  private AtomicLong now;
+
+  private JtiRevocationSet revocationSet;
+
+  @BeforeEach
+  void setUp() {
+    now = new AtomicLong(1_000L);
+    revocationSet = new JtiRevocationSet(4, 64, 100_000, now::get);
+  }
+
+  @Test
+  @DisplayName("should report revoked jti until it expires")
+  void shouldReportRevokedJtiUntilExpiry() {
+    String jti = UUID.randomUUID().toString();
+
+    revocationSet.revoke(jti, 1_100L);
+
+    assertThat(revocationSet.isRevoked(jti)).isTrue();
+    now.set(1_100L);
+    assertThat(revocationSet.isRevoked(jti)).isFalse();
+  }
+
+  @Test
+  @DisplayName("should not report unknown jti as revoked")
+  void shouldNotReportUnknownJti() {
+    revocationSet.revoke(UUID.randomUUID().toString(), 1_100L);
+
+    assertThat(revocationSet.isRevoked(UUID.randomUUID().toString())).isFalse();
+  }
+
+  @Test
+  @DisplayName("should ignore tokens that have already expired")
+  void shouldIgnoreAlreadyExpiredTokens() {
+    revocationSet.revoke(UUID.randomUUID().toString(), 1_000L);
+
+    assertThat(revocationSet.size()).isZero();
+  }
+
+  @Test
+  @DisplayName("should support jti values that are not UUIDs")
+  void shouldSupportNonUuidJti() {
+    revocationSet.revoke("token-jti-123", 1_100L);
+
+    assertThat(revocationSet.isRevoked("token-jti-123")).isTrue();
+    assertThat(revocationSet.isRevoked("token-jti-124")).isFalse();
+  }
+
+  @Test
+  @DisplayName("should grow beyond its initial capacity without losing entries")
+  void shouldGrowWithoutLosingEntries() {
+    List<String> jtis = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      String jti = UUID.randomUUID().toString();
+      jtis.add(jti);
+      revocationSet.revoke(jti, 2_000L + i);
+    }
+
+    assertThat(revocationSet.size()).isEqualTo(10_000);
+    assertThat(jtis).allMatch(revocationSet::isRevoked);
+  }
+
+  @Test
+  @DisplayName("should reclaim expired entries while new ones are inserted")
+  void shouldReclaimExpiredEntriesIncrementally() {
+    for (int i = 0; i < 1_000; i++) {
+      revocationSet.revoke(UUID.randomUUID().toString(), 1_001L);
+    }
+    now.set(1_001L);
+
+    List<String> live = new ArrayList<>();
+    for (int i = 0; i < 1_000; i++) {
+      String jti = UUID.randomUUID().toString();
+      live.add(jti);
+      revocationSet.revoke(jti, 5_000L);
+    }
+
+    assertThat(revocationSet.size()).isLessThan(2_000);
+    assertThat(live).allMatch(revocationSet::isRevoked);
+  }
+
+  @Test
+  @DisplayName("should evict the earliest expiring entries instead of failing when full")
+  void shouldEvictEarliestExpiringWhenFull() {
+    JtiRevocationSet small = new JtiRevocationSet(1, 64, 48, now::get);
+    List<String> early = new ArrayList<>();
+    List<String> late = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      String jti = UUID.randomUUID().toString();
+      small.revoke(jti, 2_000L);
+      early.add(jti);
+    }
+    for (int i = 0; i < 100; i++) {
+      String jti = UUID.randomUUID().toString();
+      small.revoke(jti, 5_000L + i);
+      late.add(jti);
+    }
+
+    assertThat(small.evictions()).isPositive();
+    assertThat(small.size()).isEqualTo(110 - small.evictions());
+    assertThat(early).noneMatch(small::isRevoked);
+    assertThat(late.subList(late.size() - 20, late.size())).allMatch(small::isRevoked);
+  }
+}
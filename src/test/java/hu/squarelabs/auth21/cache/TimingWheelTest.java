@@ -0,0 +1,101 @@
+package hu.squarelabs.auth21.cache;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("TimingWheel")
+class TimingWheelTest {
+  private static final long START = 1_000_000L;
+
+  private final TimingWheel<String> wheel = new TimingWheel<>(Duration.ofSeconds(1), START);
+
+  private List<String> advance(long nowMillis) {
+    final List<String> due = new ArrayList<>();
+    wheel.advance(nowMillis, due::add);
+    return due;
+  }
+
+  @Test
+  @DisplayName("should report a key once its deadline has passed")
+  void shouldReportAtDeadline() {
+    wheel.schedule("a", START + 5_000);
+
+    assertThat(advance(START + 4_999)).isEmpty();
+    assertThat(advance(START + 5_000)).containsExactly("a");
+    assertThat(advance(START + 10_000)).isEmpty();
+  }
+
+  @Test
+  @DisplayName("should never report a key before its deadline")
+  void shouldRoundDeadlinesUp() {
+    wheel.schedule("a", START + 1_500);
+
+    assertThat(advance(START + 1_999)).isEmpty();
+    assertThat(advance(START + 2_000)).containsExactly("a");
+  }
+
+  @Test
+  @DisplayName("should report a key scheduled in the past on the next tick")
+  void shouldReportPastDeadline() {
+    wheel.schedule("a", START - 60_000);
+
+    assertThat(advance(START + 1_000)).containsExactly("a");
+  }
+
+  @Test
+  @DisplayName("should cascade keys from the higher levels")
+  void shouldCascade() {
+    wheel.schedule("minute", START + 65_000);
+    wheel.schedule("hour", START + 3_600_000);
+    wheel.schedule("week", START + 7 * 86_400_000L);
+
+    assertThat(advance(START + 64_000)).isEmpty();
+    assertThat(advance(START + 65_000)).containsExactly("minute");
+    assertThat(advance(START + 3_599_000)).isEmpty();
+    assertThat(advance(START + 3_600_000)).containsExactly("hour");
+    assertThat(advance(START + 7 * 86_400_000L - 1_000)).isEmpty();
+    assertThat(advance(START + 7 * 86_400_000L)).containsExactly("week");
+  }
+
+  @Test
+  @DisplayName("should hold deadlines beyond the top level's span")
+  void shouldParkDistantDeadlines() {
+    final long year = 365 * 86_400_000L;
+    wheel.schedule("a", START + year);
+
+    assertThat(advance(START + year - 1_000)).isEmpty();
+    assertThat(advance(START + year)).containsExactly("a");
+  }
+
+  @Test
+  @DisplayName("should report every key exactly at its deadline's tick")
+  void shouldReportRandomDeadlines() {
+    final var random = new Random(42);
+    final long[] deadlines = new long[2_000];
+    for (int i = 0; i < deadlines.length; i++) {
+      deadlines[i] = START + 1_000L * (1 + random.nextInt(20_000));
+      wheel.schedule(Integer.toString(i), deadlines[i]);
+    }
+
+    final List<String> late = new ArrayList<>();
+    int reported = 0;
+    for (long now = START + 1_000; now <= START + 20_001_000L; now += 1_000) {
+      final long tick = now;
+      for (String key : advance(now)) {
+        reported++;
+        if (deadlines[Integer.parseInt(key)] != tick) {
+          late.add(key);
+        }
+      }
+    }
+
+    assertThat(reported).isEqualTo(deadlines.length);
+    assertThat(late).isEmpty();
+  }
+}
@@ -0,0 +1,194 @@
+package hu.squarelabs.auth21.capacity;
+
+import static org.assertj.core.api.Assertions.*;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.DispatcherType;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.SdkResponse;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.InterceptorContext;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.Capacity;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+
+@DisplayName("ConsumedCapacityTracker")
+class ConsumedCapacityTrackerTest {
+  private static final String REGISTER = "/api/v1/auth/register";
+  private static final String LOGIN = "/api/v1/auth/login";
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final ConsumedCapacityTracker tracker = new ConsumedCapacityTracker(meterRegistry);
+
+  private void call(String operation, SdkRequest request, SdkResponse response) {
+    final var attributes = new ExecutionAttributes();
+    attributes.putAttribute(SdkExecutionAttribute.OPERATION_NAME, operation);
+    final var context = InterceptorContext.builder().request(request).response(response).build();
+    tracker.beforeExecution(context, attributes);
+    tracker.afterExecution(context, attributes);
+  }
+
+  @Nested
+  @DisplayName("request modification")
+  class RequestModification {
+
+    @Test
+    @DisplayName("should ask for capacity per index")
+    void shouldRequestIndexesCapacity() {
+      final var request =
+          ConsumedCapacityTracker.withIndexesCapacity(
+              GetItemRequest.builder().tableName("users").build());
+
+      assertThat(((GetItemRequest) request).returnConsumedCapacity())
+          .isEqualTo(ReturnConsumedCapacity.INDEXES);
+    }
+
+    @Test
+    @DisplayName("should leave an explicit choice alone")
+    void shouldKeepExplicitChoice() {
+      final var request =
+          QueryRequest.builder()
+              .tableName("users")
+              .returnConsumedCapacity(ReturnConsumedCapacity.NONE)
+              .build();
+
+      assertThat(ConsumedCapacityTracker.withIndexesCapacity(request)).isSameAs(request);
+    }
+  }
+
+  @Nested
+  @DisplayName("accounting")
+  class Accounting {
+
+    @Test
+    @DisplayName("should book table and index units to the calling endpoint")
+    void shouldBookTableAndIndexUnits() {
+      tracker.enter(REGISTER);
+      call(
+          "PutItem",
+          PutItemRequest.builder().tableName("users").build(),
+          PutItemResponse.builder()
+              .consumedCapacity(
+                  ConsumedCapacity.builder()
+                      .tableName("users")
+                      .capacityUnits(2.0)
+                      .table(Capacity.builder().capacityUnits(1.0).build())
+                      .globalSecondaryIndexes(
+                          Map.of("EmailIndex", Capacity.builder().capacityUnits(1.0).build()))
+                      .build())
+              .build());
+      tracker.exit();
+
+      final var usage = tracker.report().get(REGISTER);
+      assertThat(usage.requests()).isEqualTo(1);
+      assertThat(usage.writeCapacityUnits()).isEqualTo(2.0);
+      assertThat(usage.writeCapacityUnitsPerRequest()).isEqualTo(2.0);
+      assertThat(usage.tables())
+          .containsExactly(
+              new ConsumedCapacityTracker.TableUsage("users", "EmailIndex", "PutItem", 0, 1.0),
+              new ConsumedCapacityTracker.TableUsage("users", "none", "PutItem", 0, 1.0));
+      assertThat(
+              meterRegistry
+                  .get("aws.dynamodb.capacity.write")
+                  .tags("table", "users", "index", "EmailIndex", "endpoint", REGISTER)
+                  .counter()
+                  .count())
+          .isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("should average reads over the requests served")
+    void shouldAverageReadsPerRequest() {
+      final var response =
+          QueryResponse.builder()
+              .consumedCapacity(
+                  ConsumedCapacity.builder()
+                      .tableName("users")
+                      .capacityUnits(0.5)
+                      .table(Capacity.builder().capacityUnits(0.0).build())
+                      .globalSecondaryIndexes(
+                          Map.of("EmailIndex", Capacity.builder().capacityUnits(0.5).build()))
+                      .build())
+              .build();
+      tracker.enter(LOGIN);
+      call("Query", QueryRequest.builder().tableName("users").build(), response);
+      tracker.exit();
+      tracker.enter(LOGIN);
+      tracker.exit();
+
+      final var usage = tracker.report().get(LOGIN);
+      assertThat(usage.requests()).isEqualTo(2);
+      assertThat(usage.readCapacityUnitsPerRequest()).isEqualTo(0.25);
+      assertThat(usage.tables())
+          .containsExactly(
+              new ConsumedCapacityTracker.TableUsage("users", "EmailIndex", "Query", 0.5, 0));
+    }
+
+    @Test
+    @DisplayName("should book calls from other threads as unattributed")
+    void shouldBookOtherThreadsAsUnattributed() {
+      tracker.enter(LOGIN);
+      CompletableFuture.runAsync(
+              () ->
+                  call(
+                      "BatchWriteItem",
+                      BatchWriteItemRequest.builder().build(),
+                      BatchWriteItemResponse.builder()
+                          .consumedCapacity(
+                              ConsumedCapacity.builder()
+                                  .tableName("tokens")
+                                  .capacityUnits(3.0)
+                                  .build(),
+                              ConsumedCapacity.builder()
+                                  .tableName("users")
+                                  .writeCapacityUnits(1.0)
+                                  .build())
+                          .build()))
+          .join();
+      tracker.exit();
+
+      final var report = tracker.report();
+      assertThat(report.get(LOGIN).tables()).isEmpty();
+      assertThat(report.get(ConsumedCapacityTracker.UNATTRIBUTED).writeCapacityUnits())
+          .isEqualTo(4.0);
+    }
+  }
+
+  @Nested
+  @DisplayName("web interceptor")
+  class WebInterceptor {
+
+    @Test
+    @DisplayName("should count an asynchronous request once, by its route pattern")
+    void shouldCountRoutesOnce() {
+      final var interceptor = new ConsumedCapacityInterceptor(tracker);
+      final var request = new MockHttpServletRequest("POST", "/api/v1/auth/login");
+      request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, LOGIN);
+      final var response = new MockHttpServletResponse();
+
+      interceptor.preHandle(request, response, new Object());
+      interceptor.afterConcurrentHandlingStarted(request, response, new Object());
+      request.setDispatcherType(DispatcherType.ASYNC);
+      interceptor.preHandle(request, response, new Object());
+      interceptor.afterCompletion(request, response, new Object(), null);
+
+      assertThat(tracker.report().get(LOGIN).requests()).isEqualTo(1);
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package hu.squarelabs.auth21.config;
+
+import static org.assertj.core.api.Assertions.*;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+
+@DisplayName("DynamoDbConcurrencyLimiter")
+class DynamoDbConcurrencyLimiterTest {
+
+  private static final Context.BeforeExecution QUERY =
+      () -> QueryRequest.builder().tableName("users").indexName("EmailIndex").build();
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private DynamoDbConcurrencyLimiter limiter;
+
+  @BeforeEach
+  void setUp() {
+    limiter = new DynamoDbConcurrencyLimiter(2, Duration.ofMillis(10), meterRegistry);
+  }
+
+  private long waits(String outcome) {
+    return meterRegistry
+        .get("aws.dynamodb.limiter.acquire")
+        .tags("table", "users", "index", "EmailIndex", "outcome", outcome)
+        .timer()
+        .count();
+  }
+
+  @Test
+  @DisplayName("should hold a permit for the duration of a call")
+  void shouldHoldPermitDuringCall() {
+    ExecutionAttributes attributes = new ExecutionAttributes();
+
+    limiter.beforeExecution(QUERY, attributes);
+    assertThat(limiter.availablePermits()).isEqualTo(1);
+
+    limiter.afterExecution(null, attributes);
+    assertThat(limiter.availablePermits()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("should reject calls beyond the limit once the acquire timeout elapses")
+  void shouldRejectCallsBeyondLimit() {
+    limiter.beforeExecution(QUERY, new ExecutionAttributes());
+    limiter.beforeExecution(QUERY, new ExecutionAttributes());
+
+    assertThatThrownBy(() -> limiter.beforeExecution(QUERY, new ExecutionAttributes()))
+        .isInstanceOf(SdkClientException.class);
+  }
+
+  @Test
+  @DisplayName("should record the wait for a permit, including rejections")
+  void shouldRecordPermitWaits() {
+    ExecutionAttributes attributes = new ExecutionAttributes();
+    attributes.putAttribute(SdkExecutionAttribute.OPERATION_NAME, "Query");
+
+    limiter.beforeExecution(QUERY, attributes);
+    limiter.beforeExecution(QUERY, attributes);
+    assertThatThrownBy(() -> limiter.beforeExecution(QUERY, attributes))
+        .isInstanceOf(SdkClientException.class);
+
+    assertThat(waits("acquired")).isEqualTo(2);
+    assertThat(waits("rejected")).isEqualTo(1);
+    assertThat(
+            meterRegistry
+                .get("aws.dynamodb.limiter.acquire")
+                .tags("operation", "Query", "outcome", "rejected")
+                .timer()
+                .totalTime(TimeUnit.MILLISECONDS))
+        .isGreaterThanOrEqualTo(10);
+  }
+
+  @Test
+  @DisplayName("should release the permit exactly once when a call fails")
+  void shouldReleasePermitOnceOnFailure() {
+    ExecutionAttributes attributes = new ExecutionAttributes();
+
+    limiter.beforeExecution(QUERY, attributes);
+    limiter.onExecutionFailure(null, attributes);
+    limiter.onExecutionFailure(null, attributes);
+
+    assertThat(limiter.availablePermits()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("should not release a permit that was never acquired")
+  void shouldNotReleaseUnacquiredPermit() {
+    limiter.onExecutionFailure(null, new ExecutionAttributes());
+
+    assertThat(limiter.availablePermits()).isEqualTo(2);
+  }
+}
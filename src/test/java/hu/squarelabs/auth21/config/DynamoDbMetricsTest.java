@@ -0,0 +1,246 @@
+package hu.squarelabs.auth21.config;
+
+import static org.assertj.core.api.Assertions.*;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.http.ExecutableHttpRequest;
+import software.amazon.awssdk.http.HttpExecuteRequest;
+import software.amazon.awssdk.http.HttpExecuteResponse;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.retries.api.BackoffStrategy;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.Delete;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+
+@DisplayName("DynamoDbMetrics")
+class DynamoDbMetricsTest {
+  private static final Map<String, AttributeValue> KEY = Map.of("id", AttributeValue.fromS("1"));
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final StubHttpClient httpClient = new StubHttpClient();
+  private DynamoDbClient client;
+
+  @BeforeEach
+  void setUp() {
+    final var metrics = new DynamoDbMetrics(meterRegistry);
+    client =
+        DynamoDbClient.builder()
+            .region(Region.EU_CENTRAL_1)
+            .endpointOverride(URI.create("http://localhost:8000"))
+            .credentialsProvider(
+                StaticCredentialsProvider.create(AwsBasicCredentials.create("key", "secret")))
+            .httpClient(httpClient)
+            .overrideConfiguration(
+                c ->
+                    c.addExecutionInterceptor(metrics)
+                        .addMetricPublisher(metrics)
+                        .retryStrategy(
+                            AwsRetryStrategy.standardRetryStrategy().toBuilder()
+                                .maxAttempts(2)
+                                .backoffStrategy(BackoffStrategy.retryImmediately())
+                                .throttlingBackoffStrategy(BackoffStrategy.retryImmediately())
+                                .build()))
+            .build();
+  }
+
+  private double requests(String... tags) {
+    return meterRegistry.get("aws.dynamodb.requests").tags(tags).timer().count();
+  }
+
+  @Nested
+  @DisplayName("request timers")
+  class RequestTimers {
+
+    @Test
+    @DisplayName("should tag successful calls by table, index and operation")
+    void shouldTagByTableIndexAndOperation() {
+      httpClient.respond(200, "{}");
+      httpClient.respond(200, "{\"Count\":0,\"Items\":[]}");
+
+      client.getItem(b -> b.tableName("users").key(KEY));
+      client.query(b -> b.tableName("users").indexName("EmailIndex"));
+
+      assertThat(
+              requests(
+                  "table", "users", "index", "none", "operation", "GetItem", "outcome", "success"))
+          .isEqualTo(1);
+      assertThat(
+              requests(
+                  "table",
+                  "users",
+                  "index",
+                  "EmailIndex",
+                  "operation",
+                  "Query",
+                  "outcome",
+                  "success"))
+          .isEqualTo(1);
+      assertThat(
+              meterRegistry
+                  .get("aws.dynamodb.attempts")
+                  .tags("table", "users", "operation", "GetItem", "error", "none")
+                  .timer()
+                  .count())
+          .isEqualTo(1);
+      assertThat(
+              meterRegistry
+                  .get("aws.dynamodb.attempts")
+                  .tags(
+                      "table",
+                      "users",
+                      "index",
+                      "EmailIndex",
+                      "operation",
+                      "Query",
+                      "outcome",
+                      "success")
+                  .timer()
+                  .count())
+          .isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should tag failed calls with the outcome the caller saw")
+    void shouldTagFailureOutcome() {
+      httpClient.respond(
+          400,
+          "{\"__type\":\"com.amazonaws.dynamodb.v20120810#ConditionalCheckFailedException\","
+              + "\"message\":\"The conditional request failed\"}");
+
+      assertThatThrownBy(
+              () ->
+                  client.putItem(
+                      b ->
+                          b.tableName("tokens")
+                              .item(KEY)
+                              .conditionExpression("attribute_not_exists(id)")))
+          .isInstanceOf(ConditionalCheckFailedException.class);
+
+      assertThat(requests("table", "tokens", "operation", "PutItem", "outcome", "condition_failed"))
+          .isEqualTo(1);
+    }
+  }
+
+  @Nested
+  @DisplayName("retries and throttles")
+  class RetriesAndThrottles {
+
+    @Test
+    @DisplayName("should count a throttled attempt and its retry")
+    void shouldCountThrottles() {
+      httpClient.respond(
+          400,
+          "{\"__type\":\"com.amazonaws.dynamodb.v20120810#ProvisionedThroughputExceededException\","
+              + "\"message\":\"Rate exceeded\"}");
+      httpClient.respond(200, "{}");
+
+      client.getItem(b -> b.tableName("tokens").key(KEY));
+
+      assertThat(requests("table", "tokens", "operation", "GetItem", "outcome", "success"))
+          .isEqualTo(1);
+      assertThat(
+              meterRegistry
+                  .get("aws.dynamodb.retries")
+                  .tags(
+                      "table",
+                      "tokens",
+                      "index",
+                      "none",
+                      "operation",
+                      "GetItem",
+                      "outcome",
+                      "success")
+                  .counter()
+                  .count())
+          .isEqualTo(1);
+      assertThat(
+              meterRegistry
+                  .get("aws.dynamodb.throttles")
+                  .tags(
+                      "table",
+                      "tokens",
+                      "index",
+                      "none",
+                      "operation",
+                      "GetItem",
+                      "outcome",
+                      "success")
+                  .counter()
+                  .count())
+          .isEqualTo(1);
+    }
+  }
+
+  @Test
+  @DisplayName("should tag calls spanning several tables with all of them")
+  void shouldTagMultiTableCalls() {
+    TransactWriteItemsRequest request =
+        TransactWriteItemsRequest.builder()
+            .transactItems(
+                TransactWriteItem.builder()
+                    .put(Put.builder().tableName("tokens").item(KEY).build())
+                    .build(),
+                TransactWriteItem.builder()
+                    .delete(Delete.builder().tableName("audit").key(KEY).build())
+                    .build())
+            .build();
+
+    assertThat(DynamoDbMetrics.tableOf(request)).isEqualTo("audit,tokens");
+  }
+
+  /** Answers each request with the next queued status and JSON body. */
+  private static final class StubHttpClient implements SdkHttpClient {
+    private final Deque<Map.Entry<Integer, String>> responses = new ArrayDeque<>();
+
+    void respond(int status, String body) {
+      responses.add(Map.entry(status, body));
+    }
+
+    @Override
+    public ExecutableHttpRequest prepareRequest(HttpExecuteRequest request) {
+      final var response = responses.remove();
+      return new ExecutableHttpRequest() {
+        @Override
+        public HttpExecuteResponse call() {
+          return HttpExecuteResponse.builder()
+              .response(
+                  SdkHttpResponse.builder()
+                      .statusCode(response.getKey())
+                      .putHeader("Content-Type", "application/x-amz-json-1.0")
+                      .build())
+              .responseBody(
+                  AbortableInputStream.create(
+                      new ByteArrayInputStream(
+                          response.getValue().getBytes(StandardCharsets.UTF_8))))
+              .build();
+        }
+
+        @Override
+        public void abort() {}
+      };
+    }
+
+    @Override
+    public void close() {}
+  }
+}
@@ -0,0 +1,74 @@
+package hu.squarelabs.auth21.config.filter;
+
+import static org.assertj.core.api.Assertions.*;
+
+import hu.squarelabs.auth21.util.SecureIdGenerator;
+import jakarta.servlet.DispatcherType;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.logging.log4j.ThreadContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+@DisplayName("CorrelationIdFilter")
+class CorrelationIdFilterTest {
+
+  private final CorrelationIdFilter filter =
+      new CorrelationIdFilter(new SecureIdGenerator(false, 1 << 20));
+
+  @AfterEach
+  void tearDown() {
+    ThreadContext.clearAll();
+  }
+
+  @Test
+  @DisplayName("should expose the correlation id during the request and echo it")
+  void shouldPropagateCorrelationId() throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader(CorrelationIdFilter.CORRELATION_ID_HEADER, "abc-123");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    Map<String, String> seen = new HashMap<>();
+
+    filter.doFilter(
+        request, response, (req, res) -> seen.putAll(ThreadContext.getImmutableContext()));
+
+    assertThat(seen).containsEntry(CorrelationIdFilter.CORRELATION_ID_MDC_KEY, "abc-123");
+    assertThat(response.getHeader(CorrelationIdFilter.CORRELATION_ID_HEADER)).isEqualTo("abc-123");
+  }
+
+  @Test
+  @DisplayName("should not leak context keys set during the request to the next one")
+  void shouldClearContextAfterRequest() throws Exception {
+    filter.doFilter(
+        new MockHttpServletRequest(),
+        new MockHttpServletResponse(),
+        (req, res) -> ThreadContext.put("userId", "user-123"));
+
+    assertThat(ThreadContext.getImmutableContext()).isEmpty();
+  }
+
+  @Test
+  @DisplayName("should log an async dispatch under the id the request started with")
+  void shouldKeepCorrelationIdOnAsyncDispatch() throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    Map<String, String> initial = new HashMap<>();
+    Map<String, String> dispatched = new HashMap<>();
+
+    filter.doFilter(
+        request, response, (req, res) -> initial.putAll(ThreadContext.getImmutableContext()));
+    request.setDispatcherType(DispatcherType.ASYNC);
+    filter.doFilter(
+        request, response, (req, res) -> dispatched.putAll(ThreadContext.getImmutableContext()));
+
+    assertThat(initial).containsKey(CorrelationIdFilter.CORRELATION_ID_MDC_KEY);
+    assertThat(dispatched)
+        .containsEntry(
+            CorrelationIdFilter.CORRELATION_ID_MDC_KEY,
+            initial.get(CorrelationIdFilter.CORRELATION_ID_MDC_KEY));
+    assertThat(ThreadContext.getImmutableContext()).isEmpty();
+  }
+}
@@ -0,0 +1,52 @@
+package hu.squarelabs.auth21.controller;
+
+import static org.hamcrest.Matchers.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import hu.squarelabs.auth21.service.AsyncAuthService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+@DisplayName("AsyncAuthController")
+@ExtendWith(MockitoExtension.class)
+class AsyncAuthControllerTest {
+
+  private MockMvc mockMvc;
+
+  @Mock private AsyncAuthService authService;
+
+  @BeforeEach
+  void setUp() {
+    mockMvc = MockMvcBuilders.standaloneSetup(new AsyncAuthController(authService)).build();
+  }
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {"/api/v1/auth/login", "/api/v1/auth/refresh-token", "/api/v1/auth/register"})
+  @DisplayName("should start async processing and return TokenResponse")
+  void shouldReturnTokenResponseAsynchronously(String path) throws Exception {
+    final var result =
+        mockMvc
+            .perform(post(path).contentType(MediaType.APPLICATION_JSON))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+        .andExpect(jsonPath("$.access_token", equalTo("dummy-access-token")))
+        .andExpect(jsonPath("$.refresh_token", equalTo("dummy-refresh-token")))
+        .andExpect(jsonPath("$.expires_in", equalTo(3600)));
+  }
+}
@@ -0,0 +1,66 @@
+package hu.squarelabs.auth21.controller;
+
+import static org.hamcrest.Matchers.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import hu.squarelabs.auth21.jwt.JwtKeyRing;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+@DisplayName("JwksController")
+class JwksControllerTest {
+
+  private MockMvc mockMvc;
+  private JwtKeyRing keyRing;
+
+  @BeforeEach
+  void setUp() {
+    keyRing = new JwtKeyRing("ES256", 86_400_000, 3_600_000, 7_200_000, 0, true, 3600);
+    mockMvc = MockMvcBuilders.standaloneSetup(new JwksController(keyRing, 300)).build();
+  }
+
+  @Nested
+  @DisplayName("GET /.well-known/jwks.json")
+  class JwksEndpoint {
+
+    @Test
+    @DisplayName("should return the key set with its ETag and a public max-age")
+    void shouldReturnKeySet() throws Exception {
+      mockMvc
+          .perform(get(JwksController.PATH))
+          .andExpect(status().isOk())
+          .andExpect(content().contentType(JwksController.JWK_SET))
+          .andExpect(header().string(HttpHeaders.ETAG, keyRing.jwks().etag()))
+          .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=300, public"))
+          .andExpect(jsonPath("$.keys", hasSize(1)))
+          .andExpect(jsonPath("$.keys[0].kid", equalTo(keyRing.signingKey().getKid())));
+    }
+
+    @Test
+    @DisplayName("should answer 304 when the client holds the current key set")
+    void shouldReturnNotModified() throws Exception {
+      mockMvc
+          .perform(
+              get(JwksController.PATH).header(HttpHeaders.IF_NONE_MATCH, keyRing.jwks().etag()))
+          .andExpect(status().isNotModified())
+          .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    @DisplayName("should cap max-age below the publish-ahead window")
+    void shouldCapMaxAge() throws Exception {
+      final var standalone =
+          MockMvcBuilders.standaloneSetup(new JwksController(keyRing, 86_400)).build();
+
+      standalone
+          .perform(get(JwksController.PATH))
+          .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=1800, public"));
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package hu.squarelabs.auth21.controller;
+
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import hu.squarelabs.auth21.model.dto.response.IntrospectionResponse;
+import hu.squarelabs.auth21.service.TokenIntrospectionService;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.json.JsonCompareMode;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+@DisplayName("TokenIntrospectionController")
+class TokenIntrospectionControllerTest {
+  private static final String AUTHORIZATION =
+      "Basic "
+          + Base64.getEncoder().encodeToString("gateway:s3cret".getBytes(StandardCharsets.UTF_8));
+
+  private MockMvc mockMvc;
+  private TokenIntrospectionService introspectionService;
+
+  @BeforeEach
+  void setUp() {
+    introspectionService = mock(TokenIntrospectionService.class);
+    mockMvc =
+        MockMvcBuilders.standaloneSetup(
+                new TokenIntrospectionController(introspectionService, "gateway", "s3cret"))
+            .build();
+  }
+
+  @Nested
+  @DisplayName("POST /api/v1/auth/introspect")
+  class IntrospectEndpoint {
+
+    @Test
+    @DisplayName("should return the claims of an active token")
+    void shouldReturnActiveToken() throws Exception {
+      when(introspectionService.introspect("token"))
+          .thenReturn(new IntrospectionResponse("user-1", "jti-1", 1000L, 4600L));
+
+      mockMvc
+          .perform(
+              post("/api/v1/auth/introspect")
+                  .header(HttpHeaders.AUTHORIZATION, AUTHORIZATION)
+                  .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                  .param("token", "token")
+                  .param("token_type_hint", "access_token"))
+          .andExpect(status().isOk())
+          .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-store"))
+          .andExpect(jsonPath("$.active", is(true)))
+          .andExpect(jsonPath("$.token_type", is("Bearer")))
+          .andExpect(jsonPath("$.sub", is("user-1")))
+          .andExpect(jsonPath("$.jti", is("jti-1")))
+          .andExpect(jsonPath("$.exp", is(4600)));
+    }
+
+    @Test
+    @DisplayName("should return only the active flag for an inactive token")
+    void shouldReturnInactiveToken() throws Exception {
+      when(introspectionService.introspect("token")).thenReturn(IntrospectionResponse.inactive());
+
+      mockMvc
+          .perform(
+              post("/api/v1/auth/introspect")
+                  .header(HttpHeaders.AUTHORIZATION, AUTHORIZATION)
+                  .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                  .param("token", "token"))
+          .andExpect(status().isOk())
+          .andExpect(content().json("{\"active\":false}", JsonCompareMode.STRICT));
+    }
+
+    @Test
+    @DisplayName("should reject a request without a token")
+    void shouldRejectMissingToken() throws Exception {
+      mockMvc
+          .perform(
+              post("/api/v1/auth/introspect")
+                  .header(HttpHeaders.AUTHORIZATION, AUTHORIZATION)
+                  .contentType(MediaType.APPLICATION_FORM_URLENCODED))
+          .andExpect(status().isBadRequest());
+      verifyNoInteractions(introspectionService);
+    }
+
+    @Test
+    @DisplayName("should challenge a caller without credentials")
+    void shouldRejectMissingCredentials() throws Exception {
+      mockMvc
+          .perform(
+              post("/api/v1/auth/introspect")
+                  .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                  .param("token", "token"))
+          .andExpect(status().isUnauthorized())
+          .andExpect(
+              header()
+                  .string(HttpHeaders.WWW_AUTHENTICATE, TokenIntrospectionController.CHALLENGE));
+      verifyNoInteractions(introspectionService);
+    }
+
+    @Test
+    @DisplayName("should reject a caller with the wrong secret")
+    void shouldRejectWrongSecret() throws Exception {
+      mockMvc
+          .perform(
+              post("/api/v1/auth/introspect")
+                  .header(
+                      HttpHeaders.AUTHORIZATION,
+                      "Basic "
+                          + Base64.getEncoder()
+                              .encodeToString("gateway:guess".getBytes(StandardCharsets.UTF_8)))
+                  .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                  .param("token", "token"))
+          .andExpect(status().isUnauthorized());
+      verifyNoInteractions(introspectionService);
+    }
+
+    @Test
+    @DisplayName("should refuse every caller when no secret is configured")
+    void shouldRefuseWithoutConfiguredSecret() throws Exception {
+      MockMvcBuilders.standaloneSetup(
+              new TokenIntrospectionController(introspectionService, "gateway", ""))
+          .build()
+          .perform(
+              post("/api/v1/auth/introspect")
+                  .header(HttpHeaders.AUTHORIZATION, "Basic Z2F0ZXdheTo=")
+                  .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                  .param("token", "token"))
+          .andExpect(status().isUnauthorized());
+      verifyNoInteractions(introspectionService);
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package hu.squarelabs.auth21.converter;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.time.Instant;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+@DisplayName("EpochSecondsAttributeConverter")
+class EpochSecondsAttributeConverterTest {
+  private final EpochSecondsAttributeConverter converter = new EpochSecondsAttributeConverter();
+
+  @Test
+  @DisplayName("should write whole epoch seconds as a number")
+  void shouldWriteEpochSeconds() {
+    assertThat(converter.transformFrom(Instant.parse("2026-01-01T00:00:00.900Z")))
+        .isEqualTo(AttributeValue.fromN("1767225600"));
+  }
+
+  @Test
+  @DisplayName("should read numbers and the ISO-8601 strings of earlier versions")
+  void shouldReadBothForms() {
+    final var expiresAt = Instant.parse("2026-01-01T00:00:00Z");
+
+    assertThat(converter.transformTo(AttributeValue.fromN("1767225600"))).isEqualTo(expiresAt);
+    assertThat(converter.transformTo(AttributeValue.fromN("1767225600.0"))).isEqualTo(expiresAt);
+    assertThat(converter.transformTo(AttributeValue.fromS("2026-01-01T00:00:00Z")))
+        .isEqualTo(expiresAt);
+  }
+
+  @Test
+  @DisplayName("should map null to a NULL attribute and back")
+  void shouldHandleNull() {
+    assertThat(converter.transformFrom(null)).isEqualTo(AttributeValue.fromNul(true));
+    assertThat(converter.transformTo(AttributeValue.fromNul(true))).isNull();
+  }
+}
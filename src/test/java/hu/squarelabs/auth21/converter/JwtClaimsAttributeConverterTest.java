@@ -0,0 +1,149 @@
+package hu.squarelabs.auth21.converter;
+
+import static org.assertj.core.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hu.squarelabs.auth21.converter.JwtClaimsAttributeConverter.Format;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.enhanced.dynamodb.AttributeValueType;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+@DisplayName("JwtClaimsAttributeConverter")
+class JwtClaimsAttributeConverterTest {
+
+  private static Map<String, Object> claims() {
+    Map<String, Object> user = new HashMap<>();
+    user.put("id", "user-123");
+    user.put("email", "user@example.com");
+    user.put("roles", List.of("USER", "ADMIN"));
+    user.put("verified", true);
+    user.put("score", 1.5);
+
+    Map<String, Object> claims = new HashMap<>();
+    claims.put("jti", "0f8fad5b-d9cb-469f-a165-70867728950e");
+    claims.put("sub", "user-123");
+    claims.put("iat", 1_700_000_000L);
+    claims.put("exp", 1_700_003_600L);
+    claims.put("user", user);
+    return claims;
+  }
+
+  @ParameterizedTest
+  @EnumSource(Format.class)
+  @DisplayName("should round-trip claims in every storage format")
+  void shouldRoundTrip(Format format) {
+    JwtClaimsAttributeConverter converter = new JwtClaimsAttributeConverter(format);
+
+    Map<String, Object> decoded = converter.transformTo(converter.transformFrom(claims()));
+
+    assertThat(decoded).isEqualTo(claims());
+    assertThat(decoded.get("iat")).isInstanceOf(Long.class);
+    assertThat(decoded.get("exp")).isInstanceOf(Long.class);
+  }
+
+  @ParameterizedTest
+  @EnumSource(Format.class)
+  @DisplayName("should keep claims that are present with a null value in every storage format")
+  void shouldRoundTripExplicitNulls(Format format) {
+    JwtClaimsAttributeConverter converter = new JwtClaimsAttributeConverter(format);
+    Map<String, Object> claims = new HashMap<>(claims());
+    claims.put("user", null);
+    claims.put("sub", null);
+    claims.put("aud", null);
+
+    Map<String, Object> decoded = converter.transformTo(converter.transformFrom(claims));
+
+    assertThat(decoded).isEqualTo(claims).containsKeys("user", "sub", "aud");
+  }
+
+  @Test
+  @DisplayName("should write a native map with typed numbers")
+  void shouldWriteNativeMap() {
+    AttributeValue value = new JwtClaimsAttributeConverter(Format.MAP).transformFrom(claims());
+
+    assertThat(value.m().get("exp").n()).isEqualTo("1700003600");
+    assertThat(value.m().get("user").m().get("roles").l()).hasSize(2);
+  }
+
+  @Test
+  @DisplayName("should write a binary encoding smaller than the JSON string")
+  void shouldWriteCompactBinary() throws Exception {
+    JwtClaimsAttributeConverter converter = new JwtClaimsAttributeConverter(Format.BINARY);
+
+    AttributeValue value = converter.transformFrom(claims());
+    String json = new ObjectMapper().writeValueAsString(claims());
+
+    assertThat(converter.attributeValueType()).isEqualTo(AttributeValueType.B);
+    assertThat(value.b().asByteArray().length)
+        .isLessThan(json.getBytes(StandardCharsets.UTF_8).length);
+  }
+
+  @Test
+  @DisplayName("should keep claims that do not fit a registered slot")
+  void shouldKeepIrregularClaims() {
+    JwtClaimsAttributeConverter converter = new JwtClaimsAttributeConverter(Format.BINARY);
+    Map<String, Object> claims = new HashMap<>(claims());
+    claims.put("iat", "not-a-number");
+    claims.put("aud", "auth21");
+
+    assertThat(converter.transformTo(converter.transformFrom(claims))).isEqualTo(claims);
+  }
+
+  @Nested
+  @DisplayName("reading existing items")
+  class ReadingExistingItems {
+
+    @Test
+    @DisplayName("should read legacy JSON strings with long iat and exp")
+    void shouldReadLegacyJson() {
+      AttributeValue legacy =
+          AttributeValue.fromS(
+              "{\"jti\":\"jti-1\",\"sub\":\"user-123\",\"iat\":1000,\"exp\":4600,"
+                  + "\"user\":{\"id\":\"user-123\"}}");
+
+      Map<String, Object> decoded = new JwtClaimsAttributeConverter().transformTo(legacy);
+
+      assertThat(decoded)
+          .containsEntry("jti", "jti-1")
+          .containsEntry("iat", 1000L)
+          .containsEntry("exp", 4600L)
+          .containsEntry("user", Map.of("id", "user-123"));
+    }
+
+    @Test
+    @DisplayName("should read binary items regardless of the configured format")
+    void shouldReadOtherFormat() {
+      AttributeValue binary =
+          new JwtClaimsAttributeConverter(Format.BINARY).transformFrom(claims());
+
+      assertThat(new JwtClaimsAttributeConverter(Format.MAP).transformTo(binary))
+          .isEqualTo(claims());
+    }
+
+    @Test
+    @DisplayName("should reject an unknown binary version")
+    void shouldRejectUnknownVersion() {
+      AttributeValue value = AttributeValue.fromB(SdkBytes.fromByteArray(new byte[] {9, 0}));
+
+      assertThatThrownBy(() -> new JwtClaimsAttributeConverter().transformTo(value))
+          .isInstanceOf(RuntimeException.class)
+          .hasRootCauseMessage("Unsupported claims encoding version: 9");
+    }
+
+    @Test
+    @DisplayName("should map a null attribute to null")
+    void shouldReadNull() {
+      assertThat(new JwtClaimsAttributeConverter().transformTo(AttributeValue.fromNul(true)))
+          .isNull();
+    }
+  }
+}
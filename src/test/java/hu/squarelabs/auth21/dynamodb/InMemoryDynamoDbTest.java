@@ -0,0 +1,507 @@
+package hu.squarelabs.auth21.dynamodb;
+
+import static org.assertj.core.api.Assertions.*;
+
+import hu.squarelabs.auth21.dynamodb.InMemoryDynamoDbHttpClient.OperationProfile;
+import hu.squarelabs.auth21.model.entity.UserEntity;
+import hu.squarelabs.auth21.model.entity.UserEntitySchema;
+import hu.squarelabs.auth21.ratelimit.DynamoDbCounterStore;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.retries.api.BackoffStrategy;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.CreateTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.InternalServerErrorException;
+import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
+import software.amazon.awssdk.services.dynamodb.model.KeyType;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ScalarAttributeType;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.Select;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+@DisplayName("InMemoryDynamoDb")
+class InMemoryDynamoDbTest {
+  private static final String USERS = "users";
+  private static final String EVENTS = "events";
+
+  private final InMemoryDynamoDb store = new InMemoryDynamoDb();
+  private OperationProfile profile = OperationProfile.IDEAL;
+  private final AtomicInteger calls = new AtomicInteger();
+  private InMemoryDynamoDbHttpClient httpClient;
+  private DynamoDbClient client;
+
+  @BeforeEach
+  void setUp() {
+    store.createTable(USERS, UserEntitySchema.create());
+    store.createTable(
+        CreateTableRequest.builder()
+            .tableName(EVENTS)
+            .attributeDefinitions(
+                AttributeDefinition.builder()
+                    .attributeName("stream")
+                    .attributeType(ScalarAttributeType.S)
+                    .build(),
+                AttributeDefinition.builder()
+                    .attributeName("seq")
+                    .attributeType(ScalarAttributeType.N)
+                    .build())
+            .keySchema(
+                KeySchemaElement.builder().attributeName("stream").keyType(KeyType.HASH).build(),
+                KeySchemaElement.builder().attributeName("seq").keyType(KeyType.RANGE).build())
+            .build());
+
+    httpClient =
+        new InMemoryDynamoDbHttpClient(
+            store,
+            operation -> {
+              calls.incrementAndGet();
+              return profile;
+            });
+    client =
+        DynamoDbClient.builder()
+            .region(Region.EU_CENTRAL_1)
+            .credentialsProvider(
+                StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test")))
+            .httpClient(httpClient)
+            .overrideConfiguration(
+                overrides ->
+                    overrides.retryStrategy(
+                        AwsRetryStrategy.standardRetryStrategy().toBuilder()
+                            .maxAttempts(3)
+                            .backoffStrategy(BackoffStrategy.retryImmediately())
+                            .throttlingBackoffStrategy(BackoffStrategy.retryImmediately())
+                            .build()))
+            .build();
+  }
+
+  @AfterEach
+  void tearDown() {
+    client.close();
+    httpClient.close();
+  }
+
+  private static UserEntity user(String id, String email) {
+    final var user = new UserEntity();
+    user.setId(id);
+    user.setEmail(email);
+    user.setPasswordHash("hash");
+    user.setName("User " + id);
+    user.setRoles(List.of("USER"));
+    user.setCreatedAt(Instant.parse("2026-01-01T00:00:00Z"));
+    return user;
+  }
+
+  private static Map<String, AttributeValue> event(String stream, int seq) {
+    return Map.of(
+        "stream", AttributeValue.fromS(stream),
+        "seq", AttributeValue.fromN(Integer.toString(seq)),
+        "payload", AttributeValue.fromS("event " + seq));
+  }
+
+  private void putEvents(String stream, int count) {
+    for (int seq = 1; seq <= count; seq++) {
+      client.putItem(PutItemRequest.builder().tableName(EVENTS).item(event(stream, seq)).build());
+    }
+  }
+
+  @Nested
+  @DisplayName("through the enhanced client")
+  class EnhancedClient {
+    private DynamoDbTable<UserEntity> users;
+
+    @BeforeEach
+    void setUp() {
+      users =
+          DynamoDbEnhancedClient.builder()
+              .dynamoDbClient(client)
+              .build()
+              .table(USERS, UserEntitySchema.create());
+    }
+
+    @Test
+    @DisplayName("should read back a stored item")
+    void shouldPutAndGet() {
+      users.putItem(user("u1", "one@example.com"));
+
+      final var found = users.getItem(Key.builder().partitionValue("u1").build());
+
+      assertThat(found.getEmail()).isEqualTo("one@example.com");
+      assertThat(found.getRoles()).containsExactly("USER");
+      assertThat(found.getCreatedAt()).isEqualTo(Instant.parse("2026-01-01T00:00:00Z"));
+    }
+
+    @Test
+    @DisplayName("should find an item through a global secondary index")
+    void shouldQueryIndex() {
+      users.putItem(user("u1", "one@example.com"));
+      users.putItem(user("u2", "two@example.com"));
+
+      final var found =
+          users
+              .index("EmailIndex")
+              .query(
+                  QueryConditional.keyEqualTo(
+                      Key.builder().partitionValue("two@example.com").build()))
+              .stream()
+              .flatMap(page -> page.items().stream())
+              .toList();
+
+      assertThat(found).extracting(UserEntity::getId).containsExactly("u2");
+    }
+
+    @Test
+    @DisplayName("should drop an item from its indexes when it is deleted")
+    void shouldDeleteFromIndexes() {
+      users.putItem(user("u1", "one@example.com"));
+
+      users.deleteItem(Key.builder().partitionValue("u1").build());
+
+      assertThat(users.getItem(Key.builder().partitionValue("u1").build())).isNull();
+      assertThat(
+              users
+                  .index("EmailIndex")
+                  .query(
+                      QueryConditional.keyEqualTo(
+                          Key.builder().partitionValue("one@example.com").build()))
+                  .stream()
+                  .flatMap(page -> page.items().stream())
+                  .toList())
+          .isEmpty();
+    }
+  }
+
+  @Nested
+  @DisplayName("conditions and updates")
+  class ConditionsAndUpdates {
+
+    @Test
+    @DisplayName("should reject a put whose condition fails")
+    void shouldRejectFailedCondition() {
+      putEvents("a", 1);
+
+      assertThatThrownBy(
+              () ->
+                  client.putItem(
+                      PutItemRequest.builder()
+                          .tableName(EVENTS)
+                          .item(event("a", 1))
+                          .conditionExpression("attribute_not_exists(#stream)")
+                          .expressionAttributeNames(Map.of("#stream", "stream"))
+                          .build()))
+          .isInstanceOf(ConditionalCheckFailedException.class);
+    }
+
+    @Test
+    @DisplayName("should apply ADD and SET as the counter store issues them")
+    void shouldAddToCounter() {
+      store.createTable(
+          CreateTableRequest.builder()
+              .tableName("rate-limits")
+              .keySchema(
+                  KeySchemaElement.builder().attributeName("counter").keyType(KeyType.HASH).build())
+              .build());
+      final var counters = new DynamoDbCounterStore(client, "rate-limits");
+      final var expiresAt = Instant.parse("2026-01-01T00:01:00Z");
+
+      counters.add("login:1", 3, expiresAt);
+
+      assertThat(counters.add("login:1", 4, expiresAt)).isEqualTo(7);
+    }
+
+    @Test
+    @DisplayName("should return the old item for ALL_OLD")
+    void shouldReturnOldValues() {
+      putEvents("a", 1);
+
+      final var response =
+          client.updateItem(
+              UpdateItemRequest.builder()
+                  .tableName(EVENTS)
+                  .key(
+                      Map.of("stream", AttributeValue.fromS("a"), "seq", AttributeValue.fromN("1")))
+                  .updateExpression("SET payload = :payload REMOVE missing")
+                  .expressionAttributeValues(Map.of(":payload", AttributeValue.fromS("changed")))
+                  .returnValues("ALL_OLD")
+                  .build());
+
+      assertThat(response.attributes().get("payload").s()).isEqualTo("event 1");
+    }
+  }
+
+  @Nested
+  @DisplayName("queries and scans")
+  class QueriesAndScans {
+
+    @Test
+    @DisplayName("should page through a partition in sort key order")
+    void shouldPageQuery() {
+      putEvents("a", 5);
+      putEvents("b", 2);
+      final var request =
+          QueryRequest.builder()
+              .tableName(EVENTS)
+              .keyConditionExpression("#stream = :stream AND seq > :after")
+              .expressionAttributeNames(Map.of("#stream", "stream"))
+              .expressionAttributeValues(
+                  Map.of(":stream", AttributeValue.fromS("a"), ":after", AttributeValue.fromN("1")))
+              .scanIndexForward(false)
+              .limit(3)
+              .build();
+
+      final var first = client.query(request);
+      final var second =
+          client.query(request.toBuilder().exclusiveStartKey(first.lastEvaluatedKey()).build());
+
+      assertThat(first.items())
+          .extracting(item -> item.get("seq").n())
+          .containsExactly("5", "4", "3");
+      assertThat(second.items()).extracting(item -> item.get("seq").n()).containsExactly("2");
+      assertThat(second.hasLastEvaluatedKey()).isFalse();
+    }
+
+    @Test
+    @DisplayName("should count the items a scan filter keeps")
+    void shouldCountScan() {
+      putEvents("a", 4);
+
+      final var response =
+          client.scan(
+              ScanRequest.builder()
+                  .tableName(EVENTS)
+                  .filterExpression("seq BETWEEN :low AND :high")
+                  .expressionAttributeValues(
+                      Map.of(":low", AttributeValue.fromN("2"), ":high", AttributeValue.fromN("3")))
+                  .select(Select.COUNT)
+                  .build());
+
+      assertThat(response.count()).isEqualTo(2);
+      assertThat(response.scannedCount()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("should report consumed capacity when asked")
+    void shouldReportConsumedCapacity() {
+      putEvents("a", 1);
+
+      final var response =
+          client.getItem(
+              GetItemRequest.builder()
+                  .tableName(EVENTS)
+                  .key(
+                      Map.of("stream", AttributeValue.fromS("a"), "seq", AttributeValue.fromN("1")))
+                  .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                  .build());
+
+      assertThat(response.consumedCapacity().tableName()).isEqualTo(EVENTS);
+      assertThat(response.consumedCapacity().capacityUnits()).isEqualTo(0.5);
+    }
+  }
+
+  @Nested
+  @DisplayName("batches and transactions")
+  class BatchesAndTransactions {
+
+    @Test
+    @DisplayName("should write and read a batch")
+    void shouldBatch() {
+      client.batchWriteItem(
+          BatchWriteItemRequest.builder()
+              .requestItems(
+                  Map.of(
+                      EVENTS,
+                      List.of(
+                          WriteRequest.builder()
+                              .putRequest(PutRequest.builder().item(event("a", 1)).build())
+                              .build(),
+                          WriteRequest.builder()
+                              .putRequest(PutRequest.builder().item(event("a", 2)).build())
+                              .build())))
+              .build());
+
+      final var response =
+          client.batchGetItem(
+              BatchGetItemRequest.builder()
+                  .requestItems(
+                      Map.of(
+                          EVENTS,
+                          KeysAndAttributes.builder()
+                              .keys(
+                                  List.of(
+                                      Map.of(
+                                          "stream", AttributeValue.fromS("a"),
+                                          "seq", AttributeValue.fromN("1")),
+                                      Map.of(
+                                          "stream", AttributeValue.fromS("a"),
+                                          "seq", AttributeValue.fromN("2"))))
+                              .build()))
+                  .build());
+
+      assertThat(response.responses().get(EVENTS)).hasSize(2);
+      assertThat(response.unprocessedKeys()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should cancel the whole transaction when one condition fails")
+    void shouldCancelTransaction() {
+      putEvents("a", 1);
+      final var request =
+          TransactWriteItemsRequest.builder()
+              .transactItems(
+                  TransactWriteItem.builder()
+                      .put(Put.builder().tableName(EVENTS).item(event("b", 1)).build())
+                      .build(),
+                  TransactWriteItem.builder()
+                      .put(
+                          Put.builder()
+                              .tableName(EVENTS)
+                              .item(event("a", 1))
+                              .conditionExpression("attribute_not_exists(seq)")
+                              .build())
+                      .build())
+              .build();
+
+      assertThatThrownBy(() -> client.transactWriteItems(request))
+          .isInstanceOfSatisfying(
+              TransactionCanceledException.class,
+              e ->
+                  assertThat(e.cancellationReasons())
+                      .extracting(reason -> reason.code())
+                      .containsExactly("None", "ConditionalCheckFailed"));
+      assertThat(
+              client
+                  .getItem(
+                      GetItemRequest.builder()
+                          .tableName(EVENTS)
+                          .key(
+                              Map.of(
+                                  "stream", AttributeValue.fromS("b"),
+                                  "seq", AttributeValue.fromN("1")))
+                          .build())
+                  .hasItem())
+          .isFalse();
+    }
+  }
+
+  @Nested
+  @DisplayName("fault injection")
+  class FaultInjection {
+
+    @Test
+    @DisplayName("should throttle every attempt the retry strategy makes")
+    void shouldThrottle() {
+      profile = new OperationProfile(LatencyModel.NONE, 1, 0);
+
+      assertThatThrownBy(() -> putEvents("a", 1))
+          .isInstanceOf(ProvisionedThroughputExceededException.class);
+      assertThat(calls).hasValue(3);
+    }
+
+    @Test
+    @DisplayName("should fail with a server error at the error rate")
+    void shouldFail() {
+      profile = new OperationProfile(LatencyModel.NONE, 0, 1);
+
+      assertThatThrownBy(() -> putEvents("a", 1)).isInstanceOf(InternalServerErrorException.class);
+    }
+
+    @Test
+    @DisplayName("should answer unknown tables as DynamoDB does")
+    void shouldRejectUnknownTable() {
+      assertThatThrownBy(
+              () ->
+                  client.putItem(
+                      PutItemRequest.builder().tableName("missing").item(event("a", 1)).build()))
+          .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    @DisplayName("should serve the async client")
+    void shouldServeAsyncClient() {
+      profile = new OperationProfile(LatencyModel.fixed(Duration.ofMillis(5)), 0, 0);
+      try (var asyncClient =
+          DynamoDbAsyncClient.builder()
+              .region(Region.EU_CENTRAL_1)
+              .credentialsProvider(
+                  StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test")))
+              .httpClient(httpClient)
+              .build()) {
+        asyncClient
+            .putItem(PutItemRequest.builder().tableName(EVENTS).item(event("a", 1)).build())
+            .join();
+
+        assertThat(store.scan(ScanRequest.builder().tableName(EVENTS).build()).count())
+            .isEqualTo(1);
+      }
+    }
+  }
+
+  @Nested
+  @DisplayName("latency models")
+  class LatencyModels {
+
+    @Test
+    @DisplayName("should parse the property forms")
+    void shouldParse() {
+      final var random = new SplittableRandom(1);
+
+      assertThat(LatencyModel.parse("none").sampleNanos(random)).isZero();
+      assertThat(LatencyModel.parse("fixed:5ms").sampleNanos(random)).isEqualTo(5_000_000);
+      assertThat(LatencyModel.parse("uniform:2ms,3ms").sampleNanos(random))
+          .isBetween(2_000_000L, 3_000_000L);
+      assertThatThrownBy(() -> LatencyModel.parse("gamma:1ms"))
+          .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("should put the log-normal percentiles where they were asked for")
+    void shouldMatchLogNormalPercentiles() {
+      final var model = LatencyModel.parse("lognormal:4ms,25ms");
+      final var random = new SplittableRandom(7);
+      final var samples = new long[100_000];
+      for (int i = 0; i < samples.length; i++) {
+        samples[i] = model.sampleNanos(random);
+      }
+      Arrays.sort(samples);
+
+      assertThat(samples[samples.length / 2]).isBetween(3_800_000L, 4_200_000L);
+      assertThat(samples[samples.length * 99 / 100]).isBetween(23_000_000L, 27_000_000L);
+    }
+  }
+}
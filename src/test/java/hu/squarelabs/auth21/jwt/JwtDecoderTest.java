@@ -0,0 +1,258 @@
+package hu.squarelabs.auth21.jwt;
+
+import static org.assertj.core.api.Assertions.*;
+
+import hu.squarelabs.auth21.model.JwtToken;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+@DisplayName("JwtDecoder")
+class JwtDecoderTest {
+
+  private static final byte[] SECRET = "test-secret".getBytes(StandardCharsets.UTF_8);
+  private static final long NOW = 1_000L;
+
+  private static JwtToken token() {
+    return new JwtToken(
+        "jti-123",
+        "user-123",
+        NOW,
+        NOW + 3600,
+        Map.of(
+            "id", "user-123",
+            "name", "Zoë \"Tester\" 😀",
+            "roles", List.of("USER", "ADMIN")));
+  }
+
+  private static JwtDecoder decoder(JwtAlgorithm algorithm) {
+    return new JwtDecoder(SECRET, algorithm, () -> NOW);
+  }
+
+  private static String sign(JwtAlgorithm algorithm, String header, String claims)
+      throws Exception {
+    Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+    String signingInput =
+        encoder.encodeToString(header.getBytes(StandardCharsets.UTF_8))
+            + "."
+            + encoder.encodeToString(claims.getBytes(StandardCharsets.UTF_8));
+    Mac mac = Mac.getInstance(algorithm.getMacAlgorithm());
+    mac.init(new SecretKeySpec(SECRET, algorithm.getMacAlgorithm()));
+    return signingInput
+        + "."
+        + encoder.encodeToString(mac.doFinal(signingInput.getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  private static String sign(String claims) throws Exception {
+    return sign(JwtAlgorithm.HS256, "{\"alg\":\"HS256\",\"typ\":\"JWT\"}", claims);
+  }
+
+  @Nested
+  @DisplayName("valid tokens")
+  class ValidTokens {
+
+    @ParameterizedTest
+    @EnumSource(
+        value = JwtAlgorithm.class,
+        names = {"HS256", "HS512"})
+    @DisplayName("should round-trip tokens issued by JwtEncoder")
+    void shouldRoundTripEncodedTokens(JwtAlgorithm algorithm) {
+      JwtToken token = token();
+      String jwt = new JwtEncoder(SECRET, algorithm).encode(token);
+
+      assertThat(decoder(algorithm).decode(jwt)).isEqualTo(token);
+    }
+
+    @Test
+    @DisplayName("should ignore unknown claims and tolerate whitespace and escapes")
+    void shouldIgnoreUnknownClaims() throws Exception {
+      String jwt =
+          sign(
+              "{ \"iss\" : \"auth21\", \"aud\": [\"a\", {\"b\": 1.5e3}],"
+                  + " \"jti\": \"j\\u0074i\\n\", \"exp\": 5000, \"user\": null }");
+
+      JwtToken decoded = decoder(JwtAlgorithm.HS256).decode(jwt);
+
+      assertThat(decoded.getJti()).isEqualTo("jti\n");
+      assertThat(decoded.getExp()).isEqualTo(5000L);
+      assertThat(decoded.getSub()).isNull();
+      assertThat(decoded.getUser()).isNull();
+    }
+  }
+
+  @Nested
+  @DisplayName("invalid tokens")
+  class InvalidTokens {
+
+    @Test
+    @DisplayName("should reject a token with a tampered payload")
+    void shouldRejectTamperedPayload() throws Exception {
+      String jwt = sign("{\"sub\":\"user-123\",\"exp\":5000}");
+      String forged = sign("{\"sub\":\"admin\",\"exp\":5000}");
+      String tampered =
+          forged.substring(0, forged.lastIndexOf('.')) + jwt.substring(jwt.lastIndexOf('.'));
+
+      assertThatThrownBy(() -> decoder(JwtAlgorithm.HS256).decode(tampered))
+          .isInstanceOf(InvalidJwtException.class)
+          .hasMessage("Invalid token signature");
+    }
+
+    @Test
+    @DisplayName("should reject a token signed with another secret")
+    void shouldRejectForeignSignature() {
+      String jwt =
+          new JwtEncoder("other-secret".getBytes(StandardCharsets.UTF_8), JwtAlgorithm.HS256)
+              .encode(token());
+
+      assertThatThrownBy(() -> decoder(JwtAlgorithm.HS256).decode(jwt))
+          .isInstanceOf(InvalidJwtException.class)
+          .hasMessage("Invalid token signature");
+    }
+
+    @Test
+    @DisplayName("should reject a token using a different algorithm")
+    void shouldRejectOtherAlgorithm() {
+      String jwt = new JwtEncoder(SECRET, JwtAlgorithm.HS512).encode(token());
+
+      assertThatThrownBy(() -> decoder(JwtAlgorithm.HS256).decode(jwt))
+          .isInstanceOf(InvalidJwtException.class)
+          .hasMessage("Unsupported token header");
+    }
+
+    @Test
+    @DisplayName("should reject an expired token")
+    void shouldRejectExpiredToken() throws Exception {
+      String jwt = sign("{\"sub\":\"user-123\",\"exp\":" + NOW + "}");
+
+      assertThatThrownBy(() -> decoder(JwtAlgorithm.HS256).decode(jwt))
+          .isInstanceOf(InvalidJwtException.class)
+          .hasMessage("Token has expired");
+    }
+
+    @Test
+    @DisplayName("should reject a token without expiration")
+    void shouldRejectTokenWithoutExpiration() throws Exception {
+      String jwt = sign("{\"sub\":\"user-123\"}");
+
+      assertThatThrownBy(() -> decoder(JwtAlgorithm.HS256).decode(jwt))
+          .isInstanceOf(InvalidJwtException.class)
+          .hasMessage("Token has no expiration");
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+        strings = {
+          "{\"exp\":5000,\"exp\":6000}",
+          "{\"exp\":5000.5}",
+          "{\"exp\":\"5000\"}",
+          "{\"exp\":5000,\"user\":\"admin\"}",
+          "{\"exp\":5000,}",
+          "{\"exp\":5000} trailing",
+          "[\"exp\",5000]",
+          "{\"exp\":5000,\"jti\":\"unterminated}"
+        })
+    @DisplayName("should reject malformed claim sets")
+    void shouldRejectMalformedClaims(String claims) throws Exception {
+      String jwt = sign(claims);
+
+      assertThatThrownBy(() -> decoder(JwtAlgorithm.HS256).decode(jwt))
+          .isInstanceOf(InvalidJwtException.class);
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+        strings = {
+          "",
+          "not-a-token",
+          "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9",
+          "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9..",
+          "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9.e30.e30.e30"
+        })
+    @DisplayName("should reject structurally invalid tokens")
+    void shouldRejectStructurallyInvalidTokens(String jwt) {
+      assertThatThrownBy(() -> decoder(JwtAlgorithm.HS256).decode(jwt))
+          .isInstanceOf(InvalidJwtException.class);
+    }
+
+    @Test
+    @DisplayName("should reject null")
+    void shouldRejectNull() {
+      assertThatThrownBy(() -> decoder(JwtAlgorithm.HS256).decode(null))
+          .isInstanceOf(InvalidJwtException.class);
+    }
+  }
+
+  @Nested
+  @DisplayName("asymmetric tokens")
+  class AsymmetricTokens {
+
+    private JwtKeyRing keyRing(JwtAlgorithm algorithm) {
+      return new JwtKeyRing(
+          algorithm, 86_400_000, 3_600_000, 7_200_000, 0, 3_600_000, () -> NOW * 1000);
+    }
+
+    @ParameterizedTest
+    @EnumSource(
+        value = JwtAlgorithm.class,
+        names = {"ES256", "EdDSA"})
+    @DisplayName("should round-trip tokens signed with the ring's current key")
+    void shouldRoundTripSignedTokens(JwtAlgorithm algorithm) {
+      JwtKeyRing keyRing = keyRing(algorithm);
+      JwtToken token = token();
+      String jwt = new JwtEncoder(keyRing).encode(token);
+
+      assertThat(new JwtDecoder(keyRing, () -> NOW).decode(jwt)).isEqualTo(token);
+    }
+
+    @ParameterizedTest
+    @EnumSource(
+        value = JwtAlgorithm.class,
+        names = {"ES256", "EdDSA"})
+    @DisplayName("should reject a tampered payload")
+    void shouldRejectTamperedPayload(JwtAlgorithm algorithm) {
+      JwtKeyRing keyRing = keyRing(algorithm);
+      String jwt = new JwtEncoder(keyRing).encode(token());
+      String[] parts = jwt.split("\\.");
+      String payload =
+          Base64.getUrlEncoder()
+              .withoutPadding()
+              .encodeToString("{\"sub\":\"admin\",\"exp\":5000}".getBytes(StandardCharsets.UTF_8));
+
+      assertThatThrownBy(
+              () ->
+                  new JwtDecoder(keyRing, () -> NOW)
+                      .decode(parts[0] + "." + payload + "." + parts[2]))
+          .isInstanceOf(InvalidJwtException.class)
+          .hasMessage("Invalid token signature");
+    }
+
+    @Test
+    @DisplayName("should reject a token signed by a key the ring does not hold")
+    void shouldRejectForeignKey() {
+      String jwt = new JwtEncoder(keyRing(JwtAlgorithm.ES256)).encode(token());
+
+      assertThatThrownBy(() -> new JwtDecoder(keyRing(JwtAlgorithm.ES256), () -> NOW).decode(jwt))
+          .isInstanceOf(InvalidJwtException.class)
+          .hasMessage("Unknown signing key");
+    }
+
+    @Test
+    @DisplayName("should reject an HMAC token")
+    void shouldRejectHmacToken() {
+      String jwt = new JwtEncoder(SECRET, JwtAlgorithm.HS256).encode(token());
+
+      assertThatThrownBy(() -> new JwtDecoder(keyRing(JwtAlgorithm.EdDSA), () -> NOW).decode(jwt))
+          .isInstanceOf(InvalidJwtException.class)
+          .hasMessage("Unknown signing key");
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package hu.squarelabs.auth21.jwt;
+
+import static org.assertj.core.api.Assertions.*;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hu.squarelabs.auth21.model.JwtToken;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+@DisplayName("JwtEncoder")
+class JwtEncoderTest {
+
+  private static final byte[] SECRET = "test-secret".getBytes(StandardCharsets.UTF_8);
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private Map<String, Object> decodeSegment(String jwt, int index) throws Exception {
+    return objectMapper.readValue(
+        Base64.getUrlDecoder().decode(jwt.split("\\.")[index]), new TypeReference<>() {});
+  }
+
+  private static JwtToken token() {
+    return new JwtToken(
+        "jti-123",
+        "user-123",
+        1000L,
+        4600L,
+        Map.of(
+            "id", "user-123",
+            "name", "Zoë \"Tester\" 😀",
+            "roles", List.of("USER", "ADMIN")));
+  }
+
+  @ParameterizedTest
+  @EnumSource(
+      value = JwtAlgorithm.class,
+      names = {"HS256", "HS512"})
+  @DisplayName("should produce a token whose signature verifies with the shared secret")
+  void shouldProduceVerifiableSignature(JwtAlgorithm algorithm) throws Exception {
+    String jwt = new JwtEncoder(SECRET, algorithm).encode(token());
+
+    String[] parts = jwt.split("\\.");
+    assertThat(parts).hasSize(3);
+
+    Mac mac = Mac.getInstance(algorithm.getMacAlgorithm());
+    mac.init(new SecretKeySpec(SECRET, algorithm.getMacAlgorithm()));
+    byte[] expected = mac.doFinal((parts[0] + "." + parts[1]).getBytes(StandardCharsets.US_ASCII));
+
+    assertThat(Base64.getUrlDecoder().decode(parts[2])).isEqualTo(expected);
+  }
+
+  @Test
+  @DisplayName("should encode the algorithm and type in the header")
+  void shouldEncodeHeader() throws Exception {
+    String jwt = new JwtEncoder(SECRET, JwtAlgorithm.HS512).encode(token());
+
+    Map<String, Object> header = decodeSegment(jwt, 0);
+
+    assertThat(header).containsEntry("alg", "HS512").containsEntry("typ", "JWT");
+  }
+
+  @Test
+  @DisplayName("should encode every claim as valid JSON")
+  void shouldEncodeClaims() throws Exception {
+    JwtToken token = token();
+    String jwt = new JwtEncoder(SECRET, JwtAlgorithm.HS256).encode(token);
+
+    Map<String, Object> claims = decodeSegment(jwt, 1);
+
+    assertThat(claims)
+        .containsEntry("jti", "jti-123")
+        .containsEntry("sub", "user-123")
+        .containsEntry("iat", 1000)
+        .containsEntry("exp", 4600)
+        .containsEntry("user", token.getUser());
+  }
+
+  @Test
+  @DisplayName("should omit claims that are not set")
+  void shouldOmitMissingClaims() throws Exception {
+    JwtToken token = new JwtToken();
+    token.setJti("jti-123");
+    String jwt = new JwtEncoder(SECRET, JwtAlgorithm.HS256).encode(token);
+
+    Map<String, Object> claims = decodeSegment(jwt, 1);
+
+    assertThat(claims).containsOnlyKeys("jti");
+  }
+
+  @Test
+  @DisplayName("should produce identical output when the pooled buffers are reused")
+  void shouldBeStableAcrossInvocations() {
+    JwtEncoder encoder = new JwtEncoder(SECRET, JwtAlgorithm.HS256);
+    JwtToken token = token();
+
+    assertThat(encoder.encode(token)).isEqualTo(encoder.encode(token));
+  }
+}
@@ -0,0 +1,214 @@
+package hu.squarelabs.auth21.jwt;
+
+import static org.assertj.core.api.Assertions.*;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hu.squarelabs.auth21.model.JwtToken;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.AlgorithmParameters;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+@DisplayName("JwtKeyRing")
+class JwtKeyRingTest {
+  private static final long START = 1_700_000_000_000L;
+  private static final long HOUR = 3_600_000L;
+  private static final long DAY = 24 * HOUR;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private AtomicLong now;
+
+  @BeforeEach
+  void setUp() {
+    now = new AtomicLong(START);
+  }
+
+  private JwtKeyRing keyRing(JwtAlgorithm algorithm) {
+    return new JwtKeyRing(algorithm, DAY, HOUR, 2 * HOUR, 0, HOUR, now::get);
+  }
+
+  private JwtToken token() {
+    final long iat = now.get() / 1000;
+    return new JwtToken("jti-123", "user-123", iat, iat + 3600, Map.of("id", "user-123"));
+  }
+
+  private JsonNode jwks(JwtKeyRing keyRing) throws Exception {
+    return objectMapper.readTree(keyRing.jwks().json()).get("keys");
+  }
+
+  @Nested
+  @DisplayName("JWKS")
+  class JwkSet {
+
+    @ParameterizedTest
+    @EnumSource(
+        value = JwtAlgorithm.class,
+        names = {"ES256", "EdDSA"})
+    @DisplayName("should publish a JWK that verifies the tokens signed with its kid")
+    void shouldPublishVerifyingJwk(JwtAlgorithm algorithm) throws Exception {
+      final var keyRing = keyRing(algorithm);
+      final String jwt = new JwtEncoder(keyRing).encode(token());
+      final String[] parts = jwt.split("\\.");
+      final var header = objectMapper.readTree(Base64.getUrlDecoder().decode(parts[0]));
+      final var jwk = jwks(keyRing).get(0);
+
+      assertThat(header.get("alg").asText()).isEqualTo(algorithm.name());
+      assertThat(header.get("kid").asText()).isEqualTo(jwk.get("kid").asText());
+      assertThat(jwk.get("alg").asText()).isEqualTo(algorithm.name());
+      assertThat(jwk.get("use").asText()).isEqualTo("sig");
+
+      final var verifier = Signature.getInstance(algorithm.getSignatureAlgorithm());
+      verifier.initVerify(publicKey(jwk));
+      verifier.update((parts[0] + "." + parts[1]).getBytes(StandardCharsets.US_ASCII));
+      assertThat(verifier.verify(Base64.getUrlDecoder().decode(parts[2]))).isTrue();
+    }
+
+    @Test
+    @DisplayName("should list no keys and refuse to sign for an HMAC algorithm")
+    void shouldStayEmptyForHmac() throws Exception {
+      final var keyRing = keyRing(JwtAlgorithm.HS256);
+
+      assertThat(keyRing.isEnabled()).isFalse();
+      assertThat(jwks(keyRing)).isEmpty();
+      assertThatThrownBy(keyRing::signingKey).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    @DisplayName("should change the ETag only when the key set changes")
+    void shouldChangeEtagWithKeys() {
+      final var keyRing = keyRing(JwtAlgorithm.ES256);
+      final String etag = keyRing.jwks().etag();
+
+      now.addAndGet(HOUR);
+      keyRing.rotate();
+      assertThat(keyRing.jwks().etag()).isEqualTo(etag);
+
+      now.set(START + DAY - HOUR);
+      keyRing.rotate();
+      assertThat(keyRing.jwks().etag()).isNotEqualTo(etag).startsWith("\"").endsWith("\"");
+    }
+  }
+
+  @Nested
+  @DisplayName("rotation")
+  class Rotation {
+
+    @Test
+    @DisplayName("should publish the next key ahead of time and switch to it when it activates")
+    void shouldPublishAheadAndSwitch() throws Exception {
+      final var keyRing = keyRing(JwtAlgorithm.ES256);
+      final var first = keyRing.signingKey();
+
+      now.set(START + DAY - HOUR);
+      keyRing.rotate();
+      assertThat(keyRing.keys()).hasSize(2);
+      assertThat(jwks(keyRing)).hasSize(2);
+      assertThat(keyRing.signingKey()).isSameAs(first);
+
+      now.set(START + DAY);
+      keyRing.rotate();
+      assertThat(keyRing.signingKey()).isNotSameAs(first);
+      assertThat(keyRing.signingKey().getActivatesAt()).isEqualTo(START + DAY);
+    }
+
+    @Test
+    @DisplayName("should keep verifying a retired key until its retention ends")
+    void shouldVerifyRetiredKeyDuringRetention() {
+      final var keyRing = keyRing(JwtAlgorithm.EdDSA);
+      final String jwt = new JwtEncoder(keyRing).encode(token());
+      final var decoder = new JwtDecoder(keyRing, () -> START / 1000);
+
+      now.set(START + DAY - HOUR);
+      keyRing.rotate();
+      now.set(START + DAY);
+      keyRing.rotate();
+      now.set(START + DAY + 2 * HOUR - 1);
+      keyRing.rotate();
+      assertThat(decoder.decode(jwt).getJti()).isEqualTo("jti-123");
+
+      now.set(START + DAY + 2 * HOUR);
+      keyRing.rotate();
+      assertThat(keyRing.keys()).hasSize(1);
+      assertThatThrownBy(() -> decoder.decode(jwt))
+          .isInstanceOf(InvalidJwtException.class)
+          .hasMessage("Unknown signing key");
+    }
+
+    @Test
+    @DisplayName("should reject a publish-ahead window as long as the rotation interval")
+    void shouldRejectOverlongPublishAhead() {
+      assertThatThrownBy(
+              () -> new JwtKeyRing(JwtAlgorithm.ES256, HOUR, HOUR, HOUR, 0, HOUR, now::get))
+          .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("should reject a retention shorter than the token lifetime")
+    void shouldRejectRetentionShorterThanTokenLifetime() {
+      assertThatThrownBy(
+              () -> new JwtKeyRing(JwtAlgorithm.ES256, DAY, HOUR, HOUR, 0, 2 * HOUR, now::get))
+          .isInstanceOf(IllegalArgumentException.class)
+          .hasMessageContaining("jwt.keys.retain-ms");
+    }
+  }
+
+  @Nested
+  @DisplayName("deployment")
+  class Deployment {
+
+    @Test
+    @DisplayName("should refuse in-memory asymmetric keys unless single-node is configured")
+    void shouldRequireSingleNodeForAsymmetricKeys() {
+      assertThatThrownBy(() -> new JwtKeyRing("EdDSA", DAY, HOUR, 2 * HOUR, 0, false, 3600))
+          .isInstanceOf(IllegalArgumentException.class)
+          .hasMessageContaining("jwt.keys.single-node");
+      assertThat(new JwtKeyRing("EdDSA", DAY, HOUR, 2 * HOUR, 0, true, 3600).isEnabled()).isTrue();
+    }
+
+    @Test
+    @DisplayName("should not require single-node for an HMAC algorithm")
+    void shouldAllowHmacOnManyNodes() {
+      assertThat(new JwtKeyRing("HS256", DAY, HOUR, 2 * HOUR, 0, false, 3600).isEnabled())
+          .isFalse();
+    }
+  }
+
+  private static PublicKey publicKey(JsonNode jwk) throws Exception {
+    final var decoder = Base64.getUrlDecoder();
+    if (jwk.get("kty").asText().equals("EC")) {
+      final var parameters = AlgorithmParameters.getInstance("EC");
+      parameters.init(new ECGenParameterSpec("secp256r1"));
+      final var point =
+          new ECPoint(
+              new BigInteger(1, decoder.decode(jwk.get("x").asText())),
+              new BigInteger(1, decoder.decode(jwk.get("y").asText())));
+      return KeyFactory.getInstance("EC")
+          .generatePublic(
+              new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class)));
+    }
+    final byte[] prefix = HexFormat.of().parseHex("302a300506032b6570032100");
+    final byte[] x = decoder.decode(jwk.get("x").asText());
+    final byte[] encoded = new byte[prefix.length + x.length];
+    System.arraycopy(prefix, 0, encoded, 0, prefix.length);
+    System.arraycopy(x, 0, encoded, prefix.length, x.length);
+    return KeyFactory.getInstance("Ed25519").generatePublic(new X509EncodedKeySpec(encoded));
+  }
+}
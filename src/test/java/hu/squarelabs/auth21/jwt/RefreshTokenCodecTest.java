@@ -0,0 +1,73 @@
+package hu.squarelabs.auth21.jwt;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("RefreshTokenCodec")
+class RefreshTokenCodecTest {
+
+  private static final String JTI = "6f1c1a8e-2d4b-4c3a-9e8f-0a1b2c3d4e5f";
+
+  private final RefreshTokenCodec codec =
+      new RefreshTokenCodec("test-secret".getBytes(StandardCharsets.UTF_8));
+
+  @Test
+  @DisplayName("should embed the jti in a 64 character URL-safe token")
+  void shouldRoundTripJti() {
+    String refreshToken = codec.encode(JTI, nonce(7));
+
+    assertThat(refreshToken).hasSize(64).matches("[A-Za-z0-9_-]+");
+    assertThat(codec.jtiOf(refreshToken)).contains(JTI);
+  }
+
+  @Test
+  @DisplayName("should produce distinct tokens for distinct nonces")
+  void shouldDependOnNonce() {
+    assertThat(codec.encode(JTI, nonce(1))).isNotEqualTo(codec.encode(JTI, nonce(2)));
+  }
+
+  @Test
+  @DisplayName("should reject a token with a tampered jti")
+  void shouldRejectTamperedToken() {
+    char[] chars = codec.encode(JTI, nonce(7)).toCharArray();
+    chars[3] = chars[3] == 'A' ? 'B' : 'A';
+
+    assertThat(codec.jtiOf(new String(chars))).isEmpty();
+  }
+
+  @Test
+  @DisplayName("should reject a token signed with another secret")
+  void shouldRejectForeignToken() {
+    RefreshTokenCodec other =
+        new RefreshTokenCodec("other-secret".getBytes(StandardCharsets.UTF_8));
+
+    assertThat(codec.jtiOf(other.encode(JTI, nonce(7)))).isEmpty();
+  }
+
+  @Test
+  @DisplayName("should treat legacy opaque tokens as not self-locating")
+  void shouldIgnoreLegacyTokens() {
+    assertThat(codec.jtiOf("0123456789abcdef")).isEmpty();
+    assertThat(codec.jtiOf(null)).isEmpty();
+    assertThat(codec.jtiOf("!".repeat(64))).isEmpty();
+  }
+
+  @Test
+  @DisplayName("should recognise only the 16 hex character shape as legacy")
+  void shouldRecogniseLegacyShape() {
+    assertThat(RefreshTokenCodec.isLegacy("0123456789abcdef")).isTrue();
+    assertThat(RefreshTokenCodec.isLegacy("0123456789ABCDEF")).isFalse();
+    assertThat(RefreshTokenCodec.isLegacy("0123456789abcde")).isFalse();
+    assertThat(RefreshTokenCodec.isLegacy(codec.encode(JTI, nonce(1)))).isFalse();
+    assertThat(RefreshTokenCodec.isLegacy(null)).isFalse();
+  }
+
+  private static byte[] nonce(int seed) {
+    byte[] nonce = new byte[RefreshTokenCodec.NONCE_LENGTH];
+    nonce[0] = (byte) seed;
+    return nonce;
+  }
+}
@@ -0,0 +1,113 @@
+package hu.squarelabs.auth21.model.entity;
+
+import static org.assertj.core.api.Assertions.*;
+
+import hu.squarelabs.auth21.converter.JwtClaimsAttributeConverter;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.enhanced.dynamodb.KeyAttributeMetadata;
+import software.amazon.awssdk.enhanced.dynamodb.TableMetadata;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+
+/**
+ * Guards the hand-maintained static schemas against drift from the mapping annotations on the
+ * entities, which remain the documented source of truth.
+ */
+@DisplayName("Entity table schemas")
+class EntitySchemaConsistencyTest {
+
+  @Nested
+  @DisplayName("TokenEntitySchema")
+  class TokenEntitySchemaTest {
+
+    private final TableSchema<TokenEntity> bean = TableSchema.fromBean(TokenEntity.class);
+    private final TableSchema<TokenEntity> fixed =
+        TokenEntitySchema.create(JwtClaimsAttributeConverter.Format.MAP);
+
+    @Test
+    @DisplayName("should declare the same attributes, keys and indexes as the annotations")
+    void shouldMatchMetadata() {
+      assertSameMetadata(fixed, bean);
+    }
+
+    @Test
+    @DisplayName("should map items to the same attribute values as the annotations")
+    void shouldMapItemsIdentically() {
+      TokenEntity token = new TokenEntity();
+      token.setJti("jti-123");
+      token.setJwtToken(Map.of("jti", "jti-123", "iat", 1000L, "exp", 4600L));
+      token.setRefreshToken("refresh-123");
+      token.setExpiresAt(Instant.ofEpochSecond(4600));
+      token.setCreatedAt(Instant.ofEpochSecond(1000));
+      token.setUpdatedAt(Instant.ofEpochSecond(1001));
+      token.setUserId("user-123");
+
+      assertThat(fixed.itemToMap(token, false)).isEqualTo(bean.itemToMap(token, false));
+
+      TokenEntity read = fixed.mapToItem(bean.itemToMap(token, true));
+      assertThat(read).usingRecursiveComparison().isEqualTo(token);
+    }
+  }
+
+  @Nested
+  @DisplayName("UserEntitySchema")
+  class UserEntitySchemaTest {
+
+    private final TableSchema<UserEntity> bean = TableSchema.fromBean(UserEntity.class);
+    private final TableSchema<UserEntity> fixed = UserEntitySchema.create();
+
+    @Test
+    @DisplayName("should declare the same attributes, keys and indexes as the annotations")
+    void shouldMatchMetadata() {
+      assertSameMetadata(fixed, bean);
+    }
+
+    @Test
+    @DisplayName("should map items to the same attribute values as the annotations")
+    void shouldMapItemsIdentically() {
+      UserEntity user = new UserEntity();
+      user.setId("user-123");
+      user.setEmail("user@example.com");
+      user.setPasswordHash("$2a$10$hash");
+      user.setNickname("user");
+      user.setName("Test User");
+      user.setCreatedAt(Instant.ofEpochSecond(1000));
+      user.setUpdatedAt(Instant.ofEpochSecond(1001));
+      user.setDeletedAt(Instant.ofEpochSecond(1002));
+      user.setRoles(List.of("USER", "ADMIN"));
+
+      assertThat(fixed.itemToMap(user, false)).isEqualTo(bean.itemToMap(user, false));
+
+      UserEntity read = fixed.mapToItem(bean.itemToMap(user, true));
+      assertThat(read).usingRecursiveComparison().isEqualTo(user);
+    }
+  }
+
+  private static <T> void assertSameMetadata(TableSchema<T> actual, TableSchema<T> expected) {
+    assertThat(actual.attributeNames())
+        .containsExactlyInAnyOrderElementsOf(expected.attributeNames());
+    assertThat(keysByIndex(actual.tableMetadata()))
+        .isEqualTo(keysByIndex(expected.tableMetadata()));
+  }
+
+  private static Map<String, List<String>> keysByIndex(TableMetadata metadata) {
+    Map<String, List<String>> keys = new TreeMap<>();
+    metadata
+        .indices()
+        .forEach(
+            index ->
+                keys.put(
+                    index.name(), List.of(names(index.partitionKeys()), names(index.sortKeys()))));
+    return keys;
+  }
+
+  private static String names(List<KeyAttributeMetadata> keys) {
+    return keys.stream().map(KeyAttributeMetadata::name).collect(Collectors.joining(","));
+  }
+}
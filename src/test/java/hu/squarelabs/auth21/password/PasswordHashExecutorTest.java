@@ -0,0 +1,268 @@
+package hu.squarelabs.auth21.password;
+
+import static org.assertj.core.api.Assertions.*;
+
+import hu.squarelabs.auth21.exception.ServiceOverloadedException;
+import hu.squarelabs.auth21.util.SecureIdGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.crypto.generators.OpenBSDBCrypt;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+@DisplayName("PasswordHashExecutor")
+class PasswordHashExecutorTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private PasswordHashExecutor executor;
+
+  @AfterEach
+  void tearDown() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  private PasswordHashExecutor executor(List<PasswordHasher> hashers, int threads, int queue) {
+    PasswordHasher preferred = hashers.get(0);
+    PasswordHashPolicy policy =
+        new PasswordHashPolicy(
+            hashers,
+            new SecureIdGenerator(false, 1 << 20),
+            meterRegistry,
+            preferred.algorithm(),
+            50,
+            preferred.minCost());
+    executor = new PasswordHashExecutor(hashers, policy, meterRegistry, threads, queue, 2);
+    return executor;
+  }
+
+  @Nested
+  @DisplayName("hash formats")
+  class HashFormats {
+
+    @Test
+    @DisplayName("should verify PBKDF2-SHA256 against the RFC 7914 test vector")
+    void shouldVerifyPbkdf2() {
+      String hash =
+          Pbkdf2PasswordHasher.PREFIX
+              + "i=1$"
+              + Base64.getEncoder().withoutPadding().encodeToString("salt".getBytes())
+              + "$"
+              + Base64.getEncoder()
+                  .withoutPadding()
+                  .encodeToString(
+                      HexFormat.of()
+                          .parseHex(
+                              "55ac046e56e3089fec1691c22544b605f94185216dde0465e68b9d57c20dacbc"
+                                  + "49ca9cccf179b645991664b39d77ef317c71b845b1e30bd509112041d3a19783"));
+
+      executor(List.of(new Pbkdf2PasswordHasher()), 1, 4);
+
+      assertThat(executor.verify("passwd", hash)).isTrue();
+      assertThat(executor.verify("password", hash)).isFalse();
+    }
+
+    @Test
+    @DisplayName("should verify bcrypt hashes of every revision")
+    void shouldVerifyBCrypt() {
+      byte[] salt = new byte[16];
+      executor(List.of(new BCryptPasswordHasher()), 1, 4);
+
+      for (String version : List.of("2a", "2b", "2y")) {
+        String hash = OpenBSDBCrypt.generate(version, "secret".toCharArray(), salt, 4);
+        assertThat(executor.verify("secret", hash)).isTrue();
+        assertThat(executor.verify("Secret", hash)).isFalse();
+      }
+    }
+
+    @Test
+    @DisplayName("should verify Argon2id hashes using the parameters stored in the hash")
+    void shouldVerifyArgon2id() {
+      byte[] salt = "somesalt".getBytes(StandardCharsets.UTF_8);
+      Argon2idPasswordHasher.Params params = new Argon2idPasswordHasher.Params(64, 1, 1);
+      String hash =
+          Argon2idPasswordHasher.PREFIX
+              + "v=19$m=64,t=1,p=1$"
+              + Base64.getEncoder().withoutPadding().encodeToString(salt)
+              + "$"
+              + Base64.getEncoder()
+                  .withoutPadding()
+                  .encodeToString(Argon2idPasswordHasher.derive("secret", salt, params, 32));
+
+      executor(List.of(new Argon2idPasswordHasher()), 1, 4);
+
+      assertThat(executor.verify("secret", hash)).isTrue();
+      assertThat(executor.verify("secret", hash.replace("t=1", "t=2"))).isFalse();
+    }
+
+    @Test
+    @DisplayName("should route mixed formats by prefix and reject unknown ones")
+    void shouldRouteByPrefix() {
+      executor(
+          List.of(
+              new Pbkdf2PasswordHasher(), new BCryptPasswordHasher(), new Argon2idPasswordHasher()),
+          1,
+          4);
+
+      assertThat(executor.hasherFor("$2b$10$abc")).isInstanceOf(BCryptPasswordHasher.class);
+      assertThat(executor.hasherFor("$argon2id$v=19$")).isInstanceOf(Argon2idPasswordHasher.class);
+      assertThat(executor.hasherFor("$pbkdf2-sha256$i=1$"))
+          .isInstanceOf(Pbkdf2PasswordHasher.class);
+      assertThat(executor.verify("secret", "plaintext-secret")).isFalse();
+      assertThat(executor.verify("secret", "$argon2id$garbage")).isFalse();
+    }
+  }
+
+  @Nested
+  @DisplayName("rehashing")
+  class Rehashing {
+
+    @Test
+    @DisplayName("should produce hashes that every hasher verifies and reads the cost back from")
+    void shouldRoundTripNewHashes() {
+      byte[] salt = new byte[PasswordHashPolicy.SALT_LENGTH];
+      List<PasswordHasher> hashers =
+          List.of(
+              new Pbkdf2PasswordHasher(), new BCryptPasswordHasher(), new Argon2idPasswordHasher());
+      executor(hashers, 1, 4);
+
+      for (PasswordHasher hasher : hashers) {
+        String hash = hasher.hash("secret", salt, hasher.minCost());
+        assertThat(executor.verify("secret", hash)).as(hasher.algorithm()).isTrue();
+        assertThat(executor.verify("Secret", hash)).as(hasher.algorithm()).isFalse();
+        assertThat(hasher.costOf(hash)).as(hasher.algorithm()).isEqualTo(hasher.minCost());
+      }
+    }
+
+    @Test
+    @DisplayName("should flag hashes of other algorithms or lower cost, and hash on the pool")
+    void shouldFlagOutdatedHashes() {
+      Pbkdf2PasswordHasher pbkdf2 = new Pbkdf2PasswordHasher();
+      executor(List.of(pbkdf2, new BCryptPasswordHasher()), 1, 4);
+      String bcrypt = OpenBSDBCrypt.generate("2b", "secret".toCharArray(), new byte[16], 4);
+
+      String fresh = executor.hashAsync("secret").join();
+
+      assertThat(executor.needsRehash(fresh)).isFalse();
+      assertThat(executor.verify("secret", fresh)).isTrue();
+      assertThat(executor.needsRehash(bcrypt)).isTrue();
+      assertThat(executor.needsRehash(pbkdf2.hash("secret", new byte[16], 1000))).isTrue();
+      assertThat(executor.needsRehash("plaintext-secret")).isFalse();
+    }
+  }
+
+  @Nested
+  @DisplayName("backpressure")
+  class Backpressure {
+
+    @Test
+    @DisplayName("should reject with 503 and Retry-After once the queue is full")
+    void shouldRejectWhenSaturated() throws Exception {
+      CountDownLatch release = new CountDownLatch(1);
+      CountDownLatch started = new CountDownLatch(1);
+      PasswordHasher blocking = new BlockingHasher(started, release);
+      executor(List.of(blocking), 1, 1);
+
+      CompletableFuture<Boolean> running = executor.verifyAsync("a", "$test$");
+      assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+      CompletableFuture<Boolean> queued = executor.verifyAsync("b", "$test$");
+
+      assertThatThrownBy(() -> executor.verify("c", "$test$"))
+          .isInstanceOfSatisfying(
+              ServiceOverloadedException.class,
+              e -> assertThat(e.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("2"));
+
+      release.countDown();
+      assertThat(running.get(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(queued.get(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(meterRegistry.get("auth.password.rejected").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should record queue wait and hash time")
+    void shouldRecordMetrics() {
+      executor(List.of(new BCryptPasswordHasher()), 1, 4);
+      String hash = OpenBSDBCrypt.generate("2b", "secret".toCharArray(), new byte[16], 4);
+
+      executor.verify("secret", hash);
+      executor.verify("wrong", hash);
+
+      assertThat(meterRegistry.get("auth.password.queue.wait").timer().count()).isEqualTo(2);
+      assertThat(
+              meterRegistry
+                  .get("auth.password.hash")
+                  .tags("algorithm", "bcrypt", "outcome", "match")
+                  .timer()
+                  .count())
+          .isEqualTo(1);
+      assertThat(
+              meterRegistry
+                  .get("auth.password.hash")
+                  .tags("algorithm", "bcrypt", "outcome", "mismatch")
+                  .timer()
+                  .count())
+          .isEqualTo(1);
+    }
+  }
+
+  private record BlockingHasher(CountDownLatch started, CountDownLatch release)
+      implements PasswordHasher {
+
+    @Override
+    public String algorithm() {
+      return "test";
+    }
+
+    @Override
+    public List<String> prefixes() {
+      return List.of("$test$");
+    }
+
+    @Override
+    public boolean verify(String password, String hash) {
+      started.countDown();
+      try {
+        return release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+
+    @Override
+    public String hash(String password, byte[] salt, int cost) {
+      return "$test$" + password;
+    }
+
+    @Override
+    public int costOf(String hash) {
+      return 1;
+    }
+
+    @Override
+    public int minCost() {
+      return 1;
+    }
+
+    @Override
+    public int maxCost() {
+      return 1;
+    }
+
+    @Override
+    public int scaleCost(int cost, double factor) {
+      return cost;
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package hu.squarelabs.auth21.password;
+
+import static org.assertj.core.api.Assertions.*;
+
+import hu.squarelabs.auth21.util.SecureIdGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.function.IntToLongFunction;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("PasswordHashPolicy")
+class PasswordHashPolicyTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private PasswordHashPolicy policy(PasswordHasher hasher, long targetMillis, int cost) {
+    return new PasswordHashPolicy(
+        List.of(hasher),
+        new SecureIdGenerator(false, 1 << 20),
+        meterRegistry,
+        hasher.algorithm(),
+        targetMillis,
+        cost);
+  }
+
+  @Nested
+  @DisplayName("calibrate method")
+  class CalibrateMethod {
+
+    @Test
+    @DisplayName("should pick the highest linear cost within the latency target")
+    void shouldCalibrateLinearCost() {
+      // 200us per unit of cost, so a 10 ms target is met at cost 50
+      SpinningHasher hasher = new SpinningHasher(1, 1000, false, cost -> cost * 200_000L);
+      PasswordHashPolicy policy = policy(hasher, 10, 0);
+
+      policy.calibrate();
+
+      assertThat(policy.cost()).isBetween(25, 50);
+      assertThat(meterRegistry.get("auth.password.cost").gauge().value()).isEqualTo(policy.cost());
+    }
+
+    @Test
+    @DisplayName("should round a logarithmic cost down to stay within the latency target")
+    void shouldCalibrateLogarithmicCost() {
+      // 2^cost * 50us, so cost 7 takes 6.4 ms and cost 8 would take 12.8 ms
+      SpinningHasher hasher = new SpinningHasher(1, 20, true, cost -> (1L << cost) * 50_000L);
+      PasswordHashPolicy policy = policy(hasher, 10, 0);
+
+      policy.calibrate();
+
+      assertThat(policy.cost()).isBetween(6, 7);
+    }
+
+    @Test
+    @DisplayName("should keep the minimum cost when even that exceeds the target")
+    void shouldKeepMinimumCost() {
+      SpinningHasher hasher = new SpinningHasher(4, 1000, false, cost -> 2_000_000L);
+      PasswordHashPolicy policy = policy(hasher, 1, 0);
+
+      policy.calibrate();
+
+      assertThat(policy.cost()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("should not measure when the cost is pinned by configuration")
+    void shouldSkipCalibrationWhenPinned() {
+      SpinningHasher hasher = new SpinningHasher(1, 1000, false, cost -> 0);
+      PasswordHashPolicy policy = policy(hasher, 10, 5000);
+
+      policy.calibrate();
+
+      assertThat(policy.cost()).isEqualTo(1000);
+      assertThat(hasher.calls).isZero();
+    }
+  }
+
+  @Test
+  @DisplayName("should reject an algorithm no hasher provides")
+  void shouldRejectUnknownAlgorithm() {
+    assertThatThrownBy(
+            () ->
+                new PasswordHashPolicy(
+                    List.of(new Pbkdf2PasswordHasher()),
+                    new SecureIdGenerator(false, 1 << 20),
+                    meterRegistry,
+                    "scrypt",
+                    50,
+                    0))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  /** Burns a scripted amount of wall time per hash so calibration can be checked exactly. */
+  private static final class SpinningHasher implements PasswordHasher {
+    private final int minCost;
+    private final int maxCost;
+    private final boolean logarithmic;
+    private final IntToLongFunction nanosForCost;
+    private int calls;
+
+    SpinningHasher(int minCost, int maxCost, boolean logarithmic, IntToLongFunction nanosForCost) {
+      this.minCost = minCost;
+      this.maxCost = maxCost;
+      this.logarithmic = logarithmic;
+      this.nanosForCost = nanosForCost;
+    }
+
+    @Override
+    public String algorithm() {
+      return "spin";
+    }
+
+    @Override
+    public List<String> prefixes() {
+      return List.of("$spin$");
+    }
+
+    @Override
+    public boolean verify(String password, String hash) {
+      return hash.equals("$spin$" + password);
+    }
+
+    @Override
+    public String hash(String password, byte[] salt, int cost) {
+      calls++;
+      final long until = System.nanoTime() + nanosForCost.applyAsLong(cost);
+      while (System.nanoTime() < until) {
+        Thread.onSpinWait();
+      }
+      return "$spin$" + password;
+    }
+
+    @Override
+    public int costOf(String hash) {
+      return minCost;
+    }
+
+    @Override
+    public int minCost() {
+      return minCost;
+    }
+
+    @Override
+    public int maxCost() {
+      return maxCost;
+    }
+
+    @Override
+    public int scaleCost(int cost, double factor) {
+      return logarithmic
+          ? cost + (int) Math.floor(Math.log(factor) / Math.log(2))
+          : (int) (cost * factor);
+    }
+  }
+}
@@ -0,0 +1,203 @@
+package hu.squarelabs.auth21.ratelimit;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import hu.squarelabs.auth21.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.env.MockEnvironment;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+@DisplayName("ClusterRateLimiter")
+class ClusterRateLimiterTest {
+  private static final long WINDOW_MILLIS = 60_000;
+
+  private final InMemoryCounterStore store = new InMemoryCounterStore();
+  private final long[] now = {0};
+
+  private ClusterRateLimiter replica(int maxKeys) {
+    return replica(maxKeys, 0.2, 1024);
+  }
+
+  private ClusterRateLimiter replica(int maxKeys, double deferBelow, int maxWritesPerFlush) {
+    return new ClusterRateLimiter(
+        store,
+        new MockEnvironment().withProperty("rate-limit.cluster.login.ip.per-window", "10"),
+        new SimpleMeterRegistry(),
+        Set.of("login"),
+        WINDOW_MILLIS / 1000,
+        250,
+        maxKeys,
+        100,
+        deferBelow,
+        2,
+        maxWritesPerFlush,
+        () -> now[0]);
+  }
+
+  private static void admit(ClusterRateLimiter limiter, int times) {
+    admit(limiter, "10.0.0.1", times);
+  }
+
+  private static void admit(ClusterRateLimiter limiter, String ip, int times) {
+    for (int i = 0; i < times; i++) {
+      limiter.check("login", RateLimiter.KEY_IP, ip);
+    }
+  }
+
+  @Nested
+  @DisplayName("check method")
+  class CheckMethod {
+
+    @Test
+    @DisplayName("should publish one batched write per key instead of one per request")
+    void shouldBatchWrites() {
+      ClusterRateLimiter limiter = replica(1024);
+
+      admit(limiter, 7);
+      assertThat(store.writes).hasValue(0);
+
+      limiter.flush();
+      assertThat(store.writes).hasValue(1);
+      assertThat(store.counters).containsExactly(Map.entry("login/ip/10.0.0.1#0", 7L));
+
+      limiter.flush();
+      assertThat(store.writes).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("should enforce the limit across replicas using the read-back total")
+    void shouldEnforceAcrossReplicas() {
+      ClusterRateLimiter first = replica(1024);
+      ClusterRateLimiter second = replica(1024);
+
+      admit(first, 6);
+      first.flush();
+      admit(second, 3);
+      second.flush();
+      admit(second, 1);
+
+      assertThatThrownBy(() -> admit(second, 1))
+          .isInstanceOfSatisfying(
+              TooManyRequestsException.class,
+              e -> assertThat(e.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("60"));
+    }
+
+    @Test
+    @DisplayName("should start a fresh count in the next window and forget stale keys")
+    void shouldRollWindows() {
+      ClusterRateLimiter limiter = replica(1024);
+      admit(limiter, 10);
+      assertThatThrownBy(() -> admit(limiter, 1)).isInstanceOf(TooManyRequestsException.class);
+      limiter.flush();
+
+      now[0] += WINDOW_MILLIS;
+      limiter.flush();
+      admit(limiter, 10);
+      limiter.flush();
+
+      assertThat(store.counters)
+          .containsEntry("login/ip/10.0.0.1#0", 10L)
+          .containsEntry("login/ip/10.0.0.1#1", 10L);
+    }
+
+    @Test
+    @DisplayName("should keep deltas of a failed flush for the next one")
+    void shouldRetryFailedFlush() {
+      ClusterRateLimiter limiter = replica(1024);
+      admit(limiter, 4);
+
+      store.failing = true;
+      limiter.flush();
+      store.failing = false;
+      admit(limiter, 2);
+      limiter.flush();
+
+      assertThat(store.counters).containsEntry("login/ip/10.0.0.1#0", 6L);
+    }
+
+    @Test
+    @DisplayName("should keep counts far below the limit local until they grow")
+    void shouldDeferKeysFarBelowLimit() {
+      ClusterRateLimiter limiter = replica(1024);
+
+      admit(limiter, "10.0.0.2", 2);
+      limiter.flush();
+      assertThat(store.writes).hasValue(0);
+
+      admit(limiter, "10.0.0.2", 1);
+      limiter.flush();
+      assertThat(store.counters).containsExactly(Map.entry("login/ip/10.0.0.2#0", 3L));
+    }
+
+    @Test
+    @DisplayName("should publish the keys closest to their limit first when over the flush budget")
+    void shouldPublishFullestKeysFirst() {
+      ClusterRateLimiter limiter = replica(1024, 0, 2);
+      admit(limiter, "10.0.0.2", 3);
+      admit(limiter, "10.0.0.3", 9);
+      admit(limiter, "10.0.0.4", 6);
+      admit(limiter, "10.0.0.5", 1);
+
+      limiter.flush();
+      assertThat(store.counters).containsOnlyKeys("login/ip/10.0.0.3#0", "login/ip/10.0.0.4#0");
+
+      limiter.flush();
+      assertThat(store.counters).hasSize(4).containsEntry("login/ip/10.0.0.5#0", 1L);
+    }
+
+    @Test
+    @DisplayName("should pass endpoints without cluster limits and keys beyond its capacity")
+    void shouldPassUntrackedKeys() {
+      ClusterRateLimiter limiter = replica(1);
+      admit(limiter, 10);
+
+      assertThatCode(
+              () -> {
+                for (int i = 0; i < 50; i++) {
+                  limiter.check("login", RateLimiter.KEY_IP, "10.0.0.2");
+                  limiter.check("register", RateLimiter.KEY_IP, "10.0.0.1");
+                }
+              })
+          .doesNotThrowAnyException();
+    }
+  }
+
+  @Test
+  @DisplayName("DynamoDbCounterStore should ADD the delta and return the updated total")
+  void dynamoDbStoreShouldAddAtomically() {
+    DynamoDbClient client = mock(DynamoDbClient.class);
+    when(client.updateItem(any(UpdateItemRequest.class)))
+        .thenReturn(
+            UpdateItemResponse.builder()
+                .attributes(Map.of("count", AttributeValue.fromN("42")))
+                .build());
+    ArgumentCaptor<UpdateItemRequest> captor = ArgumentCaptor.forClass(UpdateItemRequest.class);
+
+    long total =
+        new DynamoDbCounterStore(client, "rate-limits")
+            .add("login/ip/10.0.0.1#0", 5, Instant.ofEpochSecond(120));
+
+    assertThat(total).isEqualTo(42);
+    verify(client).updateItem(captor.capture());
+    UpdateItemRequest request = captor.getValue();
+    assertThat(request.tableName()).isEqualTo("rate-limits");
+    assertThat(request.updateExpression()).startsWith("ADD #count :delta");
+    assertThat(request.expressionAttributeValues().get(":delta").n()).isEqualTo("5");
+    assertThat(request.expressionAttributeValues().get(":expires_at").n()).isEqualTo("120");
+    assertThat(request.returnValues()).isEqualTo(ReturnValue.UPDATED_NEW);
+  }
+}
@@ -0,0 +1,22 @@
+package hu.squarelabs.auth21.ratelimit;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** {@link CounterStore} stand-in that several limiters can share like replicas share a table. */
+class InMemoryCounterStore implements CounterStore {
+  final Map<String, Long> counters = new ConcurrentHashMap<>();
+  final AtomicInteger writes = new AtomicInteger();
+  volatile boolean failing;
+
+  @Override
+  public long add(String counter, long delta, Instant expiresAt) {
+    if (failing) {
+      throw new RuntimeException("store unavailable");
+    }
+    writes.incrementAndGet();
+    return counters.merge(counter, delta, Long::sum);
+  }
+}
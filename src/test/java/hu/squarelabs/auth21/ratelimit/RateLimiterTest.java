@@ -0,0 +1,126 @@
+package hu.squarelabs.auth21.ratelimit;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import hu.squarelabs.auth21.controller.AuthController;
+import hu.squarelabs.auth21.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+@DisplayName("RateLimiter")
+class RateLimiterTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private final MockEnvironment environment =
+      new MockEnvironment()
+          .withProperty("rate-limit.login.email.burst", "2")
+          .withProperty("rate-limit.login.email.per-minute", "1")
+          .withProperty("rate-limit.login.ip.burst", "3");
+
+  private RateLimiter rateLimiter(boolean enabled) {
+    return new RateLimiter(
+        environment, meterRegistry, enabled, 1024, new RateLimit(10, 10), null, () -> 0L);
+  }
+
+  @Nested
+  @DisplayName("check method")
+  class CheckMethod {
+
+    @Test
+    @DisplayName("should apply the endpoint limit and answer 429 with Retry-After")
+    void shouldRejectOverLimit() {
+      RateLimiter rateLimiter = rateLimiter(true);
+
+      rateLimiter.checkEmail(RateLimiter.ENDPOINT_LOGIN, "User@Example.com");
+      rateLimiter.checkEmail(RateLimiter.ENDPOINT_LOGIN, " user@example.com");
+
+      assertThatThrownBy(
+              () -> rateLimiter.checkEmail(RateLimiter.ENDPOINT_LOGIN, "USER@example.com"))
+          .isInstanceOfSatisfying(
+              TooManyRequestsException.class,
+              e -> {
+                assertThat(e.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+                assertThat(e.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("60");
+              });
+      assertThat(
+              meterRegistry
+                  .get("auth.ratelimit.rejected")
+                  .tags("endpoint", "login", "key", "email")
+                  .counter()
+                  .count())
+          .isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should fall back to the default limit and keep endpoints apart")
+    void shouldUseDefaults() {
+      RateLimiter rateLimiter = rateLimiter(true);
+
+      assertThat(rateLimiter.limitFor("register", RateLimiter.KEY_IP))
+          .isEqualTo(new RateLimit(10, 10));
+      assertThat(rateLimiter.limitFor("login", RateLimiter.KEY_IP)).isEqualTo(new RateLimit(3, 10));
+
+      for (int i = 0; i < 3; i++) {
+        rateLimiter.check("login", RateLimiter.KEY_IP, "10.0.0.1");
+      }
+      assertThatCode(() -> rateLimiter.check("register", RateLimiter.KEY_IP, "10.0.0.1"))
+          .doesNotThrowAnyException();
+    }
+
+    @Test
+    @DisplayName("should let everything through when disabled")
+    void shouldPassWhenDisabled() {
+      RateLimiter rateLimiter = rateLimiter(false);
+
+      assertThatCode(
+              () -> {
+                for (int i = 0; i < 100; i++) {
+                  rateLimiter.checkEmail(RateLimiter.ENDPOINT_LOGIN, "user@example.com");
+                }
+              })
+          .doesNotThrowAnyException();
+    }
+  }
+
+  @Nested
+  @DisplayName("RateLimitInterceptor")
+  class Interceptor {
+
+    @Test
+    @DisplayName("should throttle annotated endpoints per client IP")
+    void shouldThrottleAnnotatedEndpoints() throws Exception {
+      MockMvc mockMvc =
+          MockMvcBuilders.standaloneSetup(new AuthController(null))
+              .addInterceptors(new RateLimitInterceptor(rateLimiter(true)))
+              .build();
+
+      for (int i = 0; i < 3; i++) {
+        mockMvc.perform(post("/api/v1/auth/login")).andExpect(status().isOk());
+      }
+
+      mockMvc
+          .perform(post("/api/v1/auth/login"))
+          .andExpect(status().isTooManyRequests())
+          .andExpect(header().string(HttpHeaders.RETRY_AFTER, "6"));
+      mockMvc
+          .perform(
+              post("/api/v1/auth/login")
+                  .with(
+                      request -> {
+                        request.setRemoteAddr("10.0.0.2");
+                        return request;
+                      }))
+          .andExpect(status().isOk());
+    }
+  }
+}
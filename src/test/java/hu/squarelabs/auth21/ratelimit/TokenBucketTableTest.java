@@ -0,0 +1,89 @@
+package hu.squarelabs.auth21.ratelimit;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("TokenBucketTable")
+class TokenBucketTableTest {
+  private static final RateLimit FIVE_PER_MINUTE = new RateLimit(5, 5);
+
+  private final long[] now = {0};
+
+  private TokenBucketTable table(int maxKeys) {
+    return new TokenBucketTable(maxKeys, () -> now[0]);
+  }
+
+  @Nested
+  @DisplayName("tryAcquire method")
+  class TryAcquireMethod {
+
+    @Test
+    @DisplayName("should allow the burst and then report when the next token is due")
+    void shouldAllowBurstThenReject() {
+      TokenBucketTable table = table(64);
+
+      for (int i = 0; i < 5; i++) {
+        assertThat(table.tryAcquire("a", FIVE_PER_MINUTE)).isZero();
+      }
+
+      assertThat(table.tryAcquire("a", FIVE_PER_MINUTE)).isEqualTo(TimeUnit.SECONDS.toNanos(12));
+      assertThat(table.tryAcquire("b", FIVE_PER_MINUTE)).isZero();
+    }
+
+    @Test
+    @DisplayName("should refill at the configured rate up to the burst")
+    void shouldRefill() {
+      TokenBucketTable table = table(64);
+      for (int i = 0; i < 5; i++) {
+        table.tryAcquire("a", FIVE_PER_MINUTE);
+      }
+
+      now[0] += TimeUnit.SECONDS.toNanos(12);
+      assertThat(table.tryAcquire("a", FIVE_PER_MINUTE)).isZero();
+      assertThat(table.tryAcquire("a", FIVE_PER_MINUTE)).isPositive();
+
+      now[0] += TimeUnit.HOURS.toNanos(1);
+      for (int i = 0; i < 5; i++) {
+        assertThat(table.tryAcquire("a", FIVE_PER_MINUTE)).isZero();
+      }
+      assertThat(table.tryAcquire("a", FIVE_PER_MINUTE)).isPositive();
+    }
+  }
+
+  @Nested
+  @DisplayName("eviction")
+  class Eviction {
+
+    @Test
+    @DisplayName("should stay within its capacity under a flood of distinct keys")
+    void shouldStayBounded() {
+      TokenBucketTable table = table(1024);
+
+      for (int i = 0; i < 100_000; i++) {
+        table.tryAcquire("random-" + i, FIVE_PER_MINUTE);
+      }
+
+      assertThat(table.capacity()).isEqualTo(1024);
+      assertThat(table.size()).isEqualTo(1024);
+    }
+
+    @Test
+    @DisplayName("should keep drained buckets while evicting fresh ones")
+    void shouldKeepThrottledKeys() {
+      TokenBucketTable table = table(1024);
+      for (int i = 0; i < 5; i++) {
+        table.tryAcquire("attacker", FIVE_PER_MINUTE);
+      }
+
+      for (int i = 0; i < 100_000; i++) {
+        table.tryAcquire("random-" + i, FIVE_PER_MINUTE);
+      }
+
+      assertThat(table.tryAcquire("attacker", FIVE_PER_MINUTE)).isPositive();
+    }
+  }
+}
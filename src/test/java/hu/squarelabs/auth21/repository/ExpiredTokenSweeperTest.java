@@ -0,0 +1,120 @@
+package hu.squarelabs.auth21.repository;
+
+import static org.assertj.core.api.Assertions.*;
+
+import hu.squarelabs.auth21.converter.JwtClaimsAttributeConverter.Format;
+import hu.squarelabs.auth21.dynamodb.InMemoryDynamoDb;
+import hu.squarelabs.auth21.dynamodb.InMemoryDynamoDbHttpClient;
+import hu.squarelabs.auth21.dynamodb.InMemoryDynamoDbHttpClient.OperationProfile;
+import hu.squarelabs.auth21.model.entity.TokenEntity;
+import hu.squarelabs.auth21.model.entity.TokenEntitySchema;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Instant;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+
+@DisplayName("ExpiredTokenSweeper")
+class ExpiredTokenSweeperTest {
+  private static final String TOKENS = "tokens";
+  private static final long NOW = 1_800_000_000L;
+
+  private final InMemoryDynamoDb store = new InMemoryDynamoDb();
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private InMemoryDynamoDbHttpClient httpClient;
+  private DynamoDbClient client;
+  private DynamoDbTable<TokenEntity> table;
+
+  @BeforeEach
+  void setUp() {
+    final var schema = TokenEntitySchema.create(Format.MAP);
+    store.createTable(TOKENS, schema);
+    httpClient = new InMemoryDynamoDbHttpClient(store, operation -> OperationProfile.IDEAL);
+    client =
+        DynamoDbClient.builder()
+            .region(Region.EU_CENTRAL_1)
+            .credentialsProvider(
+                StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test")))
+            .httpClient(httpClient)
+            .build();
+    table = DynamoDbEnhancedClient.builder().dynamoDbClient(client).build().table(TOKENS, schema);
+  }
+
+  @AfterEach
+  void tearDown() {
+    client.close();
+    httpClient.close();
+  }
+
+  private ExpiredTokenSweeper sweeper(int pageSize) {
+    return new ExpiredTokenSweeper(
+        client, meterRegistry, TOKENS, 60_000, pageSize, 0, 0, () -> NOW);
+  }
+
+  private void save(String jti, long expiresAt) {
+    final var token = new TokenEntity();
+    token.setJti(jti);
+    token.setRefreshToken("refresh-" + jti);
+    token.setUserId("user-1");
+    token.setJwtToken(Map.of("jti", jti));
+    token.setExpiresAt(Instant.ofEpochSecond(expiresAt));
+    table.putItem(token);
+  }
+
+  @Test
+  @DisplayName("should store expires_at as epoch seconds")
+  void shouldStoreEpochSeconds() {
+    save("j1", NOW);
+
+    final var item =
+        client.getItem(
+            GetItemRequest.builder()
+                .tableName(TOKENS)
+                .key(Map.of("jti", AttributeValue.fromS("j1")))
+                .build());
+
+    assertThat(item.item())
+        .containsEntry(TokenEntitySchema.EXPIRES_AT, AttributeValue.fromN(Long.toString(NOW)));
+  }
+
+  @Test
+  @DisplayName("should delete only expired tokens across pages and report them")
+  void shouldDeleteExpiredTokens() throws Exception {
+    for (int i = 0; i < 7; i++) {
+      save("expired-" + i, NOW - 1 - i);
+    }
+    save("live-1", NOW + 60);
+    save("live-2", NOW);
+
+    final var pass = sweeper(2).sweep();
+
+    assertThat(pass.scanned()).isEqualTo(7);
+    assertThat(pass.deleted()).isEqualTo(7);
+    assertThat(table.getItem(Key.builder().partitionValue("expired-0").build())).isNull();
+    assertThat(table.getItem(Key.builder().partitionValue("live-1").build())).isNotNull();
+    assertThat(table.getItem(Key.builder().partitionValue("live-2").build())).isNotNull();
+    assertThat(meterRegistry.get("auth.tokens.sweeper.deleted").counter().count()).isEqualTo(7);
+  }
+
+  @Test
+  @DisplayName("should find nothing on a table without expired tokens")
+  void shouldSweepNothing() throws Exception {
+    save("live-1", NOW + 60);
+
+    final var pass = sweeper(100).sweep();
+
+    assertThat(pass.scanned()).isZero();
+    assertThat(pass.deleted()).isZero();
+  }
+}
@@ -0,0 +1,264 @@
+package hu.squarelabs.auth21.repository;
+
+import static org.assertj.core.api.Assertions.*;
+
+import hu.squarelabs.auth21.model.entity.TokenEntity;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("InMemoryTokenStore")
+class InMemoryTokenStoreTest {
+  private static final long START = 1_700_000_000_000L;
+
+  private AtomicLong now;
+  private InMemoryTokenStore store;
+
+  @BeforeEach
+  void setUp() {
+    now = new AtomicLong(START);
+    store = new InMemoryTokenStore(1000, now::get);
+  }
+
+  private static TokenEntity token(String jti, String refreshToken, String userId, long expiresAt) {
+    final var token = new TokenEntity();
+    token.setJti(jti);
+    token.setRefreshToken(refreshToken);
+    token.setUserId(userId);
+    token.setExpiresAt(Instant.ofEpochMilli(expiresAt));
+    final Map<String, Object> claims = new HashMap<>();
+    claims.put("jti", jti);
+    claims.put("sub", userId);
+    claims.put("user", null);
+    token.setJwtToken(claims);
+    return token;
+  }
+
+  @Nested
+  @DisplayName("lookups")
+  class Lookups {
+
+    @Test
+    @DisplayName("should find a saved token by jti, refresh token and user")
+    void shouldFindSavedToken() {
+      store.save(token("j1", "r1", "u1", START + 60_000));
+
+      assertThat(store.findById("j1"))
+          .get()
+          .extracting(TokenEntity::getRefreshToken)
+          .isEqualTo("r1");
+      assertThat(store.findByRefreshToken("r1"))
+          .get()
+          .extracting(TokenEntity::getJti)
+          .isEqualTo("j1");
+      assertThat(store.findJtisByUserId("u1")).containsExactly("j1");
+      assertThat(store.findById("j1").get().getCreatedAt()).isEqualTo(Instant.ofEpochMilli(START));
+    }
+
+    @Test
+    @DisplayName("should keep its copy when the saved entity changes")
+    void shouldCopyOnSave() {
+      final var token = token("j1", "r1", "u1", START + 60_000);
+      store.save(token);
+
+      token.setRefreshToken("changed");
+      token.getJwtToken().put("sub", "changed");
+
+      assertThat(store.findById("j1").get().getRefreshToken()).isEqualTo("r1");
+      assertThat(store.findById("j1").get().getJwtToken()).containsEntry("sub", "u1");
+    }
+
+    @Test
+    @DisplayName("should drop the old refresh token from the index when a token is overwritten")
+    void shouldReindexOnOverwrite() {
+      store.save(token("j1", "r1", "u1", START + 60_000));
+      store.save(token("j1", "r2", "u1", START + 60_000));
+
+      assertThat(store.findByRefreshToken("r1")).isEmpty();
+      assertThat(store.findByRefreshToken("r2")).isPresent();
+      assertThat(store.findJtisByUserId("u1")).containsExactly("j1");
+    }
+
+    @Test
+    @DisplayName("should remove a deleted token from every index")
+    void shouldDelete() {
+      store.save(token("j1", "r1", "u1", START + 60_000));
+
+      store.deleteById("j1");
+
+      assertThat(store.findById("j1")).isEmpty();
+      assertThat(store.findByRefreshToken("r1")).isEmpty();
+      assertThat(store.findJtisByUserId("u1")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should delete and report every token of a user")
+    void shouldDeleteByUserId() {
+      store.save(token("j1", "r1", "u1", START + 60_000));
+      store.save(token("j2", "r2", "u1", START + 120_000));
+      store.save(token("j3", "r3", "u2", START + 60_000));
+      final List<TokenStore.UserToken> found = new ArrayList<>();
+
+      assertThat(store.deleteByUserId("u1", found::add)).isEqualTo(2);
+
+      assertThat(found)
+          .containsExactlyInAnyOrder(
+              new TokenStore.UserToken("j1", Instant.ofEpochMilli(START + 60_000)),
+              new TokenStore.UserToken("j2", Instant.ofEpochMilli(START + 120_000)));
+      assertThat(store.findJtisByUserId("u1")).isEmpty();
+      assertThat(store.findByRefreshToken("r2")).isEmpty();
+      assertThat(store.findById("j3")).isPresent();
+    }
+
+    @Test
+    @DisplayName("should apply a batch in full")
+    void shouldBatchWrite() {
+      store.save(token("j0", "r0", "u1", START + 60_000));
+
+      final var unprocessed =
+          store.batchWrite(
+              List.of(
+                  token("j1", "r1", "u1", START + 60_000), token("j2", "r2", "u2", START + 60_000)),
+              List.of("j0"));
+
+      assertThat(unprocessed.puts()).isEmpty();
+      assertThat(unprocessed.deletes()).isEmpty();
+      assertThat(store.findJtisByUserId("u1")).containsExactly("j1");
+      assertThat(store.size()).isEqualTo(2);
+    }
+  }
+
+  @Nested
+  @DisplayName("rotation")
+  class Rotation {
+
+    @Test
+    @DisplayName("should swap the old token for the new one")
+    void shouldRotate() {
+      store.save(token("j1", "r1", "u1", START + 60_000));
+
+      assertThat(store.rotate("j1", "r1", token("j2", "r2", "u1", START + 120_000))).isTrue();
+
+      assertThat(store.findById("j1")).isEmpty();
+      assertThat(store.findByRefreshToken("r1")).isEmpty();
+      assertThat(store.findByRefreshToken("r2"))
+          .get()
+          .extracting(TokenEntity::getJti)
+          .isEqualTo("j2");
+      assertThat(store.findJtisByUserId("u1")).containsExactly("j2");
+    }
+
+    @Test
+    @DisplayName("should refuse a refresh token that does not match")
+    void shouldRejectWrongRefreshToken() {
+      store.save(token("j1", "r1", "u1", START + 60_000));
+
+      assertThat(store.rotate("j1", "other", token("j2", "r2", "u1", START + 120_000))).isFalse();
+
+      assertThat(store.findById("j1")).isPresent();
+      assertThat(store.findById("j2")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should refuse a replacement whose jti is taken")
+    void shouldRejectTakenJti() {
+      store.save(token("j1", "r1", "u1", START + 60_000));
+      store.save(token("j2", "r2", "u2", START + 60_000));
+
+      assertThat(store.rotate("j1", "r1", token("j2", "r3", "u1", START + 120_000))).isFalse();
+
+      assertThat(store.findById("j1")).isPresent();
+      assertThat(store.findById("j2").get().getRefreshToken()).isEqualTo("r2");
+    }
+
+    @Test
+    @DisplayName("should let only one of many concurrent rotations win")
+    void shouldRotateOnce() throws Exception {
+      store.save(token("j1", "r1", "u1", START + 60_000));
+      final int threads = 8;
+      final var ready = new CountDownLatch(threads);
+      final var executor = Executors.newFixedThreadPool(threads);
+      try {
+        final List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+          final var replacement = token("n" + i, "rn" + i, "u1", START + 120_000);
+          results.add(
+              executor.submit(
+                  () -> {
+                    ready.countDown();
+                    ready.await();
+                    return store.rotate("j1", "r1", replacement);
+                  }));
+        }
+
+        int wins = 0;
+        for (Future<Boolean> result : results) {
+          wins += result.get() ? 1 : 0;
+        }
+        assertThat(wins).isEqualTo(1);
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(store.findJtisByUserId("u1")).hasSize(1);
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  @Nested
+  @DisplayName("expiry")
+  class Expiry {
+
+    @Test
+    @DisplayName("should hide a token as soon as it expires")
+    void shouldHideExpiredToken() {
+      store.save(token("j1", "r1", "u1", START + 60_000));
+
+      now.set(START + 60_000);
+
+      assertThat(store.findById("j1")).isEmpty();
+      assertThat(store.findByRefreshToken("r1")).isEmpty();
+      assertThat(store.rotate("j1", "r1", token("j2", "r2", "u1", START + 120_000))).isFalse();
+    }
+
+    @Test
+    @DisplayName("should evict expired tokens from every index")
+    void shouldEvictExpiredTokens() {
+      store.save(token("j1", "r1", "u1", START + 60_000));
+      store.save(token("j2", "r2", "u1", START + 7_200_000));
+
+      now.set(START + 60_000);
+      store.expire();
+
+      assertThat(store.size()).isEqualTo(1);
+      assertThat(store.findJtisByUserId("u1")).containsExactly("j2");
+
+      now.set(START + 7_200_000);
+      store.expire();
+
+      assertThat(store.size()).isZero();
+      assertThat(store.findJtisByUserId("u1")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should keep a token whose expiry was extended")
+    void shouldKeepExtendedToken() {
+      store.save(token("j1", "r1", "u1", START + 60_000));
+      store.save(token("j1", "r1", "u1", START + 120_000));
+
+      now.set(START + 60_000);
+      store.expire();
+
+      assertThat(store.findById("j1")).isPresent();
+    }
+  }
+}
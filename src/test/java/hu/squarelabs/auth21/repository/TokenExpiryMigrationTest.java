@@ -0,0 +1,149 @@
+package hu.squarelabs.auth21.repository;
+
+import static org.assertj.core.api.Assertions.*;
+
+import hu.squarelabs.auth21.converter.JwtClaimsAttributeConverter.Format;
+import hu.squarelabs.auth21.dynamodb.InMemoryDynamoDb;
+import hu.squarelabs.auth21.dynamodb.InMemoryDynamoDbHttpClient;
+import hu.squarelabs.auth21.dynamodb.InMemoryDynamoDbHttpClient.OperationProfile;
+import hu.squarelabs.auth21.model.entity.TokenEntity;
+import hu.squarelabs.auth21.model.entity.TokenEntitySchema;
+import java.time.Instant;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTimeToLiveRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.TimeToLiveStatus;
+
+@DisplayName("TokenExpiryMigration")
+class TokenExpiryMigrationTest {
+  private static final String TOKENS = "tokens";
+
+  private final InMemoryDynamoDb store = new InMemoryDynamoDb();
+  private InMemoryDynamoDbHttpClient httpClient;
+  private DynamoDbClient client;
+  private DynamoDbTable<TokenEntity> table;
+
+  @BeforeEach
+  void setUp() {
+    final var schema = TokenEntitySchema.create(Format.MAP);
+    store.createTable(TOKENS, schema);
+    httpClient = new InMemoryDynamoDbHttpClient(store, operation -> OperationProfile.IDEAL);
+    client =
+        DynamoDbClient.builder()
+            .region(Region.EU_CENTRAL_1)
+            .credentialsProvider(
+                StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test")))
+            .httpClient(httpClient)
+            .build();
+    table = DynamoDbEnhancedClient.builder().dynamoDbClient(client).build().table(TOKENS, schema);
+  }
+
+  @AfterEach
+  void tearDown() {
+    client.close();
+    httpClient.close();
+  }
+
+  private TokenExpiryMigration migration(boolean enableTimeToLive) {
+    return new TokenExpiryMigration(client, TOKENS, 2, 0, enableTimeToLive);
+  }
+
+  /** Writes an item the way earlier versions did, with an ISO-8601 expiry. */
+  private void saveLegacy(String jti, String expiresAt) {
+    client.putItem(
+        PutItemRequest.builder()
+            .tableName(TOKENS)
+            .item(
+                Map.of(
+                    "jti",
+                    AttributeValue.fromS(jti),
+                    "refresh_token",
+                    AttributeValue.fromS("refresh-" + jti),
+                    "user_id",
+                    AttributeValue.fromS("user-1"),
+                    TokenEntitySchema.EXPIRES_AT,
+                    AttributeValue.fromS(expiresAt)))
+            .build());
+  }
+
+  private AttributeValue storedExpiry(String jti) {
+    return client
+        .getItem(
+            GetItemRequest.builder()
+                .tableName(TOKENS)
+                .key(Map.of("jti", AttributeValue.fromS(jti)))
+                .build())
+        .item()
+        .get(TokenEntitySchema.EXPIRES_AT);
+  }
+
+  @Test
+  @DisplayName("should read legacy string expiries before they are migrated")
+  void shouldReadLegacyExpiry() {
+    saveLegacy("j1", "2026-01-01T00:00:00Z");
+
+    assertThat(table.getItem(Key.builder().partitionValue("j1").build()).getExpiresAt())
+        .isEqualTo(Instant.parse("2026-01-01T00:00:00Z"));
+  }
+
+  @Test
+  @DisplayName("should rewrite every legacy expiry as epoch seconds and enable time to live")
+  void shouldMigrate() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      saveLegacy("j" + i, "2026-01-01T00:00:0" + i + "Z");
+    }
+    final var current = new TokenEntity();
+    current.setJti("current");
+    current.setExpiresAt(Instant.parse("2026-02-01T00:00:00Z"));
+    table.putItem(current);
+
+    final var result = migration(true).migrate();
+
+    assertThat(result.migrated()).isEqualTo(5);
+    assertThat(result.skipped()).isZero();
+    assertThat(result.timeToLiveEnabled()).isTrue();
+    assertThat(storedExpiry("j3")).isEqualTo(AttributeValue.fromN("1767225603"));
+    assertThat(storedExpiry("current")).isEqualTo(AttributeValue.fromN("1769904000"));
+    assertThat(
+            client
+                .describeTimeToLive(DescribeTimeToLiveRequest.builder().tableName(TOKENS).build())
+                .timeToLiveDescription())
+        .satisfies(
+            description -> {
+              assertThat(description.timeToLiveStatus()).isEqualTo(TimeToLiveStatus.ENABLED);
+              assertThat(description.attributeName()).isEqualTo(TokenEntitySchema.EXPIRES_AT);
+            });
+  }
+
+  @Test
+  @DisplayName("should skip unreadable values and do nothing on a second pass")
+  void shouldBeRepeatable() throws Exception {
+    saveLegacy("j1", "2026-01-01T00:00:00Z");
+    saveLegacy("broken", "tomorrow");
+
+    final var first = migration(false).migrate();
+    final var second = migration(true).migrate();
+    final var third = migration(true).migrate();
+
+    assertThat(first.migrated()).isEqualTo(1);
+    assertThat(first.skipped()).isEqualTo(1);
+    assertThat(first.timeToLiveEnabled()).isFalse();
+    assertThat(second.migrated()).isZero();
+    assertThat(second.timeToLiveEnabled()).isTrue();
+    assertThat(third.timeToLiveEnabled()).isFalse();
+    assertThat(storedExpiry("broken")).isEqualTo(AttributeValue.fromS("tomorrow"));
+  }
+}
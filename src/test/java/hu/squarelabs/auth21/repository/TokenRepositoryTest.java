@@ -0,0 +1,206 @@
+package hu.squarelabs.auth21.repository;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import hu.squarelabs.auth21.converter.JwtClaimsAttributeConverter.Format;
+import hu.squarelabs.auth21.dynamodb.InMemoryDynamoDb;
+import hu.squarelabs.auth21.dynamodb.InMemoryDynamoDbHttpClient;
+import hu.squarelabs.auth21.dynamodb.InMemoryDynamoDbHttpClient.OperationProfile;
+import hu.squarelabs.auth21.dynamodb.LatencyModel;
+import hu.squarelabs.auth21.model.entity.TokenEntity;
+import hu.squarelabs.auth21.model.entity.TokenEntitySchema;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.retries.api.BackoffStrategy;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+
+@DisplayName("TokenRepository")
+class TokenRepositoryTest {
+  private static final String TOKENS = "tokens";
+  private static final Instant EXPIRES_AT = Instant.parse("2030-01-01T00:00:00Z");
+
+  private final InMemoryDynamoDb store = new InMemoryDynamoDb();
+  private OperationProfile profile = OperationProfile.IDEAL;
+  private InMemoryDynamoDbHttpClient httpClient;
+  private DynamoDbClient client;
+  private TokenRepository repository;
+
+  @BeforeEach
+  void setUp() {
+    store.createTable(TOKENS, TokenEntitySchema.create(Format.MAP));
+    httpClient = new InMemoryDynamoDbHttpClient(store, operation -> profile);
+    client =
+        DynamoDbClient.builder()
+            .region(Region.EU_CENTRAL_1)
+            .credentialsProvider(
+                StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test")))
+            .httpClient(httpClient)
+            .overrideConfiguration(
+                overrides ->
+                    overrides.retryStrategy(
+                        AwsRetryStrategy.standardRetryStrategy().toBuilder()
+                            .maxAttempts(10)
+                            .backoffStrategy(BackoffStrategy.retryImmediately())
+                            .throttlingBackoffStrategy(BackoffStrategy.retryImmediately())
+                            .build()))
+            .build();
+    repository =
+        new TokenRepository(
+            DynamoDbEnhancedClient.builder().dynamoDbClient(client).build(),
+            TOKENS,
+            Format.MAP,
+            4,
+            3,
+            1);
+  }
+
+  @AfterEach
+  void tearDown() {
+    repository.stop();
+    client.close();
+    httpClient.close();
+  }
+
+  private void saveTokens(String userId, int count) {
+    for (int i = 0; i < count; i++) {
+      final var token = new TokenEntity();
+      token.setJti(userId + "-" + i);
+      token.setUserId(userId);
+      token.setRefreshToken("refresh-" + userId + "-" + i);
+      token.setJwtToken(Map.of("sub", userId));
+      token.setExpiresAt(EXPIRES_AT);
+      repository.save(token);
+    }
+  }
+
+  private static TokenEntity token(String jti, String refreshToken) {
+    final var token = new TokenEntity();
+    token.setJti(jti);
+    token.setUserId("u1");
+    token.setRefreshToken(refreshToken);
+    token.setJwtToken(Map.of("sub", "u1"));
+    token.setExpiresAt(EXPIRES_AT);
+    return token;
+  }
+
+  @Nested
+  @DisplayName("rotate method")
+  class RotateMethod {
+
+    @Test
+    @DisplayName("should swap the token when the refresh token matches")
+    void shouldRotate() {
+      repository.save(token("j1", "r1"));
+
+      assertThat(repository.rotate("j1", "r1", token("j2", "r2"))).isTrue();
+
+      assertThat(repository.findById("j1")).isEmpty();
+      assertThat(repository.findById("j2"))
+          .get()
+          .extracting(TokenEntity::getRefreshToken)
+          .isEqualTo("r2");
+    }
+
+    @Test
+    @DisplayName("should leave the token alone when the refresh token does not match")
+    void shouldRejectStaleRefreshToken() {
+      repository.save(token("j1", "r1"));
+
+      assertThat(repository.rotate("j1", "other", token("j2", "r2"))).isFalse();
+
+      assertThat(repository.findById("j1")).isPresent();
+      assertThat(repository.findById("j2")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should let only the first of two rotations with the same refresh token succeed")
+    void shouldRotateOnce() {
+      repository.save(token("j1", "r1"));
+
+      assertThat(repository.rotate("j1", "r1", token("j2", "r2"))).isTrue();
+      assertThat(repository.rotate("j1", "r1", token("j3", "r3"))).isFalse();
+
+      assertThat(repository.findById("j3")).isEmpty();
+    }
+  }
+
+  @Nested
+  @DisplayName("deleteByUserId method")
+  class DeleteByUserIdMethod {
+
+    @Test
+    @DisplayName("should delete every token of the user across batches and report each one")
+    void shouldDeleteEveryToken() {
+      saveTokens("u1", 110);
+      saveTokens("u2", 3);
+      final Set<TokenStore.UserToken> found = ConcurrentHashMap.newKeySet();
+
+      assertThat(repository.deleteByUserId("u1", found::add)).isEqualTo(110);
+
+      assertThat(found).hasSize(110).contains(new TokenStore.UserToken("u1-42", EXPIRES_AT));
+      assertThat(repository.findById("u1-0")).isEmpty();
+      assertThat(repository.findById("u1-109")).isEmpty();
+      assertThat(repository.findById("u2-0")).isPresent();
+      assertThat(repository.deleteByUserId("u1", found::add)).isZero();
+    }
+
+    @Test
+    @DisplayName("should finish under throttling and latency")
+    void shouldFinishUnderThrottling() {
+      saveTokens("u1", 60);
+      profile = new OperationProfile(LatencyModel.fixed(Duration.ofMillis(2)), 0.3, 0);
+
+      assertThat(repository.deleteByUserId("u1", token -> {})).isEqualTo(60);
+
+      profile = OperationProfile.IDEAL;
+      assertThat(repository.findById("u1-59")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should retry deletes left unprocessed")
+    void shouldRetryUnprocessedDeletes() {
+      saveTokens("u1", 2);
+      final var spy = spy(repository);
+      doReturn(new TokenStore.UnprocessedWrites(List.of(), List.of("u1-1")))
+          .doCallRealMethod()
+          .when(spy)
+          .batchWrite(anyCollection(), anyCollection());
+
+      assertThat(spy.deleteByUserId("u1", token -> {})).isEqualTo(2);
+
+      verify(spy, times(2)).batchWrite(anyCollection(), anyCollection());
+      assertThat(repository.findById("u1-1")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should fail once the retries are exhausted")
+    void shouldFailWhenRetriesAreExhausted() {
+      saveTokens("u1", 1);
+      final var spy = spy(repository);
+      doReturn(new TokenStore.UnprocessedWrites(List.of(), List.of("u1-0")))
+          .when(spy)
+          .batchWrite(anyCollection(), anyCollection());
+
+      assertThatThrownBy(() -> spy.deleteByUserId("u1", token -> {}))
+          .isInstanceOf(RuntimeException.class)
+          .hasMessageContaining("u1")
+          .hasRootCauseMessage("1 token deletes left unprocessed after 3 attempts");
+    }
+  }
+}
@@ -0,0 +1,258 @@
+package hu.squarelabs.auth21.repository;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+import hu.squarelabs.auth21.model.entity.TokenEntity;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("TokenWriteBehindQueue")
+class TokenWriteBehindQueueTest {
+
+  private static final TokenRepository.UnprocessedWrites NOTHING_UNPROCESSED =
+      new TokenRepository.UnprocessedWrites(List.of(), List.of());
+
+  @Mock private TokenRepository tokenRepository;
+
+  private TokenWriteBehindQueue queue;
+
+  private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    if (queue != null) {
+      queue.stop();
+    }
+  }
+
+  private TokenWriteBehindQueue start(long maxDelayMillis, int maxAttempts) {
+    return start(maxDelayMillis, maxAttempts, 1000);
+  }
+
+  private TokenWriteBehindQueue start(long maxDelayMillis, int maxAttempts, int capacity) {
+    queue =
+        new TokenWriteBehindQueue(
+            tokenRepository,
+            TokenWriteBehindQueue.Ack.ENQUEUE,
+            1,
+            capacity,
+            maxDelayMillis,
+            50,
+            maxAttempts,
+            1,
+            5000);
+    queue.start();
+    return queue;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void recordBatches() {
+    when(tokenRepository.batchWrite(anyCollection(), anyCollection()))
+        .thenAnswer(
+            invocation -> {
+              final List<String> batch = new ArrayList<>();
+              ((Collection<TokenEntity>) invocation.getArgument(0))
+                  .forEach(entity -> batch.add("put:" + entity.getJti()));
+              ((Collection<String>) invocation.getArgument(1))
+                  .forEach(jti -> batch.add("delete:" + jti));
+              batches.add(batch);
+              return NOTHING_UNPROCESSED;
+            });
+  }
+
+  private static TokenEntity token(String jti) {
+    TokenEntity tokenEntity = new TokenEntity();
+    tokenEntity.setJti(jti);
+    return tokenEntity;
+  }
+
+  @Test
+  @DisplayName("should split writes into batches of at most 25 items")
+  void shouldSplitIntoBatchesOfAtMost25() throws Exception {
+    recordBatches();
+    start(200, 3);
+
+    final List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for (int i = 0; i < 60; i++) {
+      futures.add(queue.put(token("jti-" + i)));
+    }
+    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+    assertThat(batches).allSatisfy(batch -> assertThat(batch).hasSizeLessThanOrEqualTo(25));
+    assertThat(batches.stream().mapToInt(List::size).sum()).isEqualTo(60);
+  }
+
+  @Test
+  @DisplayName("should coalesce a put followed by a delete of the same token")
+  void shouldCoalesceWritesToSameToken() throws Exception {
+    recordBatches();
+    start(500, 3);
+
+    final var put = queue.put(token("jti-1"));
+    final var delete = queue.delete("jti-1");
+    CompletableFuture.allOf(put, delete).get(5, TimeUnit.SECONDS);
+
+    assertThat(batches).containsExactly(List.of("delete:jti-1"));
+  }
+
+  @Test
+  @DisplayName("should retry items left unprocessed by DynamoDB")
+  void shouldRetryUnprocessedItems() throws Exception {
+    final var entity = token("jti-1");
+    when(tokenRepository.batchWrite(anyCollection(), anyCollection()))
+        .thenReturn(new TokenRepository.UnprocessedWrites(List.of(entity), List.of()))
+        .thenReturn(NOTHING_UNPROCESSED);
+    start(1, 3);
+
+    queue.put(entity).get(5, TimeUnit.SECONDS);
+
+    verify(tokenRepository, times(2)).batchWrite(anyCollection(), anyCollection());
+  }
+
+  @Test
+  @DisplayName("should fail the write once the retry budget is exhausted")
+  void shouldFailAfterMaxAttempts() {
+    when(tokenRepository.batchWrite(anyCollection(), anyCollection()))
+        .thenThrow(new RuntimeException("ProvisionedThroughputExceeded"));
+    start(1, 2);
+
+    final var write = queue.delete("jti-1");
+
+    assertThatThrownBy(() -> write.get(5, TimeUnit.SECONDS))
+        .isInstanceOf(ExecutionException.class)
+        .hasRootCauseMessage("ProvisionedThroughputExceeded");
+    verify(tokenRepository, times(2)).batchWrite(anyCollection(), anyCollection());
+  }
+
+  @Test
+  @DisplayName("should flush pending writes on shutdown")
+  void shouldDrainOnShutdown() throws Exception {
+    recordBatches();
+    start(60_000, 3);
+
+    final var write = queue.put(token("jti-1"));
+    queue.stop();
+    queue = null;
+
+    assertThat(write).isCompleted();
+    assertThat(batches).containsExactly(List.of("put:jti-1"));
+  }
+
+  @Test
+  @DisplayName("should write directly once shut down")
+  void shouldWriteDirectlyAfterShutdown() throws Exception {
+    start(1, 3).stop();
+    final var entity = token("jti-1");
+
+    assertThat(queue.put(entity)).isCompleted();
+    queue = null;
+
+    verify(tokenRepository).save(entity);
+    verify(tokenRepository, never()).batchWrite(anyCollection(), any());
+  }
+
+  @Test
+  @DisplayName("should let awaitPending return once the token's queued write has landed")
+  void shouldAwaitPendingWrite() {
+    recordBatches();
+    start(200, 3);
+
+    final var write = queue.put(token("jti-1"));
+    queue.awaitPending("jti-1");
+
+    assertThat(write).isCompleted();
+    assertThat(batches).containsExactly(List.of("put:jti-1"));
+    queue.awaitPending("jti-unknown");
+  }
+
+  @Test
+  @DisplayName("should not let a direct write overtake a queued write of the same token")
+  void shouldOrderDirectWriteAfterQueuedWrite() throws Exception {
+    final var firstBatchSent = new CountDownLatch(1);
+    final var releaseFirstBatch = new CountDownLatch(1);
+    when(tokenRepository.batchWrite(anyCollection(), anyCollection()))
+        .thenAnswer(
+            invocation -> {
+              firstBatchSent.countDown();
+              releaseFirstBatch.await(5, TimeUnit.SECONDS);
+              return NOTHING_UNPROCESSED;
+            });
+    start(1, 3, 1);
+
+    queue.put(token("jti-1"));
+    assertThat(firstBatchSent.await(5, TimeUnit.SECONDS)).isTrue();
+    queue.put(token("jti-2"));
+    final var delete =
+        CompletableFuture.supplyAsync(() -> queue.delete("jti-1")).thenCompose(f -> f);
+
+    Thread.sleep(200);
+    verify(tokenRepository, never()).deleteById("jti-1");
+    releaseFirstBatch.countDown();
+    delete.get(5, TimeUnit.SECONDS);
+
+    final InOrder inOrder = inOrder(tokenRepository);
+    inOrder.verify(tokenRepository).batchWrite(anyCollection(), anyCollection());
+    inOrder.verify(tokenRepository).deleteById("jti-1");
+  }
+
+  @Test
+  @DisplayName("should not hold up a direct write behind a slow one for another token")
+  void shouldNotBlockUnrelatedDirectWrites() throws Exception {
+    // "Aa" and "BB" share a hash code, so they land on the same shard.
+    assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+    final var batchSent = new CountDownLatch(1);
+    final var releaseBatch = new CountDownLatch(1);
+    when(tokenRepository.batchWrite(anyCollection(), anyCollection()))
+        .thenAnswer(
+            invocation -> {
+              batchSent.countDown();
+              releaseBatch.await(5, TimeUnit.SECONDS);
+              return NOTHING_UNPROCESSED;
+            });
+    final var slowSaveStarted = new CountDownLatch(1);
+    final var releaseSlowSave = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              if (invocation.<TokenEntity>getArgument(0).getJti().equals("Aa")) {
+                slowSaveStarted.countDown();
+                releaseSlowSave.await(5, TimeUnit.SECONDS);
+              }
+              return null;
+            })
+        .when(tokenRepository)
+        .save(any());
+    start(1, 3, 1);
+
+    queue.put(token("jti-1"));
+    assertThat(batchSent.await(5, TimeUnit.SECONDS)).isTrue();
+    queue.put(token("jti-2"));
+    final var slow = CompletableFuture.supplyAsync(() -> queue.put(token("Aa")));
+    assertThat(slowSaveStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+    try {
+      assertThat(queue.put(token("BB"))).succeedsWithin(2, TimeUnit.SECONDS);
+      assertThat(slow).isNotDone();
+    } finally {
+      releaseSlowSave.countDown();
+      releaseBatch.countDown();
+    }
+    slow.thenCompose(f -> f).get(5, TimeUnit.SECONDS);
+  }
+}
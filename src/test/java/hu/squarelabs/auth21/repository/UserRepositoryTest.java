@@ -0,0 +1,167 @@
+package hu.squarelabs.auth21.repository;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import hu.squarelabs.auth21.model.entity.UserEntity;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.pagination.sync.SdkIterable;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbIndex;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.IgnoreNullsMode;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.UpdateItemEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+
+@DisplayName("UserRepository")
+@ExtendWith(MockitoExtension.class)
+class UserRepositoryTest {
+
+  @Mock private DynamoDbEnhancedClient enhancedClient;
+
+  @Mock private DynamoDbTable<UserEntity> userTable;
+
+  @Mock private DynamoDbIndex<UserEntity> emailIndex;
+
+  private UserRepository userRepository;
+
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    when(enhancedClient.table(eq("users"), any(TableSchema.class))).thenReturn(userTable);
+    when(userTable.index("EmailIndex")).thenReturn(emailIndex);
+    userRepository = new UserRepository(enhancedClient, "users", 100, 300);
+  }
+
+  private static UserEntity user(String id, String email) {
+    UserEntity user = new UserEntity();
+    user.setId(id);
+    user.setEmail(email);
+    return user;
+  }
+
+  private static SdkIterable<Page<UserEntity>> pages(UserEntity... users) {
+    return () -> List.of(Page.builder(UserEntity.class).items(List.of(users)).build()).iterator();
+  }
+
+  @Nested
+  @DisplayName("findByEmail method")
+  class FindByEmailMethod {
+
+    @Test
+    @DisplayName("should query EmailIndex instead of scanning the table")
+    void shouldQueryEmailIndex() {
+      String email = "user@example.com";
+      when(emailIndex.query(any(QueryEnhancedRequest.class)))
+          .thenReturn(pages(user("user-123", email)));
+
+      assertThat(userRepository.findByEmail(email))
+          .get()
+          .extracting(UserEntity::getId)
+          .isEqualTo("user-123");
+      verify(userTable, never()).scan(any(ScanEnhancedRequest.class));
+    }
+
+    @Test
+    @DisplayName("should skip soft-deleted users returned by the index")
+    void shouldSkipDeletedUsers() {
+      String email = "user@example.com";
+      UserEntity deleted = user("user-old", email);
+      deleted.setDeletedAt(Instant.now());
+      when(emailIndex.query(any(QueryEnhancedRequest.class)))
+          .thenReturn(pages(deleted, user("user-new", email)));
+
+      assertThat(userRepository.findByEmail(email))
+          .get()
+          .extracting(UserEntity::getId)
+          .isEqualTo("user-new");
+    }
+
+    @Test
+    @DisplayName("should return empty optional when no user has the email")
+    void shouldReturnEmptyWhenNotFound() {
+      when(emailIndex.query(any(QueryEnhancedRequest.class))).thenReturn(pages());
+
+      assertThat(userRepository.findByEmail("missing@example.com")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should resolve cached email by primary key on subsequent lookups")
+    void shouldUseCachedIdOnSubsequentLookups() {
+      String email = "user@example.com";
+      UserEntity user = user("user-123", email);
+      when(emailIndex.query(any(QueryEnhancedRequest.class))).thenReturn(pages(user));
+      when(userTable.getItem(any(Key.class))).thenReturn(user);
+
+      userRepository.findByEmail(email);
+      userRepository.findByEmail(email);
+
+      verify(emailIndex, times(1)).query(any(QueryEnhancedRequest.class));
+      verify(userTable, times(1)).getItem(any(Key.class));
+    }
+
+    @Test
+    @DisplayName("should fall back to the index when the cached user no longer matches")
+    void shouldFallBackToIndexWhenCachedUserChanged() {
+      String email = "user@example.com";
+      when(emailIndex.query(any(QueryEnhancedRequest.class)))
+          .thenReturn(pages(user("user-123", email)));
+      when(userTable.getItem(any(Key.class))).thenReturn(user("user-123", "other@example.com"));
+
+      userRepository.findByEmail(email);
+      userRepository.findByEmail(email);
+
+      verify(emailIndex, times(2)).query(any(QueryEnhancedRequest.class));
+    }
+  }
+
+  @Nested
+  @DisplayName("updatePasswordHash method")
+  class UpdatePasswordHashMethod {
+
+    @Test
+    @DisplayName("should update only the hash, conditioned on the expected old hash")
+    @SuppressWarnings("unchecked")
+    void shouldConditionOnOldHash() {
+      ArgumentCaptor<UpdateItemEnhancedRequest<UserEntity>> captor =
+          ArgumentCaptor.forClass(UpdateItemEnhancedRequest.class);
+
+      assertThat(userRepository.updatePasswordHash("user-1", "$old", "$new")).isTrue();
+
+      verify(userTable).updateItem(captor.capture());
+      UpdateItemEnhancedRequest<UserEntity> request = captor.getValue();
+      assertThat(request.item().getId()).isEqualTo("user-1");
+      assertThat(request.item().getPasswordHash()).isEqualTo("$new");
+      assertThat(request.item().getEmail()).isNull();
+      assertThat(request.ignoreNullsMode()).isEqualTo(IgnoreNullsMode.SCALAR_ONLY);
+      assertThat(request.conditionExpression().expression()).isEqualTo("password_hash = :expected");
+      assertThat(request.conditionExpression().expressionValues().get(":expected").s())
+          .isEqualTo("$old");
+    }
+
+    @Test
+    @DisplayName("should return false when the hash changed in the meantime")
+    @SuppressWarnings("unchecked")
+    void shouldReturnFalseOnConditionFailure() {
+      when(userTable.updateItem(any(UpdateItemEnhancedRequest.class)))
+          .thenThrow(ConditionalCheckFailedException.builder().message("changed").build());
+
+      assertThat(userRepository.updatePasswordHash("user-1", "$old", "$new")).isFalse();
+    }
+  }
+}
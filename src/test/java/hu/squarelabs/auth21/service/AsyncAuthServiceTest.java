@@ -0,0 +1,158 @@
+package hu.squarelabs.auth21.service;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import hu.squarelabs.auth21.cache.JtiRevocationSet;
+import hu.squarelabs.auth21.model.JwtToken;
+import hu.squarelabs.auth21.model.entity.UserEntity;
+import hu.squarelabs.auth21.repository.AsyncUserRepository;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+@DisplayName("AsyncAuthService")
+@ExtendWith(MockitoExtension.class)
+class AsyncAuthServiceTest {
+
+  @Mock private AsyncUserRepository userRepository;
+
+  @Mock private AsyncTokenService tokenService;
+
+  @Mock private AuthService authService;
+
+  @Mock private JtiRevocationSet revocationSet;
+
+  private AsyncAuthService asyncAuthService;
+
+  @BeforeEach
+  void setUp() {
+    asyncAuthService =
+        new AsyncAuthService(userRepository, tokenService, authService, revocationSet);
+  }
+
+  @Nested
+  @DisplayName("login method")
+  class LoginMethod {
+
+    @Test
+    @DisplayName("should complete with NOT_FOUND when user email does not exist")
+    void shouldFailWithNotFoundWhenUserEmailNotExists() {
+      when(userRepository.findByEmail("nonexistent@example.com"))
+          .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+      assertThatThrownBy(
+              () -> asyncAuthService.login("nonexistent@example.com", "password123").join())
+          .isInstanceOf(CompletionException.class)
+          .cause()
+          .isInstanceOf(ResponseStatusException.class)
+          .hasFieldOrPropertyWithValue("statusCode", HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    @DisplayName("should complete with UNAUTHORIZED when password is invalid")
+    void shouldFailWithUnauthorizedWhenPasswordInvalid() {
+      UserEntity user = new UserEntity();
+      user.setId("user-123");
+      user.setPasswordHash("hashed-password");
+      when(userRepository.findByEmail("user@example.com"))
+          .thenReturn(CompletableFuture.completedFuture(Optional.of(user)));
+      when(authService.verifyPasswordAsync("wrong", "hashed-password"))
+          .thenReturn(CompletableFuture.completedFuture(false));
+
+      assertThatThrownBy(() -> asyncAuthService.login("user@example.com", "wrong").join())
+          .cause()
+          .isInstanceOf(ResponseStatusException.class)
+          .hasFieldOrPropertyWithValue("statusCode", HttpStatus.UNAUTHORIZED);
+      verify(tokenService, never()).create(any(JwtToken.class), anyString());
+    }
+  }
+
+  @Nested
+  @DisplayName("refresh method")
+  class RefreshMethod {
+
+    @Test
+    @DisplayName("should complete with NOT_FOUND when the rotation guard fails")
+    void shouldFailWithNotFoundWhenRotationGuardFails() {
+      JwtToken jwtToken = new JwtToken();
+      jwtToken.setJti("jti-123");
+      jwtToken.setSub("user-123");
+      JwtToken newJwtToken = new JwtToken();
+      newJwtToken.setJti("jti-456");
+      when(authService.refreshTokenBelongsTo(jwtToken, "invalid-refresh-token")).thenReturn(true);
+      when(authService.generateToken("user-123", null, null)).thenReturn(newJwtToken);
+      when(tokenService.rotate(eq(jwtToken), eq("invalid-refresh-token"), any(), any()))
+          .thenReturn(CompletableFuture.completedFuture(false));
+
+      assertThatThrownBy(() -> asyncAuthService.refresh(jwtToken, "invalid-refresh-token").join())
+          .cause()
+          .isInstanceOf(ResponseStatusException.class)
+          .hasFieldOrPropertyWithValue("statusCode", HttpStatus.NOT_FOUND);
+      verify(revocationSet, never()).revoke(anyString(), anyLong());
+    }
+
+    @Test
+    @DisplayName("should sign the new token while the rotation is in flight")
+    void shouldSignWhileRotating() {
+      JwtToken jwtToken = new JwtToken();
+      jwtToken.setJti("jti-123");
+      jwtToken.setSub("user-123");
+      JwtToken newJwtToken = new JwtToken();
+      newJwtToken.setJti("jti-456");
+
+      when(authService.generateToken("user-123", null, null)).thenReturn(newJwtToken);
+      when(authService.refreshTokenBelongsTo(jwtToken, "refresh-token")).thenReturn(true);
+      when(authService.generateRefreshToken("jti-456")).thenReturn("new-refresh-token");
+      when(authService.encodeJwt(newJwtToken)).thenReturn("encoded");
+      when(authService.revokedUntil(jwtToken)).thenReturn(5000L);
+
+      CompletableFuture<Boolean> rotate = new CompletableFuture<>();
+      when(tokenService.rotate(jwtToken, "refresh-token", newJwtToken, "new-refresh-token"))
+          .thenReturn(rotate);
+
+      CompletableFuture<Map.Entry<String, String>> result =
+          asyncAuthService.refresh(jwtToken, "refresh-token");
+
+      verify(authService).encodeJwt(newJwtToken);
+      assertThat(result).isNotDone();
+
+      rotate.complete(true);
+
+      assertThat(result.join()).isEqualTo(Map.entry("encoded", "new-refresh-token"));
+      verify(revocationSet).revoke("jti-123", 5000L);
+    }
+  }
+
+  @Nested
+  @DisplayName("logout method")
+  class LogoutMethod {
+
+    @Test
+    @DisplayName("should delete the token and revoke its JTI locally")
+    void shouldDeleteAndRevokeLocally() {
+      JwtToken jwtToken = new JwtToken();
+      jwtToken.setJti("token-jti-123");
+      jwtToken.setExp(5000L);
+      when(authService.revokedUntil(jwtToken)).thenReturn(5000L);
+      when(tokenService.deleteById("token-jti-123"))
+          .thenReturn(CompletableFuture.completedFuture(null));
+
+      asyncAuthService.logout(jwtToken).join();
+
+      verify(tokenService).deleteById("token-jti-123");
+      verify(revocationSet).revoke("token-jti-123", 5000L);
+    }
+  }
+}
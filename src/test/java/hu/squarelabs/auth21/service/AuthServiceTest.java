@@ -4,17 +4,33 @@ import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
+import hu.squarelabs.auth21.cache.JtiRevocationSet;
+import hu.squarelabs.auth21.exception.ServiceOverloadedException;
+import hu.squarelabs.auth21.exception.TooManyRequestsException;
+import hu.squarelabs.auth21.jwt.InvalidJwtException;
+import hu.squarelabs.auth21.jwt.JwtDecoder;
+import hu.squarelabs.auth21.jwt.JwtEncoder;
+import hu.squarelabs.auth21.jwt.RefreshTokenCodec;
 import hu.squarelabs.auth21.model.JwtToken;
 import hu.squarelabs.auth21.model.entity.UserEntity;
+import hu.squarelabs.auth21.password.PasswordHashExecutor;
+import hu.squarelabs.auth21.ratelimit.RateLimiter;
 import hu.squarelabs.auth21.repository.TokenRepository;
+import hu.squarelabs.auth21.repository.TokenStore;
 import hu.squarelabs.auth21.repository.UserRepository;
+import hu.squarelabs.auth21.util.SecureIdGenerator;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
@@ -31,11 +47,35 @@ class AuthServiceTest {
 
   @Mock private TokenService tokenService;
 
+  @Mock private JwtEncoder jwtEncoder;
+
+  @Mock private JwtDecoder jwtDecoder;
+
+  @Mock private JtiRevocationSet revocationSet;
+
+  @Mock private PasswordHashExecutor passwordHashExecutor;
+
+  @Mock private RateLimiter rateLimiter;
+
+  private final RefreshTokenCodec refreshTokenCodec =
+      new RefreshTokenCodec("test-secret".getBytes(StandardCharsets.UTF_8));
+
   private AuthService authService;
 
   @BeforeEach
   void setUp() {
-    authService = new AuthService(userRepository, tokenRepository, tokenService);
+    authService =
+        new AuthService(
+            userRepository,
+            tokenRepository,
+            tokenService,
+            jwtEncoder,
+            jwtDecoder,
+            revocationSet,
+            refreshTokenCodec,
+            new SecureIdGenerator(false, 1 << 20),
+            passwordHashExecutor,
+            rateLimiter);
     ReflectionTestUtils.setField(authService, "jwtSecret", "test-secret");
     ReflectionTestUtils.setField(authService, "jwtTokenLifetime", 3600);
   }
@@ -100,7 +140,144 @@ class AuthServiceTest {
     @Test
     @DisplayName("should return access token and refresh token on successful login")
     void shouldReturnTokensOnSuccessfulLogin() {
-      //
+      String email = "user@example.com";
+      String password = "password123";
+
+      UserEntity user = new UserEntity();
+      user.setId("user-123");
+      user.setEmail(email);
+      user.setNickname("testuser");
+      user.setName("Test User");
+      user.setPasswordHash("$argon2id$hash");
+      user.setRoles(java.util.List.of("USER"));
+
+      when(userRepository.findByEmail(email)).thenReturn(Optional.of(user));
+      when(passwordHashExecutor.verify(password, "$argon2id$hash")).thenReturn(true);
+      when(jwtEncoder.encode(any(JwtToken.class))).thenReturn("encoded");
+
+      Map.Entry<String, String> result = authService.login(email, password);
+
+      assertThat(result.getKey()).isEqualTo("encoded");
+      assertThat(refreshTokenCodec.jtiOf(result.getValue())).isPresent();
+      verify(tokenService).create(any(JwtToken.class), eq(result.getValue()));
+    }
+
+    @Test
+    @DisplayName("should reject a throttled email before looking the user up")
+    void shouldThrottleBeforeLookup() {
+      doThrow(new TooManyRequestsException("slow down", java.time.Duration.ofSeconds(12)))
+          .when(rateLimiter)
+          .checkEmail(RateLimiter.ENDPOINT_LOGIN, "user@example.com");
+
+      assertThatThrownBy(() -> authService.login("user@example.com", "password123"))
+          .isInstanceOf(TooManyRequestsException.class)
+          .hasFieldOrPropertyWithValue("statusCode", HttpStatus.TOO_MANY_REQUESTS);
+      verifyNoInteractions(userRepository, passwordHashExecutor);
+    }
+
+    @Test
+    @DisplayName("should propagate SERVICE_UNAVAILABLE when password hashing is saturated")
+    void shouldShedLoadWhenHashingSaturated() {
+      UserEntity user = new UserEntity();
+      user.setId("user-123");
+      user.setPasswordHash("$argon2id$hash");
+
+      when(userRepository.findByEmail("user@example.com")).thenReturn(Optional.of(user));
+      when(passwordHashExecutor.verify("password123", "$argon2id$hash"))
+          .thenThrow(new ServiceOverloadedException("busy", java.time.Duration.ofSeconds(1)));
+
+      assertThatThrownBy(() -> authService.login("user@example.com", "password123"))
+          .isInstanceOf(ServiceOverloadedException.class)
+          .hasFieldOrPropertyWithValue("statusCode", HttpStatus.SERVICE_UNAVAILABLE);
+      verify(tokenService, never()).create(any(JwtToken.class), anyString());
+    }
+  }
+
+  @Nested
+  @DisplayName("rehashIfOutdated method")
+  class RehashIfOutdatedMethod {
+
+    private UserEntity user() {
+      UserEntity user = new UserEntity();
+      user.setId("user-123");
+      user.setPasswordHash("$2b$10$old");
+      return user;
+    }
+
+    @Test
+    @DisplayName("should persist a new hash conditioned on the old one when outdated")
+    void shouldPersistNewHash() {
+      when(passwordHashExecutor.needsRehash("$2b$10$old")).thenReturn(true);
+      when(passwordHashExecutor.hashAsync("password123"))
+          .thenReturn(CompletableFuture.completedFuture("$argon2id$new"));
+
+      authService.rehashIfOutdated(user(), "password123");
+
+      verify(userRepository).updatePasswordHash("user-123", "$2b$10$old", "$argon2id$new");
+    }
+
+    @Test
+    @DisplayName("should leave current hashes alone")
+    void shouldSkipCurrentHash() {
+      when(passwordHashExecutor.needsRehash("$2b$10$old")).thenReturn(false);
+
+      authService.rehashIfOutdated(user(), "password123");
+
+      verify(passwordHashExecutor, never()).hashAsync(anyString());
+      verify(userRepository, never()).updatePasswordHash(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    @DisplayName("should not fail the login when the hashing pool is saturated")
+    void shouldSwallowSaturation() {
+      when(passwordHashExecutor.needsRehash("$2b$10$old")).thenReturn(true);
+      when(passwordHashExecutor.hashAsync("password123"))
+          .thenReturn(
+              CompletableFuture.failedFuture(
+                  new ServiceOverloadedException("busy", java.time.Duration.ofSeconds(1))));
+
+      assertThatCode(() -> authService.rehashIfOutdated(user(), "password123"))
+          .doesNotThrowAnyException();
+      verify(userRepository, never()).updatePasswordHash(anyString(), anyString(), anyString());
+    }
+  }
+
+  @Nested
+  @DisplayName("verifyAccessToken method")
+  class VerifyAccessTokenMethod {
+
+    @Test
+    @DisplayName("should return the decoded token when it is valid")
+    void shouldReturnDecodedToken() {
+      JwtToken jwtToken = new JwtToken();
+      jwtToken.setJti("jti-123");
+      when(jwtDecoder.decode("access-token")).thenReturn(jwtToken);
+
+      assertThat(authService.verifyAccessToken("access-token")).isEqualTo(jwtToken);
+    }
+
+    @Test
+    @DisplayName("should throw UNAUTHORIZED when the token is rejected")
+    void shouldThrowUnauthorizedWhenTokenRejected() {
+      when(jwtDecoder.decode("access-token"))
+          .thenThrow(new InvalidJwtException("Token has expired"));
+
+      assertThatThrownBy(() -> authService.verifyAccessToken("access-token"))
+          .isInstanceOf(ResponseStatusException.class)
+          .hasFieldOrPropertyWithValue("statusCode", HttpStatus.UNAUTHORIZED);
+    }
+
+    @Test
+    @DisplayName("should throw UNAUTHORIZED when the token has been revoked")
+    void shouldThrowUnauthorizedWhenTokenRevoked() {
+      JwtToken jwtToken = new JwtToken();
+      jwtToken.setJti("jti-123");
+      when(jwtDecoder.decode("access-token")).thenReturn(jwtToken);
+      when(revocationSet.isRevoked("jti-123")).thenReturn(true);
+
+      assertThatThrownBy(() -> authService.verifyAccessToken("access-token"))
+          .isInstanceOf(ResponseStatusException.class)
+          .hasFieldOrPropertyWithValue("statusCode", HttpStatus.UNAUTHORIZED);
     }
   }
 
@@ -118,6 +295,42 @@ class AuthServiceTest {
 
       verify(tokenService, times(1)).deleteById("token-jti-123");
     }
+
+    @Test
+    @DisplayName("should add the JTI to the local revocation set until the token expires")
+    void shouldRevokeJtiLocally() {
+      JwtToken jwtToken = new JwtToken();
+      jwtToken.setJti("token-jti-123");
+      jwtToken.setExp(5000L);
+
+      authService.logout(jwtToken);
+
+      verify(revocationSet, times(1)).revoke("token-jti-123", 5000L);
+    }
+  }
+
+  @Nested
+  @DisplayName("revokeAllSessions method")
+  class RevokeAllSessionsMethod {
+
+    @Test
+    @DisplayName("should add every session found to the local revocation set")
+    void shouldRevokeEverySessionLocally() {
+      when(tokenService.deleteByUserId(eq("user-123"), any()))
+          .thenAnswer(
+              invocation -> {
+                final Consumer<TokenStore.UserToken> found = invocation.getArgument(1);
+                found.accept(new TokenStore.UserToken("jti-1", Instant.ofEpochSecond(5000L)));
+                found.accept(new TokenStore.UserToken("jti-2", null));
+                return 2;
+              });
+
+      assertThat(authService.revokeAllSessions("user-123")).isEqualTo(2);
+
+      verify(revocationSet).revoke("jti-1", 5000L);
+      verify(revocationSet)
+          .revoke(eq("jti-2"), longThat(exp -> exp > Instant.now().getEpochSecond()));
+    }
   }
 
   @Nested
@@ -125,66 +338,109 @@ class AuthServiceTest {
   class RefreshMethod {
 
     @Test
-    @DisplayName("should throw NOT_FOUND when refresh token not found")
-    void shouldThrowNotFoundWhenRefreshTokenNotFound() {
+    @DisplayName("should throw NOT_FOUND when the refresh token does not match the stored token")
+    void shouldThrowNotFoundWhenRotationGuardFails() {
       JwtToken jwtToken = new JwtToken();
       jwtToken.setJti("jti-123");
-      String refreshToken = "invalid-refresh-token";
+      jwtToken.setSub("user-123");
+      String refreshToken = "0f1e2d3c4b5a6978";
 
-      when(tokenService.getByRefreshToken(refreshToken)).thenReturn(Optional.empty());
+      when(tokenService.rotate(eq(jwtToken), eq(refreshToken), any(JwtToken.class), anyString()))
+          .thenReturn(false);
 
       assertThatThrownBy(() -> authService.refresh(jwtToken, refreshToken))
           .isInstanceOf(ResponseStatusException.class)
           .hasFieldOrPropertyWithValue("statusCode", HttpStatus.NOT_FOUND);
+      verify(revocationSet, never()).revoke(anyString(), anyLong());
     }
 
     @Test
-    @DisplayName("should throw INTERNAL_SERVER_ERROR when stored token does not match")
-    void shouldThrowInternalServerErrorWhenTokenMismatch() {
-      JwtToken originalToken = new JwtToken();
-      originalToken.setJti("jti-123");
-      originalToken.setSub("user-123");
-
-      JwtToken storedToken = new JwtToken();
-      storedToken.setJti("jti-456");
-      storedToken.setSub("user-456");
+    @DisplayName(
+        "should throw NOT_FOUND without a write when the refresh token belongs to another jti")
+    void shouldThrowNotFoundWhenRefreshTokenBelongsToAnotherJti() {
+      JwtToken jwtToken = new JwtToken();
+      jwtToken.setJti("6f1c1a8e-2d4b-4c3a-9e8f-0a1b2c3d4e5f");
+      String refreshToken =
+          refreshTokenCodec.encode("0b7e4a7c-1f2d-4e3c-8a9b-5c6d7e8f9a0b", new byte[16]);
 
-      String refreshToken = "refresh-token";
-      Map<String, Object> tokenData =
-          Map.of(
-              "jwt_token", storedToken,
-              "refresh_token", refreshToken);
+      assertThatThrownBy(() -> authService.refresh(jwtToken, refreshToken))
+          .isInstanceOf(ResponseStatusException.class)
+          .hasFieldOrPropertyWithValue("statusCode", HttpStatus.NOT_FOUND);
+      verifyNoInteractions(tokenService);
+    }
 
-      when(tokenService.getByRefreshToken(refreshToken)).thenReturn(Optional.of(tokenData));
+    @Test
+    @DisplayName("should throw NOT_FOUND without a write when the refresh token is forged")
+    void shouldThrowNotFoundWhenRefreshTokenIsForged() {
+      JwtToken jwtToken = new JwtToken();
+      jwtToken.setJti("6f1c1a8e-2d4b-4c3a-9e8f-0a1b2c3d4e5f");
+      String genuine = refreshTokenCodec.encode(jwtToken.getJti(), new byte[16]);
+      String forged =
+          genuine.substring(0, genuine.length() - 1) + (genuine.endsWith("A") ? "B" : "A");
 
-      assertThatThrownBy(() -> authService.refresh(originalToken, refreshToken))
+      assertThat(forged).hasSize(64);
+      assertThatThrownBy(() -> authService.refresh(jwtToken, forged))
           .isInstanceOf(ResponseStatusException.class)
-          .hasFieldOrPropertyWithValue("statusCode", HttpStatus.INTERNAL_SERVER_ERROR);
+          .hasFieldOrPropertyWithValue("statusCode", HttpStatus.NOT_FOUND);
+      verifyNoInteractions(tokenService);
     }
 
     @Test
-    @DisplayName("should revoke old token and generate new tokens on successful refresh")
-    void shouldRevokeOldTokenAndGenerateNewTokensOnSuccessfulRefresh() {
+    @DisplayName("should throw NOT_FOUND without a write when the refresh token has no known shape")
+    void shouldThrowNotFoundWhenRefreshTokenIsMalformed() {
       JwtToken jwtToken = new JwtToken();
       jwtToken.setJti("jti-123");
-      jwtToken.setSub("user-123");
 
-      String refreshToken = "refresh-token";
-      Map<String, Object> tokenData =
-          Map.of(
-              "jwt_token", jwtToken,
-              "refresh_token", refreshToken);
+      assertThatThrownBy(() -> authService.refresh(jwtToken, "refresh-token"))
+          .isInstanceOf(ResponseStatusException.class)
+          .hasFieldOrPropertyWithValue("statusCode", HttpStatus.NOT_FOUND);
+      verifyNoInteractions(tokenService);
+    }
 
-      when(tokenService.getByRefreshToken(refreshToken)).thenReturn(Optional.of(tokenData));
+    @Test
+    @DisplayName("should throw NOT_FOUND without a write when the token has no jti")
+    void shouldThrowNotFoundWhenTokenHasNoJti() {
+      assertThatThrownBy(() -> authService.refresh(new JwtToken(), "refresh-token"))
+          .isInstanceOf(ResponseStatusException.class)
+          .hasFieldOrPropertyWithValue("statusCode", HttpStatus.NOT_FOUND);
+      verifyNoInteractions(tokenService);
+    }
 
-      try {
-        authService.refresh(jwtToken, refreshToken);
-      } catch (Exception e) {
-        //
-      }
+    @Test
+    @DisplayName("should rotate the stored token without a lookup and revoke the old jti")
+    void shouldRotateAndRevokeOldToken() {
+      JwtToken jwtToken = new JwtToken();
+      jwtToken.setJti("jti-123");
+      jwtToken.setSub("user-123");
+      jwtToken.setExp(5000L);
+      String refreshToken = "a1b2c3d4e5f60718";
+
+      when(tokenService.rotate(eq(jwtToken), eq(refreshToken), any(JwtToken.class), anyString()))
+          .thenReturn(true);
+      when(jwtEncoder.encode(any(JwtToken.class))).thenReturn("encoded");
+
+      Map.Entry<String, String> result = authService.refresh(jwtToken, refreshToken);
+
+      assertThat(result.getKey()).isEqualTo("encoded");
+      assertThat(refreshTokenCodec.jtiOf(result.getValue()))
+          .get()
+          .isNotEqualTo("jti-123")
+          .isEqualTo(captureNewJti());
+      verify(tokenService)
+          .rotate(
+              eq(jwtToken),
+              eq(refreshToken),
+              argThat(token -> "user-123".equals(token.getSub())),
+              eq(result.getValue()));
+      verify(revocationSet).revoke("jti-123", 5000L);
+      verify(tokenService, never()).deleteById(anyString());
+      verify(tokenService, never()).create(any(JwtToken.class), anyString());
+    }
 
-      verify(tokenService, times(1)).deleteById("jti-123");
-      verify(tokenService, times(1)).create(any(JwtToken.class), anyString());
+    private String captureNewJti() {
+      ArgumentCaptor<JwtToken> newToken = ArgumentCaptor.forClass(JwtToken.class);
+      verify(tokenService).rotate(any(), anyString(), newToken.capture(), anyString());
+      return newToken.getValue().getJti();
     }
   }
 }
@@ -0,0 +1,140 @@
+package hu.squarelabs.auth21.service;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import hu.squarelabs.auth21.cache.ExpiringCache;
+import hu.squarelabs.auth21.cache.JtiRevocationSet;
+import hu.squarelabs.auth21.jwt.InvalidJwtException;
+import hu.squarelabs.auth21.jwt.JwtDecoder;
+import hu.squarelabs.auth21.model.JwtToken;
+import hu.squarelabs.auth21.model.dto.response.IntrospectionResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@DisplayName("TokenIntrospectionService")
+@ExtendWith(MockitoExtension.class)
+class TokenIntrospectionServiceTest {
+  private static final long NOW = 1_000_000L;
+
+  @Mock private JwtDecoder jwtDecoder;
+  @Mock private JtiRevocationSet revocationSet;
+  @Mock private TokenService tokenService;
+  @Mock private ExpiringCache<String, Boolean> cache;
+
+  private SimpleMeterRegistry meterRegistry;
+  private TokenIntrospectionService service;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    service =
+        new TokenIntrospectionService(
+            jwtDecoder, revocationSet, tokenService, meterRegistry, cache, 60, 10, () -> NOW);
+  }
+
+  private JwtToken decodes(String token, long exp) {
+    final var jwtToken = new JwtToken("jti-1", "user-1", NOW - 100, exp, Map.of());
+    when(jwtDecoder.decode(token)).thenReturn(jwtToken);
+    return jwtToken;
+  }
+
+  private double cacheCount(String result) {
+    return meterRegistry.get("auth.introspection.cache").tag("result", result).counter().count();
+  }
+
+  @Nested
+  @DisplayName("introspect method")
+  class IntrospectMethod {
+
+    @Test
+    @DisplayName("should report an invalid token as inactive without touching the cache")
+    void shouldRejectInvalidToken() {
+      when(jwtDecoder.decode("bad")).thenThrow(new InvalidJwtException("Invalid signature"));
+
+      assertThat(service.introspect("bad")).isEqualTo(IntrospectionResponse.inactive());
+      verifyNoInteractions(cache, tokenService);
+    }
+
+    @Test
+    @DisplayName("should report a revoked jti as inactive without reading the store")
+    void shouldRejectRevokedToken() {
+      decodes("token", NOW + 3600);
+      when(revocationSet.isRevoked("jti-1")).thenReturn(true);
+
+      assertThat(service.introspect("token").isActive()).isFalse();
+      verifyNoInteractions(cache, tokenService);
+    }
+
+    @Test
+    @DisplayName("should answer a cache hit without reading the store")
+    void shouldServeCacheHit() {
+      decodes("token", NOW + 3600);
+      when(cache.get("jti-1")).thenReturn(Optional.of(true));
+
+      final var response = service.introspect("token");
+
+      assertThat(response)
+          .isEqualTo(new IntrospectionResponse("user-1", "jti-1", NOW - 100, NOW + 3600));
+      verifyNoInteractions(tokenService);
+      assertThat(cacheCount("hit")).isEqualTo(1.0);
+      assertThat(cacheCount("miss")).isZero();
+    }
+
+    @Test
+    @DisplayName("should cache a negative hit as inactive")
+    void shouldServeNegativeCacheHit() {
+      decodes("token", NOW + 3600);
+      when(cache.get("jti-1")).thenReturn(Optional.of(false));
+
+      assertThat(service.introspect("token").isActive()).isFalse();
+      verifyNoInteractions(tokenService);
+    }
+
+    @Test
+    @DisplayName("should look the token up on a miss and cache the positive answer")
+    void shouldCachePositiveAnswer() {
+      decodes("token", NOW + 3600);
+      when(cache.get("jti-1")).thenReturn(Optional.empty());
+      when(tokenService.exists("jti-1")).thenReturn(true);
+
+      assertThat(service.introspect("token").isActive()).isTrue();
+      verify(cache).put("jti-1", true, Duration.ofSeconds(60));
+      assertThat(cacheCount("miss")).isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("should cache an unknown jti for the negative TTL")
+    void shouldCacheNegativeAnswer() {
+      decodes("token", NOW + 3600);
+      when(cache.get("jti-1")).thenReturn(Optional.empty());
+      when(tokenService.exists("jti-1")).thenReturn(false);
+
+      assertThat(service.introspect("token").isActive()).isFalse();
+      verify(cache).put("jti-1", false, Duration.ofSeconds(10));
+    }
+
+    @Test
+    @DisplayName("should never cache an answer past the token's exp")
+    void shouldCapTtlAtExp() {
+      decodes("soon", NOW + 5);
+      when(cache.get("jti-1")).thenReturn(Optional.empty());
+      when(tokenService.exists("jti-1")).thenReturn(true);
+
+      service.introspect("soon");
+
+      verify(cache).put("jti-1", true, Duration.ofSeconds(5));
+      verify(tokenService, times(1)).exists(any());
+    }
+  }
+}
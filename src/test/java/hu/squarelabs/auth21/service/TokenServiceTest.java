@@ -2,18 +2,29 @@ package hu.squarelabs.auth21.service;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
+import hu.squarelabs.auth21.jwt.RefreshTokenCodec;
 import hu.squarelabs.auth21.model.JwtToken;
 import hu.squarelabs.auth21.model.entity.TokenEntity;
 import hu.squarelabs.auth21.repository.TokenRepository;
+import hu.squarelabs.auth21.repository.TokenStore;
+import hu.squarelabs.auth21.repository.TokenWriteBehindQueue;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -23,11 +34,14 @@ class TokenServiceTest {
 
   @Mock private TokenRepository tokenRepository;
 
+  private final RefreshTokenCodec refreshTokenCodec =
+      new RefreshTokenCodec("test-secret".getBytes(StandardCharsets.UTF_8));
+
   private TokenService tokenService;
 
   @BeforeEach
   void setUp() {
-    tokenService = new TokenService(tokenRepository);
+    tokenService = new TokenService(tokenRepository, refreshTokenCodec);
   }
 
   @Nested
@@ -202,5 +216,116 @@ class TokenServiceTest {
 
       assertThat(result).isEmpty();
     }
+
+    @Test
+    @DisplayName("should resolve a self-locating refresh token with a consistent read by jti")
+    void shouldResolveSelfLocatingTokenByJti() {
+      String jti = "6f1c1a8e-2d4b-4c3a-9e8f-0a1b2c3d4e5f";
+      String refreshToken = refreshTokenCodec.encode(jti, new byte[16]);
+      TokenEntity tokenEntity = new TokenEntity();
+      tokenEntity.setJti(jti);
+      tokenEntity.setRefreshToken(refreshToken);
+
+      when(tokenRepository.findById(jti, true)).thenReturn(Optional.of(tokenEntity));
+
+      Optional<Map<String, Object>> result = tokenService.getByRefreshToken(refreshToken);
+
+      assertThat(result)
+          .get()
+          .extracting(item -> item.get("refresh_token"))
+          .isEqualTo(refreshToken);
+      verify(tokenRepository, never()).findByRefreshToken(any());
+    }
+
+    @Test
+    @DisplayName("should not return a stored token whose refresh token was rotated")
+    void shouldNotReturnRotatedToken() {
+      String jti = "6f1c1a8e-2d4b-4c3a-9e8f-0a1b2c3d4e5f";
+      TokenEntity tokenEntity = new TokenEntity();
+      tokenEntity.setJti(jti);
+      tokenEntity.setRefreshToken(refreshTokenCodec.encode(jti, new byte[16]));
+
+      byte[] otherNonce = new byte[16];
+      otherNonce[0] = 1;
+      String staleRefreshToken = refreshTokenCodec.encode(jti, otherNonce);
+      when(tokenRepository.findById(jti, true)).thenReturn(Optional.of(tokenEntity));
+
+      assertThat(tokenService.getByRefreshToken(staleRefreshToken)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should not query the index for legacy tokens once it is disabled")
+    void shouldSkipIndexWhenDisabled() {
+      tokenService = new TokenService(tokenRepository, refreshTokenCodec, Optional.empty(), false);
+
+      assertThat(tokenService.getByRefreshToken("legacy-refresh-token")).isEmpty();
+      verifyNoInteractions(tokenRepository);
+    }
+  }
+
+  @Nested
+  @DisplayName("with a write-behind queue")
+  class WithWriteBehindQueue {
+
+    @Mock private TokenWriteBehindQueue writeBehindQueue;
+
+    @BeforeEach
+    void setUp() {
+      tokenService =
+          new TokenService(tokenRepository, refreshTokenCodec, Optional.of(writeBehindQueue), true);
+    }
+
+    @Test
+    @DisplayName("should wait for queued writes of the old token before rotating it")
+    void shouldAwaitPendingWritesBeforeRotation() {
+      JwtToken oldToken = new JwtToken("jti-old", "user-123", 1000L, 4600L, null);
+      JwtToken newToken = new JwtToken("jti-new", "user-123", 2000L, 5600L, null);
+      when(tokenRepository.rotate(eq("jti-old"), eq("refresh-old"), any(TokenEntity.class)))
+          .thenReturn(true);
+
+      assertThat(tokenService.rotate(oldToken, "refresh-old", newToken, "refresh-new")).isTrue();
+
+      InOrder inOrder = inOrder(writeBehindQueue, tokenRepository);
+      inOrder.verify(writeBehindQueue).awaitPending("jti-old");
+      inOrder.verify(tokenRepository).rotate(eq("jti-old"), eq("refresh-old"), any());
+    }
+
+    @Test
+    @DisplayName("should also delete queued tokens of the user that the index did not list")
+    void shouldDeleteQueuedTokensOfUser() {
+      TokenEntity listed = new TokenEntity();
+      listed.setJti("jti-1");
+      TokenEntity unlisted = new TokenEntity();
+      unlisted.setJti("jti-2");
+      unlisted.setExpiresAt(Instant.ofEpochSecond(5000L));
+      when(writeBehindQueue.awaitPendingPuts("user-123")).thenReturn(List.of(listed, unlisted));
+      when(writeBehindQueue.delete("jti-2")).thenReturn(CompletableFuture.completedFuture(null));
+      when(tokenRepository.deleteByUserId(eq("user-123"), any()))
+          .thenAnswer(
+              invocation -> {
+                final Consumer<TokenStore.UserToken> found = invocation.getArgument(1);
+                found.accept(new TokenStore.UserToken("jti-1", Instant.ofEpochSecond(4000L)));
+                return 1;
+              });
+      List<TokenStore.UserToken> found = new ArrayList<>();
+
+      assertThat(tokenService.deleteByUserId("user-123", found::add)).isEqualTo(2);
+
+      assertThat(found).extracting(TokenStore.UserToken::jti).containsExactly("jti-1", "jti-2");
+      verify(writeBehindQueue).delete("jti-2");
+      verify(writeBehindQueue, never()).delete("jti-1");
+    }
+
+    @Test
+    @DisplayName("should read a token only after its queued write has landed")
+    void shouldAwaitPendingWriteBeforeExistsCheck() {
+      when(tokenRepository.findById("jti-1", true)).thenReturn(Optional.of(new TokenEntity()));
+
+      assertThat(tokenService.exists("jti-1")).isTrue();
+
+      InOrder inOrder = inOrder(writeBehindQueue, tokenRepository);
+      inOrder.verify(writeBehindQueue).awaitPending("jti-1");
+      inOrder.verify(tokenRepository).findById("jti-1", true);
+    }
   }
 }
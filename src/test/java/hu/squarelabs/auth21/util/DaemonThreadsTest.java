@@ -0,0 +1,43 @@
+package hu.squarelabs.auth21.util;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("DaemonThreads")
+class DaemonThreadsTest {
+
+  @Test
+  @DisplayName("should create daemon threads with the given name")
+  void shouldCreateNamedDaemonThreads() {
+    Thread thread = DaemonThreads.named("worker").newThread(() -> {});
+
+    assertThat(thread.getName()).isEqualTo("worker");
+    assertThat(thread.isDaemon()).isTrue();
+  }
+
+  @Test
+  @DisplayName("should number the threads of a pool from one")
+  void shouldNumberThreads() {
+    var factory = DaemonThreads.numbered("pool");
+
+    assertThat(factory.newThread(() -> {}).getName()).isEqualTo("pool-1");
+    assertThat(factory.newThread(() -> {}).getName()).isEqualTo("pool-2");
+  }
+
+  @Test
+  @DisplayName("should run scheduled tasks on a named daemon thread")
+  void shouldScheduleOnDaemonThread() throws Exception {
+    var scheduler = DaemonThreads.scheduler("ticker");
+    try {
+      Thread thread = scheduler.schedule(Thread::currentThread, 0, TimeUnit.MILLISECONDS).get();
+
+      assertThat(thread.getName()).isEqualTo("ticker");
+      assertThat(thread.isDaemon()).isTrue();
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package hu.squarelabs.auth21.util;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("SecureIdGenerator")
+class SecureIdGeneratorTest {
+
+  private static final long NOW_MILLIS = 1_700_000_000_123L;
+
+  @Test
+  @DisplayName("should generate distinct version 4 UUIDs by default")
+  void shouldGenerateRandomUuids() {
+    SecureIdGenerator generator = new SecureIdGenerator(false, 1 << 20, () -> NOW_MILLIS);
+
+    Set<String> ids = new HashSet<>();
+    for (int i = 0; i < 1000; i++) {
+      UUID id = UUID.fromString(generator.nextId());
+      assertThat(id.version()).isEqualTo(4);
+      assertThat(id.variant()).isEqualTo(2);
+      ids.add(id.toString());
+    }
+    assertThat(ids).hasSize(1000);
+  }
+
+  @Test
+  @DisplayName("should embed the current time in time-ordered IDs")
+  void shouldGenerateTimeOrderedUuids() {
+    SecureIdGenerator generator = new SecureIdGenerator(true, 1 << 20, () -> NOW_MILLIS);
+
+    UUID id = UUID.fromString(generator.nextId());
+
+    assertThat(id.version()).isEqualTo(7);
+    assertThat(id.variant()).isEqualTo(2);
+    assertThat(id.getMostSignificantBits() >>> 16).isEqualTo(NOW_MILLIS);
+  }
+
+  @Test
+  @DisplayName("should sort time-ordered IDs by creation time")
+  void shouldSortTimeOrderedUuids() {
+    long[] clock = {NOW_MILLIS};
+    SecureIdGenerator generator = new SecureIdGenerator(true, 1 << 20, () -> clock[0]++);
+
+    String first = generator.nextId();
+    String second = generator.nextId();
+
+    assertThat(first).isLessThan(second);
+  }
+
+  @Test
+  @DisplayName("should encode random bytes as hex and Base64url")
+  void shouldEncodeRandomBytes() {
+    SecureIdGenerator generator = new SecureIdGenerator(false, 1 << 20, () -> NOW_MILLIS);
+
+    assertThat(generator.randomHex(8)).hasSize(16).matches("[0-9a-f]+");
+    assertThat(generator.randomBase64Url(32)).hasSize(43).matches("[A-Za-z0-9_-]+");
+  }
+
+  @Test
+  @DisplayName("should keep generating across reseeds")
+  void shouldReseedPeriodically() {
+    SecureIdGenerator generator = new SecureIdGenerator(false, 16, () -> NOW_MILLIS);
+
+    Set<String> values = new HashSet<>();
+    for (int i = 0; i < 100; i++) {
+      values.add(generator.randomHex(16));
+    }
+    assertThat(values).hasSize(100);
+  }
+}
@@ -0,0 +1,112 @@
+package hu.squarelabs.auth21.config;
+
+import hu.squarelabs.auth21.converter.JwtClaimsAttributeConverter;
+import hu.squarelabs.auth21.dynamodb.InMemoryDynamoDb;
+import hu.squarelabs.auth21.dynamodb.InMemoryDynamoDbHttpClient;
+import hu.squarelabs.auth21.dynamodb.InMemoryDynamoDbHttpClient.OperationProfile;
+import hu.squarelabs.auth21.dynamodb.LatencyModel;
+import hu.squarelabs.auth21.model.entity.TokenEntitySchema;
+import hu.squarelabs.auth21.model.entity.UserEntitySchema;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClientBuilder;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClientBuilder;
+import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
+import software.amazon.awssdk.services.dynamodb.model.CreateTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
+import software.amazon.awssdk.services.dynamodb.model.KeyType;
+import software.amazon.awssdk.services.dynamodb.model.ScalarAttributeType;
+
+/**
+ * Replaces DynamoDB with an {@link InMemoryDynamoDb} for tests and load runs. The clients built by
+ * {@link DynamoDbConfig} stay the same; a {@link DynamoDbClientCustomizer} only swaps their
+ * transport and credentials, so retries, metrics and the concurrency limiter behave as they do
+ * against the real service. This class ships in the test fixtures, never in the application.
+ *
+ * <p>Simulated latency and fault rates are read per operation, falling back to the unqualified
+ * property:
+ *
+ * <pre>
+ * aws.dynamodb.in-memory.latency=lognormal:4ms,25ms
+ * aws.dynamodb.in-memory.latency.Query=lognormal:6ms,40ms
+ * aws.dynamodb.in-memory.throttle-rate.TransactWriteItems=0.01
+ * aws.dynamodb.in-memory.error-rate=0.001
+ * </pre>
+ */
+@Configuration
+@ConditionalOnProperty(name = InMemoryDynamoDbConfig.ENABLED_PROPERTY, havingValue = "true")
+public class InMemoryDynamoDbConfig {
+  public static final String ENABLED_PROPERTY = "aws.dynamodb.in-memory.enabled";
+  private static final String PREFIX = "aws.dynamodb.in-memory.";
+
+  @Bean
+  public InMemoryDynamoDb inMemoryDynamoDb(
+      @Value("${aws.dynamodb.table.users:users}") String usersTable,
+      @Value("${aws.dynamodb.table.tokens:auth-tokens}") String tokensTable,
+      @Value("${aws.dynamodb.table.rate-limits:rate-limits}") String rateLimitsTable,
+      @Value("${aws.dynamodb.token-claims.format:MAP}")
+          JwtClaimsAttributeConverter.Format claimsFormat) {
+    final var store = new InMemoryDynamoDb();
+    store.createTable(usersTable, UserEntitySchema.create());
+    store.createTable(tokensTable, TokenEntitySchema.create(claimsFormat));
+    store.createTable(
+        CreateTableRequest.builder()
+            .tableName(rateLimitsTable)
+            .attributeDefinitions(
+                AttributeDefinition.builder()
+                    .attributeName("counter")
+                    .attributeType(ScalarAttributeType.S)
+                    .build())
+            .keySchema(
+                KeySchemaElement.builder().attributeName("counter").keyType(KeyType.HASH).build())
+            .build());
+    return store;
+  }
+
+  @Bean
+  public InMemoryDynamoDbHttpClient inMemoryDynamoDbHttpClient(
+      InMemoryDynamoDb store, Environment environment) {
+    final Map<String, OperationProfile> profiles = new ConcurrentHashMap<>();
+    return new InMemoryDynamoDbHttpClient(
+        store,
+        operation -> profiles.computeIfAbsent(operation, name -> profile(environment, name)));
+  }
+
+  @Bean
+  public DynamoDbClientCustomizer inMemoryDynamoDbCustomizer(
+      InMemoryDynamoDbHttpClient httpClient) {
+    final var credentials =
+        StaticCredentialsProvider.create(AwsBasicCredentials.create("in-memory", "in-memory"));
+    return new DynamoDbClientCustomizer() {
+      @Override
+      public void customize(DynamoDbClientBuilder builder) {
+        builder.credentialsProvider(credentials).httpClientBuilder(null).httpClient(httpClient);
+      }
+
+      @Override
+      public void customize(DynamoDbAsyncClientBuilder builder) {
+        builder.credentialsProvider(credentials).httpClientBuilder(null).httpClient(httpClient);
+      }
+    };
+  }
+
+  private static OperationProfile profile(Environment environment, String operation) {
+    return new OperationProfile(
+        LatencyModel.parse(property(environment, "latency", operation, "none")),
+        Double.parseDouble(property(environment, "throttle-rate", operation, "0")),
+        Double.parseDouble(property(environment, "error-rate", operation, "0")));
+  }
+
+  private static String property(
+      Environment environment, String name, String operation, String defaultValue) {
+    return environment.getProperty(
+        PREFIX + name + "." + operation, environment.getProperty(PREFIX + name, defaultValue));
+  }
+}
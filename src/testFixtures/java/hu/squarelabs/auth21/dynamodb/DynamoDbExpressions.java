@@ -0,0 +1,638 @@
+package hu.squarelabs.auth21.dynamodb;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Parser and evaluator for the DynamoDB expression languages used by {@link InMemoryDynamoDb}:
+ * condition, filter and key condition expressions, update expressions and projections.
+ *
+ * <p>Attribute paths are limited to top-level attributes, which is all the enhanced client emits
+ * for flat schemas. Everything else follows the DynamoDB documentation, including the rule that a
+ * comparison with a missing attribute is false except for {@code <>}.
+ */
+final class DynamoDbExpressions {
+  private static final Set<String> KEYWORDS =
+      Set.of("AND", "OR", "NOT", "BETWEEN", "IN", "SET", "REMOVE", "ADD", "DELETE");
+
+  private DynamoDbExpressions() {}
+
+  /** A key condition together with the attributes it pins with {@code =}. */
+  record KeyCondition(
+      Predicate<Map<String, AttributeValue>> predicate, Map<String, AttributeValue> equalities) {}
+
+  static Predicate<Map<String, AttributeValue>> condition(
+      String expression, Map<String, String> names, Map<String, AttributeValue> values) {
+    if (expression == null || expression.isBlank()) {
+      return item -> true;
+    }
+    final var parser = new Parser(expression, names, values);
+    final var condition = parser.condition();
+    parser.expectEnd();
+    return condition;
+  }
+
+  static KeyCondition keyCondition(
+      String expression, Map<String, String> names, Map<String, AttributeValue> values) {
+    if (expression == null || expression.isBlank()) {
+      throw InMemoryDynamoDb.validation("Query requires a KeyConditionExpression");
+    }
+    final var parser = new Parser(expression, names, values);
+    final var condition = parser.condition();
+    parser.expectEnd();
+    return new KeyCondition(condition, parser.equalities);
+  }
+
+  /**
+   * Applies {@code expression} to {@code item} in place and returns the names of the attributes it
+   * set, added to or removed.
+   */
+  static Set<String> update(
+      String expression,
+      Map<String, String> names,
+      Map<String, AttributeValue> values,
+      Map<String, AttributeValue> item) {
+    final var parser = new Parser(expression, names, values);
+    final var updated = parser.update(item);
+    parser.expectEnd();
+    return updated;
+  }
+
+  static List<String> projection(String expression, Map<String, String> names) {
+    final var parser = new Parser(expression, names, Map.of());
+    final List<String> attributes = new ArrayList<>();
+    do {
+      attributes.add(parser.path());
+    } while (parser.accept(","));
+    parser.expectEnd();
+    return attributes;
+  }
+
+  /** Orders scalars the way DynamoDB sorts keys; values of different types order by type. */
+  static int compare(AttributeValue a, AttributeValue b) {
+    if (a.type() != b.type()) {
+      return a.type().compareTo(b.type());
+    }
+    return switch (a.type()) {
+      case N -> new BigDecimal(a.n()).compareTo(new BigDecimal(b.n()));
+      case S -> a.s().compareTo(b.s());
+      case B -> Arrays.compareUnsigned(a.b().asByteArrayUnsafe(), b.b().asByteArrayUnsafe());
+      default -> throw InMemoryDynamoDb.validation("Cannot order values of type " + a.type());
+    };
+  }
+
+  static boolean same(AttributeValue a, AttributeValue b) {
+    if (a.type() != b.type()) {
+      return false;
+    }
+    return switch (a.type()) {
+      case N -> compare(a, b) == 0;
+      case NS -> numberSet(a).equals(numberSet(b));
+      default -> a.equals(b);
+    };
+  }
+
+  private static Set<BigDecimal> numberSet(AttributeValue value) {
+    final Set<BigDecimal> numbers = new LinkedHashSet<>();
+    value.ns().forEach(n -> numbers.add(new BigDecimal(n).stripTrailingZeros()));
+    return numbers;
+  }
+
+  private static AttributeValue number(BigDecimal value) {
+    return AttributeValue.fromN(value.stripTrailingZeros().toPlainString());
+  }
+
+  private enum Kind {
+    NAME,
+    VALUE,
+    KEYWORD,
+    SYMBOL,
+    END
+  }
+
+  private record Token(Kind kind, String text, AttributeValue value) {}
+
+  private static final class Parser {
+    private final String expression;
+    private final List<Token> tokens;
+    private final Map<String, AttributeValue> equalities = new HashMap<>();
+    private int position;
+
+    Parser(String expression, Map<String, String> names, Map<String, AttributeValue> values) {
+      this.expression = expression;
+      this.tokens = tokenize(expression, names != null ? names : Map.of(), values);
+    }
+
+    private static List<Token> tokenize(
+        String expression, Map<String, String> names, Map<String, AttributeValue> values) {
+      final List<Token> tokens = new ArrayList<>();
+      int i = 0;
+      while (i < expression.length()) {
+        final char c = expression.charAt(i);
+        if (Character.isWhitespace(c)) {
+          i++;
+        } else if (c == '#' || c == ':' || Character.isLetter(c) || c == '_') {
+          int end = i + 1;
+          while (end < expression.length()
+              && (Character.isLetterOrDigit(expression.charAt(end))
+                  || expression.charAt(end) == '_')) {
+            end++;
+          }
+          final var word = expression.substring(i, end);
+          if (c == '#') {
+            final var name = names.get(word);
+            if (name == null) {
+              throw InMemoryDynamoDb.validation("Expression attribute name not defined: " + word);
+            }
+            tokens.add(new Token(Kind.NAME, name, null));
+          } else if (c == ':') {
+            final var value = values != null ? values.get(word) : null;
+            if (value == null) {
+              throw InMemoryDynamoDb.validation("Expression attribute value not defined: " + word);
+            }
+            tokens.add(new Token(Kind.VALUE, word, value));
+          } else if (KEYWORDS.contains(word.toUpperCase(Locale.ROOT))) {
+            tokens.add(new Token(Kind.KEYWORD, word.toUpperCase(Locale.ROOT), null));
+          } else {
+            tokens.add(new Token(Kind.NAME, word, null));
+          }
+          i = end;
+        } else if ((c == '<' || c == '>')
+            && i + 1 < expression.length()
+            && (expression.charAt(i + 1) == '=' || expression.substring(i, i + 2).equals("<>"))) {
+          tokens.add(new Token(Kind.SYMBOL, expression.substring(i, i + 2), null));
+          i += 2;
+        } else if ("=<>(),+-".indexOf(c) >= 0) {
+          tokens.add(new Token(Kind.SYMBOL, String.valueOf(c), null));
+          i++;
+        } else if (c == '.' || c == '[') {
+          throw InMemoryDynamoDb.validation(
+              "Nested attribute paths are not supported by the in-memory stand-in: " + expression);
+        } else {
+          throw InMemoryDynamoDb.validation("Invalid expression: " + expression);
+        }
+      }
+      tokens.add(new Token(Kind.END, "", null));
+      return tokens;
+    }
+
+    Predicate<Map<String, AttributeValue>> condition() {
+      var left = conjunction();
+      while (acceptKeyword("OR")) {
+        final var l = left;
+        final var r = conjunction();
+        left = item -> l.test(item) || r.test(item);
+      }
+      return left;
+    }
+
+    private Predicate<Map<String, AttributeValue>> conjunction() {
+      var left = negation();
+      while (acceptKeyword("AND")) {
+        final var l = left;
+        final var r = negation();
+        left = item -> l.test(item) && r.test(item);
+      }
+      return left;
+    }
+
+    private Predicate<Map<String, AttributeValue>> negation() {
+      if (acceptKeyword("NOT")) {
+        return negation().negate();
+      }
+      if (accept("(")) {
+        final var inner = condition();
+        expect(")");
+        return inner;
+      }
+      return comparison();
+    }
+
+    private Predicate<Map<String, AttributeValue>> comparison() {
+      final var token = peek();
+      if (token.kind() == Kind.NAME && peekAt(1).text().equals("(")) {
+        switch (token.text()) {
+          case "attribute_exists", "attribute_not_exists" -> {
+            position += 2;
+            final var path = path();
+            expect(")");
+            return token.text().equals("attribute_exists")
+                ? item -> item.containsKey(path)
+                : item -> !item.containsKey(path);
+          }
+          case "begins_with", "contains", "attribute_type" -> {
+            position += 2;
+            final var subject = operand();
+            expect(",");
+            final var argument = operand();
+            expect(")");
+            return item -> function(token.text(), subject.apply(item), argument.apply(item));
+          }
+          default -> {}
+        }
+      }
+
+      final var left = operand();
+      if (acceptKeyword("BETWEEN")) {
+        final var low = operand();
+        expectKeyword("AND");
+        final var high = operand();
+        return item -> {
+          final var value = left.apply(item);
+          final var lower = low.apply(item);
+          final var upper = high.apply(item);
+          return value != null
+              && lower != null
+              && upper != null
+              && value.type() == lower.type()
+              && value.type() == upper.type()
+              && DynamoDbExpressions.compare(lower, value) <= 0
+              && DynamoDbExpressions.compare(value, upper) <= 0;
+        };
+      }
+      if (acceptKeyword("IN")) {
+        expect("(");
+        final List<Function<Map<String, AttributeValue>, AttributeValue>> candidates =
+            new ArrayList<>();
+        do {
+          candidates.add(operand());
+        } while (accept(","));
+        expect(")");
+        return item -> {
+          final var value = left.apply(item);
+          return value != null
+              && candidates.stream()
+                  .map(candidate -> candidate.apply(item))
+                  .anyMatch(candidate -> candidate != null && same(value, candidate));
+        };
+      }
+
+      final var operator = next();
+      if (operator.kind() != Kind.SYMBOL
+          || !Set.of("=", "<>", "<", "<=", ">", ">=").contains(operator.text())) {
+        throw InMemoryDynamoDb.validation("Invalid condition near '" + operator.text() + "'");
+      }
+      final var rightToken = peek();
+      final var right = operand();
+      if (operator.text().equals("=")
+          && left instanceof PathOperand path
+          && rightToken.kind() == Kind.VALUE) {
+        equalities.put(path.name(), rightToken.value());
+      }
+      return item -> compare(operator.text(), left.apply(item), right.apply(item));
+    }
+
+    private static boolean compare(String operator, AttributeValue left, AttributeValue right) {
+      if (left == null || right == null) {
+        return operator.equals("<>");
+      }
+      if (operator.equals("=")) {
+        return same(left, right);
+      }
+      if (operator.equals("<>")) {
+        return !same(left, right);
+      }
+      if (left.type() != right.type()
+          || !Set.of(AttributeValue.Type.N, AttributeValue.Type.S, AttributeValue.Type.B)
+              .contains(left.type())) {
+        return false;
+      }
+      final int order = DynamoDbExpressions.compare(left, right);
+      return switch (operator) {
+        case "<" -> order < 0;
+        case "<=" -> order <= 0;
+        case ">" -> order > 0;
+        default -> order >= 0;
+      };
+    }
+
+    private static boolean function(String name, AttributeValue subject, AttributeValue argument) {
+      if (subject == null || argument == null) {
+        return false;
+      }
+      return switch (name) {
+        case "begins_with" ->
+            subject.type() == AttributeValue.Type.S && argument.type() == AttributeValue.Type.S
+                ? subject.s().startsWith(argument.s())
+                : subject.type() == AttributeValue.Type.B
+                    && argument.type() == AttributeValue.Type.B
+                    && startsWith(
+                        subject.b().asByteArrayUnsafe(), argument.b().asByteArrayUnsafe());
+        case "contains" ->
+            switch (subject.type()) {
+              case S ->
+                  argument.type() == AttributeValue.Type.S && subject.s().contains(argument.s());
+              case SS ->
+                  argument.type() == AttributeValue.Type.S && subject.ss().contains(argument.s());
+              case NS ->
+                  argument.type() == AttributeValue.Type.N
+                      && numberSet(subject)
+                          .contains(new BigDecimal(argument.n()).stripTrailingZeros());
+              case BS ->
+                  argument.type() == AttributeValue.Type.B && subject.bs().contains(argument.b());
+              case L -> subject.l().stream().anyMatch(element -> same(element, argument));
+              default -> false;
+            };
+        default ->
+            argument.type() == AttributeValue.Type.S && typeCode(subject).equals(argument.s());
+      };
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+      return bytes.length >= prefix.length
+          && Arrays.equals(bytes, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    private static String typeCode(AttributeValue value) {
+      return value.type() == AttributeValue.Type.NUL ? "NULL" : value.type().name();
+    }
+
+    private Function<Map<String, AttributeValue>, AttributeValue> operand() {
+      final var token = peek();
+      if (token.kind() == Kind.VALUE) {
+        position++;
+        final var value = token.value();
+        return item -> value;
+      }
+      if (token.kind() == Kind.NAME
+          && token.text().equals("size")
+          && peekAt(1).text().equals("(")) {
+        position += 2;
+        final var path = path();
+        expect(")");
+        return item -> size(item.get(path));
+      }
+      return new PathOperand(path());
+    }
+
+    private static AttributeValue size(AttributeValue value) {
+      if (value == null) {
+        return null;
+      }
+      final long size =
+          switch (value.type()) {
+            case S -> value.s().getBytes(StandardCharsets.UTF_8).length;
+            case B -> value.b().asByteArrayUnsafe().length;
+            case SS -> value.ss().size();
+            case NS -> value.ns().size();
+            case BS -> value.bs().size();
+            case L -> value.l().size();
+            case M -> value.m().size();
+            default -> -1;
+          };
+      return size < 0 ? null : AttributeValue.fromN(Long.toString(size));
+    }
+
+    Set<String> update(Map<String, AttributeValue> item) {
+      final Set<String> updated = new LinkedHashSet<>();
+      final Set<String> clauses = new LinkedHashSet<>();
+      while (peek().kind() != Kind.END) {
+        final var clause = next();
+        if (clause.kind() != Kind.KEYWORD || !clauses.add(clause.text())) {
+          throw InMemoryDynamoDb.validation("Invalid update expression: " + expression);
+        }
+        do {
+          final var path = path();
+          updated.add(path);
+          switch (clause.text()) {
+            case "SET" -> {
+              expect("=");
+              final var value = setValue().apply(item);
+              if (value == null) {
+                throw InMemoryDynamoDb.validation(
+                    "The provided expression refers to an attribute that does not exist in the item");
+              }
+              item.put(path, value);
+            }
+            case "REMOVE" -> item.remove(path);
+            case "ADD" -> item.put(path, add(item.get(path), valueToken().value()));
+            case "DELETE" -> {
+              final var remaining = delete(item.get(path), valueToken().value());
+              if (remaining == null) {
+                item.remove(path);
+              } else {
+                item.put(path, remaining);
+              }
+            }
+            default ->
+                throw InMemoryDynamoDb.validation("Invalid update expression: " + expression);
+          }
+        } while (accept(","));
+      }
+      if (clauses.isEmpty()) {
+        throw InMemoryDynamoDb.validation("Empty update expression");
+      }
+      return updated;
+    }
+
+    private Function<Map<String, AttributeValue>, AttributeValue> setValue() {
+      final var left = setTerm();
+      if (accept("+")) {
+        final var right = setTerm();
+        return item -> arithmetic(left.apply(item), right.apply(item), BigDecimal::add);
+      }
+      if (accept("-")) {
+        final var right = setTerm();
+        return item -> arithmetic(left.apply(item), right.apply(item), BigDecimal::subtract);
+      }
+      return left;
+    }
+
+    private Function<Map<String, AttributeValue>, AttributeValue> setTerm() {
+      final var token = peek();
+      if (token.kind() == Kind.NAME && peekAt(1).text().equals("(")) {
+        if (token.text().equals("if_not_exists")) {
+          position += 2;
+          final var path = path();
+          expect(",");
+          final var fallback = operand();
+          expect(")");
+          return item -> item.containsKey(path) ? item.get(path) : fallback.apply(item);
+        }
+        if (token.text().equals("list_append")) {
+          position += 2;
+          final var first = operand();
+          expect(",");
+          final var second = operand();
+          expect(")");
+          return item -> {
+            final var a = first.apply(item);
+            final var b = second.apply(item);
+            if (a == null
+                || b == null
+                || a.type() != AttributeValue.Type.L
+                || b.type() != AttributeValue.Type.L) {
+              throw InMemoryDynamoDb.validation("list_append needs two lists");
+            }
+            final List<AttributeValue> joined = new ArrayList<>(a.l());
+            joined.addAll(b.l());
+            return AttributeValue.fromL(joined);
+          };
+        }
+      }
+      return operand();
+    }
+
+    private static AttributeValue arithmetic(
+        AttributeValue left, AttributeValue right, BinaryOperator<BigDecimal> operation) {
+      if (left == null
+          || right == null
+          || left.type() != AttributeValue.Type.N
+          || right.type() != AttributeValue.Type.N) {
+        throw InMemoryDynamoDb.validation(
+            "An operand in the update expression has an incorrect data type");
+      }
+      return number(operation.apply(new BigDecimal(left.n()), new BigDecimal(right.n())));
+    }
+
+    private static AttributeValue add(AttributeValue current, AttributeValue delta) {
+      if (current == null) {
+        return delta;
+      }
+      if (current.type() != delta.type()) {
+        throw InMemoryDynamoDb.validation(
+            "An operand in the update expression has an incorrect data type");
+      }
+      return switch (delta.type()) {
+        case N -> number(new BigDecimal(current.n()).add(new BigDecimal(delta.n())));
+        case SS -> {
+          final Set<String> union = new LinkedHashSet<>(current.ss());
+          union.addAll(delta.ss());
+          yield AttributeValue.fromSs(List.copyOf(union));
+        }
+        case NS -> {
+          final Set<BigDecimal> union = numberSet(current);
+          union.addAll(numberSet(delta));
+          yield AttributeValue.fromNs(union.stream().map(BigDecimal::toPlainString).toList());
+        }
+        case BS -> {
+          final Set<SdkBytes> union = new LinkedHashSet<>(current.bs());
+          union.addAll(delta.bs());
+          yield AttributeValue.fromBs(List.copyOf(union));
+        }
+        default -> throw InMemoryDynamoDb.validation("ADD only supports numbers and sets");
+      };
+    }
+
+    private static AttributeValue delete(AttributeValue current, AttributeValue removed) {
+      if (current == null) {
+        return null;
+      }
+      if (current.type() != removed.type()) {
+        throw InMemoryDynamoDb.validation(
+            "An operand in the update expression has an incorrect data type");
+      }
+      final AttributeValue remaining =
+          switch (removed.type()) {
+            case SS -> {
+              final Set<String> rest = new LinkedHashSet<>(current.ss());
+              removed.ss().forEach(rest::remove);
+              yield rest.isEmpty() ? null : AttributeValue.fromSs(List.copyOf(rest));
+            }
+            case NS -> {
+              final Set<BigDecimal> rest = numberSet(current);
+              rest.removeAll(numberSet(removed));
+              yield rest.isEmpty()
+                  ? null
+                  : AttributeValue.fromNs(rest.stream().map(BigDecimal::toPlainString).toList());
+            }
+            case BS -> {
+              final Set<SdkBytes> rest = new LinkedHashSet<>(current.bs());
+              removed.bs().forEach(rest::remove);
+              yield rest.isEmpty() ? null : AttributeValue.fromBs(List.copyOf(rest));
+            }
+            default -> throw InMemoryDynamoDb.validation("DELETE only supports sets");
+          };
+      return remaining;
+    }
+
+    String path() {
+      final var token = next();
+      if (token.kind() != Kind.NAME) {
+        throw InMemoryDynamoDb.validation("Expected an attribute name in: " + expression);
+      }
+      return token.text();
+    }
+
+    private Token valueToken() {
+      final var token = next();
+      if (token.kind() != Kind.VALUE) {
+        throw InMemoryDynamoDb.validation(
+            "Expected an expression attribute value in: " + expression);
+      }
+      return token;
+    }
+
+    boolean accept(String symbol) {
+      if (peek().kind() == Kind.SYMBOL && peek().text().equals(symbol)) {
+        position++;
+        return true;
+      }
+      return false;
+    }
+
+    private boolean acceptKeyword(String keyword) {
+      if (peek().kind() == Kind.KEYWORD && peek().text().equals(keyword)) {
+        position++;
+        return true;
+      }
+      return false;
+    }
+
+    private void expect(String symbol) {
+      if (!accept(symbol)) {
+        throw InMemoryDynamoDb.validation("Expected '" + symbol + "' in: " + expression);
+      }
+    }
+
+    private void expectKeyword(String keyword) {
+      if (!acceptKeyword(keyword)) {
+        throw InMemoryDynamoDb.validation("Expected " + keyword + " in: " + expression);
+      }
+    }
+
+    void expectEnd() {
+      if (peek().kind() != Kind.END) {
+        throw InMemoryDynamoDb.validation("Unexpected '" + peek().text() + "' in: " + expression);
+      }
+    }
+
+    private Token peek() {
+      return tokens.get(position);
+    }
+
+    private Token peekAt(int offset) {
+      return tokens.get(Math.min(position + offset, tokens.size() - 1));
+    }
+
+    private Token next() {
+      final var token = tokens.get(position);
+      if (token.kind() != Kind.END) {
+        position++;
+      }
+      return token;
+    }
+  }
+
+  private record PathOperand(String name)
+      implements Function<Map<String, AttributeValue>, AttributeValue> {
+
+    @Override
+    public AttributeValue apply(Map<String, AttributeValue> item) {
+      return item.get(name);
+    }
+  }
+}
@@ -0,0 +1,189 @@
+package hu.squarelabs.auth21.dynamodb;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.SdkField;
+import software.amazon.awssdk.core.SdkPojo;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.protocol.MarshallingType;
+import software.amazon.awssdk.core.traits.ListTrait;
+import software.amazon.awssdk.core.traits.MapTrait;
+import software.amazon.awssdk.core.util.SdkAutoConstructList;
+import software.amazon.awssdk.core.util.SdkAutoConstructMap;
+import software.amazon.awssdk.services.dynamodb.model.*;
+import software.amazon.awssdk.utils.builder.Buildable;
+
+/**
+ * Reads and writes the DynamoDB JSON wire protocol for {@link InMemoryDynamoDbHttpClient}. Rather
+ * than hand-mapping every shape, it walks the {@link SdkField} metadata the SDK generates for its
+ * model classes, the same metadata the SDK's own marshallers are driven by.
+ */
+final class DynamoDbJson {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+  private DynamoDbJson() {}
+
+  static SdkRequest readRequest(String operation, byte[] body) throws IOException {
+    final var builder = requestBuilder(operation);
+    read(MAPPER.readTree(body), builder);
+    return (SdkRequest) ((Buildable) builder).build();
+  }
+
+  static byte[] write(SdkPojo pojo) throws IOException {
+    return MAPPER.writeValueAsBytes(toJson(pojo));
+  }
+
+  /** Error body in the shape the SDK's JSON error unmarshaller expects. */
+  static byte[] writeError(AwsServiceException exception) throws IOException {
+    final var body = NODES.objectNode();
+    body.put("__type", "com.amazonaws.dynamodb.v20120810#" + errorCode(exception));
+    body.put("message", messageOf(exception));
+    if (exception instanceof TransactionCanceledException cancelled
+        && cancelled.hasCancellationReasons()) {
+      final var reasons = body.putArray("CancellationReasons");
+      cancelled.cancellationReasons().forEach(reason -> reasons.add(toJson(reason)));
+    }
+    return MAPPER.writeValueAsBytes(body);
+  }
+
+  static String errorCode(AwsServiceException exception) {
+    return exception.awsErrorDetails() != null && exception.awsErrorDetails().errorCode() != null
+        ? exception.awsErrorDetails().errorCode()
+        : exception.getClass().getSimpleName();
+  }
+
+  /** The message without the details {@link AwsServiceException#getMessage()} appends. */
+  private static String messageOf(AwsServiceException exception) {
+    final var message = exception.getMessage();
+    final int details = message != null ? message.indexOf(" (Service:") : -1;
+    return details >= 0 ? message.substring(0, details) : message;
+  }
+
+  private static SdkPojo requestBuilder(String operation) {
+    final Supplier<SdkPojo> builder =
+        switch (operation) {
+          case "CreateTable" -> CreateTableRequest::builder;
+          case "DeleteTable" -> DeleteTableRequest::builder;
+          case "DescribeTable" -> DescribeTableRequest::builder;
+          case "UpdateTimeToLive" -> UpdateTimeToLiveRequest::builder;
+          case "DescribeTimeToLive" -> DescribeTimeToLiveRequest::builder;
+          case "GetItem" -> GetItemRequest::builder;
+          case "PutItem" -> PutItemRequest::builder;
+          case "UpdateItem" -> UpdateItemRequest::builder;
+          case "DeleteItem" -> DeleteItemRequest::builder;
+          case "Query" -> QueryRequest::builder;
+          case "Scan" -> ScanRequest::builder;
+          case "BatchGetItem" -> BatchGetItemRequest::builder;
+          case "BatchWriteItem" -> BatchWriteItemRequest::builder;
+          case "TransactGetItems" -> TransactGetItemsRequest::builder;
+          case "TransactWriteItems" -> TransactWriteItemsRequest::builder;
+          default ->
+              throw InMemoryDynamoDb.validation(
+                  operation + " is not supported by the in-memory stand-in");
+        };
+    return builder.get();
+  }
+
+  private static void read(JsonNode node, SdkPojo builder) {
+    for (SdkField<?> field : builder.sdkFields()) {
+      final var value = node.get(field.locationName());
+      if (value != null && !value.isNull()) {
+        field.set(builder, fromJson(value, field));
+      }
+    }
+  }
+
+  private static Object fromJson(JsonNode node, SdkField<?> field) {
+    final MarshallingType<?> type = field.marshallingType();
+    if (type == MarshallingType.STRING) {
+      return node.asText();
+    } else if (type == MarshallingType.BOOLEAN) {
+      return node.asBoolean();
+    } else if (type == MarshallingType.INTEGER) {
+      return node.asInt();
+    } else if (type == MarshallingType.LONG) {
+      return node.asLong();
+    } else if (type == MarshallingType.DOUBLE) {
+      return node.asDouble();
+    } else if (type == MarshallingType.INSTANT) {
+      return Instant.ofEpochMilli(node.decimalValue().movePointRight(3).longValue());
+    } else if (type == MarshallingType.SDK_BYTES) {
+      return SdkBytes.fromByteArray(Base64.getDecoder().decode(node.asText()));
+    } else if (type == MarshallingType.SDK_POJO) {
+      final var builder = field.constructor().get();
+      read(node, builder);
+      return ((Buildable) builder).build();
+    } else if (type == MarshallingType.LIST) {
+      final SdkField<?> member = field.getTrait(ListTrait.class).memberFieldInfo();
+      final List<Object> list = new ArrayList<>();
+      node.forEach(element -> list.add(element.isNull() ? null : fromJson(element, member)));
+      return list;
+    } else if (type == MarshallingType.MAP) {
+      final SdkField<?> member = field.getTrait(MapTrait.class).valueFieldInfo();
+      final Map<String, Object> map = new LinkedHashMap<>();
+      node.properties()
+          .forEach(entry -> map.put(entry.getKey(), fromJson(entry.getValue(), member)));
+      return map;
+    }
+    throw InMemoryDynamoDb.validation("Unsupported field type for " + field.memberName());
+  }
+
+  private static ObjectNode toJson(SdkPojo pojo) {
+    final var node = NODES.objectNode();
+    for (SdkField<?> field : pojo.sdkFields()) {
+      final var value = field.getValueOrDefault(pojo);
+      if (value != null
+          && !(value instanceof SdkAutoConstructList)
+          && !(value instanceof SdkAutoConstructMap)) {
+        node.set(field.locationName(), toJson(value, field));
+      }
+    }
+    return node;
+  }
+
+  private static JsonNode toJson(Object value, SdkField<?> field) {
+    final MarshallingType<?> type = field.marshallingType();
+    if (type == MarshallingType.SDK_POJO) {
+      return toJson((SdkPojo) value);
+    } else if (type == MarshallingType.LIST) {
+      final SdkField<?> member = field.getTrait(ListTrait.class).memberFieldInfo();
+      final ArrayNode array = NODES.arrayNode();
+      ((List<?>) value).forEach(element -> array.add(toJson(element, member)));
+      return array;
+    } else if (type == MarshallingType.MAP) {
+      final SdkField<?> member = field.getTrait(MapTrait.class).valueFieldInfo();
+      final ObjectNode object = NODES.objectNode();
+      ((Map<?, ?>) value)
+          .forEach((key, element) -> object.set((String) key, toJson(element, member)));
+      return object;
+    } else if (type == MarshallingType.SDK_BYTES) {
+      return NODES.textNode(Base64.getEncoder().encodeToString(((SdkBytes) value).asByteArray()));
+    } else if (type == MarshallingType.INSTANT) {
+      return NODES.numberNode(BigDecimal.valueOf(((Instant) value).toEpochMilli(), 3));
+    } else if (value instanceof Boolean bool) {
+      return NODES.booleanNode(bool);
+    } else if (value instanceof Integer number) {
+      return NODES.numberNode(number);
+    } else if (value instanceof Long number) {
+      return NODES.numberNode(number);
+    } else if (value instanceof Double number) {
+      return NODES.numberNode(number);
+    }
+    return NODES.textNode(value.toString());
+  }
+}
@@ -0,0 +1,1096 @@
+package hu.squarelabs.auth21.dynamodb;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.SdkResponse;
+import software.amazon.awssdk.enhanced.dynamodb.IndexMetadata;
+import software.amazon.awssdk.enhanced.dynamodb.TableMetadata;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.model.*;
+
+/**
+ * Single-process DynamoDB table store for running the service without AWS. It executes the requests
+ * an {@link InMemoryDynamoDbHttpClient} decodes off the wire, so callers use a regular {@code
+ * DynamoDbClient} with its retries, interceptors and metrics intact.
+ *
+ * <p>Supported are table creation and description, time-to-live settings, the item operations,
+ * queries and scans on the table and its secondary indexes with pagination, and the batch and
+ * transactional calls, with condition, filter, update and projection expressions. Items are kept
+ * per partition, sorted by sort key, and every index keeps its own sorted view, so queries cost
+ * what they would in DynamoDB rather than a table scan. All calls are serialised on one lock, which
+ * makes transactions trivially atomic; calls take microseconds, and latency is injected outside the
+ * lock.
+ *
+ * <p>Consumed capacity is reported when requested, computed with DynamoDB's published sizing rules:
+ * reads in 4 KB units, halved for eventually consistent reads, and writes in 1 KB units, doubled
+ * for transactions, plus a write for every index an item enters or leaves. The figures are
+ * estimates, but good enough to compare the cost of access patterns offline.
+ */
+public class InMemoryDynamoDb {
+  private static final String PRIMARY = TableMetadata.primaryIndexName();
+
+  private final Map<String, Table> tables = new ConcurrentHashMap<>();
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /** Creates {@code tableName} with the keys and secondary indexes declared by {@code schema}. */
+  public void createTable(String tableName, TableSchema<?> schema) {
+    final var metadata = schema.tableMetadata();
+    final var request =
+        CreateTableRequest.builder()
+            .tableName(tableName)
+            .keySchema(
+                keySchema(metadata.primaryPartitionKey(), metadata.primarySortKey().orElse(null)));
+    final List<GlobalSecondaryIndex> indexes = new ArrayList<>();
+    for (IndexMetadata index : metadata.indices()) {
+      final var partitionKeys = index.partitionKeys();
+      final var sortKeys = index.sortKeys();
+      if (index.name().equals(PRIMARY) || partitionKeys.isEmpty()) {
+        continue;
+      }
+      if (partitionKeys.size() > 1 || sortKeys.size() > 1) {
+        throw unsupported("Index " + index.name() + " with multi-attribute keys");
+      }
+      indexes.add(
+          GlobalSecondaryIndex.builder()
+              .indexName(index.name())
+              .keySchema(
+                  keySchema(
+                      partitionKeys.get(0).name(),
+                      sortKeys.isEmpty() ? null : sortKeys.get(0).name()))
+              .projection(Projection.builder().projectionType(ProjectionType.ALL).build())
+              .build());
+    }
+    if (!indexes.isEmpty()) {
+      request.globalSecondaryIndexes(indexes);
+    }
+    createTable(request.build());
+  }
+
+  public CreateTableResponse createTable(CreateTableRequest request) {
+    final var table = new Table(request);
+    if (tables.putIfAbsent(request.tableName(), table) != null) {
+      throw (ResourceInUseException)
+          ResourceInUseException.builder()
+              .message("Table already exists: " + request.tableName())
+              .build();
+    }
+    return CreateTableResponse.builder().tableDescription(table.describe()).build();
+  }
+
+  public DeleteTableResponse deleteTable(DeleteTableRequest request) {
+    final var table = table(request.tableName());
+    tables.remove(request.tableName());
+    return DeleteTableResponse.builder().tableDescription(table.describe()).build();
+  }
+
+  public DescribeTableResponse describeTable(DescribeTableRequest request) {
+    return DescribeTableResponse.builder().table(table(request.tableName()).describe()).build();
+  }
+
+  /**
+   * Records the table's time-to-live attribute. Expired items are not deleted, which is within what
+   * DynamoDB promises: it purges them in the background, typically days later.
+   */
+  public UpdateTimeToLiveResponse updateTimeToLive(UpdateTimeToLiveRequest request) {
+    final var table = table(request.tableName());
+    final var specification = request.timeToLiveSpecification();
+    final boolean enable = Boolean.TRUE.equals(specification.enabled());
+    if (enable == (table.timeToLiveAttribute != null)) {
+      throw validation("TimeToLive is already " + (enable ? "enabled" : "disabled"));
+    }
+    table.timeToLiveAttribute = enable ? specification.attributeName() : null;
+    return UpdateTimeToLiveResponse.builder().timeToLiveSpecification(specification).build();
+  }
+
+  public DescribeTimeToLiveResponse describeTimeToLive(DescribeTimeToLiveRequest request) {
+    final var attribute = table(request.tableName()).timeToLiveAttribute;
+    return DescribeTimeToLiveResponse.builder()
+        .timeToLiveDescription(
+            TimeToLiveDescription.builder()
+                .attributeName(attribute)
+                .timeToLiveStatus(
+                    attribute != null ? TimeToLiveStatus.ENABLED : TimeToLiveStatus.DISABLED)
+                .build())
+        .build();
+  }
+
+  /** Runs {@code request}, which must be the request type of {@code operation}. */
+  public SdkResponse execute(String operation, SdkRequest request) {
+    return switch (operation) {
+      case "CreateTable" -> createTable((CreateTableRequest) request);
+      case "DeleteTable" -> deleteTable((DeleteTableRequest) request);
+      case "DescribeTable" -> describeTable((DescribeTableRequest) request);
+      case "UpdateTimeToLive" -> updateTimeToLive((UpdateTimeToLiveRequest) request);
+      case "DescribeTimeToLive" -> describeTimeToLive((DescribeTimeToLiveRequest) request);
+      case "GetItem" -> getItem((GetItemRequest) request);
+      case "PutItem" -> putItem((PutItemRequest) request);
+      case "UpdateItem" -> updateItem((UpdateItemRequest) request);
+      case "DeleteItem" -> deleteItem((DeleteItemRequest) request);
+      case "Query" -> query((QueryRequest) request);
+      case "Scan" -> scan((ScanRequest) request);
+      case "BatchGetItem" -> batchGetItem((BatchGetItemRequest) request);
+      case "BatchWriteItem" -> batchWriteItem((BatchWriteItemRequest) request);
+      case "TransactGetItems" -> transactGetItems((TransactGetItemsRequest) request);
+      case "TransactWriteItems" -> transactWriteItems((TransactWriteItemsRequest) request);
+      default -> throw unsupported(operation);
+    };
+  }
+
+  public GetItemResponse getItem(GetItemRequest request) {
+    final var table = table(request.tableName());
+    lock.lock();
+    try {
+      final var item = table.get(request.key());
+      final var response =
+          GetItemResponse.builder()
+              .consumedCapacity(
+                  table.readCapacity(
+                      request.returnConsumedCapacity(),
+                      PRIMARY,
+                      readUnits(size(item), Boolean.TRUE.equals(request.consistentRead()))));
+      if (item != null) {
+        response.item(
+            project(item, request.projectionExpression(), request.expressionAttributeNames()));
+      }
+      return response.build();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public PutItemResponse putItem(PutItemRequest request) {
+    final var table = table(request.tableName());
+    lock.lock();
+    try {
+      final var key = table.keyOf(request.item());
+      final var old = table.get(key);
+      check(
+          request.conditionExpression(),
+          request.expressionAttributeNames(),
+          request.expressionAttributeValues(),
+          old);
+      final var capacity = table.put(request.item(), old, 1);
+      final var response =
+          PutItemResponse.builder()
+              .consumedCapacity(table.writeCapacity(request.returnConsumedCapacity(), capacity));
+      if (request.returnValues() == ReturnValue.ALL_OLD && old != null) {
+        response.attributes(old);
+      }
+      return response.build();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public DeleteItemResponse deleteItem(DeleteItemRequest request) {
+    final var table = table(request.tableName());
+    lock.lock();
+    try {
+      final var old = table.get(request.key());
+      check(
+          request.conditionExpression(),
+          request.expressionAttributeNames(),
+          request.expressionAttributeValues(),
+          old);
+      final var capacity = table.delete(request.key(), old, 1);
+      final var response =
+          DeleteItemResponse.builder()
+              .consumedCapacity(table.writeCapacity(request.returnConsumedCapacity(), capacity));
+      if (request.returnValues() == ReturnValue.ALL_OLD && old != null) {
+        response.attributes(old);
+      }
+      return response.build();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public UpdateItemResponse updateItem(UpdateItemRequest request) {
+    if (request.hasAttributeUpdates()) {
+      throw unsupported("UpdateItem with AttributeUpdates");
+    }
+    final var table = table(request.tableName());
+    lock.lock();
+    try {
+      final var old = table.get(request.key());
+      check(
+          request.conditionExpression(),
+          request.expressionAttributeNames(),
+          request.expressionAttributeValues(),
+          old);
+      final Map<String, AttributeValue> item =
+          old != null ? new HashMap<>(old) : new HashMap<>(request.key());
+      final var updated =
+          request.updateExpression() != null
+              ? DynamoDbExpressions.update(
+                  request.updateExpression(),
+                  request.expressionAttributeNames(),
+                  request.expressionAttributeValues(),
+                  item)
+              : Set.<String>of();
+      if (!table.keyOf(item).equals(table.keyOf(request.key()))) {
+        throw validation(
+            "Cannot update attribute " + updated + ". This attribute is part of the key");
+      }
+      final var capacity = table.put(item, old, 1);
+
+      final var response =
+          UpdateItemResponse.builder()
+              .consumedCapacity(table.writeCapacity(request.returnConsumedCapacity(), capacity));
+      final var returnValues =
+          request.returnValues() != null ? request.returnValues() : ReturnValue.NONE;
+      switch (returnValues) {
+        case ALL_NEW -> response.attributes(item);
+        case ALL_OLD -> response.attributes(old);
+        case UPDATED_NEW -> response.attributes(select(item, updated));
+        case UPDATED_OLD -> response.attributes(old != null ? select(old, updated) : null);
+        default -> {}
+      }
+      return response.build();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public QueryResponse query(QueryRequest request) {
+    final var table = table(request.tableName());
+    final var index = table.index(request.indexName());
+    final var condition =
+        DynamoDbExpressions.keyCondition(
+            request.keyConditionExpression(),
+            request.expressionAttributeNames(),
+            request.expressionAttributeValues());
+    final var partitionKey = condition.equalities().get(index.partitionKey);
+    if (partitionKey == null) {
+      throw validation("Query condition missed key schema element: " + index.partitionKey);
+    }
+
+    lock.lock();
+    try {
+      NavigableMap<SortKey, Map<String, AttributeValue>> partition =
+          index.items.getOrDefault(normalize(partitionKey), Collections.emptyNavigableMap());
+      if (Boolean.FALSE.equals(request.scanIndexForward())) {
+        partition = partition.descendingMap();
+      }
+      if (request.hasExclusiveStartKey()) {
+        partition = partition.tailMap(index.sortKeyOf(request.exclusiveStartKey()), false);
+      }
+      final var page =
+          page(
+              table,
+              index,
+              partition.values().iterator(),
+              condition.predicate(),
+              request.filterExpression(),
+              request.expressionAttributeNames(),
+              request.expressionAttributeValues(),
+              request.limit(),
+              request.projectionExpression(),
+              Boolean.TRUE.equals(request.consistentRead()),
+              request.returnConsumedCapacity());
+      final var response =
+          QueryResponse.builder()
+              .count(page.items().size())
+              .scannedCount(page.scanned())
+              .lastEvaluatedKey(page.lastEvaluatedKey())
+              .consumedCapacity(page.capacity());
+      if (request.select() != Select.COUNT) {
+        response.items(page.items());
+      }
+      return response.build();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public ScanResponse scan(ScanRequest request) {
+    final var table = table(request.tableName());
+    final var index = table.index(request.indexName());
+    final int segments = request.totalSegments() != null ? request.totalSegments() : 1;
+    final int segment = request.segment() != null ? request.segment() : 0;
+
+    lock.lock();
+    try {
+      final List<Map<String, AttributeValue>> items = new ArrayList<>();
+      NavigableMap<AttributeValue, NavigableMap<SortKey, Map<String, AttributeValue>>> partitions =
+          index.items;
+      if (request.hasExclusiveStartKey()) {
+        final var start = request.exclusiveStartKey();
+        final var startPartition = normalize(start.get(index.partitionKey));
+        final var first = index.items.get(startPartition);
+        partitions = index.items.tailMap(startPartition, false);
+        if (first != null) {
+          items.addAll(first.tailMap(index.sortKeyOf(start), false).values());
+        }
+      }
+      partitions.forEach(
+          (partitionKey, partition) -> {
+            if (Math.floorMod(partitionKey.hashCode(), segments) == segment) {
+              items.addAll(partition.values());
+            }
+          });
+      final var page =
+          page(
+              table,
+              index,
+              items.iterator(),
+              item -> true,
+              request.filterExpression(),
+              request.expressionAttributeNames(),
+              request.expressionAttributeValues(),
+              request.limit(),
+              request.projectionExpression(),
+              Boolean.TRUE.equals(request.consistentRead()),
+              request.returnConsumedCapacity());
+      final var response =
+          ScanResponse.builder()
+              .count(page.items().size())
+              .scannedCount(page.scanned())
+              .lastEvaluatedKey(page.lastEvaluatedKey())
+              .consumedCapacity(page.capacity());
+      if (request.select() != Select.COUNT) {
+        response.items(page.items());
+      }
+      return response.build();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public BatchGetItemResponse batchGetItem(BatchGetItemRequest request) {
+    final int keys = request.requestItems().values().stream().mapToInt(r -> r.keys().size()).sum();
+    if (keys > 100) {
+      throw validation("Too many items requested for the BatchGetItem call");
+    }
+
+    lock.lock();
+    try {
+      final Map<String, List<Map<String, AttributeValue>>> responses = new HashMap<>();
+      final List<ConsumedCapacity> capacities = new ArrayList<>();
+      request
+          .requestItems()
+          .forEach(
+              (tableName, keysAndAttributes) -> {
+                final var table = table(tableName);
+                final List<Map<String, AttributeValue>> found = new ArrayList<>();
+                double units = 0;
+                for (Map<String, AttributeValue> key : keysAndAttributes.keys()) {
+                  final var item = table.get(key);
+                  units +=
+                      readUnits(
+                          size(item), Boolean.TRUE.equals(keysAndAttributes.consistentRead()));
+                  if (item != null) {
+                    found.add(
+                        project(
+                            item,
+                            keysAndAttributes.projectionExpression(),
+                            keysAndAttributes.expressionAttributeNames()));
+                  }
+                }
+                responses.put(tableName, found);
+                addIfPresent(
+                    capacities,
+                    table.readCapacity(request.returnConsumedCapacity(), PRIMARY, units));
+              });
+      final var response =
+          BatchGetItemResponse.builder().responses(responses).unprocessedKeys(Map.of());
+      if (!capacities.isEmpty()) {
+        response.consumedCapacity(capacities);
+      }
+      return response.build();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public BatchWriteItemResponse batchWriteItem(BatchWriteItemRequest request) {
+    final int writes = request.requestItems().values().stream().mapToInt(List::size).sum();
+    if (writes > 25) {
+      throw validation("Too many items requested for the BatchWriteItem call");
+    }
+
+    lock.lock();
+    try {
+      final List<ConsumedCapacity> capacities = new ArrayList<>();
+      request
+          .requestItems()
+          .forEach(
+              (tableName, requests) -> {
+                final var table = table(tableName);
+                final Map<String, Double> capacity = new HashMap<>();
+                for (WriteRequest write : requests) {
+                  if (write.putRequest() != null) {
+                    final var item = write.putRequest().item();
+                    merge(capacity, table.put(item, table.get(table.keyOf(item)), 1));
+                  } else if (write.deleteRequest() != null) {
+                    final var key = write.deleteRequest().key();
+                    merge(capacity, table.delete(key, table.get(key), 1));
+                  }
+                }
+                addIfPresent(
+                    capacities, table.writeCapacity(request.returnConsumedCapacity(), capacity));
+              });
+      final var response = BatchWriteItemResponse.builder().unprocessedItems(Map.of());
+      if (!capacities.isEmpty()) {
+        response.consumedCapacity(capacities);
+      }
+      return response.build();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public TransactGetItemsResponse transactGetItems(TransactGetItemsRequest request) {
+    lock.lock();
+    try {
+      final List<ItemResponse> responses = new ArrayList<>();
+      final Map<String, Double> units = new LinkedHashMap<>();
+      for (TransactGetItem transactItem : request.transactItems()) {
+        final var get = transactItem.get();
+        final var table = table(get.tableName());
+        final var item = table.get(get.key());
+        units.merge(get.tableName(), 2 * readUnits(size(item), true), Double::sum);
+        responses.add(
+            ItemResponse.builder()
+                .item(
+                    item != null
+                        ? project(item, get.projectionExpression(), get.expressionAttributeNames())
+                        : null)
+                .build());
+      }
+      final List<ConsumedCapacity> capacities = new ArrayList<>();
+      units.forEach(
+          (tableName, total) ->
+              addIfPresent(
+                  capacities,
+                  table(tableName).readCapacity(request.returnConsumedCapacity(), PRIMARY, total)));
+      final var response = TransactGetItemsResponse.builder().responses(responses);
+      if (!capacities.isEmpty()) {
+        response.consumedCapacity(capacities);
+      }
+      return response.build();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public TransactWriteItemsResponse transactWriteItems(TransactWriteItemsRequest request) {
+    if (request.transactItems().size() > 100) {
+      throw validation("Member must have length less than or equal to 100");
+    }
+
+    lock.lock();
+    try {
+      final Set<String> touched = new HashSet<>();
+      final List<CancellationReason> reasons = new ArrayList<>();
+      boolean cancelled = false;
+      for (TransactWriteItem transactItem : request.transactItems()) {
+        final var write = TransactWrite.of(transactItem);
+        final var table = table(write.tableName());
+        if (!touched.add(write.tableName() + '/' + table.keyOf(write.key()))) {
+          throw validation("Transaction request cannot include multiple operations on one item");
+        }
+        final var current = table.get(write.key());
+        final boolean passed =
+            DynamoDbExpressions.condition(write.condition(), write.names(), write.values())
+                .test(current != null ? current : Map.of());
+        cancelled |= !passed;
+        reasons.add(
+            CancellationReason.builder()
+                .code(passed ? "None" : "ConditionalCheckFailed")
+                .message(passed ? null : "The conditional request failed")
+                .build());
+      }
+      if (cancelled) {
+        throw (TransactionCanceledException)
+            TransactionCanceledException.builder()
+                .message(
+                    "Transaction cancelled, please refer cancellation reasons for specific reasons "
+                        + reasons.stream().map(CancellationReason::code).toList())
+                .cancellationReasons(reasons)
+                .awsErrorDetails(
+                    AwsErrorDetails.builder().errorCode("TransactionCanceledException").build())
+                .statusCode(400)
+                .build();
+      }
+
+      final Map<String, Map<String, Double>> capacities = new LinkedHashMap<>();
+      for (TransactWriteItem transactItem : request.transactItems()) {
+        final var write = TransactWrite.of(transactItem);
+        final var table = table(write.tableName());
+        final var current = table.get(write.key());
+        final var capacity = capacities.computeIfAbsent(write.tableName(), t -> new HashMap<>());
+        if (transactItem.put() != null) {
+          merge(capacity, table.put(transactItem.put().item(), current, 2));
+        } else if (transactItem.delete() != null) {
+          merge(capacity, table.delete(write.key(), current, 2));
+        } else if (transactItem.update() != null) {
+          final Map<String, AttributeValue> item =
+              current != null ? new HashMap<>(current) : new HashMap<>(write.key());
+          DynamoDbExpressions.update(
+              transactItem.update().updateExpression(), write.names(), write.values(), item);
+          merge(capacity, table.put(item, current, 2));
+        } else {
+          capacity.merge(PRIMARY, 2 * readUnits(size(current), true), Double::sum);
+        }
+      }
+
+      final List<ConsumedCapacity> consumed = new ArrayList<>();
+      capacities.forEach(
+          (tableName, capacity) ->
+              addIfPresent(
+                  consumed,
+                  table(tableName).writeCapacity(request.returnConsumedCapacity(), capacity)));
+      final var response = TransactWriteItemsResponse.builder();
+      if (!consumed.isEmpty()) {
+        response.consumedCapacity(consumed);
+      }
+      return response.build();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  static DynamoDbException validation(String message) {
+    return (DynamoDbException)
+        DynamoDbException.builder()
+            .message(message)
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode("ValidationException").build())
+            .statusCode(400)
+            .build();
+  }
+
+  private static DynamoDbException unsupported(String operation) {
+    return validation(operation + " is not supported by the in-memory stand-in");
+  }
+
+  /** One page of a query or scan. */
+  private record Page(
+      List<Map<String, AttributeValue>> items,
+      int scanned,
+      Map<String, AttributeValue> lastEvaluatedKey,
+      ConsumedCapacity capacity) {}
+
+  private Page page(
+      Table table,
+      Index index,
+      Iterator<Map<String, AttributeValue>> candidates,
+      Predicate<Map<String, AttributeValue>> keyCondition,
+      String filterExpression,
+      Map<String, String> names,
+      Map<String, AttributeValue> values,
+      Integer limit,
+      String projectionExpression,
+      boolean consistentRead,
+      ReturnConsumedCapacity returnConsumedCapacity) {
+    final var filter = DynamoDbExpressions.condition(filterExpression, names, values);
+    final List<Map<String, AttributeValue>> items = new ArrayList<>();
+    int scanned = 0;
+    long bytes = 0;
+    Map<String, AttributeValue> last = null;
+    while (candidates.hasNext() && (limit == null || scanned < limit)) {
+      final var item = candidates.next();
+      if (!keyCondition.test(item)) {
+        continue;
+      }
+      scanned++;
+      bytes += size(item);
+      last = item;
+      if (filter.test(item)) {
+        items.add(project(index.project(item), projectionExpression, names));
+      }
+    }
+
+    return new Page(
+        items,
+        scanned,
+        last != null && candidates.hasNext() ? index.keyAttributes(last, table) : null,
+        table.readCapacity(returnConsumedCapacity, index.name, readUnits(bytes, consistentRead)));
+  }
+
+  private static void check(
+      String condition,
+      Map<String, String> names,
+      Map<String, AttributeValue> values,
+      Map<String, AttributeValue> current) {
+    if (!DynamoDbExpressions.condition(condition, names, values)
+        .test(current != null ? current : Map.of())) {
+      throw (ConditionalCheckFailedException)
+          ConditionalCheckFailedException.builder()
+              .message("The conditional request failed")
+              .awsErrorDetails(
+                  AwsErrorDetails.builder().errorCode("ConditionalCheckFailedException").build())
+              .statusCode(400)
+              .build();
+    }
+  }
+
+  private Table table(String name) {
+    final var table = name != null ? tables.get(name) : null;
+    if (table == null) {
+      throw (ResourceNotFoundException)
+          ResourceNotFoundException.builder()
+              .message("Requested resource not found: Table: " + name + " not found")
+              .awsErrorDetails(
+                  AwsErrorDetails.builder().errorCode("ResourceNotFoundException").build())
+              .statusCode(400)
+              .build();
+    }
+    return table;
+  }
+
+  private static Map<String, AttributeValue> project(
+      Map<String, AttributeValue> item, String projectionExpression, Map<String, String> names) {
+    if (projectionExpression == null || projectionExpression.isBlank()) {
+      return item;
+    }
+    return select(item, DynamoDbExpressions.projection(projectionExpression, names));
+  }
+
+  private static Map<String, AttributeValue> select(
+      Map<String, AttributeValue> item, Iterable<String> attributes) {
+    final Map<String, AttributeValue> selected = new HashMap<>();
+    for (String attribute : attributes) {
+      final var value = item.get(attribute);
+      if (value != null) {
+        selected.put(attribute, value);
+      }
+    }
+    return selected;
+  }
+
+  private static List<KeySchemaElement> keySchema(String partitionKey, String sortKey) {
+    final List<KeySchemaElement> keys = new ArrayList<>();
+    keys.add(KeySchemaElement.builder().attributeName(partitionKey).keyType(KeyType.HASH).build());
+    if (sortKey != null) {
+      keys.add(KeySchemaElement.builder().attributeName(sortKey).keyType(KeyType.RANGE).build());
+    }
+    return keys;
+  }
+
+  private static void merge(Map<String, Double> total, Map<String, Double> units) {
+    units.forEach((index, value) -> total.merge(index, value, Double::sum));
+  }
+
+  private static void addIfPresent(List<ConsumedCapacity> capacities, ConsumedCapacity capacity) {
+    if (capacity != null) {
+      capacities.add(capacity);
+    }
+  }
+
+  /** Numbers are compared by value, so keys are stored in one canonical spelling. */
+  private static AttributeValue normalize(AttributeValue value) {
+    if (value != null && value.type() == AttributeValue.Type.N) {
+      return AttributeValue.fromN(new BigDecimal(value.n()).stripTrailingZeros().toPlainString());
+    }
+    return value;
+  }
+
+  private static double readUnits(long bytes, boolean consistentRead) {
+    final double units = Math.max(1, Math.ceil(bytes / 4096.0));
+    return consistentRead ? units : units / 2;
+  }
+
+  private static double writeUnits(long bytes) {
+    return Math.max(1, Math.ceil(bytes / 1024.0));
+  }
+
+  /** Item size as DynamoDB bills it: attribute names plus values. */
+  static long size(Map<String, AttributeValue> item) {
+    if (item == null) {
+      return 0;
+    }
+    long size = 0;
+    for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+      size +=
+          attribute.getKey().getBytes(StandardCharsets.UTF_8).length + size(attribute.getValue());
+    }
+    return size;
+  }
+
+  private static long size(AttributeValue value) {
+    return switch (value.type()) {
+      case S -> value.s().getBytes(StandardCharsets.UTF_8).length;
+      case N -> 1 + (value.n().length() + 1) / 2;
+      case B -> value.b().asByteArrayUnsafe().length;
+      case SS ->
+          value.ss().stream().mapToLong(s -> s.getBytes(StandardCharsets.UTF_8).length).sum();
+      case NS -> value.ns().stream().mapToLong(n -> 1 + (n.length() + 1) / 2).sum();
+      case BS -> value.bs().stream().mapToLong(b -> b.asByteArrayUnsafe().length).sum();
+      case L -> 3 + value.l().stream().mapToLong(element -> 1 + size(element)).sum();
+      case M ->
+          3
+              + value.m().entrySet().stream()
+                  .mapToLong(
+                      entry ->
+                          1
+                              + entry.getKey().getBytes(StandardCharsets.UTF_8).length
+                              + size(entry.getValue()))
+                  .sum();
+      default -> 1;
+    };
+  }
+
+  /** The target of one transactional write, whichever kind it is. */
+  private record TransactWrite(
+      String tableName,
+      Map<String, AttributeValue> key,
+      String condition,
+      Map<String, String> names,
+      Map<String, AttributeValue> values) {
+
+    static TransactWrite of(TransactWriteItem item) {
+      if (item.put() != null) {
+        final var put = item.put();
+        return new TransactWrite(
+            put.tableName(),
+            put.item(),
+            put.conditionExpression(),
+            put.expressionAttributeNames(),
+            put.expressionAttributeValues());
+      }
+      if (item.delete() != null) {
+        final var delete = item.delete();
+        return new TransactWrite(
+            delete.tableName(),
+            delete.key(),
+            delete.conditionExpression(),
+            delete.expressionAttributeNames(),
+            delete.expressionAttributeValues());
+      }
+      if (item.update() != null) {
+        final var update = item.update();
+        return new TransactWrite(
+            update.tableName(),
+            update.key(),
+            update.conditionExpression(),
+            update.expressionAttributeNames(),
+            update.expressionAttributeValues());
+      }
+      final var check = item.conditionCheck();
+      return new TransactWrite(
+          check.tableName(),
+          check.key(),
+          check.conditionExpression(),
+          check.expressionAttributeNames(),
+          check.expressionAttributeValues());
+    }
+  }
+
+  /**
+   * Position of an item within a partition: its sort key, followed by the table key for indexes,
+   * where several items can share an index key.
+   */
+  private record SortKey(List<AttributeValue> values) implements Comparable<SortKey> {
+
+    @Override
+    public int compareTo(SortKey other) {
+      for (int i = 0; i < values.size(); i++) {
+        final int order = DynamoDbExpressions.compare(values.get(i), other.values.get(i));
+        if (order != 0) {
+          return order;
+        }
+      }
+      return 0;
+    }
+  }
+
+  /** The table itself or one of its secondary indexes, with items grouped by partition key. */
+  private static final class Index {
+    final String name;
+    final String partitionKey;
+    final String sortKey;
+    final boolean local;
+    final Projection projection;
+    final TreeMap<AttributeValue, NavigableMap<SortKey, Map<String, AttributeValue>>> items =
+        new TreeMap<>(DynamoDbExpressions::compare);
+    private Index primary;
+
+    Index(String name, List<KeySchemaElement> keySchema, Projection projection, boolean local) {
+      this.name = name;
+      this.partitionKey = keyName(keySchema, KeyType.HASH);
+      this.sortKey = keyName(keySchema, KeyType.RANGE);
+      this.projection = projection;
+      this.local = local;
+    }
+
+    private static String keyName(List<KeySchemaElement> keySchema, KeyType type) {
+      return keySchema.stream()
+          .filter(key -> key.keyType() == type)
+          .map(KeySchemaElement::attributeName)
+          .findFirst()
+          .orElse(null);
+    }
+
+    boolean isPrimary() {
+      return primary == null;
+    }
+
+    boolean contains(Map<String, AttributeValue> item) {
+      return item != null
+          && item.containsKey(partitionKey)
+          && (sortKey == null || item.containsKey(sortKey));
+    }
+
+    SortKey sortKeyOf(Map<String, AttributeValue> item) {
+      final List<AttributeValue> values = new ArrayList<>(3);
+      if (sortKey != null) {
+        values.add(normalize(item.get(sortKey)));
+      }
+      if (!isPrimary()) {
+        values.add(normalize(item.get(primary.partitionKey)));
+        if (primary.sortKey != null) {
+          values.add(normalize(item.get(primary.sortKey)));
+        }
+      }
+      return new SortKey(values);
+    }
+
+    void add(Map<String, AttributeValue> item) {
+      items
+          .computeIfAbsent(normalize(item.get(partitionKey)), k -> new TreeMap<>())
+          .put(sortKeyOf(item), item);
+    }
+
+    void remove(Map<String, AttributeValue> item) {
+      final var partitionValue = normalize(item.get(partitionKey));
+      final var partition = items.get(partitionValue);
+      if (partition != null) {
+        partition.remove(sortKeyOf(item));
+        if (partition.isEmpty()) {
+          items.remove(partitionValue);
+        }
+      }
+    }
+
+    Map<String, AttributeValue> keyAttributes(Map<String, AttributeValue> item, Table table) {
+      final Set<String> names = new HashSet<>(table.primary.keyNames());
+      names.addAll(keyNames());
+      return select(item, names);
+    }
+
+    List<String> keyNames() {
+      return sortKey != null ? List.of(partitionKey, sortKey) : List.of(partitionKey);
+    }
+
+    Map<String, AttributeValue> project(Map<String, AttributeValue> item) {
+      if (isPrimary() || projection == null || projection.projectionType() == ProjectionType.ALL) {
+        return item;
+      }
+      final Set<String> attributes = new HashSet<>(primary.keyNames());
+      attributes.addAll(keyNames());
+      if (projection.projectionType() == ProjectionType.INCLUDE
+          && projection.hasNonKeyAttributes()) {
+        attributes.addAll(projection.nonKeyAttributes());
+      }
+      return select(item, attributes);
+    }
+  }
+
+  private static final class Table {
+    final CreateTableRequest definition;
+    final Index primary;
+    final Map<String, Index> indexes = new LinkedHashMap<>();
+    volatile String timeToLiveAttribute;
+
+    Table(CreateTableRequest definition) {
+      this.definition = definition;
+      this.primary = new Index(PRIMARY, definition.keySchema(), null, false);
+      for (GlobalSecondaryIndex index : definition.globalSecondaryIndexes()) {
+        addIndex(new Index(index.indexName(), index.keySchema(), index.projection(), false));
+      }
+      for (LocalSecondaryIndex index : definition.localSecondaryIndexes()) {
+        addIndex(new Index(index.indexName(), index.keySchema(), index.projection(), true));
+      }
+    }
+
+    private void addIndex(Index index) {
+      index.primary = primary;
+      indexes.put(index.name, index);
+    }
+
+    Index index(String name) {
+      if (name == null) {
+        return primary;
+      }
+      final var index = indexes.get(name);
+      if (index == null) {
+        throw validation("The table does not have the specified index: " + name);
+      }
+      return index;
+    }
+
+    Map<String, AttributeValue> keyOf(Map<String, AttributeValue> item) {
+      final Map<String, AttributeValue> key = new HashMap<>();
+      for (String name : primary.keyNames()) {
+        final var value = item.get(name);
+        if (value == null) {
+          throw validation("One of the required keys was not given a value: " + name);
+        }
+        key.put(name, normalize(value));
+      }
+      return key;
+    }
+
+    Map<String, AttributeValue> get(Map<String, AttributeValue> key) {
+      final var normalized = keyOf(key);
+      final var partition = primary.items.get(normalized.get(primary.partitionKey));
+      return partition != null ? partition.get(primary.sortKeyOf(normalized)) : null;
+    }
+
+    /** Stores {@code item}, replacing {@code old}, and returns the write units per index. */
+    Map<String, Double> put(
+        Map<String, AttributeValue> item, Map<String, AttributeValue> old, int multiplier) {
+      final Map<String, AttributeValue> stored = Map.copyOf(item);
+      keyOf(stored);
+      if (old != null) {
+        primary.remove(old);
+      }
+      primary.add(stored);
+
+      final Map<String, Double> units = new HashMap<>();
+      units.put(PRIMARY, multiplier * writeUnits(Math.max(size(stored), size(old))));
+      for (Index index : indexes.values()) {
+        double indexUnits = 0;
+        if (index.contains(old)) {
+          index.remove(old);
+          indexUnits += writeUnits(size(index.project(old)));
+        }
+        if (index.contains(stored)) {
+          index.add(stored);
+          indexUnits += writeUnits(size(index.project(stored)));
+        }
+        if (indexUnits > 0) {
+          units.put(index.name, multiplier * indexUnits);
+        }
+      }
+      return units;
+    }
+
+    Map<String, Double> delete(
+        Map<String, AttributeValue> key, Map<String, AttributeValue> old, int multiplier) {
+      keyOf(key);
+      final Map<String, Double> units = new HashMap<>();
+      units.put(PRIMARY, multiplier * writeUnits(size(old)));
+      if (old == null) {
+        return units;
+      }
+      primary.remove(old);
+      for (Index index : indexes.values()) {
+        if (index.contains(old)) {
+          index.remove(old);
+          units.put(index.name, multiplier * writeUnits(size(index.project(old))));
+        }
+      }
+      return units;
+    }
+
+    ConsumedCapacity readCapacity(ReturnConsumedCapacity mode, String indexName, double units) {
+      return capacity(mode, Map.of(indexName, units), false);
+    }
+
+    ConsumedCapacity writeCapacity(ReturnConsumedCapacity mode, Map<String, Double> units) {
+      return capacity(mode, units, true);
+    }
+
+    private ConsumedCapacity capacity(
+        ReturnConsumedCapacity mode, Map<String, Double> units, boolean write) {
+      if (mode == null || mode == ReturnConsumedCapacity.NONE) {
+        return null;
+      }
+      final double total = units.values().stream().mapToDouble(Double::doubleValue).sum();
+      final var capacity = ConsumedCapacity.builder().tableName(definition.tableName());
+      unitsOf(
+          capacity::capacityUnits,
+          capacity::readCapacityUnits,
+          capacity::writeCapacityUnits,
+          total,
+          write);
+      if (mode == ReturnConsumedCapacity.INDEXES) {
+        final var table = Capacity.builder();
+        unitsOf(
+            table::capacityUnits,
+            table::readCapacityUnits,
+            table::writeCapacityUnits,
+            units.getOrDefault(PRIMARY, 0.0),
+            write);
+        capacity.table(table.build());
+
+        final Map<String, Capacity> global = new HashMap<>();
+        final Map<String, Capacity> local = new HashMap<>();
+        units.forEach(
+            (name, value) -> {
+              if (name.equals(PRIMARY)) {
+                return;
+              }
+              final var index = Capacity.builder();
+              unitsOf(
+                  index::capacityUnits,
+                  index::readCapacityUnits,
+                  index::writeCapacityUnits,
+                  value,
+                  write);
+              (indexes.get(name).local ? local : global).put(name, index.build());
+            });
+        if (!global.isEmpty()) {
+          capacity.globalSecondaryIndexes(global);
+        }
+        if (!local.isEmpty()) {
+          capacity.localSecondaryIndexes(local);
+        }
+      }
+      return capacity.build();
+    }
+
+    private static void unitsOf(
+        Consumer<Double> total,
+        Consumer<Double> read,
+        Consumer<Double> written,
+        double units,
+        boolean write) {
+      total.accept(units);
+      (write ? written : read).accept(units);
+    }
+
+    TableDescription describe() {
+      final var description =
+          TableDescription.builder()
+              .tableName(definition.tableName())
+              .tableStatus(TableStatus.ACTIVE)
+              .keySchema(definition.keySchema())
+              .attributeDefinitions(definition.attributeDefinitions())
+              .itemCount(primary.items.values().stream().mapToLong(Map::size).sum());
+      if (definition.hasGlobalSecondaryIndexes()) {
+        description.globalSecondaryIndexes(
+            definition.globalSecondaryIndexes().stream()
+                .map(
+                    index ->
+                        GlobalSecondaryIndexDescription.builder()
+                            .indexName(index.indexName())
+                            .keySchema(index.keySchema())
+                            .projection(index.projection())
+                            .indexStatus(IndexStatus.ACTIVE)
+                            .build())
+                .toList());
+      }
+      return description.build();
+    }
+  }
+}
@@ -0,0 +1,205 @@
+package hu.squarelabs.auth21.dynamodb;
+
+import hu.squarelabs.auth21.util.DaemonThreads;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.http.ExecutableHttpRequest;
+import software.amazon.awssdk.http.HttpExecuteRequest;
+import software.amazon.awssdk.http.HttpExecuteResponse;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.http.async.AsyncExecuteRequest;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.utils.BinaryUtils;
+import software.amazon.awssdk.utils.IoUtils;
+
+/**
+ * HTTP transport that answers DynamoDB calls from an {@link InMemoryDynamoDb} instead of the
+ * network. Plugged into a regular {@code DynamoDbClient} or {@code DynamoDbAsyncClient}, it keeps
+ * the SDK's request pipeline, retries, interceptors and metrics in play, which is what makes
+ * offline load tests representative.
+ *
+ * <p>Each call first waits for a delay drawn from its operation's {@link OperationProfile}, then
+ * may be rejected with a throttling error or an internal server error at the profile's rates, the
+ * two failures the SDK retries, and otherwise runs against the store. Synchronous calls sleep on
+ * the calling thread; asynchronous calls are completed from a scheduler so that no thread is held
+ * for the delay.
+ */
+public class InMemoryDynamoDbHttpClient implements SdkHttpClient, SdkAsyncHttpClient {
+  private static final String TARGET_HEADER = "X-Amz-Target";
+  private static final String TARGET_PREFIX = "DynamoDB_20120810.";
+
+  private final InMemoryDynamoDb store;
+  private final Function<String, OperationProfile> profiles;
+  private final ScheduledExecutorService scheduler = DaemonThreads.scheduler("in-memory-dynamodb");
+
+  /** Simulated behaviour of one operation. Rates are probabilities between 0 and 1. */
+  public record OperationProfile(LatencyModel latency, double throttleRate, double errorRate) {
+    public static final OperationProfile IDEAL = new OperationProfile(LatencyModel.NONE, 0, 0);
+
+    public OperationProfile {
+      if (throttleRate < 0 || errorRate < 0 || throttleRate + errorRate > 1) {
+        throw new IllegalArgumentException(
+            "Fault rates must be non-negative and sum to at most 1, got "
+                + throttleRate
+                + " and "
+                + errorRate);
+      }
+    }
+  }
+
+  private record Response(int status, byte[] body) {}
+
+  public InMemoryDynamoDbHttpClient(
+      InMemoryDynamoDb store, Function<String, OperationProfile> profiles) {
+    this.store = store;
+    this.profiles = profiles;
+  }
+
+  @Override
+  public ExecutableHttpRequest prepareRequest(HttpExecuteRequest request) {
+    return new ExecutableHttpRequest() {
+      @Override
+      public HttpExecuteResponse call() throws IOException {
+        final var operation = operationOf(request.httpRequest().firstMatchingHeader(TARGET_HEADER));
+        final byte[] body;
+        if (request.contentStreamProvider().isPresent()) {
+          try (var content = request.contentStreamProvider().get().newStream()) {
+            body = IoUtils.toByteArray(content);
+          }
+        } else {
+          body = new byte[0];
+        }
+
+        final var profile = profiles.apply(operation);
+        final long delay = profile.latency().sampleNanos(ThreadLocalRandom.current());
+        if (delay > 0) {
+          try {
+            TimeUnit.NANOSECONDS.sleep(delay);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while simulating DynamoDB latency", e);
+          }
+        }
+
+        final var response = respond(operation, body, profile);
+        return HttpExecuteResponse.builder()
+            .response(headers(response))
+            .responseBody(AbortableInputStream.create(new ByteArrayInputStream(response.body())))
+            .build();
+      }
+
+      @Override
+      public void abort() {}
+    };
+  }
+
+  @Override
+  public CompletableFuture<Void> execute(AsyncExecuteRequest request) {
+    final var operation = operationOf(request.request().firstMatchingHeader(TARGET_HEADER));
+    final var content = new ByteArrayOutputStream();
+    final var completion = new CompletableFuture<Void>();
+
+    SdkPublisher.adapt(request.requestContentPublisher())
+        .subscribe(buffer -> content.writeBytes(BinaryUtils.copyBytesFrom(buffer)))
+        .whenComplete(
+            (ignored, error) -> {
+              if (error != null) {
+                request.responseHandler().onError(error);
+                completion.completeExceptionally(error);
+                return;
+              }
+              final var profile = profiles.apply(operation);
+              final long delay = profile.latency().sampleNanos(ThreadLocalRandom.current());
+              scheduler.schedule(
+                  () -> {
+                    try {
+                      final var response = respond(operation, content.toByteArray(), profile);
+                      request.responseHandler().onHeaders(headers(response));
+                      request
+                          .responseHandler()
+                          .onStream(AsyncRequestBody.fromBytes(response.body()));
+                      completion.complete(null);
+                    } catch (RuntimeException e) {
+                      request.responseHandler().onError(e);
+                      completion.completeExceptionally(e);
+                    }
+                  },
+                  delay,
+                  TimeUnit.NANOSECONDS);
+            });
+    return completion;
+  }
+
+  @Override
+  public String clientName() {
+    return "InMemory";
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+
+  private Response respond(String operation, byte[] body, OperationProfile profile) {
+    try {
+      final double roll = ThreadLocalRandom.current().nextDouble();
+      if (roll < profile.throttleRate()) {
+        return error(
+            400,
+            "ProvisionedThroughputExceededException",
+            "The level of configured provisioned throughput for the table was exceeded");
+      }
+      if (roll < profile.throttleRate() + profile.errorRate()) {
+        return error(500, "InternalServerError", "Internal server error");
+      }
+
+      try {
+        final var request = DynamoDbJson.readRequest(operation, body);
+        return new Response(200, DynamoDbJson.write(store.execute(operation, request)));
+      } catch (AwsServiceException e) {
+        return new Response(e.statusCode() > 0 ? e.statusCode() : 400, DynamoDbJson.writeError(e));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static Response error(int status, String code, String message) throws IOException {
+    return new Response(
+        status,
+        DynamoDbJson.writeError(
+            AwsServiceException.builder()
+                .message(message)
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode(code).build())
+                .build()));
+  }
+
+  private static SdkHttpResponse headers(Response response) {
+    return SdkHttpResponse.builder()
+        .statusCode(response.status())
+        .putHeader("Content-Type", "application/x-amz-json-1.0")
+        .putHeader("Content-Length", Integer.toString(response.body().length))
+        .build();
+  }
+
+  private static String operationOf(Optional<String> target) {
+    return target
+        .filter(value -> value.startsWith(TARGET_PREFIX))
+        .map(value -> value.substring(TARGET_PREFIX.length()))
+        .orElse("");
+  }
+}
@@ -0,0 +1,77 @@
+package hu.squarelabs.auth21.dynamodb;
+
+import java.time.Duration;
+import java.util.random.RandomGenerator;
+import org.springframework.boot.convert.DurationStyle;
+
+/**
+ * Distribution of the service time added to each simulated DynamoDB call. {@link #parse(String)}
+ * reads the property form:
+ *
+ * <ul>
+ *   <li>{@code none}: no delay
+ *   <li>{@code fixed:5ms}: always the same delay
+ *   <li>{@code uniform:2ms,10ms}: evenly spread between the bounds
+ *   <li>{@code lognormal:4ms,25ms}: log-normal with the given median and 99th percentile, the usual
+ *       shape of service latency with its long right tail
+ * </ul>
+ */
+@FunctionalInterface
+public interface LatencyModel {
+  LatencyModel NONE = random -> 0;
+
+  /** Nanoseconds to delay the next call by. */
+  long sampleNanos(RandomGenerator random);
+
+  static LatencyModel fixed(Duration delay) {
+    final long nanos = delay.toNanos();
+    return random -> nanos;
+  }
+
+  static LatencyModel uniform(Duration min, Duration max) {
+    final long low = min.toNanos();
+    final long high = max.toNanos();
+    if (high < low) {
+      throw new IllegalArgumentException(
+          "Uniform latency needs min <= max, got " + min + ", " + max);
+    }
+    return random -> high == low ? low : random.nextLong(low, high + 1);
+  }
+
+  static LatencyModel logNormal(Duration median, Duration p99) {
+    if (median.isNegative() || median.isZero() || p99.compareTo(median) < 0) {
+      throw new IllegalArgumentException(
+          "Log-normal latency needs 0 < median <= p99, got " + median + ", " + p99);
+    }
+    final double mu = Math.log(median.toNanos());
+    final double sigma = Math.log((double) p99.toNanos() / median.toNanos()) / 2.3263478740;
+    return random -> (long) Math.exp(mu + sigma * random.nextGaussian());
+  }
+
+  static LatencyModel parse(String spec) {
+    final var trimmed = spec.trim();
+    if (trimmed.isEmpty() || trimmed.equals("none") || trimmed.equals("0")) {
+      return NONE;
+    }
+    final int colon = trimmed.indexOf(':');
+    final var kind = colon < 0 ? "fixed" : trimmed.substring(0, colon);
+    final var arguments = trimmed.substring(colon + 1).split(",");
+    return switch (kind) {
+      case "fixed" -> fixed(duration(arguments[0]));
+      case "uniform" -> uniform(duration(arguments[0]), duration(argument(arguments, 1, spec)));
+      case "lognormal" -> logNormal(duration(arguments[0]), duration(argument(arguments, 1, spec)));
+      default -> throw new IllegalArgumentException("Unknown latency model: " + spec);
+    };
+  }
+
+  private static String argument(String[] arguments, int index, String spec) {
+    if (arguments.length <= index) {
+      throw new IllegalArgumentException("Latency model needs two durations: " + spec);
+    }
+    return arguments[index];
+  }
+
+  private static Duration duration(String value) {
+    return DurationStyle.detectAndParse(value.trim());
+  }
+}